@@ -0,0 +1,63 @@
+/**
+ *
+ */
+package provided.entity;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of {@link EntityBase#toFraction(BigDecimal)} over the ingredient amounts found in
+ * recipes: whole numbers, halves, thirds, quarters, eighths, sixteenths, values with no close
+ * fraction, zero and null. {@link #appendFraction(Blackhole)} appends the same amounts to one
+ * reused builder, the way a line of ingredients is rendered.
+ *
+ * @author Promineo
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FractionBenchmark {
+  private final BigDecimal[] amounts = {new BigDecimal("1.00"), new BigDecimal("0.50"),
+      new BigDecimal("0.33"), new BigDecimal("0.67"), new BigDecimal("0.25"),
+      new BigDecimal("2.75"), new BigDecimal("0.13"), new BigDecimal("0.06"),
+      new BigDecimal("16.25"), new BigDecimal("1.47"), new BigDecimal("0.00"), null};
+
+  private final Amount entity = new Amount();
+  private final StringBuilder builder = new StringBuilder();
+
+  @Benchmark
+  public void toFraction(Blackhole blackhole) {
+    for(BigDecimal amount : amounts) {
+      blackhole.consume(entity.toFraction(amount));
+    }
+  }
+
+  @Benchmark
+  public void appendFraction(Blackhole blackhole) {
+    for(BigDecimal amount : amounts) {
+      builder.setLength(0);
+      blackhole.consume(EntityBase.appendFraction(builder, amount).length());
+    }
+  }
+
+  /**
+   * An entity with no fields, used only for the inherited conversion.
+   */
+  private static class Amount extends EntityBase {
+  }
+}
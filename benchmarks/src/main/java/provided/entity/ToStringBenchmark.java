@@ -0,0 +1,152 @@
+/**
+ *
+ */
+package provided.entity;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import diyproject.entity.Material;
+import diyproject.entity.Project;
+import diyproject.entity.ProjectRenderer;
+import recipes.entity.Category;
+import recipes.entity.Ingredient;
+import recipes.entity.Recipe;
+import recipes.entity.RecipeRenderer;
+import recipes.entity.Step;
+import recipes.entity.Unit;
+
+/**
+ * Benchmarks of {@link Recipe#toString()} and {@link Project#toString()}, which the menu
+ * applications call to print a fetched recipe or project. The graphs are filled the way the DAOs
+ * fill them, with {@code children} ingredients (or materials) and steps and a few categories. The
+ * render benchmarks write the same text with {@link RecipeRenderer} and {@link ProjectRenderer}
+ * to one reused builder, the way a catalog is printed.
+ *
+ * @author Promineo
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ToStringBenchmark {
+  private static final String[] AMOUNTS = {"1.00", "0.50", "0.33", "2.25", "0.13", "0.75"};
+
+  @Param({"5", "50"})
+  private int children;
+
+  private Recipe recipe;
+  private Project project;
+  private final RecipeRenderer recipeRenderer = new RecipeRenderer();
+  private final ProjectRenderer projectRenderer = new ProjectRenderer();
+  private final StringBuilder builder = new StringBuilder();
+
+  @Setup
+  public void setUp() {
+    Unit cup = new Unit();
+    cup.setUnitId(1);
+    cup.setUnitNameSingular("cup");
+    cup.setUnitNamePlural("cups");
+
+    recipe = new Recipe();
+    recipe.setRecipeId(1);
+    recipe.setRecipeName("Hot Turkey Sandwich");
+    recipe.setNotes("Use leftover turkey and gravy.");
+    recipe.setNumServings(4);
+    recipe.setPrepTime(LocalTime.of(0, 10));
+    recipe.setCookTime(LocalTime.of(0, 20));
+    recipe.setCreatedAt(LocalDateTime.of(2023, 5, 1, 12, 0));
+
+    project = new Project();
+    project.setProjectId(1);
+    project.setProjectName("Build a bookshelf");
+    project.setEstimatedHours(new BigDecimal("6.50"));
+    project.setActualHours(new BigDecimal("8.00"));
+    project.setDifficulty(3);
+    project.setNotes("Sand before staining.");
+
+    for(int index = 1; index <= children; index++) {
+      Ingredient ingredient = new Ingredient();
+      ingredient.setIngredientId(index);
+      ingredient.setRecipeId(1);
+      ingredient.setUnit(index % 3 == 0 ? null : cup);
+      ingredient.setIngredientName("ingredient " + index);
+      ingredient.setInstruction(index % 2 == 0 ? "chopped" : null);
+      ingredient.setIngredientOrder(index);
+      ingredient.setAmount(new BigDecimal(AMOUNTS[index % AMOUNTS.length]));
+      recipe.getIngredients().add(ingredient);
+
+      Step step = new Step();
+      step.setStepId(index);
+      step.setRecipeId(1);
+      step.setStepOrder(index);
+      step.setStepText("Step number " + index + " of the recipe.");
+      recipe.getSteps().add(step);
+
+      Material material = new Material();
+      material.setMaterialId(index);
+      material.setProjectId(1);
+      material.setMaterialName("2x4 board " + index);
+      material.setNumRequired(index % 4 + 1);
+      material.setCost(new BigDecimal("3.49"));
+      project.getMaterials().add(material);
+
+      diyproject.entity.Step projectStep = new diyproject.entity.Step();
+      projectStep.setStepId(index);
+      projectStep.setProjectId(1);
+      projectStep.setStepOrder(index);
+      projectStep.setStepText("Cut board " + index + " to length.");
+      project.getSteps().add(projectStep);
+    }
+
+    for(String name : new String[] {"Main Dishes", "Leftovers", "Quick"}) {
+      Category category = new Category();
+      category.setCategoryName(name);
+      recipe.getCategories().add(category);
+
+      diyproject.entity.Category projectCategory = new diyproject.entity.Category();
+      projectCategory.setCategoryName(name);
+      project.getCategories().add(projectCategory);
+    }
+  }
+
+  @Benchmark
+  public String recipeToString() {
+    return recipe.toString();
+  }
+
+  @Benchmark
+  public String projectToString() {
+    return project.toString();
+  }
+
+  @Benchmark
+  public int recipeRender() throws IOException {
+    builder.setLength(0);
+    recipeRenderer.render(recipe, builder);
+    return builder.length();
+  }
+
+  @Benchmark
+  public int projectRender() throws IOException {
+    builder.setLength(0);
+    projectRenderer.render(project, builder);
+    return builder.length();
+  }
+}
@@ -0,0 +1,539 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+/**
+ * This is a {@link PreparedStatement} in which every method throws
+ * {@link SQLFeatureNotSupportedException}. See {@link AbstractResultSet}.
+ *
+ * @author Promineo
+ *
+ */
+public abstract class AbstractPreparedStatement implements PreparedStatement {
+  /**
+   * @return The exception thrown by every method the subclass does not override.
+   */
+  protected SQLException unsupported() {
+    return new SQLFeatureNotSupportedException("Not implemented by " + getClass().getSimpleName());
+  }
+
+  @Override
+  public void addBatch() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void addBatch(String sql) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void cancel() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void clearBatch() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void clearParameters() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void close() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void closeOnCompletion() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean execute() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean execute(String sql, int[] value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean execute(String sql, String[] value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean execute(String sql, int value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean execute(String sql) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int[] executeBatch() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public ResultSet executeQuery() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public ResultSet executeQuery(String sql) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int executeUpdate() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int executeUpdate(String sql, int[] value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int executeUpdate(String sql, String[] value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int executeUpdate(String sql, int value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int executeUpdate(String sql) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getFetchDirection() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getFetchSize() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public ResultSet getGeneratedKeys() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getMaxFieldSize() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getMaxRows() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public ResultSetMetaData getMetaData() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean getMoreResults() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean getMoreResults(int parameterIndex) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public ParameterMetaData getParameterMetaData() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getQueryTimeout() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public ResultSet getResultSet() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getResultSetConcurrency() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getResultSetHoldability() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getResultSetType() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getUpdateCount() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public SQLWarning getWarnings() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isCloseOnCompletion() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isClosed() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isPoolable() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setArray(int parameterIndex, Array value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setAsciiStream(int parameterIndex, InputStream value, int arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setAsciiStream(int parameterIndex, InputStream value, long arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setAsciiStream(int parameterIndex, InputStream value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setBigDecimal(int parameterIndex, BigDecimal value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setBinaryStream(int parameterIndex, InputStream value, int arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setBinaryStream(int parameterIndex, InputStream value, long arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setBinaryStream(int parameterIndex, InputStream value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setBlob(int parameterIndex, InputStream value, long arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setBlob(int parameterIndex, InputStream value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setBlob(int parameterIndex, Blob value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setBoolean(int parameterIndex, boolean value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setByte(int parameterIndex, byte value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setBytes(int parameterIndex, byte[] value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setCharacterStream(int parameterIndex, Reader value, int arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setCharacterStream(int parameterIndex, Reader value, long arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setCharacterStream(int parameterIndex, Reader value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setClob(int parameterIndex, Reader value, long arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setClob(int parameterIndex, Reader value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setClob(int parameterIndex, Clob value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setCursorName(String columnLabel) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setDate(int parameterIndex, Date value, Calendar arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setDate(int parameterIndex, Date value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setDouble(int parameterIndex, double value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setEscapeProcessing(boolean value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setFetchDirection(int parameterIndex) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setFetchSize(int parameterIndex) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setFloat(int parameterIndex, float value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setInt(int parameterIndex, int value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setLong(int parameterIndex, long value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setMaxFieldSize(int parameterIndex) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setMaxRows(int parameterIndex) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setNCharacterStream(int parameterIndex, Reader value, long arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setNClob(int parameterIndex, Reader value, long arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setNClob(int parameterIndex, Reader value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setNClob(int parameterIndex, NClob value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setNString(int parameterIndex, String value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setNull(int parameterIndex, int value, String arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setNull(int parameterIndex, int value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setObject(int parameterIndex, Object value, int arg3, int arg4) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setObject(int parameterIndex, Object value, int arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setObject(int parameterIndex, Object value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setPoolable(boolean value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setQueryTimeout(int parameterIndex) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setRef(int parameterIndex, Ref value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setRowId(int parameterIndex, RowId value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setSQLXML(int parameterIndex, SQLXML value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setShort(int parameterIndex, short value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setString(int parameterIndex, String value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setTime(int parameterIndex, Time value, Calendar arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setTime(int parameterIndex, Time value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setTimestamp(int parameterIndex, Timestamp value, Calendar arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setTimestamp(int parameterIndex, Timestamp value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setURL(int parameterIndex, URL value) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public void setUnicodeStream(int parameterIndex, InputStream value, int arg3) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    throw unsupported();
+  }
+}
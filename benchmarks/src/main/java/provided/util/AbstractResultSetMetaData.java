@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * This is a {@link ResultSetMetaData} in which every method throws
+ * {@link SQLFeatureNotSupportedException}. See {@link AbstractResultSet}.
+ *
+ * @author Promineo
+ *
+ */
+public abstract class AbstractResultSetMetaData implements ResultSetMetaData {
+  /**
+   * @return The exception thrown by every method the subclass does not override.
+   */
+  protected SQLException unsupported() {
+    return new SQLFeatureNotSupportedException("Not implemented by " + getClass().getSimpleName());
+  }
+
+  @Override
+  public String getCatalogName(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public String getColumnClassName(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getColumnCount() throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getColumnDisplaySize(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public String getColumnLabel(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public String getColumnName(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getColumnType(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public String getColumnTypeName(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getPrecision(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int getScale(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public String getSchemaName(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public String getTableName(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isAutoIncrement(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isCaseSensitive(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isCurrency(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isDefinitelyWritable(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public int isNullable(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isReadOnly(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isSearchable(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isSigned(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public boolean isWritable(int column) throws SQLException {
+    throw unsupported();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    throw unsupported();
+  }
+}
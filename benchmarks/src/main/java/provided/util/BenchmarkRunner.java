@@ -0,0 +1,48 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.io.IOException;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This is the main class of benchmarks.jar. It takes the usual JMH command line options (a
+ * benchmark name pattern, -f, -wi, -i, -p, ...) and always adds the GC profiler, so every result
+ * comes with its allocation rate per operation (gc.alloc.rate.norm).
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar                  (all benchmarks)
+ * java -jar target/benchmarks.jar DaoBaseBenchmark (one class)
+ * java -jar target/benchmarks.jar -l               (list the benchmarks)
+ * </pre>
+ *
+ * @author Promineo
+ *
+ */
+public class BenchmarkRunner {
+
+  /**
+   * @param args The JMH command line options.
+   * @throws CommandLineOptionException Thrown if the options are not valid.
+   * @throws RunnerException Thrown if a benchmark fails.
+   * @throws IOException Thrown if the benchmark list can not be read.
+   */
+  public static void main(String[] args)
+      throws CommandLineOptionException, RunnerException, IOException {
+    CommandLineOptions options = new CommandLineOptions(args);
+
+    if(options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+        || options.shouldListProfilers() || options.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+
+    new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import recipes.entity.Ingredient;
+import recipes.entity.Recipe;
+
+/**
+ * Benchmarks of the row mapping and parameter binding in {@link DaoBase}.
+ * <ul>
+ * <li>extractRecipes and extractIngredients map every row of a result set, like the loop in a DAO
+ * fetch method. The result sets have the same columns and value types MySQL returns for the recipe
+ * and ingredient tables.</li>
+ * <li>extractFromNewResultSet maps one row from a result set the mapper has not seen, which is what
+ * a single-row fetch costs.</li>
+ * <li>setParameterByClass and setParameterBySqlType bind the seven parameters of a recipe insert,
+ * looking up the SQL type from the Java class or using one looked up in advance.</li>
+ * </ul>
+ *
+ * @author Promineo
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DaoBaseBenchmark {
+  private static final String[] RECIPE_LABELS = {"recipe_id", "recipe_name", "notes",
+      "num_servings", "prep_time", "cook_time", "created_at"};
+  private static final String[] INGREDIENT_LABELS = {"ingredient_id", "recipe_id", "unit_id",
+      "ingredient_name", "instruction", "ingredient_order", "amount"};
+
+  private static final String[] INGREDIENT_NAMES = {"all-purpose flour", "granulated sugar",
+      "unsalted butter", "large eggs", "whole milk", "vanilla extract", "baking powder", "salt"};
+
+  @Param({"10", "1000"})
+  private int rows;
+
+  private final BenchmarkDao dao = new BenchmarkDao();
+  private SyntheticResultSet recipes;
+  private SyntheticResultSet ingredients;
+  private Object[][] singleRecipe;
+  private RecordingPreparedStatement stmt;
+  private Object[] recipeParams;
+  private Class<?>[] recipeParamClasses;
+  private int[] recipeParamTypes;
+
+  @Setup
+  public void setUp() {
+    Object[][] recipeRows = new Object[rows][];
+    Object[][] ingredientRows = new Object[rows][];
+
+    for(int row = 0; row < rows; row++) {
+      recipeRows[row] = new Object[] {row + 1, "Recipe number " + (row + 1),
+          row % 3 == 0 ? null : "Let it rest for ten minutes before serving.", 4 + row % 4,
+          Time.valueOf(LocalTime.of(0, 15)), Time.valueOf(LocalTime.of(1, row % 60)),
+          Timestamp.valueOf(LocalDateTime.of(2023, 5, 1, 12, 0).plusMinutes(row))};
+
+      ingredientRows[row] = new Object[] {row + 1, row / 8 + 1, row % 10 + 1,
+          INGREDIENT_NAMES[row % INGREDIENT_NAMES.length], row % 2 == 0 ? null : "sifted",
+          row % 8 + 1, new BigDecimal("1.25").add(BigDecimal.valueOf(row % 4, 1))};
+    }
+
+    recipes = new SyntheticResultSet(RECIPE_LABELS, recipeRows);
+    ingredients = new SyntheticResultSet(INGREDIENT_LABELS, ingredientRows);
+    singleRecipe = new Object[][] {recipeRows[0]};
+
+    stmt = new RecordingPreparedStatement(RECIPE_LABELS.length);
+    recipeParams = new Object[] {"Chocolate Mousse", "Chill overnight.", 6, LocalTime.of(0, 30),
+        LocalTime.of(0, 0), null, LocalDateTime.of(2023, 5, 1, 12, 0)};
+    recipeParamClasses = new Class<?>[] {String.class, String.class, Integer.class,
+        LocalTime.class, LocalTime.class, String.class, LocalDateTime.class};
+    recipeParamTypes = new int[recipeParamClasses.length];
+
+    for(int index = 0; index < recipeParamClasses.length; index++) {
+      recipeParamTypes[index] = DaoBase.convertJavaClassToSqlType(recipeParamClasses[index]);
+    }
+  }
+
+  @Benchmark
+  public void extractRecipes(Blackhole blackhole) {
+    recipes.rewind();
+
+    while(recipes.next()) {
+      blackhole.consume(dao.extract(recipes, Recipe.class));
+    }
+  }
+
+  @Benchmark
+  public void extractIngredients(Blackhole blackhole) {
+    ingredients.rewind();
+
+    while(ingredients.next()) {
+      blackhole.consume(dao.extract(ingredients, Ingredient.class));
+    }
+  }
+
+  @Benchmark
+  public Recipe extractFromNewResultSet() {
+    SyntheticResultSet rs = new SyntheticResultSet(RECIPE_LABELS, singleRecipe);
+    rs.next();
+    return dao.extract(rs, Recipe.class);
+  }
+
+  @Benchmark
+  public RecordingPreparedStatement setParameterByClass() throws SQLException {
+    for(int index = 0; index < recipeParams.length; index++) {
+      dao.setParameter(stmt, index + 1, recipeParams[index], recipeParamClasses[index]);
+    }
+
+    return stmt;
+  }
+
+  @Benchmark
+  public RecordingPreparedStatement setParameterBySqlType() throws SQLException {
+    for(int index = 0; index < recipeParams.length; index++) {
+      dao.setParameter(stmt, index + 1, recipeParams[index], recipeParamTypes[index]);
+    }
+
+    return stmt;
+  }
+
+  /**
+   * A DAO with no data source, used only for its inherited methods.
+   */
+  private static class BenchmarkDao extends DaoBase {
+    @Override
+    protected DataSource getDataSource() {
+      return null;
+    }
+  }
+}
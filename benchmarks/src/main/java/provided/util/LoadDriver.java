@@ -0,0 +1,633 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import diyproject.dao.DbConnection;
+import diyproject.entity.Material;
+import diyproject.entity.Project;
+import diyproject.service.ProjectService;
+import recipes.dao.DBconnection;
+import recipes.dao.RecipeDao.RecipeSort;
+import recipes.entity.Category;
+import recipes.entity.Ingredient;
+import recipes.entity.Recipe;
+import recipes.entity.Step;
+import recipes.entity.Unit;
+import recipes.service.RecipeService;
+
+/**
+ * This drives concurrent users through {@link RecipeService} and {@link ProjectService} and reports
+ * the throughput and latency of each operation. By default it runs against an in-process H2
+ * database in MySQL mode, so it needs no server.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar provided.util.LoadDriver --users=64 --seconds=60
+ * </pre>
+ *
+ * Each user runs a closed loop: it picks an operation from the mix, runs it, records how long it
+ * took and starts the next one at once. The operations are:
+ * <ul>
+ * <li><b>insert:</b> save a new recipe (or project) with its children in one transaction.</li>
+ * <li><b>fetch:</b> fetch one of the 4,096 most recently added recipes (or projects) with its
+ * children. Only rows that are committed are picked, so a fetch never misses.</li>
+ * <li><b>list:</b> read the next page of the recipe (or project) list. Each user pages forward and
+ * starts again at the first page after the last one.</li>
+ * <li><b>bulk:</b> insert a batch of recipes (or projects) with the batched inserts.</li>
+ * </ul>
+ *
+ * Latencies are recorded in HdrHistogram recorders, one per operation, and reported as p50, p95,
+ * p99, p99.9 and max in milliseconds. The time each call to the connection pool took is recorded
+ * the same way, through the pool's acquire listener
+ * ({@link ConnectionPool#setAcquireListener(java.util.function.LongConsumer)}), so waiting for a
+ * connection shows up separately from the time spent in the database. Nothing is recorded during
+ * the warm-up.
+ *
+ * The options are given as --name=value:
+ * <ul>
+ * <li>--users: the number of concurrent users (16).</li>
+ * <li>--seconds: how long to measure (30). --warmup: how long to run first (5).</li>
+ * <li>--mix: the relative weight of each operation (insert:10,fetch:60,list:25,bulk:5).</li>
+ * <li>--target: recipes, projects or both (both).</li>
+ * <li>--pool: the connection pool size of each service (10).</li>
+ * <li>--bulk: the rows inserted by each bulk operation (100). --page: the list page size (20).</li>
+ * <li>--preload: the rows added before the run, so fetches have rows to read (200).</li>
+ * <li>--recipes-url, --projects-url: JDBC URLs to run against another database, like a MySQL
+ * server. The tables are dropped and reloaded only for the built-in H2 database, unless
+ * --reset=true is given.</li>
+ * </ul>
+ *
+ * @author Promineo
+ *
+ */
+public class LoadDriver {
+  private static final String H2_URL =
+      "jdbc:h2:mem:%s;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+  private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toNanos(5);
+  private static final int SIGNIFICANT_DIGITS = 3;
+  private static final int RECENT_IDS = 4096;
+  private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+  private static final String[] STEP_VERBS = {"Mix", "Stir", "Fold", "Whisk", "Bake", "Chill"};
+
+  /**
+   * The operations a user can run.
+   */
+  enum Operation {
+    INSERT, FETCH, LIST, BULK
+  }
+
+  private final Map<String, String> options;
+  private final PrintStream out;
+  private final List<Workload> workloads = new ArrayList<>();
+  private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+  private int totalWeight;
+  private volatile boolean running = true;
+
+  /**
+   * @param options The options, by name.
+   * @param out Where to print the report.
+   */
+  LoadDriver(Map<String, String> options, PrintStream out) {
+    this.options = options;
+    this.out = out;
+  }
+
+  /**
+   * @param args The options, as --name=value.
+   * @throws InterruptedException Thrown if the run is interrupted.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    Map<String, String> options = new LinkedHashMap<>();
+
+    for(String arg : args) {
+      int equals = arg.indexOf('=');
+
+      if(!arg.startsWith("--") || equals < 0) {
+        System.err.println("Options are given as --name=value, not " + arg);
+        System.exit(2);
+      }
+
+      options.put(arg.substring(2, equals), arg.substring(equals + 1));
+    }
+
+    new LoadDriver(options, System.out).run();
+  }
+
+  /**
+   * Set up the databases, run the load and print the report.
+   *
+   * @throws InterruptedException Thrown if the run is interrupted.
+   */
+  void run() throws InterruptedException {
+    int users = intOption("users", 16);
+    int warmupSeconds = intOption("warmup", 5);
+    int seconds = intOption("seconds", 30);
+    String target = option("target", "both");
+
+    parseMix(option("mix", "insert:10,fetch:60,list:25,bulk:5"));
+
+    /*
+     * The connection classes read these properties when they are first used, so they must be set
+     * before anything touches the services.
+     */
+    configure("recipes", "recipes.db.url", "recipes.db.maxPoolSize");
+    configure("projects", "projects.db.url", "projects.db.maxPoolSize");
+
+    runLoad(users, warmupSeconds, seconds, target);
+  }
+
+  private void runLoad(int users, int warmupSeconds, int seconds, String target)
+      throws InterruptedException {
+    if(target.equals("both") || target.equals("recipes")) {
+      workloads.add(new RecipeWorkload(this));
+    }
+
+    if(target.equals("both") || target.equals("projects")) {
+      workloads.add(new ProjectWorkload(this));
+    }
+
+    if(workloads.isEmpty()) {
+      throw new IllegalArgumentException(
+          "--target must be recipes, projects or both, not " + target);
+    }
+
+    for(Workload workload : workloads) {
+      workload.prepare(intOption("preload", 200));
+    }
+
+    List<Thread> threads = new ArrayList<>(users);
+
+    for(int user = 1; user <= users; user++) {
+      Thread thread = new Thread(this::runUser, "load-user-" + user);
+      thread.setDaemon(true);
+      thread.start();
+      threads.add(thread);
+    }
+
+    TimeUnit.SECONDS.sleep(warmupSeconds);
+    workloads.forEach(Workload::reset);
+
+    long start = System.nanoTime();
+    TimeUnit.SECONDS.sleep(seconds);
+
+    /* Take the results before stopping, so slow operations finishing late are not counted. */
+    List<Result> results = new ArrayList<>();
+    double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+    for(Workload workload : workloads) {
+      results.addAll(workload.results());
+    }
+
+    running = false;
+
+    for(Thread thread : threads) {
+      thread.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    report(users, elapsedSeconds, results);
+  }
+
+  /**
+   * The loop run by each user.
+   */
+  private void runUser() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    Map<Workload, String> pageTokens = new LinkedHashMap<>();
+
+    while(running) {
+      Workload workload = workloads.get(random.nextInt(workloads.size()));
+      Operation operation = pickOperation(random.nextInt(totalWeight));
+      long start = System.nanoTime();
+
+      try {
+        switch(operation) {
+          case INSERT:
+            workload.insert(random);
+            break;
+
+          case FETCH:
+            workload.fetch(random);
+            break;
+
+          case LIST:
+            pageTokens.put(workload, workload.list(pageTokens.get(workload)));
+            break;
+
+          case BULK:
+            workload.bulk(random);
+            break;
+        }
+
+        workload.latencies.get(operation).recordValue(
+            Math.min(System.nanoTime() - start, HIGHEST_LATENCY));
+      }
+      catch(RuntimeException e) {
+        workload.errors.get(operation).increment();
+        workload.firstError.compareAndSet(null, operation + ": " + e);
+      }
+    }
+  }
+
+  private Operation pickOperation(int roll) {
+    for(Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+      roll -= entry.getValue();
+
+      if(roll < 0) {
+        return entry.getKey();
+      }
+    }
+
+    throw new IllegalStateException("The operation mix is empty");
+  }
+
+  private void report(int users, double elapsedSeconds, List<Result> results) {
+    out.printf("%d users for %.1fs, pool size %s%n", users, elapsedSeconds,
+        option("pool", "10"));
+
+    for(Workload workload : workloads) {
+      out.printf("%s: %s%n", workload.name, workload.url);
+    }
+
+    out.println();
+    out.printf("%-18s %10s %8s %10s %9s %9s %9s %9s %9s%n", "Operation", "Count", "Errors",
+        "Ops/s", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms", "max ms");
+
+    long total = 0;
+
+    for(Result result : results) {
+      Histogram histogram = result.histogram;
+      boolean acquire = result.errors < 0;
+
+      if(!acquire) {
+        total += histogram.getTotalCount();
+      }
+
+      out.printf("%-18s %10d %8s %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n", result.name,
+          histogram.getTotalCount(), acquire ? "" : Long.toString(result.errors),
+          histogram.getTotalCount() / elapsedSeconds, millis(histogram.getValueAtPercentile(50)),
+          millis(histogram.getValueAtPercentile(95)), millis(histogram.getValueAtPercentile(99)),
+          millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()));
+    }
+
+    out.println();
+    out.printf("Total: %d operations, %.1f ops/s%n", total, total / elapsedSeconds);
+
+    for(Workload workload : workloads) {
+      if(Objects.nonNull(workload.firstError.get())) {
+        out.printf("First %s error: %s%n", workload.name, workload.firstError.get());
+      }
+    }
+  }
+
+  private static double millis(long nanos) {
+    return nanos / NANOS_PER_MILLI;
+  }
+
+  private void configure(String schema, String urlProperty, String poolSizeProperty) {
+    String url = option(schema + "-url", String.format(H2_URL, schema));
+
+    System.setProperty(urlProperty, url);
+    System.setProperty(poolSizeProperty, option("pool", "10"));
+  }
+
+  private void parseMix(String text) {
+    for(String part : text.split(",")) {
+      String[] nameAndWeight = part.split(":");
+
+      if(nameAndWeight.length != 2) {
+        throw new IllegalArgumentException("The mix is given as name:weight,..., not " + text);
+      }
+
+      int weight = Integer.parseInt(nameAndWeight[1].trim());
+
+      if(weight > 0) {
+        mix.put(Operation.valueOf(nameAndWeight[0].trim().toUpperCase()), weight);
+        totalWeight += weight;
+      }
+    }
+
+    if(totalWeight == 0) {
+      throw new IllegalArgumentException("The mix has no operations: " + text);
+    }
+  }
+
+  String option(String name, String defaultValue) {
+    return options.getOrDefault(name, defaultValue);
+  }
+
+  int intOption(String name, int defaultValue) {
+    return Integer.parseInt(option(name, Integer.toString(defaultValue)));
+  }
+
+  /**
+   * @return {@code true} if the tables should be dropped and reloaded before the run.
+   */
+  boolean reset(String schema) {
+    return Boolean.parseBoolean(option("reset",
+        Boolean.toString(!options.containsKey(schema + "-url"))));
+  }
+
+  /**
+   * One operation's (or the pool's) results. The error count is -1 for connection acquires.
+   */
+  private static class Result {
+    final String name;
+    final Histogram histogram;
+    final long errors;
+
+    Result(String name, Histogram histogram, long errors) {
+      this.name = name;
+      this.histogram = histogram;
+      this.errors = errors;
+    }
+  }
+
+  /**
+   * The operations and recorded results for one service.
+   */
+  private abstract static class Workload {
+    final String name;
+    final String url;
+    final LoadDriver driver;
+    final Map<Operation, Recorder> latencies = new EnumMap<>(Operation.class);
+    final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    final Recorder acquires = new Recorder(SIGNIFICANT_DIGITS);
+    final AtomicReference<String> firstError = new AtomicReference<>();
+
+    /** The IDs of the most recently committed rows, written round robin. Fetches pick one. */
+    final AtomicIntegerArray recentIds = new AtomicIntegerArray(RECENT_IDS);
+    final AtomicInteger addedCount = new AtomicInteger();
+    final AtomicInteger sequence = new AtomicInteger();
+
+    Workload(String name, String url, LoadDriver driver) {
+      this.name = name;
+      this.url = url;
+      this.driver = driver;
+
+      for(Operation operation : Operation.values()) {
+        latencies.put(operation, new Recorder(SIGNIFICANT_DIGITS));
+        errors.put(operation, new LongAdder());
+      }
+    }
+
+    /**
+     * Create and load the tables, add the preloaded rows and start recording connection acquires.
+     */
+    abstract void prepare(int preload);
+
+    abstract void insert(ThreadLocalRandom random);
+
+    abstract void fetch(ThreadLocalRandom random);
+
+    /**
+     * @return The token of the next page, or {@code null} to start again at the first page.
+     */
+    abstract String list(String pageToken);
+
+    abstract void bulk(ThreadLocalRandom random);
+
+    void listenToPool(DataSource dataSource) {
+      try {
+        dataSource.unwrap(ConnectionPool.class).setAcquireListener(nanos -> acquires
+            .recordValue(Math.min(nanos, HIGHEST_LATENCY)));
+      }
+      catch(SQLException e) {
+        throw new IllegalStateException("The " + name + " data source is not a ConnectionPool", e);
+      }
+    }
+
+    void added(Integer id) {
+      recentIds.set(Math.floorMod(addedCount.getAndIncrement(), RECENT_IDS), id);
+    }
+
+    int randomId(ThreadLocalRandom random) {
+      int count = Math.max(1, Math.min(addedCount.get(), RECENT_IDS));
+      int id = recentIds.get(random.nextInt(count));
+
+      /* The slot was claimed but its ID is not written yet. Use one the preload wrote. */
+      return id == 0 ? recentIds.get(0) : id;
+    }
+
+    /**
+     * Throw away everything recorded so far.
+     */
+    void reset() {
+      latencies.values().forEach(Recorder::reset);
+      errors.values().forEach(LongAdder::reset);
+      acquires.reset();
+      firstError.set(null);
+    }
+
+    List<Result> results() {
+      List<Result> results = new ArrayList<>();
+
+      for(Operation operation : Operation.values()) {
+        if(driver.mix.containsKey(operation)) {
+          results.add(new Result(name + "." + operation.name().toLowerCase(),
+              latencies.get(operation).getIntervalHistogram(), errors.get(operation).sum()));
+        }
+      }
+
+      results.add(new Result(name + ".acquire", acquires.getIntervalHistogram(), -1));
+      return results;
+    }
+  }
+
+  /**
+   * Load on {@link RecipeService}. Inserted recipes have eight ingredients, six steps and two of
+   * the seeded categories.
+   */
+  private static class RecipeWorkload extends Workload {
+    private final RecipeService service = new RecipeService();
+
+    RecipeWorkload(LoadDriver driver) {
+      super("recipes", System.getProperty("recipes.db.url"), driver);
+    }
+
+    @Override
+    void prepare(int preload) {
+      if(driver.reset("recipes")) {
+        service.createAndPopulateTables(true);
+      }
+      else {
+        service.createAndPopulateTables();
+      }
+
+      if(preload > 0) {
+        service.addRecipes(newRecipes(preload)).forEach(recipe -> added(recipe.getRecipeId()));
+      }
+
+      listenToPool(DBconnection.getDataSource());
+    }
+
+    @Override
+    void insert(ThreadLocalRandom random) {
+      Recipe recipe = newRecipe();
+
+      for(int index = 1; index <= 8; index++) {
+        Unit unit = new Unit();
+        unit.setUnitId(1 + random.nextInt(5));
+
+        Ingredient ingredient = new Ingredient();
+        ingredient.setUnit(unit);
+        ingredient.setIngredientName("ingredient " + index);
+        ingredient.setInstruction(index % 2 == 0 ? "chopped" : null);
+        ingredient.setAmount(BigDecimal.valueOf(25 + random.nextInt(400), 2));
+        recipe.getIngredients().add(ingredient);
+      }
+
+      for(int index = 1; index <= 6; index++) {
+        Step step = new Step();
+        step.setStepText(STEP_VERBS[index - 1] + " for " + index + " minutes.");
+        recipe.getSteps().add(step);
+      }
+
+      for(int categoryId : new int[] {1, 2 + random.nextInt(3)}) {
+        Category category = new Category();
+        category.setCategoryId(categoryId);
+        recipe.getCategories().add(category);
+      }
+
+      added(service.saveRecipeGraph(recipe).getRecipeId());
+    }
+
+    @Override
+    void fetch(ThreadLocalRandom random) {
+      service.fetchRecipe(randomId(random));
+    }
+
+    @Override
+    String list(String pageToken) {
+      return service.listRecipes(RecipeSort.ID, pageToken, driver.intOption("page", 20))
+          .getNextPageToken();
+    }
+
+    @Override
+    void bulk(ThreadLocalRandom random) {
+      service.addRecipes(newRecipes(driver.intOption("bulk", 100)))
+          .forEach(recipe -> added(recipe.getRecipeId()));
+    }
+
+    private List<Recipe> newRecipes(int count) {
+      List<Recipe> recipes = new ArrayList<>(count);
+
+      for(int index = 0; index < count; index++) {
+        recipes.add(newRecipe());
+      }
+
+      return recipes;
+    }
+
+    private Recipe newRecipe() {
+      Recipe recipe = new Recipe();
+      recipe.setRecipeName("Load test recipe " + sequence.incrementAndGet());
+      recipe.setNotes("Added by the load driver.");
+      recipe.setNumServings(4);
+      recipe.setPrepTime(LocalTime.of(0, 15));
+      recipe.setCookTime(LocalTime.of(0, 45));
+      return recipe;
+    }
+  }
+
+  /**
+   * Load on {@link ProjectService}. Inserted projects have five materials and five steps.
+   */
+  private static class ProjectWorkload extends Workload {
+    private final ProjectService service = new ProjectService();
+
+    ProjectWorkload(LoadDriver driver) {
+      super("projects", System.getProperty("projects.db.url"), driver);
+    }
+
+    @Override
+    void prepare(int preload) {
+      if(driver.reset("projects")) {
+        service.resetTables();
+      }
+      else {
+        service.createTables();
+      }
+
+      if(preload > 0) {
+        service.addProjects(newProjects(preload)).forEach(project -> added(project.getProjectId()));
+      }
+
+      listenToPool(DbConnection.getDataSource());
+    }
+
+    @Override
+    void insert(ThreadLocalRandom random) {
+      Project project = newProject();
+
+      for(int index = 1; index <= 5; index++) {
+        Material material = new Material();
+        material.setMaterialName("material " + index);
+        material.setNumRequired(1 + random.nextInt(10));
+        material.setCost(BigDecimal.valueOf(100 + random.nextInt(5000), 2));
+        project.getMaterials().add(material);
+
+        diyproject.entity.Step step = new diyproject.entity.Step();
+        step.setStepText("Step " + index + ": measure twice, cut once.");
+        project.getSteps().add(step);
+      }
+
+      added(service.saveProjectGraph(project).getProjectId());
+    }
+
+    @Override
+    void fetch(ThreadLocalRandom random) {
+      service.fetchProject(randomId(random));
+    }
+
+    @Override
+    String list(String pageToken) {
+      return service.listProjects(pageToken, driver.intOption("page", 20)).getNextPageToken();
+    }
+
+    @Override
+    void bulk(ThreadLocalRandom random) {
+      service.addProjects(newProjects(driver.intOption("bulk", 100)))
+          .forEach(project -> added(project.getProjectId()));
+    }
+
+    private List<Project> newProjects(int count) {
+      List<Project> projects = new ArrayList<>(count);
+
+      for(int index = 0; index < count; index++) {
+        projects.add(newProject());
+      }
+
+      return projects;
+    }
+
+    private Project newProject() {
+      Project project = new Project();
+      project.setProjectName("Load test project " + sequence.incrementAndGet());
+      project.setEstimatedHours(new BigDecimal("4.50"));
+      project.setDifficulty(3);
+      project.setNotes("Added by the load driver.");
+      return project;
+    }
+  }
+}
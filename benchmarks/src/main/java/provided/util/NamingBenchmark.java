@@ -0,0 +1,42 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of {@link RowMapper#camelCaseToSnakeCase(String)} over the field and class names of the
+ * recipe entities, which is the mix it sees when mappers and entity metadata are built.
+ *
+ * @author Promineo
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NamingBenchmark {
+  private final String[] names = {"recipeId", "recipeName", "notes", "numServings", "prepTime",
+      "cookTime", "createdAt", "ingredientId", "ingredientName", "instruction", "ingredientOrder",
+      "amount", "unitNameSingular", "unitNamePlural", "stepText", "Recipe", "Ingredient"};
+
+  @Benchmark
+  public void camelCaseToSnakeCase(Blackhole blackhole) {
+    for(String name : names) {
+      blackhole.consume(RowMapper.camelCaseToSnakeCase(name));
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * This is a prepared statement that only records the values it is given. It is used to measure
+ * {@link DaoBase#setParameter(java.sql.PreparedStatement, int, Object, Class)} and statement
+ * tracing without a driver. The values are kept, so the JIT can not remove the calls that set
+ * them. A batch only counts its rows.
+ *
+ * @author Promineo
+ *
+ */
+public class RecordingPreparedStatement extends AbstractPreparedStatement {
+  private final Object[] values;
+  private int batchSize;
+
+  /**
+   * @param parameterCount The number of parameters.
+   */
+  public RecordingPreparedStatement(int parameterCount) {
+    this.values = new Object[parameterCount + 1];
+  }
+
+  /**
+   * @param parameterIndex The one-based parameter index.
+   * @return The value last set, or {@code null}.
+   */
+  public Object getValue(int parameterIndex) {
+    return values[parameterIndex];
+  }
+
+  @Override
+  public void setNull(int parameterIndex, int value) {
+    values[parameterIndex] = null;
+  }
+
+  @Override
+  public void setInt(int parameterIndex, int value) {
+    values[parameterIndex] = value;
+  }
+
+  @Override
+  public void setDouble(int parameterIndex, double value) {
+    values[parameterIndex] = value;
+  }
+
+  @Override
+  public void setBigDecimal(int parameterIndex, BigDecimal value) {
+    values[parameterIndex] = value;
+  }
+
+  @Override
+  public void setString(int parameterIndex, String value) {
+    values[parameterIndex] = value;
+  }
+
+  @Override
+  public void setObject(int parameterIndex, Object value) {
+    values[parameterIndex] = value;
+  }
+
+  @Override
+  public void clearParameters() {
+    Arrays.fill(values, null);
+  }
+
+  @Override
+  public void addBatch() {
+    batchSize++;
+  }
+
+  @Override
+  public void clearBatch() {
+    batchSize = 0;
+  }
+
+  /**
+   * @return An update count of 1 for each row in the batch.
+   */
+  @Override
+  public int[] executeBatch() {
+    int[] counts = new int[batchSize];
+    Arrays.fill(counts, 1);
+    batchSize = 0;
+    return counts;
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the cost of tracing a statement with {@link SlowQueryLog}. Each case binds the
+ * seven parameters of a recipe insert with {@link DaoBase#setParameter(PreparedStatement, int,
+ * Object, int)} for every row of a batch, then runs the batch. The statement is driverless (see
+ * {@link RecordingPreparedStatement}), so the difference between the cases is the tracing alone.
+ * <ul>
+ * <li>raw uses the statement as it is.</li>
+ * <li>traced wraps it with a log that traces every statement, as a sample rate of 1 does. The
+ * threshold is never reached, so nothing is recorded.</li>
+ * <li>sampledOut asks a log with a sample rate of 0 to trace it. The log returns the statement
+ * unwrapped, so this measures the sampling decision.</li>
+ * </ul>
+ *
+ * @author Promineo
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SlowQueryLogBenchmark {
+  private static final String SQL = "INSERT INTO recipe (recipe_name, notes, num_servings, "
+      + "prep_time, cook_time, difficulty, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+  @Param({"1", "100"})
+  private int rows;
+
+  private final BenchmarkDao dao = new BenchmarkDao();
+  private RecordingPreparedStatement stmt;
+  private SlowQueryLog tracingLog;
+  private SlowQueryLog sampledOutLog;
+  private Object[] params;
+  private int[] paramTypes;
+
+  @Setup
+  public void setUp() {
+    stmt = new RecordingPreparedStatement(7);
+    params = new Object[] {"Chocolate Mousse", "Chill overnight.", 6, LocalTime.of(0, 30),
+        LocalTime.of(0, 0), null, LocalDateTime.of(2023, 5, 1, 12, 0)};
+
+    Class<?>[] paramClasses = {String.class, String.class, Integer.class, LocalTime.class,
+        LocalTime.class, String.class, LocalDateTime.class};
+    paramTypes = new int[paramClasses.length];
+
+    for(int index = 0; index < paramClasses.length; index++) {
+      paramTypes[index] = DaoBase.convertJavaClassToSqlType(paramClasses[index]);
+    }
+
+    tracingLog = new SlowQueryLog(TimeUnit.HOURS.toMillis(1));
+    tracingLog.setSampleRate(1.0);
+
+    sampledOutLog = new SlowQueryLog(TimeUnit.HOURS.toMillis(1));
+    sampledOutLog.setSampleRate(0.0);
+  }
+
+  @Benchmark
+  public int[] raw() throws SQLException {
+    return insertBatch(stmt);
+  }
+
+  @Benchmark
+  public int[] traced() throws SQLException {
+    return insertBatch(tracingLog.trace(stmt, SQL));
+  }
+
+  @Benchmark
+  public int[] sampledOut() throws SQLException {
+    return insertBatch(sampledOutLog.trace(stmt, SQL));
+  }
+
+  private int[] insertBatch(PreparedStatement target) throws SQLException {
+    for(int row = 0; row < rows; row++) {
+      for(int index = 0; index < params.length; index++) {
+        dao.setParameter(target, index + 1, params[index], paramTypes[index]);
+      }
+
+      target.addBatch();
+    }
+
+    return target.executeBatch();
+  }
+
+  /**
+   * A DAO with no data source, used only for its inherited methods.
+   */
+  private static class BenchmarkDao extends DaoBase {
+    @Override
+    protected DataSource getDataSource() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of splitting a SQL script into statements with {@link SqlScriptReader}, which is what
+ * the services use to load the schema and seed data scripts.
+ * <ul>
+ * <li>recipeData parses recipe_data.sql as it is shipped.</li>
+ * <li>largeScript parses a generated script of 10,000 INSERT statements, with comments, quoted
+ * semicolons and escaped quotes, to show how parsing scales with the size of the script.</li>
+ * </ul>
+ *
+ * @author Promineo
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SqlScriptBenchmark {
+  private static final String DATA_FILE = "recipe_data.sql";
+  private static final int LARGE_STATEMENTS = 10_000;
+
+  private String recipeData;
+  private String largeScript;
+
+  @Setup
+  public void setUp() throws IOException {
+    try(InputStream in = getClass().getClassLoader().getResourceAsStream(DATA_FILE)) {
+      if(in == null) {
+        throw new IOException("Resource " + DATA_FILE + " is not on the classpath");
+      }
+
+      recipeData = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    StringBuilder script = new StringBuilder();
+
+    for(int index = 1; index <= LARGE_STATEMENTS; index++) {
+      if(index % 100 == 1) {
+        script.append("-- Block ").append(index / 100 + 1).append('\n');
+      }
+
+      script.append("INSERT INTO step (recipe_id, step_order, step_text) VALUES (")
+          .append(index % 50 + 1).append(", ").append(index % 8 + 1)
+          .append(", 'Stir; then let it rest, it''s done when golden');\n");
+    }
+
+    largeScript = script.toString();
+  }
+
+  @Benchmark
+  public int recipeData(Blackhole blackhole) throws IOException {
+    return parse(recipeData, blackhole);
+  }
+
+  @Benchmark
+  public int largeScript(Blackhole blackhole) throws IOException {
+    return parse(largeScript, blackhole);
+  }
+
+  private int parse(String script, Blackhole blackhole) throws IOException {
+    int count = 0;
+
+    try(SqlScriptReader reader = new SqlScriptReader(new StringReader(script))) {
+      String statement;
+
+      while((statement = reader.nextStatement()) != null) {
+        blackhole.consume(statement);
+        count++;
+      }
+    }
+
+    return count;
+  }
+}
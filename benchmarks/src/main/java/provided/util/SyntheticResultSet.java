@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * This is an in-memory, forward-only result set over a fixed array of rows. The values are the
+ * types a JDBC driver returns from {@link #getObject(int)} (Integer, String, BigDecimal, Time,
+ * Timestamp, ...), so {@link RowMapper} does the same work, including its conversions, that it does
+ * on a real result set. Call {@link #rewind()} to read the rows again.
+ *
+ * @author Promineo
+ *
+ */
+public class SyntheticResultSet extends AbstractResultSet {
+  private final String[] labels;
+  private final Object[][] rows;
+  private final ResultSetMetaData metaData;
+  private int row = -1;
+  private boolean wasNull;
+  private boolean closed;
+
+  /**
+   * @param labels The column labels, in column order.
+   * @param rows The rows. Each row has one value per label. A value may be null.
+   */
+  public SyntheticResultSet(String[] labels, Object[][] rows) {
+    this.labels = labels;
+    this.rows = rows;
+    this.metaData = new AbstractResultSetMetaData() {
+      @Override
+      public int getColumnCount() {
+        return labels.length;
+      }
+
+      @Override
+      public String getColumnLabel(int column) {
+        return labels[column - 1];
+      }
+
+      @Override
+      public String getColumnName(int column) {
+        return labels[column - 1];
+      }
+    };
+  }
+
+  /**
+   * Move back to before the first row.
+   */
+  public void rewind() {
+    row = -1;
+    closed = false;
+  }
+
+  /**
+   * @return The number of rows.
+   */
+  public int getRowCount() {
+    return rows.length;
+  }
+
+  @Override
+  public boolean next() {
+    return ++row < rows.length;
+  }
+
+  @Override
+  public Object getObject(int columnIndex) throws SQLException {
+    if(row < 0 || row >= rows.length) {
+      throw new SQLException("Not on a row");
+    }
+
+    Object value = rows[row][columnIndex - 1];
+    wasNull = value == null;
+    return value;
+  }
+
+  @Override
+  public int findColumn(String columnLabel) throws SQLException {
+    for(int index = 0; index < labels.length; index++) {
+      if(labels[index].equalsIgnoreCase(columnLabel)) {
+        return index + 1;
+      }
+    }
+
+    throw new SQLException("No column " + columnLabel);
+  }
+
+  @Override
+  public boolean wasNull() {
+    return wasNull;
+  }
+
+  @Override
+  public ResultSetMetaData getMetaData() {
+    return metaData;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closed;
+  }
+}
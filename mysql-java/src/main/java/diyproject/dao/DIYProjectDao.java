@@ -1,13 +1,38 @@
 package diyproject.dao;
 
-import java.math.BigDecimal;
+import java.io.Reader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 
+import javax.sql.DataSource;
+
+import diyproject.entity.Category;
+import diyproject.entity.Material;
 import diyproject.entity.Project;
+import diyproject.entity.Step;
 import diyproject.exception.DbException;
+import provided.util.ChildOrderAllocator;
 import provided.util.DaoBase;
+import provided.util.EntityCache;
+import provided.util.EntityMetadata;
+import provided.util.LookupCache;
+import provided.util.Metrics;
+import provided.util.Page;
+import provided.util.QueryCounter;
+import provided.util.RowMapper;
+import provided.util.SqlScriptReader;
 
 public class DIYProjectDao extends DaoBase {
 
@@ -17,35 +42,218 @@ public class DIYProjectDao extends DaoBase {
 	private static final String PROJECT_TABLE = "project";
 	private static final String PROJECT_CATEGORY = "project_category";
 	private static final String STEP_TABLE = "step";
+	public static final int DEFAULT_BATCH_SIZE = 1000;
 	
-	public Project insertProject(Project project) {
+	// @formatter:off
+	private static final String SELECT_MATERIALS_SQL = ""
+		+ "SELECT material_id, project_id, material_name, num_required, cost "
+		+ "FROM " + MATERIAL_TABLE + " "
+		+ "WHERE project_id IN ";
+	private static final String SELECT_STEPS_SQL = ""
+		+ "SELECT step_id, project_id, step_text, step_order "
+		+ "FROM " + STEP_TABLE + " "
+		+ "WHERE project_id IN ";
+	private static final String SELECT_CATEGORIES_SQL = ""
+		+ "SELECT project_id, category_id "
+		+ "FROM " + PROJECT_CATEGORY + " "
+		+ "WHERE project_id IN ";
+	// @formatter:on
+	
+	private static final int MAX_IN_LIST = 512;
+	
+	/* How long a page of projects may be held in the query cache, if it is on. */
+	private static final Duration LIST_CACHE_TTL = Duration.ofSeconds(30);
+	
+	/*
+	 * The category table is small and rarely changes, so it is held in memory, one shared object
+	 * per category. Projects get their categories from here instead of joining the table.
+	 */
+	private static final LookupCache<Category> CATEGORIES =
+		new LookupCache<>(DbConnection.getDataSource(), Category.class);
+	
+	/*
+	 * Lists projects a page at a time by project ID, reading only the summary columns (no notes).
+	 * The query seeks past the last ID of the previous page instead of using OFFSET.
+	 */
+	// @formatter:off
+	private static final String LIST_PROJECTS_SQL = ""
+		+ "SELECT project_id, project_name, estimated_hours, actual_hours, difficulty "
+		+ "FROM " + PROJECT_TABLE + " "
+		+ "WHERE project_id > ? "
+		+ "ORDER BY project_id "
+		+ "LIMIT ?";
+	// @formatter:on
+	private static final String PAGE_SORT = "ID";
+	
+	private static final ChildOrderAllocator STEP_ORDER =
+		new ChildOrderAllocator(DbConnection.getDataSource(), STEP_TABLE,
+			"project_id", "step_order", ChildOrderAllocator.DEFAULT_BLOCK_SIZE);
+	
+	// @formatter:off
+	private static final String INSERT_PROJECT_CATEGORY_SQL = ""
+		+ "INSERT INTO " + PROJECT_CATEGORY + " "
+		+ "(project_id, category_id) "
+		+ "VALUES "
+		+ "(?, ?)";
+	// @formatter:on
+	
+	/*
+	 * The optional cache of fully assembled projects, keyed by project ID. It is off (null) until
+	 * one is set. Every committed write to a project or its steps through this DAO removes the
+	 * project from it.
+	 */
+	private static volatile EntityCache<Integer, Project> projectCache;
+	
+	/* Timers for the public methods, published over JMX by Metrics. */
+	private static final Metrics.Timer INSERT_PROJECT_TIMER =
+		Metrics.timer("DIYProjectDao.insertProject");
+	private static final Metrics.Timer INSERT_PROJECTS_TIMER =
+		Metrics.timer("DIYProjectDao.insertProjects");
+	private static final Metrics.Timer SAVE_PROJECT_GRAPH_TIMER =
+		Metrics.timer("DIYProjectDao.saveProjectGraph");
+	private static final Metrics.Timer ADD_STEPS_TIMER = Metrics.timer("DIYProjectDao.addSteps");
+	private static final Metrics.Timer FETCH_PROJECTS_TIMER =
+		Metrics.timer("DIYProjectDao.fetchProjects");
+	private static final Metrics.Timer LIST_PROJECTS_TIMER =
+		Metrics.timer("DIYProjectDao.listProjects");
+	private static final Metrics.Timer UPDATE_PROJECT_TIMER =
+		Metrics.timer("DIYProjectDao.updateProject");
+	private static final Metrics.Timer DELETE_PROJECT_TIMER =
+		Metrics.timer("DIYProjectDao.deleteProject");
+	private static final Metrics.Timer EXECUTE_SCRIPT_TIMER =
+		Metrics.timer("DIYProjectDao.executeScript");
+	
+	static {
+		EntityMetadata.register(Project.class, PROJECT_TABLE);
+		EntityMetadata.register(Material.class, MATERIAL_TABLE);
+		EntityMetadata.register(Step.class, STEP_TABLE);
+		EntityMetadata.register(Category.class, CATEGORY_TABLE);
+	}
+	
+	@Override
+	protected DataSource getDataSource() {
+		return DbConnection.getDataSource();
+	}
+	
+	/*
+	 * Turns the project cache on, or off if the cache is null. Cached projects are shared by
+	 * every caller, so they must not be changed. Change a project through this DAO instead.
+	 */
+	public static void setProjectCache(EntityCache<Integer, Project> cache) {
+		projectCache = cache;
+	}
+	
+	public static EntityCache<Integer, Project> getProjectCache() {
+		return projectCache;
+	}
+	
+	private void projectChanged(Integer projectId) {
+		EntityCache<Integer, Project> cache = projectCache;
 		
-		 // @formatter:off
-		  String sql = ""
-		      + "INSERT INTO " + PROJECT_TABLE + " "
-		      + "(project_name, notes, difficulty, estimated_hours, actual_hours) "
-		      + "VALUES "
-		      + "(?, ?, ?, ?, ?)";
-		  // @formatter:on
+		if (Objects.nonNull(cache) && Objects.nonNull(projectId)) {
+			cache.invalidate(projectId);
+		}
+	}
+
+	public Project insertProject(Project project) {
+		  long start = System.nanoTime();
 
 		  try (Connection conn = DbConnection.getConnection()) {
 		    startTransaction(conn);
 
-		    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-		      setParameter(stmt, 1, project.getProjectName(), String.class);
-		      setParameter(stmt, 2, project.getNotes(), String.class);
-		      setParameter(stmt, 3, project.getDifficulty(), Integer.class);
-		      setParameter(stmt, 4, project.getEstimatedHours(), BigDecimal.class);
-		      setParameter(stmt, 5, project.getActualHours(), BigDecimal.class);
-		       
+		    try {
+		      insertEntity(conn, project);
+
+		      commitTransaction(conn);
 		      
-		      stmt.executeUpdate();
+		      return project;
+		    } 
+		    catch (Exception e) {
+		      rollbackTransaction(conn);
+		      throw new DbException(e);
+		    }
+		  } catch (SQLException e) {
+		    throw new DbException(e);
+		  } finally {
+		    INSERT_PROJECT_TIMER.stop(start);
+		  }
+	}
+
+	public List<Project> insertProjects(List<Project> projects) {
+		return insertProjects(projects, DEFAULT_BATCH_SIZE);
+	}
+
+	/*
+	 * Batched insert: one prepared statement, one batch and one commit per chunk of
+	 * rows, with the generated keys read back from each batch.
+	 */
+	public List<Project> insertProjects(List<Project> projects, int batchSize) {
+		  long start = System.nanoTime();
+
+		  try (Connection conn = DbConnection.getConnection()) {
+		    startTransaction(conn);
+
+		    try {
+		      insertEntitiesInChunks(conn, projects, Project.class, batchSize);
 		      
-		      Integer projectId = getLastInsertId(conn, PROJECT_TABLE);
+		      return projects;
+		    } 
+		    catch (Exception e) {
+		      rollbackTransaction(conn);
+		      throw new DbException(e);
+		    }
+		  } catch (SQLException e) {
+		    throw new DbException(e);
+		  } finally {
+		    INSERT_PROJECTS_TIMER.stop(start);
+		  }
+	}
+
+	/*
+	 * Saves a new project with its materials, steps and categories in one transaction:
+	 * the project row, then one batch per child table. Step order numbers are assigned
+	 * in list order and the generated IDs are set in every object. Categories must
+	 * already exist.
+	 */
+	public Project saveProjectGraph(Project project) {
+		  long start = System.nanoTime();
+
+		  try (Connection conn = DbConnection.getConnection()) {
+		    startTransaction(conn);
+
+		    try {
+		      insertEntity(conn, project);
+		      Integer projectId = project.getProjectId();
+
+		      for (Material material : project.getMaterials()) {
+		        material.setProjectId(projectId);
+		      }
+
+		      int order = 1;
+
+		      for (Step step : project.getSteps()) {
+		        step.setProjectId(projectId);
+		        step.setStepOrder(order++);
+		      }
+
+		      List<Integer> categoryIds = new ArrayList<>(project.getCategories().size());
+
+		      for (Category category : project.getCategories()) {
+		        if (Objects.isNull(category.getCategoryId())) {
+		          throw new DbException("Category " + category.getCategoryName()
+		              + " has no ID. Categories must exist before they are added to a project.");
+		        }
+
+		        categoryIds.add(category.getCategoryId());
+		      }
+
+		      insertEntities(conn, project.getMaterials(), Material.class);
+		      insertEntities(conn, project.getSteps(), Step.class);
+		      insertJoinRows(conn, INSERT_PROJECT_CATEGORY_SQL, projectId, categoryIds);
+		      tablesWritten(conn, PROJECT_CATEGORY);
 
 		      commitTransaction(conn);
 		      
-		      project.setProjectId(projectId);
 		      return project;
 		    } 
 		    catch (Exception e) {
@@ -54,8 +262,377 @@ public class DIYProjectDao extends DaoBase {
 		    }
 		  } catch (SQLException e) {
 		    throw new DbException(e);
+		  } finally {
+		    SAVE_PROJECT_GRAPH_TIMER.stop(start);
+		  }
+	}
+
+	/*
+	 * Adds steps to an existing project, numbered after its existing steps. The order
+	 * numbers come from the allocator, so concurrent writers never collide.
+	 */
+	public List<Step> addSteps(Integer projectId, List<Step> steps) {
+		long start = System.nanoTime();
+
+		if (steps.isEmpty()) {
+			return steps;
+		}
+
+		int order = STEP_ORDER.next(projectId, steps.size());
+
+		for (Step step : steps) {
+			step.setProjectId(projectId);
+			step.setStepOrder(order++);
+		}
+
+		  try (Connection conn = DbConnection.getConnection()) {
+		    startTransaction(conn);
+
+		    try {
+		      insertEntities(conn, steps, Step.class);
+
+		      commitTransaction(conn);
+		      projectChanged(projectId);
+		      
+		      return steps;
+		    } 
+		    catch (Exception e) {
+		      rollbackTransaction(conn);
+		      throw new DbException(e);
+		    }
+		  } catch (SQLException e) {
+		    throw new DbException(e);
+		  } finally {
+		    ADD_STEPS_TIMER.stop(start);
+		  }
+	}
+
+	public Optional<Project> fetchProject(Integer projectId) {
+		List<Project> projects = fetchProjects(List.of(projectId));
+		return projects.isEmpty() ? Optional.empty() : Optional.of(projects.get(0));
+	}
+
+	/*
+	 * Loads the projects with their materials, steps and categories using one query per
+	 * table with WHERE project_id IN (...), then adds the children to their projects in
+	 * memory. The query count does not grow with the number of projects. If the project cache
+	 * is on, cached projects are not read, and the projects read are added to it. With query
+	 * guards on (see QueryCounter.guard()), a query that runs more than once per MAX_IN_LIST
+	 * projects is logged.
+	 */
+	public List<Project> fetchProjects(Collection<Integer> projectIds) {
+		long start = System.nanoTime();
+		int chunks = (projectIds.size() + MAX_IN_LIST - 1) / MAX_IN_LIST;
+
+		QueryCounter guard =
+				QueryCounter.guard("DIYProjectDao.fetchProjects", Math.max(chunks, 1));
+
+		try {
+			return findProjects(projectIds);
+		}
+		finally {
+			if (Objects.nonNull(guard)) {
+				guard.close();
+			}
+
+			FETCH_PROJECTS_TIMER.stop(start);
+		}
+	}
+
+	private List<Project> findProjects(Collection<Integer> projectIds) {
+		List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(projectIds));
+		Map<Integer, Project> projects = new LinkedHashMap<>();
+
+		if (ids.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		EntityCache<Integer, Project> cache = projectCache;
+		List<Integer> misses = ids;
+		long stamp = 0;
+
+		if (Objects.nonNull(cache)) {
+			/* Taken before the reads, so a write during them keeps stale projects out. */
+			stamp = cache.stamp();
+			misses = new ArrayList<>(ids.size());
+
+			for (Integer id : ids) {
+				Project cached = cache.get(id);
+
+				if (Objects.nonNull(cached)) {
+					projects.put(id, cached);
+				}
+				else {
+					misses.add(id);
+				}
+			}
+		}
+
+		if (!misses.isEmpty()) {
+			readProjects(misses, projects);
+
+			if (Objects.nonNull(cache)) {
+				for (Integer id : misses) {
+					Project project = projects.get(id);
+
+					if (Objects.nonNull(project)) {
+						cache.put(id, project, stamp);
+					}
+				}
+			}
+		}
+
+		List<Project> result = new ArrayList<>(projects.size());
+
+		for (Integer id : ids) {
+			Project project = projects.get(id);
+
+			if (Objects.nonNull(project)) {
+				result.add(project);
+			}
+		}
+
+		return result;
+	}
+
+	private void readProjects(List<Integer> ids, Map<Integer, Project> projects) {
+		  try (Connection conn = DbConnection.getConnection()) {
+		    startTransaction(conn);
+
+		    try {
+		      for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+		        List<Integer> chunk = ids.subList(from, Math.min(from + MAX_IN_LIST, ids.size()));
+
+		        fetchProjectRows(conn, chunk, projects);
+		        fetchMaterials(conn, chunk, projects);
+		        fetchSteps(conn, chunk, projects);
+		        fetchCategories(conn, chunk, projects);
+		      }
+
+		      commitTransaction(conn);
+		    } 
+		    catch (Exception e) {
+		      rollbackTransaction(conn);
+		      throw new DbException(e);
+		    }
+		  } catch (SQLException e) {
+		    throw new DbException(e);
+		  }
+	}
+
+	/*
+	 * Returns a page of projects with only the summary columns set. Pass null as the token for
+	 * the first page, then the token returned with each page to get the next one. The page size
+	 * is capped at Page.MAX_PAGE_SIZE. Pages go through the query cache when it is on.
+	 */
+	public Page<Project> listProjects(String pageToken, int pageSize) {
+		long start = System.nanoTime();
+
+		int limit = Page.limitPageSize(pageSize);
+
+		try {
+			Integer afterId = 0;
+
+			if (Objects.nonNull(pageToken)) {
+				afterId = Integer.valueOf(Page.decodeToken(pageToken, PAGE_SORT, 1)[0]);
+			}
+
+			List<Project> projects = new ArrayList<>(query(LIST_PROJECTS_SQL,
+				List.of(afterId, limit + 1), Project.class, LIST_CACHE_TTL, PROJECT_TABLE));
+
+			String nextPageToken = null;
+
+			/* The extra row only tells us there is another page. */
+			if (projects.size() > limit) {
+				projects.remove(limit);
+				nextPageToken = Page.encodeToken(PAGE_SORT, projects.get(limit - 1).getProjectId());
+			}
+
+			return new Page<>(projects, nextPageToken);
+		}
+		catch (RuntimeException e) {
+			throw new DbException(e);
+		}
+		finally {
+			LIST_PROJECTS_TIMER.stop(start);
+		}
+	}
+
+	private void fetchProjectRows(Connection conn, List<Integer> ids, Map<Integer, Project> projects)
+			throws SQLException {
+		String sql = EntityMetadata.of(Project.class).getSelectSql() + " WHERE project_id IN "
+				+ inList(ids.size());
+
+		try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+			setInListParameters(stmt, 1, ids);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				RowMapper<Project> mapper = mapperFor(rs, Project.class);
+
+				while (rs.next()) {
+					Project project = mapper.map(rs);
+					projects.put(project.getProjectId(), project);
+				}
+			}
+		}
+	}
+
+	private void fetchMaterials(Connection conn, List<Integer> ids, Map<Integer, Project> projects)
+			throws SQLException {
+		String sql = SELECT_MATERIALS_SQL + inList(ids.size()) + " ORDER BY project_id, material_id";
+
+		try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+			setInListParameters(stmt, 1, ids);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				RowMapper<Material> mapper = mapperFor(rs, Material.class);
+
+				while (rs.next()) {
+					Material material = mapper.map(rs);
+					projects.get(material.getProjectId()).getMaterials().add(material);
+				}
+			}
+		}
+	}
+
+	private void fetchSteps(Connection conn, List<Integer> ids, Map<Integer, Project> projects)
+			throws SQLException {
+		String sql = SELECT_STEPS_SQL + inList(ids.size()) + " ORDER BY project_id, step_order";
+
+		try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+			setInListParameters(stmt, 1, ids);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				RowMapper<Step> mapper = mapperFor(rs, Step.class);
+
+				while (rs.next()) {
+					Step step = mapper.map(rs);
+					projects.get(step.getProjectId()).getSteps().add(step);
+				}
+			}
+		}
+	}
+
+	private void fetchCategories(Connection conn, List<Integer> ids, Map<Integer, Project> projects)
+			throws SQLException {
+		String sql = SELECT_CATEGORIES_SQL + inList(ids.size());
+
+		try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+			setInListParameters(stmt, 1, ids);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Category category = CATEGORIES.get(conn, rs.getInt(2));
+
+					if (Objects.isNull(category)) {
+						throw new DbException("Category with ID=" + rs.getInt(2)
+								+ " of project with ID=" + rs.getInt(1) + " does not exist.");
+					}
+
+					projects.get(rs.getInt(1)).getCategories().add(category);
+				}
+			}
+		}
+
+		for (Integer id : ids) {
+			Project project = projects.get(id);
+
+			if (Objects.nonNull(project)) {
+				project.getCategories().sort(Comparator.comparing(Category::getCategoryName));
+			}
+		}
+	}
+
+	public boolean updateProject(Project project) {
+		  long start = System.nanoTime();
+
+		  try (Connection conn = DbConnection.getConnection()) {
+		    startTransaction(conn);
+
+		    try {
+		      boolean updated = updateEntity(conn, project);
+
+		      commitTransaction(conn);
+		      projectChanged(project.getProjectId());
+		      
+		      return updated;
+		    } 
+		    catch (Exception e) {
+		      rollbackTransaction(conn);
+		      throw new DbException(e);
+		    }
+		  } catch (SQLException e) {
+		    throw new DbException(e);
+		  } finally {
+		    UPDATE_PROJECT_TIMER.stop(start);
+		  }
+	}
+
+	public boolean deleteProject(Integer projectId) {
+		  long start = System.nanoTime();
+
+		  try (Connection conn = DbConnection.getConnection()) {
+		    startTransaction(conn);
+
+		    try {
+		      boolean deleted = deleteEntityById(conn, Project.class, projectId);
+
+		      ChildOrderAllocator.deleteCounters(conn, projectId, STEP_ORDER);
+		      
+		      /* The child rows go with it (ON DELETE CASCADE). */
+		      tablesWritten(conn, MATERIAL_TABLE, STEP_TABLE, PROJECT_CATEGORY);
+
+		      commitTransaction(conn);
+		      STEP_ORDER.release(projectId);
+		      projectChanged(projectId);
+		      
+		      return deleted;
+		    } 
+		    catch (Exception e) {
+		      rollbackTransaction(conn);
+		      throw new DbException(e);
+		    }
+		  } catch (SQLException e) {
+		    throw new DbException(e);
+		  } finally {
+		    DELETE_PROJECT_TIMER.stop(start);
+		  }
+	}
+
+	/*
+	 * Runs an SQL script, like the schema file, one statement at a time in batches of
+	 * DEFAULT_BATCH_SIZE statements. The reader is closed when this returns.
+	 */
+	public int executeScript(Reader reader) {
+		  long start = System.nanoTime();
+
+		  try (Connection conn = DbConnection.getConnection()) {
+		    startTransaction(conn);
+
+		    try (SqlScriptReader script = new SqlScriptReader(reader)) {
+		      return executeScript(conn, script, DEFAULT_BATCH_SIZE);
+		    } 
+		    catch (Exception e) {
+		      rollbackTransaction(conn);
+		      throw new DbException(e);
+		    }
+		    finally {
+		      /* The script may have recreated the tables, even if it failed part way. */
+		      STEP_ORDER.clear();
+		      CATEGORIES.invalidate();
+		      invalidateQueryCache();
+		      
+		      EntityCache<Integer, Project> cache = projectCache;
+		      
+		      if (Objects.nonNull(cache)) {
+		        cache.invalidateAll();
+		      }
+		    }
+		  } catch (SQLException e) {
+		    throw new DbException(e);
+		  } finally {
+		    EXECUTE_SCRIPT_TIMER.stop(start);
 		  }
-		  
 	}
 }
 	
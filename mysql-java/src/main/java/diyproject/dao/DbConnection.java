@@ -1,9 +1,14 @@
 package diyproject.dao;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
+import provided.util.ConnectionPool;
+import provided.util.Metrics;
 import recipes.exception.DbException;
 
 public class DbConnection {
@@ -13,20 +18,49 @@ public class DbConnection {
 		private static int PORT = 3306;
 		private static String SCHEMA = "projects";
 		private static String USER = "projects";
+		private static int MIN_IDLE = 2;
+		private static int MAX_POOL_SIZE = 10;
+		private static int STATEMENT_CACHE_SIZE = 64;
+		private static boolean SERVER_PREPARE = false;
+		private static final Logger LOGGER = Logger.getLogger(DbConnection.class.getName());
+
+		/* System properties that override the URL and pool size, e.g. for a load test. */
+		private static final String URL_PROPERTY = "projects.db.url";
+		private static final String POOL_SIZE_PROPERTY = "projects.db.maxPoolSize";
 		
-	
+		private static final ConnectionPool DATA_SOURCE = createDataSource();
+
+	private static ConnectionPool createDataSource() {
+		String uri = System.getProperty(URL_PROPERTY, String.format(
+				"jdbc:mysql://%s:%d/%s?user=%s&password=%s&useSSL=false"
+				+ "&rewriteBatchedStatements=true", HOST, 
+				PORT, SCHEMA, USER, PASSWORD));
+
+		ConnectionPool pool = new ConnectionPool(uri);
+		pool.setName(SCHEMA);
+		pool.setMinIdle(MIN_IDLE);
+		pool.setMaxSize(getPoolSize());
+		pool.setStatementCacheSize(STATEMENT_CACHE_SIZE);
+		pool.setServerPrepare(SERVER_PREPARE);
+		Metrics.registerPool(SCHEMA, pool);
+		return pool;
+	}
+
+	public static DataSource getDataSource() {
+		return DATA_SOURCE;
+	}
+
+	public static int getPoolSize() {
+		return Integer.getInteger(POOL_SIZE_PROPERTY, MAX_POOL_SIZE);
+	}
 
 	public static Connection getConnection()	{
-		String uri = String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s&useSSL=false", HOST, 
-				PORT, SCHEMA, USER, PASSWORD);
-		System.out.println("Connecting with uri = " + uri);
 		try {
-			Connection conn = DriverManager.getConnection(uri);
-			System.out.println("Successfully obtained connection to schema " + SCHEMA
-					+ ".");
+			Connection conn = DATA_SOURCE.getConnection();
+			LOGGER.fine(() -> "Successfully obtained connection to schema " + SCHEMA + ".");
 			return conn;
 		} catch (SQLException e)	{
-			System.out.println("Error getting connection to " + SCHEMA);
+			LOGGER.log(Level.WARNING, e, () -> "Error getting connection to " + SCHEMA);
 			throw new DbException(e);
 		}
 }
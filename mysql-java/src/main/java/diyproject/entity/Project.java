@@ -23,6 +23,8 @@ public class Project {
   private List<Step> steps = new LinkedList<>();
   private List<Category> categories = new LinkedList<>();
 
+  private static final ProjectRenderer RENDERER = new ProjectRenderer();
+
   public Integer getProjectId() {
     return projectId;
   }
@@ -83,35 +85,11 @@ public class Project {
     return categories;
   }
 
+  /**
+   * The text is written by {@link ProjectRenderer}, which can also write it straight to a stream.
+   */
   @Override
   public String toString() {
-    String result = "";
-    
-    result += "\n   ID=" + projectId;
-    result += "\n   name=" + projectName;
-    result += "\n   estimatedHours=" + estimatedHours;
-    result += "\n   actualHours=" + actualHours;
-    result += "\n   difficulty=" + difficulty;
-    result += "\n   notes=" + notes;
-    
-    result += "\n   Materials:";
-    
-    for(Material material : materials) {
-      result += "\n      " + material;
-    }
-    
-    result += "\n   Steps:";
-    
-    for(Step step : steps) {
-      result += "\n      " + step;
-    }
-    
-    result += "\n   Categories:";
-    
-    for(Category category : categories) {
-      result += "\n      " + category;
-    }
-    
-    return result;
+    return RENDERER.toString(this);
   }
 }
@@ -0,0 +1,66 @@
+/**
+ * 
+ */
+package diyproject.entity;
+
+import java.io.IOException;
+import provided.entity.TextRenderer;
+
+/**
+ * This writes a project, with its materials, steps and categories, as the text
+ * {@link Project#toString()} returns, to any {@link Appendable}.
+ * 
+ * @author Promineo
+ *
+ */
+public class ProjectRenderer extends TextRenderer<Project> {
+  @Override
+  public void render(Project project, Appendable out) throws IOException {
+    field(out, "ID", project.getProjectId());
+    field(out, "name", project.getProjectName());
+    field(out, "estimatedHours", project.getEstimatedHours());
+    field(out, "actualHours", project.getActualHours());
+    field(out, "difficulty", project.getDifficulty());
+    field(out, "notes", project.getNotes());
+
+    heading(out, "Materials");
+
+    for(Material material : project.getMaterials()) {
+      renderMaterial(material, child(out));
+    }
+
+    heading(out, "Steps");
+
+    for(Step step : project.getSteps()) {
+      renderStep(step, child(out));
+    }
+
+    heading(out, "Categories");
+
+    for(Category category : project.getCategories()) {
+      renderCategory(category, child(out));
+    }
+  }
+
+  private static void renderMaterial(Material material, Appendable out) throws IOException {
+    out.append("ID=");
+    value(out, material.getMaterialId());
+    out.append(", materialName=").append(material.getMaterialName());
+    out.append(", numRequired=");
+    value(out, material.getNumRequired());
+    out.append(", cost=");
+    value(out, material.getCost());
+  }
+
+  private static void renderStep(Step step, Appendable out) throws IOException {
+    out.append("ID=");
+    value(out, step.getStepId());
+    out.append(", stepText=").append(step.getStepText());
+  }
+
+  private static void renderCategory(Category category, Appendable out) throws IOException {
+    out.append("ID=");
+    value(out, category.getCategoryId());
+    out.append(", categoryName=").append(category.getCategoryName());
+  }
+}
@@ -1,3 +1,4 @@
+DROP TABLE IF EXISTS child_order_counter;
 DROP TABLE IF EXISTS project_category;
 DROP TABLE IF EXISTS category;
 DROP TABLE IF EXISTS step;
@@ -46,5 +47,10 @@ category_id INT NOT NULL,
 FOREIGN KEY (project_id) REFERENCES project(project_id) ON DELETE CASCADE,
 FOREIGN KEY (category_id) REFERENCES category(category_id)
 );
-	
 
+CREATE TABLE child_order_counter	(
+child_table VARCHAR(64) NOT NULL,
+parent_id INT NOT NULL,
+next_order INT NOT NULL,
+PRIMARY KEY (child_table, parent_id)
+);
@@ -1,17 +1,133 @@
 package diyproject.service;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
 import diyproject.dao.DIYProjectDao;
+import diyproject.dao.DbConnection;
 import diyproject.entity.Project;
+import diyproject.entity.Step;
+import diyproject.exception.DbException;
+import provided.util.AsyncExecutor;
+import provided.util.EntityCache;
+import provided.util.MigrationRunner;
+import provided.util.Page;
 
 
 public class ProjectService {
+	private static final String SCHEMA_FILE = "projects.schema.sql";
+	
+	/* Runs the async methods, no more at a time than there are pooled connections. */
+	private static final AsyncExecutor ASYNC = new AsyncExecutor(DbConnection.getPoolSize());
+
 	private DIYProjectDao diyProjectDao = new DIYProjectDao();
 	 
+	/*
+	 * Creates the project tables if projects.schema.sql is new or has changed since it was last
+	 * applied. Otherwise this only checks the checksum recorded in schema_migration.
+	 */
+	public void createTables() {
+		schemaRunner().migrate();
+	}
+
+	/*
+	 * Drops and recreates the project tables, whether or not the schema file has changed.
+	 */
+	public void resetTables() {
+		schemaRunner().migrate(true);
+	}
+
+	private MigrationRunner schemaRunner() {
+		return new MigrationRunner(DbConnection.getDataSource(), getClass().getClassLoader())
+				.add(SCHEMA_FILE, diyProjectDao::executeScript);
+	}
+
 
 	public Project addProject(Project project) {
 		
 		return diyProjectDao.insertProject(project);
 	}
+
+	public Project fetchProject(Integer projectId) {
+		return diyProjectDao.fetchProject(projectId).orElseThrow(
+				() -> new NoSuchElementException("Project with ID=" + projectId + " does not exist."));
+	}
+
+	public List<Project> fetchProjects(Collection<Integer> projectIds) {
+		return diyProjectDao.fetchProjects(projectIds);
+	}
+
+	/*
+	 * The async methods run the blocking methods in the background. Cancelling a returned future
+	 * cancels its statements if they are still running.
+	 */
+	public CompletableFuture<Project> addProjectAsync(Project project) {
+		return ASYNC.supply(() -> addProject(project));
+	}
+
+	public CompletableFuture<List<Project>> addProjectsAsync(List<Project> projects) {
+		return ASYNC.supply(() -> addProjects(projects));
+	}
+
+	public CompletableFuture<Project> fetchProjectAsync(Integer projectId) {
+		return ASYNC.supply(() -> fetchProject(projectId));
+	}
+
+	public CompletableFuture<List<Project>> fetchProjectsAsync(Collection<Integer> projectIds) {
+		return ASYNC.supply(() -> fetchProjects(projectIds));
+	}
+
+	/*
+	 * Turns on the cache of fully assembled projects. Cached projects are shared, so callers
+	 * must not change them.
+	 */
+	public void enableProjectCache(int maxSize, Duration ttl) {
+		DIYProjectDao.setProjectCache(new EntityCache<>(maxSize, ttl));
+	}
+
+	public void disableProjectCache() {
+		DIYProjectDao.setProjectCache(null);
+	}
+
+	public EntityCache.Stats getProjectCacheStats() {
+		EntityCache<Integer, Project> cache = DIYProjectDao.getProjectCache();
+		return cache == null ? null : cache.getStats();
+	}
+
+	public Page<Project> listProjects(String pageToken, int pageSize) {
+		return diyProjectDao.listProjects(pageToken, pageSize);
+	}
+
+	public Project saveProjectGraph(Project project) {
+		return diyProjectDao.saveProjectGraph(project);
+	}
+
+	public List<Project> addProjects(List<Project> projects) {
+		return diyProjectDao.insertProjects(projects);
+	}
+
+	public List<Project> addProjects(List<Project> projects, int batchSize) {
+		return diyProjectDao.insertProjects(projects, batchSize);
+	}
+
+	public List<Step> addSteps(Integer projectId, List<Step> steps) {
+		return diyProjectDao.addSteps(projectId, steps);
+	}
+
+	public void modifyProject(Project project) {
+		if (!diyProjectDao.updateProject(project)) {
+			throw new DbException("Project with ID=" + project.getProjectId() + " does not exist.");
+		}
+	}
+
+	public void deleteProject(Integer projectId) {
+		if (!diyProjectDao.deleteProject(projectId)) {
+			throw new DbException("Project with ID=" + projectId + " does not exist.");
+		}
+	}
 	
 
 		
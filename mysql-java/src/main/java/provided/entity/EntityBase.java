@@ -3,6 +3,8 @@
  */
 package provided.entity;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.util.Objects;
 
@@ -14,6 +16,34 @@ import java.util.Objects;
  *
  */
 public abstract class EntityBase {
+  /*
+   * The fractional part of an amount is rounded to the nearest 1/16 and the
+   * nearest 1/15. These tables hold the reduced fraction for each numerator on
+   * the two grids (8/16 is "1/2", 5/15 is "1/3") and the denominator it reduces
+   * to, which is used to pick between them. They are built with the same
+   * reduction that would otherwise run on every call.
+   */
+  private static final int SIXTEENTHS = 16;
+  private static final int FIFTEENTHS = 15;
+  private static final String[] SIXTEENTHS_TEXT = new String[SIXTEENTHS + 1];
+  private static final int[] SIXTEENTHS_DENOMINATOR = new int[SIXTEENTHS + 1];
+  private static final String[] FIFTEENTHS_TEXT = new String[FIFTEENTHS + 1];
+  private static final int[] FIFTEENTHS_DENOMINATOR = new int[FIFTEENTHS + 1];
+
+  static {
+    for (int num = 0; num <= SIXTEENTHS; num++) {
+      long reduced = reduce(num, SIXTEENTHS, 2);
+      SIXTEENTHS_TEXT[num] = numerator(reduced) + "/" + denominator(reduced);
+      SIXTEENTHS_DENOMINATOR[num] = denominator(reduced);
+    }
+
+    for (int num = 0; num <= FIFTEENTHS; num++) {
+      long reduced = reduce(num, FIFTEENTHS, 5);
+      FIFTEENTHS_TEXT[num] = numerator(reduced) + "/" + denominator(reduced);
+      FIFTEENTHS_DENOMINATOR[num] = denominator(reduced);
+    }
+  }
+
   /**
    * This converts from a decimal amount (like 16.25) to a fractional amount
    * (like "16 1/4"). If the given amount is not null and is greater than zero
@@ -24,100 +54,171 @@ public abstract class EntityBase {
    * @return The converted amount.
    */
   protected String toFraction(BigDecimal value) {
-    String result = "";
-    Double amount = Objects.isNull(value) ? null : value.doubleValue();
-
-    if (Objects.nonNull(amount) && amount > 0.0) {
-      int wholePart = Double.valueOf(Math.floor(amount)).intValue();
-      double fractionalPart = amount - wholePart;
-      Factor twoFactor = findFactor(fractionalPart, 16, 2);
-      Factor threeFactor = findFactor(fractionalPart, 15, 5);
-
-      /*
-       * Pick the factor to use. This just picks the factor with the lowest
-       * value. So, the value .6667 has a factor of 3 for 3-factor (2/3) but
-       * 2-factor has a factor of 16 (11/16). In this case pick the 3-factor.
-       */
-      Factor factor =
-          twoFactor.factor < threeFactor.factor ? twoFactor : threeFactor;
-
-      /*
-       * Only use the whole part if it's greater than zero. Otherwise this would
-       * generate values like "0 1/2" instead of "1/2".
-       */
-      if (wholePart > 0) {
-        result += Integer.valueOf(wholePart).toString();
-      }
-
-      /* If there is a fractional part, finish the result. */
-      if (factor.num != 0) {
-        /*
-         * If the result is not empty, add a space. So: "2" becomes "2 ". This
-         * allows the fraction to be spaced properly.
-         */
-        if (!result.isEmpty()) {
-          result += " ";
-        }
-
-        /* Now, add the fractional part onto the result. */
-        result += factor;
-      }
+    return appendFraction(new StringBuilder(), value).toString();
+  }
 
-      result += " ";
+  /**
+   * This appends an amount as a fraction to a string builder. The text is the
+   * same as {@link #toFraction(BigDecimal)} returns, but nothing is allocated,
+   * so it can be used to render long lists of ingredients.
+   * 
+   * @param builder The builder to append to.
+   * @param value The amount to convert. It may be {@code null}.
+   * @return The builder.
+   */
+  public static StringBuilder appendFraction(StringBuilder builder,
+      BigDecimal value) {
+    try {
+      appendFraction((Appendable) builder, value);
+      return builder;
+    } catch (IOException e) {
+      /* A StringBuilder never throws this. */
+      throw new UncheckedIOException(e);
     }
-
-    return result;
   }
 
   /**
-   * Find the closest match given the factor and divisor.
+   * This appends an amount as a fraction to any {@link Appendable}, like a
+   * {@link java.io.Writer}. See {@link #toFraction(BigDecimal)} for the format.
    * 
-   * @param fractionalPart This is the fractional part to match (i.e., .25).
-   * @param factor This is the smallest fraction to use when creating the
-   *        result. So, a factor of 16 might return 1/16 or 1/8, 1/4, etc.
-   * @param divisor This is the value to use when dividing the factor to get the
-   *        result.
-   * @return The lowest factor (i.e., 1/2 instead of 8/16).
+   * @param out Where the text is written.
+   * @param value The amount to convert. It may be {@code null}.
+   * @throws IOException Thrown if the text can not be written.
    */
-  private Factor findFactor(double fractionalPart, int factor, int divisor) {
+  public static void appendFraction(Appendable out, BigDecimal value)
+      throws IOException {
+    if (Objects.isNull(value)) {
+      return;
+    }
+
+    double amount = value.doubleValue();
+
+    if (amount <= 0.0) {
+      return;
+    }
+
+    int wholePart = (int) Math.floor(amount);
+    double fractionalPart = amount - wholePart;
+    int sixteenths = roundedNumerator(fractionalPart, SIXTEENTHS);
+    int fifteenths = roundedNumerator(fractionalPart, FIFTEENTHS);
+
     /*
-     * Multiply the fractional part by the factor, round the result and convert
-     * to an integer. For example, .33333333 * 15 = 4.999999999, which, rounded
-     * is 5. This, applied with the factor, becomes 5/15.
+     * Only use the whole part if it's greater than zero. Otherwise this would
+     * generate values like "0 1/2" instead of "1/2".
      */
-    int num = Double.valueOf(Math.round(fractionalPart * factor)).intValue();
+    if (wholePart > 0) {
+      appendInt(out, wholePart);
+    }
 
     /*
-     * Reduce the factor. If each part (num and factor) is divisible evenly by
-     * the divisor, divide both. So, 5 and 15 are evenly divided by 5. The
-     * result becomes 1/3.
+     * Pick the grid with the lower denominator. So, the value .6667 is 2/3 on
+     * the 1/15 grid but 11/16 on the 1/16 grid. In this case pick 2/3. The
+     * tables cover every amount below Integer.MAX_VALUE. The fraction of a
+     * larger amount, which overflows the whole part, is reduced instead.
      */
+    if (sixteenths > SIXTEENTHS || fifteenths > FIFTEENTHS) {
+      appendLargeFraction(out, wholePart > 0, sixteenths, fifteenths);
+    } else if (SIXTEENTHS_DENOMINATOR[sixteenths]
+        < FIFTEENTHS_DENOMINATOR[fifteenths]) {
+      if (sixteenths != 0) {
+        appendSeparator(out, wholePart > 0);
+        out.append(SIXTEENTHS_TEXT[sixteenths]);
+      }
+    } else if (fifteenths != 0) {
+      appendSeparator(out, wholePart > 0);
+      out.append(FIFTEENTHS_TEXT[fifteenths]);
+    }
+
+    out.append(' ');
+  }
+
+  /**
+   * Multiply the fractional part by the grid size, round the result and
+   * convert to an integer. For example, .33333333 * 15 = 4.999999999, which,
+   * rounded is 5. On the 1/15 grid, this is 5/15.
+   */
+  private static int roundedNumerator(double fractionalPart, int grid) {
+    return (int) (double) Math.round(fractionalPart * grid);
+  }
+
+  /**
+   * Append the fraction of an amount too large for the tables.
+   */
+  private static void appendLargeFraction(Appendable out, boolean hasWhole,
+      int sixteenths, int fifteenths) throws IOException {
+    long twoFactor = reduce(sixteenths, SIXTEENTHS, 2);
+    long threeFactor = reduce(fifteenths, FIFTEENTHS, 5);
+    long factor = denominator(twoFactor) < denominator(threeFactor) ? twoFactor
+        : threeFactor;
+
+    if (numerator(factor) != 0) {
+      appendSeparator(out, hasWhole);
+      appendInt(out, numerator(factor));
+      out.append('/');
+      appendInt(out, denominator(factor));
+    }
+  }
+
+  /**
+   * Reduce a fraction. If each part (num and factor) is divisible evenly by
+   * the divisor, divide both. So, 5 and 15 are evenly divided by 5. The result
+   * becomes 1/3.
+   * 
+   * @return The numerator in the high 32 bits and the denominator in the low
+   *         32 bits.
+   */
+  private static long reduce(int num, int factor, int divisor) {
     while (num != 0 && num % divisor == 0 && factor % divisor == 0) {
       num /= divisor;
       factor /= divisor;
     }
 
-    return new Factor(num, factor);
+    return ((long) num << 32) | (factor & 0xFFFFFFFFL);
+  }
+
+  private static int numerator(long fraction) {
+    return (int) (fraction >> 32);
+  }
+
+  private static int denominator(long fraction) {
+    return (int) fraction;
   }
 
   /**
-   * This inner class holds the fractional values.
-   * 
-   * @author Promineo
-   *
+   * If a whole number was written, add a space so the fraction is spaced
+   * properly: "2" becomes "2 ".
+   */
+  private static void appendSeparator(Appendable out, boolean hasWhole)
+      throws IOException {
+    if (hasWhole) {
+      out.append(' ');
+    }
+  }
+
+  /**
+   * Append an integer one digit at a time, so no String is created.
    */
-  private static class Factor {
-    int num;
-    int factor;
+  static void appendInt(Appendable out, int value) throws IOException {
+    if (out instanceof StringBuilder) {
+      ((StringBuilder) out).append(value);
+      return;
+    }
+
+    long remaining = value;
+
+    if (remaining < 0) {
+      out.append('-');
+      remaining = -remaining;
+    }
+
+    long scale = 1;
 
-    Factor(int num, int factor) {
-      this.num = num;
-      this.factor = factor;
+    while (scale * 10 <= remaining) {
+      scale *= 10;
     }
 
-    @Override
-    public String toString() {
-      return num + "/" + factor;
+    for (; scale > 0; scale /= 10) {
+      out.append((char) ('0' + remaining / scale % 10));
     }
   }
 }
@@ -0,0 +1,206 @@
+/**
+ * 
+ */
+package provided.entity;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * This base class writes an entity as text straight to an {@link Appendable},
+ * like a {@link Writer} or {@link System#out}, without building a String for
+ * the entity or its children. It is used by the toString methods of the
+ * entities, and can print a whole catalog:
+ * 
+ * <pre>
+ * new RecipeRenderer().renderAll(recipes, System.out);
+ * </pre>
+ * 
+ * The text has one field per line, indented three spaces, and one child per
+ * line, indented six:
+ * 
+ * <pre>
+ *    ID=1
+ *    recipeName=Hot Turkey Sandwich
+ *    Ingredients:
+ *       ID=1: 2 cups turkey, chopped
+ * </pre>
+ * 
+ * @author Promineo
+ *
+ * @param <T> The type of entity rendered.
+ */
+public abstract class TextRenderer<T> {
+  private static final String FIELD_INDENT = "\n   ";
+  private static final String CHILD_INDENT = "\n      ";
+
+  /*
+   * The builder used by toString is kept per thread and reused, so it is not
+   * grown again for every entity. A builder grown past this size by a very
+   * large entity is dropped so it is not held forever.
+   */
+  private static final int INITIAL_CAPACITY = 512;
+  private static final int MAX_RETAINED = 16 * 1024;
+  private static final ThreadLocal<Buffer> BUFFER =
+      ThreadLocal.withInitial(Buffer::new);
+
+  /**
+   * This renders one part of an entity, like a single ingredient line.
+   *
+   * @param <E> The type of the part.
+   */
+  @FunctionalInterface
+  public interface Part<E> {
+    void render(E part, Appendable out) throws IOException;
+  }
+
+  /**
+   * Write the entity, starting with a line break.
+   * 
+   * @param entity The entity to write.
+   * @param out Where the text is written.
+   * @throws IOException Thrown if the text can not be written.
+   */
+  public abstract void render(T entity, Appendable out) throws IOException;
+
+  /**
+   * Write each entity followed by a line break.
+   * 
+   * @param entities The entities to write.
+   * @param out Where the text is written. Wrap a file or socket writer in a
+   *        {@link java.io.BufferedWriter}.
+   * @throws IOException Thrown if the text can not be written.
+   */
+  public void renderAll(Iterable<? extends T> entities, Appendable out)
+      throws IOException {
+    for (T entity : entities) {
+      render(entity, out);
+      out.append('\n');
+    }
+  }
+
+  /**
+   * Write each entity to a file in UTF-8. The file is replaced if it exists.
+   * 
+   * @param entities The entities to write.
+   * @param path The file.
+   * @throws IOException Thrown if the file can not be written.
+   */
+  public void renderAll(Iterable<? extends T> entities, Path path)
+      throws IOException {
+    try (Writer writer = Files.newBufferedWriter(path)) {
+      renderAll(entities, writer);
+    }
+  }
+
+  /**
+   * @param entity The entity to convert.
+   * @return The text written by {@link #render(Object, Appendable)}.
+   */
+  public String toString(T entity) {
+    return toString(entity, this::render);
+  }
+
+  /**
+   * Render a part of an entity into this thread's reusable builder and return
+   * the text.
+   * 
+   * @param <E> The type of the part.
+   * @param part The part to convert.
+   * @param renderer The method that writes it.
+   * @return The text.
+   */
+  public static <E> String toString(E part, Part<? super E> renderer) {
+    Buffer buffer = BUFFER.get();
+
+    /* A toString called from inside a render gets a builder of its own. */
+    if (buffer.inUse) {
+      return render(part, renderer, new StringBuilder(INITIAL_CAPACITY));
+    }
+
+    buffer.inUse = true;
+
+    try {
+      return render(part, renderer, buffer.builder);
+    } finally {
+      if (buffer.builder.capacity() > MAX_RETAINED) {
+        buffer.builder = new StringBuilder(INITIAL_CAPACITY);
+      } else {
+        buffer.builder.setLength(0);
+      }
+
+      buffer.inUse = false;
+    }
+  }
+
+  private static <E> String render(E part, Part<? super E> renderer,
+      StringBuilder builder) {
+    try {
+      renderer.render(part, builder);
+      return builder.toString();
+    } catch (IOException e) {
+      /* A StringBuilder never throws this. */
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Write a field on a line of its own, like "   notes=Serve hot".
+   */
+  protected static void field(Appendable out, String name, Object value)
+      throws IOException {
+    value(field(out, name), value);
+  }
+
+  /**
+   * Start the line of a field whose value is formatted by the caller.
+   * 
+   * @return The Appendable, to write the value to.
+   */
+  protected static Appendable field(Appendable out, String name)
+      throws IOException {
+    return out.append(FIELD_INDENT).append(name).append('=');
+  }
+
+  /**
+   * Write the heading of a list of children, like "   Steps:".
+   */
+  protected static void heading(Appendable out, String title)
+      throws IOException {
+    out.append(FIELD_INDENT).append(title).append(':');
+  }
+
+  /**
+   * Start the line of a child.
+   * 
+   * @return The Appendable, to write the child to.
+   */
+  protected static Appendable child(Appendable out) throws IOException {
+    return out.append(CHILD_INDENT);
+  }
+
+  /**
+   * Write a value the way string concatenation would, so {@code null} is
+   * written as "null". Integers are written without creating a String.
+   */
+  protected static void value(Appendable out, Object value)
+      throws IOException {
+    if (value instanceof Integer) {
+      EntityBase.appendInt(out, (Integer) value);
+    } else {
+      out.append(String.valueOf(value));
+    }
+  }
+
+  /**
+   * A thread's reusable builder, and whether a toString on the thread is
+   * using it.
+   */
+  private static class Buffer {
+    StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+    boolean inUse;
+  }
+}
@@ -0,0 +1,233 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This runs blocking DAO calls in the background and returns their results as
+ * {@link CompletableFuture}s, so a service can start thousands of requests at once without
+ * blocking the caller.
+ * <ul>
+ * <li><b>Threads:</b> each task runs on its own virtual thread when the JVM has them (Java 21 and
+ * later). On older JVMs, tasks run on a fixed pool of maxConcurrent daemon threads, and the tasks
+ * beyond that wait in the pool's queue without holding a thread. The method that creates the
+ * virtual thread executor is looked up by reflection, so this class compiles and runs on Java
+ * 17.</li>
+ * <li><b>Concurrency:</b> at most maxConcurrent tasks use the database at once. On virtual threads,
+ * a semaphore enforces this. Set it to the size of the connection pool, so the tasks beyond that
+ * wait here instead of timing out in the pool.</li>
+ * <li><b>Cancellation:</b> cancelling a returned future calls {@link Statement#cancel()} on every
+ * statement the task has created, which stops a query that is running on the server. The task
+ * then fails with an SQLException, which is ignored since the future is already cancelled. A task
+ * that is cancelled before it starts is never run. Statements are seen through
+ * {@link ConnectionPool}, which calls {@link #track(Statement)} and {@link #untrack(Statement)};
+ * statements from connections that do not come from the pool can not be cancelled.</li>
+ * </ul>
+ *
+ * @author Promineo
+ *
+ */
+public class AsyncExecutor {
+  private static final ThreadLocal<Task<?>> CURRENT = new ThreadLocal<>();
+
+  private final ExecutorService executor;
+  private final boolean virtual;
+  private final int maxConcurrent;
+
+  /* Only used with virtual threads. A fixed pool limits itself. */
+  private final Semaphore permits;
+
+  /**
+   * @param maxConcurrent The most tasks that run at the same time. The rest wait.
+   */
+  public AsyncExecutor(int maxConcurrent) {
+    if(maxConcurrent < 1) {
+      throw new DaoException("The concurrency must be at least 1, not " + maxConcurrent);
+    }
+
+    ExecutorService virtualExecutor = createVirtualExecutor();
+
+    this.virtual = Objects.nonNull(virtualExecutor);
+    this.executor = virtual ? virtualExecutor : createPlatformExecutor(maxConcurrent);
+    this.maxConcurrent = maxConcurrent;
+    this.permits = virtual ? new Semaphore(maxConcurrent, true) : null;
+  }
+
+  /**
+   * Run a task in the background.
+   *
+   * @param <T> The result type.
+   * @param task The task, usually a call to a DAO method.
+   * @return The future result. Cancelling it cancels the task's running statements.
+   */
+  public <T> CompletableFuture<T> supply(Supplier<T> task) {
+    Task<T> future = new Task<>();
+
+    executor.execute(() -> run(future, task));
+    return future;
+  }
+
+  /**
+   * @return {@code true} if tasks run on virtual threads.
+   */
+  public boolean isVirtual() {
+    return virtual;
+  }
+
+  /**
+   * @return The number of tasks that could start using the database now.
+   */
+  public int getAvailablePermits() {
+    if(virtual) {
+      return permits.availablePermits();
+    }
+
+    return maxConcurrent - ((ThreadPoolExecutor)executor).getActiveCount();
+  }
+
+  /**
+   * Note a statement created by the current thread, so it can be cancelled if the thread's task is.
+   * This does nothing if the thread is not running a task.
+   *
+   * @param stmt The statement.
+   */
+  static void track(Statement stmt) {
+    Task<?> task = CURRENT.get();
+
+    if(Objects.nonNull(task)) {
+      /* Statements closed without going through untrack (not cached by the pool) are dropped. */
+      task.statements.removeIf(AsyncExecutor::isClosedQuietly);
+      task.statements.add(stmt);
+
+      /* The task may have been cancelled between statements. */
+      if(task.isCancelled()) {
+        cancelQuietly(stmt);
+      }
+    }
+  }
+
+  /**
+   * Forget a statement that the current thread closed, so cancelling its task can not reach it
+   * after it has been put back in a statement cache and handed to someone else.
+   *
+   * @param stmt The statement.
+   */
+  static void untrack(Statement stmt) {
+    Task<?> task = CURRENT.get();
+
+    if(Objects.nonNull(task)) {
+      task.statements.remove(stmt);
+    }
+  }
+
+  private <T> void run(Task<T> future, Supplier<T> task) {
+    if(future.isDone()) {
+      return;
+    }
+
+    if(virtual) {
+      try {
+        permits.acquire();
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        future.completeExceptionally(e);
+        return;
+      }
+    }
+
+    try {
+      if(!future.isDone()) {
+        CURRENT.set(future);
+        future.complete(task.get());
+      }
+    }
+    catch(Throwable e) {
+      future.completeExceptionally(e);
+    }
+    finally {
+      CURRENT.remove();
+      future.statements.clear();
+
+      if(virtual) {
+        permits.release();
+      }
+    }
+  }
+
+  private static boolean isClosedQuietly(Statement stmt) {
+    try {
+      return stmt.isClosed();
+    }
+    catch(SQLException e) {
+      return true;
+    }
+  }
+
+  private static void cancelQuietly(Statement stmt) {
+    try {
+      stmt.cancel();
+    }
+    catch(SQLException e) {
+      /* The statement may have finished or been closed. There is nothing left to cancel. */
+    }
+  }
+
+  /**
+   * @return A virtual thread per task executor, or {@code null} if the JVM does not have virtual
+   *         threads (or has them only as a preview feature that is not enabled).
+   */
+  private static ExecutorService createVirtualExecutor() {
+    try {
+      return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    }
+    catch(ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static ExecutorService createPlatformExecutor(int maxConcurrent) {
+    AtomicInteger count = new AtomicInteger();
+
+    return Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+      Thread thread = new Thread(runnable, "async-db-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * A future that cancels its task's statements when it is cancelled.
+   *
+   * @param <T> The result type.
+   */
+  private static class Task<T> extends CompletableFuture<T> {
+    final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+      if(cancelled) {
+        statements.forEach(AsyncExecutor::cancelQuietly);
+      }
+
+      return cancelled;
+    }
+  }
+}
@@ -0,0 +1,361 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.sql.DataSource;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This hands out order numbers (like ingredient_order or step_order) for the children of a parent
+ * row. It replaces {@link DaoBase#getNextSequenceNumber(Connection, Integer, String, String)},
+ * which counted the child rows before every insert. Counting costs a round trip per child, and two
+ * writers adding to the same parent at the same time both see the same count and write the same
+ * order number.
+ *
+ * Instead, the next order number for each parent is kept in a counter table:
+ *
+ * <pre>
+ * CREATE TABLE child_order_counter (
+ *   child_table VARCHAR(64) NOT NULL,
+ *   parent_id INT NOT NULL,
+ *   next_order INT NOT NULL,
+ *   PRIMARY KEY (child_table, parent_id)
+ * );
+ * </pre>
+ *
+ * Numbers are reserved from the counter in blocks. Reserving a block is a single UPDATE that locks
+ * the counter row, so two JVMs can never reserve the same numbers. The reservation is committed on
+ * its own connection right away, so the row lock is held only for that one statement and a
+ * rolled-back insert never gives numbers back. Within a JVM, the numbers in a block are handed out
+ * under a lock that is striped by parent, so writers to different parents do not wait for each
+ * other.
+ *
+ * The child table is only read once per parent: the first time a parent is seen, its counter row
+ * is created from the highest existing order number. After that, no allocation scans the child
+ * table.
+ *
+ * Order numbers always increase, but there may be gaps, for example when another JVM holds an
+ * unused part of a block. Ordering by the column still returns the children in insertion order.
+ *
+ * A reservation needs a second connection from the data source, so allocate order numbers before
+ * opening the connection used for the inserts.
+ *
+ * When a parent is deleted, delete its counter rows with
+ * {@link #deleteCounters(Connection, Integer, ChildOrderAllocator...)} in the same transaction, and
+ * call {@link #release(Integer)} after the commit. Otherwise the table keeps a row for every parent
+ * that ever had children.
+ *
+ * @author Promineo
+ *
+ */
+public class ChildOrderAllocator {
+  /** The default number of order numbers reserved from the database at a time. */
+  public static final int DEFAULT_BLOCK_SIZE = 16;
+
+  private static final int STRIPES = 64;
+
+  // @formatter:off
+  private static final String RESERVE_SQL = ""
+      + "UPDATE child_order_counter "
+      + "SET next_order = LAST_INSERT_ID(next_order + ?) "
+      + "WHERE child_table = ? AND parent_id = ?";
+
+  private static final String ADVANCE_SQL = ""
+      + "UPDATE child_order_counter "
+      + "SET next_order = next_order + ? "
+      + "WHERE child_table = ? AND parent_id = ?";
+
+  private static final String READ_SQL = ""
+      + "SELECT next_order FROM child_order_counter "
+      + "WHERE child_table = ? AND parent_id = ?";
+  // @formatter:on
+
+  private final DataSource dataSource;
+  private final String childTable;
+  private final String initializeSql;
+  private final int blockSize;
+
+  private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+  private final Map<Integer, Block> blocks = new ConcurrentHashMap<>();
+
+  /* Whether the database has MySQL's LAST_INSERT_ID(expr). Set by the first reservation. */
+  private volatile Boolean lastInsertId;
+
+  /**
+   * Create an allocator for one child table.
+   *
+   * @param dataSource The source of connections used to reserve blocks. Reservations are committed
+   *        separately from the caller's transaction.
+   * @param childTable The child table (like "ingredient").
+   * @param parentIdColumn The column in the child table that holds the parent ID (like
+   *        "recipe_id").
+   * @param orderColumn The order column in the child table (like "ingredient_order").
+   * @param blockSize The number of order numbers reserved from the database at a time.
+   */
+  public ChildOrderAllocator(DataSource dataSource, String childTable, String parentIdColumn,
+      String orderColumn, int blockSize) {
+    if(blockSize < 1) {
+      throw new DaoException("The block size must be at least 1, not " + blockSize);
+    }
+
+    this.dataSource = dataSource;
+    this.childTable = childTable;
+    this.blockSize = blockSize;
+
+    // @formatter:off
+    this.initializeSql = ""
+        + "INSERT IGNORE INTO child_order_counter (child_table, parent_id, next_order) "
+        + "SELECT ?, ?, COALESCE(MAX(" + orderColumn + "), 0) + 1 "
+        + "FROM " + childTable + " "
+        + "WHERE " + parentIdColumn + " = ?";
+    // @formatter:on
+
+    for(int index = 0; index < STRIPES; index++) {
+      stripes[index] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Allocate the next order number for a parent.
+   *
+   * @param parentId The parent ID.
+   * @return The order number.
+   */
+  public int next(Integer parentId) {
+    return next(parentId, 1);
+  }
+
+  /**
+   * Allocate a run of consecutive order numbers for a parent. This is used when several children
+   * are added at once.
+   *
+   * @param parentId The parent ID.
+   * @param count The number of order numbers needed.
+   * @return The first order number. The caller may use this value and the count - 1 values after
+   *         it.
+   */
+  public int next(Integer parentId, int count) {
+    Objects.requireNonNull(parentId, "parentId");
+
+    ReentrantLock lock = stripes[Math.floorMod(parentId.hashCode(), STRIPES)];
+    lock.lock();
+
+    try {
+      Block block = blocks.get(parentId);
+
+      if(Objects.isNull(block) || block.remaining() < count) {
+        /* A partly used block is abandoned if it is too small. That just leaves a gap. */
+        block = reserve(parentId, Math.max(count, blockSize));
+        blocks.put(parentId, block);
+      }
+
+      int first = block.next;
+      block.next += count;
+
+      if(block.remaining() == 0) {
+        blocks.remove(parentId);
+      }
+
+      return first;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Forget any numbers held for a parent, for example because the parent was deleted.
+   *
+   * @param parentId The parent ID.
+   */
+  public void release(Integer parentId) {
+    blocks.remove(parentId);
+  }
+
+  /**
+   * Delete a parent's counter rows for the child tables of the given allocators. This runs on the
+   * caller's connection, so it is part of the transaction that deletes the parent. Call
+   * {@link #release(Integer)} on each allocator after the transaction commits.
+   *
+   * @param conn The connection of the caller's transaction.
+   * @param parentId The ID of the deleted parent.
+   * @param allocators The allocators of the parent's child tables.
+   * @throws SQLException Thrown if the rows can not be deleted.
+   */
+  public static void deleteCounters(Connection conn, Integer parentId,
+      ChildOrderAllocator... allocators) throws SQLException {
+    if(allocators.length == 0) {
+      return;
+    }
+
+    StringBuilder sql = new StringBuilder(
+        "DELETE FROM child_order_counter WHERE parent_id = ? AND child_table IN (?");
+
+    for(int index = 1; index < allocators.length; index++) {
+      sql.append(", ?");
+    }
+
+    try(PreparedStatement stmt = conn.prepareStatement(sql.append(')').toString())) {
+      stmt.setInt(1, parentId);
+
+      for(int index = 0; index < allocators.length; index++) {
+        stmt.setString(index + 2, allocators[index].childTable);
+      }
+
+      stmt.executeUpdate();
+    }
+  }
+
+  /**
+   * Forget all numbers held by this JVM. This must be called when the tables are dropped and
+   * recreated, because parent IDs start over and the counter rows are gone.
+   */
+  public void clear() {
+    blocks.clear();
+  }
+
+  /**
+   * Reserve a block of order numbers from the counter table. The UPDATE locks the counter row,
+   * moves it forward by the block size and returns the new value through LAST_INSERT_ID(), which
+   * the driver reports as the generated key. Other databases read the counter back in the same
+   * transaction. If the parent has no counter row yet, one is created from the highest order
+   * number in the child table, and the UPDATE is run again.
+   *
+   * @return The reserved block.
+   */
+  private Block reserve(Integer parentId, int size) {
+    try(Connection conn = dataSource.getConnection()) {
+      Integer end = advance(conn, parentId, size);
+
+      if(Objects.isNull(end)) {
+        try(PreparedStatement stmt = conn.prepareStatement(initializeSql)) {
+          stmt.setString(1, childTable);
+          stmt.setInt(2, parentId);
+          stmt.setInt(3, parentId);
+          stmt.executeUpdate();
+        }
+
+        end = advance(conn, parentId, size);
+      }
+
+      if(Objects.isNull(end)) {
+        throw new DaoException(
+            "Unable to reserve order numbers for " + childTable + " of parent " + parentId);
+      }
+
+      return new Block(end - size, end);
+    }
+    catch(SQLException e) {
+      throw new DaoException(
+          "Unable to reserve order numbers for " + childTable + " of parent " + parentId, e);
+    }
+  }
+
+  /**
+   * Move the counter forward.
+   *
+   * @return The counter value after the update, or {@code null} if there is no counter row.
+   */
+  private Integer advance(Connection conn, Integer parentId, int size) throws SQLException {
+    if(Objects.isNull(lastInsertId)) {
+      String product = conn.getMetaData().getDatabaseProductName();
+      lastInsertId = product.equalsIgnoreCase("MySQL") || product.equalsIgnoreCase("MariaDB");
+    }
+
+    if(!lastInsertId) {
+      return advanceAndRead(conn, parentId, size);
+    }
+
+    try(PreparedStatement stmt =
+        conn.prepareStatement(RESERVE_SQL, Statement.RETURN_GENERATED_KEYS)) {
+      stmt.setInt(1, size);
+      stmt.setString(2, childTable);
+      stmt.setInt(3, parentId);
+
+      if(stmt.executeUpdate() == 0) {
+        return null;
+      }
+
+      try(ResultSet rs = stmt.getGeneratedKeys()) {
+        if(rs.next()) {
+          return rs.getInt(1);
+        }
+
+        throw new SQLException("The counter update did not return the new value.");
+      }
+    }
+  }
+
+  /**
+   * Move the counter forward on a database without LAST_INSERT_ID(expr). The counter is read back
+   * in the same transaction as the UPDATE, while the row is still locked. This costs a second round
+   * trip, so MySQL uses {@link #advance(Connection, Integer, int)} instead.
+   *
+   * @return The counter value after the update, or {@code null} if there is no counter row.
+   */
+  private Integer advanceAndRead(Connection conn, Integer parentId, int size)
+      throws SQLException {
+    boolean autoCommit = conn.getAutoCommit();
+    conn.setAutoCommit(false);
+
+    try {
+      Integer end = null;
+
+      try(PreparedStatement stmt = conn.prepareStatement(ADVANCE_SQL)) {
+        stmt.setInt(1, size);
+        stmt.setString(2, childTable);
+        stmt.setInt(3, parentId);
+
+        if(stmt.executeUpdate() > 0) {
+          try(PreparedStatement read = conn.prepareStatement(READ_SQL)) {
+            read.setString(1, childTable);
+            read.setInt(2, parentId);
+
+            try(ResultSet rs = read.executeQuery()) {
+              if(rs.next()) {
+                end = rs.getInt(1);
+              }
+            }
+          }
+        }
+      }
+
+      conn.commit();
+      return end;
+    }
+    catch(SQLException e) {
+      conn.rollback();
+      throw e;
+    }
+    finally {
+      conn.setAutoCommit(autoCommit);
+    }
+  }
+
+  /**
+   * A range of reserved order numbers: next (inclusive) to end (exclusive).
+   */
+  private static class Block {
+    int next;
+    final int end;
+
+    Block(int next, int end) {
+      this.next = next;
+      this.end = end;
+    }
+
+    int remaining() {
+      return end - next;
+    }
+  }
+}
@@ -0,0 +1,1092 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * This is a bounded JDBC connection pool. It hands out connections that look exactly like the
+ * driver's connections, except that calling {@link Connection#close()} returns the physical
+ * connection to the pool instead of closing it. So the DAO pattern of
+ *
+ * <pre>
+ * try(Connection conn = dataSource.getConnection()) {
+ *   ...
+ * }
+ * </pre>
+ *
+ * keeps working unchanged, but only pays the TCP and authentication handshake when the pool has to
+ * grow.
+ *
+ * The pool works as follows:
+ * <ul>
+ * <li>It never holds more than {@code maxSize} physical connections. When all of them are in use, a
+ * caller waits up to {@code acquireTimeoutMillis} for one to be returned, after which an
+ * {@link SQLTimeoutException} is thrown.</li>
+ * <li>A connection is validated with {@link Connection#isValid(int)} when it is borrowed, unless it
+ * was returned to the pool less than {@code validationBypassMillis} ago.</li>
+ * <li>A connection older than {@code maxLifetimeMillis} is closed instead of being reused.</li>
+ * <li>A background thread closes connections that have been idle longer than
+ * {@code idleTimeoutMillis}, but always keeps at least {@code minIdle} connections open.</li>
+ * <li>A connection is returned to the pool in auto-commit mode. Any work that was not committed by
+ * the borrower is rolled back.</li>
+ * <li>If {@code statementCacheSize} is above zero, each connection keeps up to that many prepared
+ * statements, keyed by their SQL text (and the other arguments to
+ * {@link Connection#prepareStatement(String)}). Closing a statement puts it back in its
+ * connection's cache instead of closing it, and the next call to prepare the same SQL on that
+ * connection gets it back with its parameters cleared, so the driver does not parse the SQL again.
+ * When the cache is full, the least recently used statement is closed.</li>
+ * <li>If {@code serverPrepare} is set, MySQL connections are opened with
+ * {@code useServerPrepStmts=true}, so statements are prepared by the server once, and each use of a
+ * cached statement sends only its parameters.</li>
+ * </ul>
+ *
+ * The settings are JavaBean properties so the pool can be configured like any other
+ * {@link DataSource}. They should be set before the first connection is requested.
+ *
+ * The pool's usage (see {@link ConnectionPoolMXBean}) and the time taken to borrow each connection
+ * (see {@link #getAcquireTimer()}) can be published over JMX with
+ * {@link Metrics#registerPool(String, ConnectionPool)}. Each borrow and return is also recorded as
+ * a Java Flight Recorder event (see {@link DbEvents}).
+ *
+ * @author Promineo
+ *
+ */
+public class ConnectionPool implements DataSource, ConnectionPoolMXBean {
+  private final String url;
+
+  private String name = "pool";
+  private int minIdle = 2;
+  private int maxSize = 10;
+  private long acquireTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+  private long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+  private long maxLifetimeMillis = TimeUnit.MINUTES.toMillis(30);
+  private long validationBypassMillis = 500;
+  private int validationTimeoutSeconds = 5;
+  private long housekeepingIntervalMillis = TimeUnit.SECONDS.toMillis(30);
+  private volatile int statementCacheSize;
+  private boolean serverPrepare;
+  private volatile LongConsumer acquireListener;
+  private final Metrics.Timer acquireTimer = new Metrics.Timer();
+
+  private final LongAdder statementHits = new LongAdder();
+  private final LongAdder statementMisses = new LongAdder();
+  private final LongAdder statementEvictions = new LongAdder();
+
+  /* All of the following fields are guarded by lock. */
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition connectionReturned = lock.newCondition();
+  private final Deque<PooledConnection> idle = new ArrayDeque<>();
+  private int totalConnections;
+  private int pendingRequests;
+  private boolean closed;
+  /* Written under lock but read without it by startHousekeeping(), so it is volatile. */
+  private volatile ScheduledExecutorService housekeeper;
+
+  /**
+   * Create a pool of connections to the given JDBC URL. No connections are opened until the first
+   * call to {@link #getConnection()}.
+   *
+   * @param url The JDBC URL, including the user and password.
+   */
+  public ConnectionPool(String url) {
+    this.url = Objects.requireNonNull(url, "url");
+  }
+
+  /**
+   * Borrow a connection from the pool. An idle connection is reused if one is available. Otherwise
+   * a new physical connection is opened if the pool is below its maximum size. If the pool is at its
+   * maximum size, this waits for another caller to return a connection.
+   *
+   * @return A connection. Closing it returns it to the pool.
+   * @throws SQLTimeoutException Thrown if no connection became available within the acquire
+   *         timeout.
+   * @throws SQLException Thrown if the pool is closed or a new connection could not be opened.
+   */
+  @Override
+  public Connection getConnection() throws SQLException {
+    startHousekeeping();
+
+    DbEvents.ConnectionAcquired event = new DbEvents.ConnectionAcquired();
+    event.begin();
+
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+
+    while(true) {
+      PooledConnection pooled = reserve(deadline);
+
+      if(Objects.isNull(pooled)) {
+        /* A slot was reserved for a new connection. Open it outside the lock. */
+        return acquired(openReserved().lease(), start, event);
+      }
+
+      if(isUsable(pooled)) {
+        return acquired(pooled.lease(), start, event);
+      }
+
+      discard(pooled);
+    }
+  }
+
+  /**
+   * Record the time taken to borrow a connection, report it to the acquire listener, if there is
+   * one, and commit the flight recorder event if it is over its threshold.
+   *
+   * @return The connection.
+   */
+  private Connection acquired(Connection conn, long start, DbEvents.ConnectionAcquired event) {
+    long nanos = System.nanoTime() - start;
+    LongConsumer listener = acquireListener;
+
+    acquireTimer.record(nanos);
+
+    if(Objects.nonNull(listener)) {
+      listener.accept(nanos);
+    }
+
+    if(event.shouldCommit()) {
+      event.pool = name;
+      event.activeConnections = getActiveConnections();
+      event.pendingRequests = getPendingRequests();
+      event.commit();
+    }
+
+    return conn;
+  }
+
+  /**
+   * This waits until either an idle connection is available or there is room in the pool for a new
+   * connection.
+   *
+   * @param deadline The {@link System#nanoTime()} value after which to give up.
+   * @return An idle connection, or {@code null} if the caller has reserved a slot and must open a new
+   *         connection.
+   * @throws SQLException Thrown if the pool is closed, the deadline passes or the thread is
+   *         interrupted.
+   */
+  private PooledConnection reserve(long deadline) throws SQLException {
+    lock.lock();
+
+    try {
+      while(true) {
+        if(closed) {
+          throw new SQLException("The connection pool is closed.");
+        }
+
+        /* Most recently returned first. That connection is the least likely to have gone stale. */
+        PooledConnection pooled = idle.pollFirst();
+
+        if(Objects.nonNull(pooled)) {
+          return pooled;
+        }
+
+        if(totalConnections < maxSize) {
+          totalConnections++;
+          return null;
+        }
+
+        long remaining = deadline - System.nanoTime();
+
+        if(remaining <= 0) {
+          throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis
+              + "ms waiting for a connection. All " + maxSize + " connections are in use.");
+        }
+
+        pendingRequests++;
+
+        try {
+          connectionReturned.awaitNanos(remaining);
+        }
+        finally {
+          pendingRequests--;
+        }
+      }
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a connection.", e);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Open a physical connection for a slot that has already been reserved. If opening fails, the slot
+   * is given back.
+   *
+   * @return The new pooled connection.
+   * @throws SQLException Thrown if the driver cannot open a connection.
+   */
+  private PooledConnection openReserved() throws SQLException {
+    Properties info = new Properties();
+
+    if(serverPrepare && url.startsWith("jdbc:mysql:")) {
+      info.setProperty("useServerPrepStmts", "true");
+    }
+
+    try {
+      return new PooledConnection(DriverManager.getConnection(url, info));
+    }
+    catch(SQLException | RuntimeException e) {
+      releaseSlot();
+      throw e;
+    }
+  }
+
+  /**
+   * Check a connection that is about to be handed out.
+   *
+   * @param pooled The connection taken from the idle list.
+   * @return {@code true} if the connection can be used.
+   */
+  private boolean isUsable(PooledConnection pooled) {
+    long now = System.currentTimeMillis();
+
+    if(pooled.isExpired(now)) {
+      return false;
+    }
+
+    if(now - pooled.lastReturned < validationBypassMillis) {
+      return true;
+    }
+
+    try {
+      return pooled.physical.isValid(validationTimeoutSeconds);
+    }
+    catch(SQLException e) {
+      return false;
+    }
+  }
+
+  /**
+   * This is called by the connection proxy when the borrower closes it. The connection is reset and
+   * put back on the idle list, or closed if it is broken, expired or the pool has been closed.
+   *
+   * @param pooled The connection being returned.
+   */
+  private void giveBack(PooledConnection pooled) {
+    pooled.lastReturned = System.currentTimeMillis();
+
+    if(pooled.broken || pooled.isExpired(pooled.lastReturned) || !reset(pooled)) {
+      discard(pooled);
+      return;
+    }
+
+    lock.lock();
+
+    try {
+      if(!closed) {
+        idle.offerFirst(pooled);
+        connectionReturned.signal();
+        return;
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+
+    discard(pooled);
+  }
+
+  /**
+   * Put a connection back into the state a new borrower expects: auto-commit on and no pending work.
+   *
+   * @param pooled The connection to reset.
+   * @return {@code true} if the reset worked, {@code false} if the connection should be discarded.
+   */
+  private boolean reset(PooledConnection pooled) {
+    try {
+      Connection conn = pooled.physical;
+
+      if(!conn.getAutoCommit()) {
+        conn.rollback();
+        conn.setAutoCommit(true);
+      }
+
+      conn.clearWarnings();
+      return true;
+    }
+    catch(SQLException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Close the physical connection and free its slot in the pool.
+   *
+   * @param pooled The connection to close.
+   */
+  private void discard(PooledConnection pooled) {
+    try {
+      pooled.physical.close();
+    }
+    catch(SQLException e) {
+      /* The connection is being thrown away. There is nothing useful to do with this. */
+    }
+
+    releaseSlot();
+  }
+
+  /**
+   * Free a slot so that a waiting caller can open a new connection.
+   */
+  private void releaseSlot() {
+    lock.lock();
+
+    try {
+      totalConnections--;
+      connectionReturned.signal();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Start the background thread on the first call to {@link #getConnection()}. The thread evicts
+   * idle and expired connections and tops the pool back up to {@code minIdle}.
+   */
+  private void startHousekeeping() {
+    if(Objects.nonNull(housekeeper)) {
+      return;
+    }
+
+    lock.lock();
+
+    try {
+      if(Objects.isNull(housekeeper) && !closed) {
+        housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+          Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+          thread.setDaemon(true);
+          return thread;
+        });
+
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, housekeepingIntervalMillis,
+            TimeUnit.MILLISECONDS);
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Evict idle connections that have timed out or outlived their maximum lifetime, then open new
+   * connections until there are at least {@code minIdle} idle connections.
+   */
+  private void housekeep() {
+    Deque<PooledConnection> evicted = new ArrayDeque<>();
+    int toOpen = 0;
+    long now = System.currentTimeMillis();
+
+    lock.lock();
+
+    try {
+      /* The oldest returned connections are at the end of the idle list. */
+      Iterator<PooledConnection> iter = idle.descendingIterator();
+
+      while(iter.hasNext()) {
+        PooledConnection pooled = iter.next();
+        boolean timedOut = now - pooled.lastReturned > idleTimeoutMillis && idle.size() > minIdle;
+
+        if(timedOut || pooled.isExpired(now)) {
+          iter.remove();
+          evicted.add(pooled);
+        }
+      }
+
+      while(!closed && idle.size() + toOpen < minIdle && totalConnections < maxSize) {
+        totalConnections++;
+        toOpen++;
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+
+    evicted.forEach(this::discard);
+
+    for(int count = 0; count < toOpen; count++) {
+      try {
+        PooledConnection pooled = openReserved();
+        pooled.lastReturned = System.currentTimeMillis();
+        giveBack(pooled);
+      }
+      catch(SQLException e) {
+        /* The database may be down. Try again on the next run. */
+        for(int remaining = count + 1; remaining < toOpen; remaining++) {
+          releaseSlot();
+        }
+
+        break;
+      }
+    }
+  }
+
+  /**
+   * Close the pool. Idle connections are closed immediately. Connections that are in use are closed
+   * when they are returned. Any later call to {@link #getConnection()} fails.
+   */
+  public void close() {
+    Deque<PooledConnection> toClose;
+
+    lock.lock();
+
+    try {
+      closed = true;
+      toClose = new ArrayDeque<>(idle);
+      idle.clear();
+      connectionReturned.signalAll();
+
+      if(Objects.nonNull(housekeeper)) {
+        housekeeper.shutdownNow();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+
+    toClose.forEach(this::discard);
+  }
+
+  @Override
+  public int getTotalConnections() {
+    lock.lock();
+
+    try {
+      return totalConnections;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int getIdleConnections() {
+    lock.lock();
+
+    try {
+      return idle.size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int getActiveConnections() {
+    lock.lock();
+
+    try {
+      return totalConnections - idle.size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int getPendingRequests() {
+    lock.lock();
+
+    try {
+      return pendingRequests;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return The timer of every successful {@link #getConnection()}, including any time spent
+   *         waiting for a connection, opening one or validating it.
+   */
+  public Metrics.Timer getAcquireTimer() {
+    return acquireTimer;
+  }
+
+  /**
+   * @return The number of times a prepared statement was found in a connection's cache.
+   */
+  @Override
+  public long getStatementCacheHits() {
+    return statementHits.sum();
+  }
+
+  /**
+   * @return The number of times a statement had to be prepared because it was not cached. This is
+   *         zero if the statement cache is off.
+   */
+  @Override
+  public long getStatementCacheMisses() {
+    return statementMisses.sum();
+  }
+
+  /**
+   * @return The number of cached statements closed to make room for another.
+   */
+  @Override
+  public long getStatementCacheEvictions() {
+    return statementEvictions.sum();
+  }
+
+  /**
+   * @return The name the pool's flight recorder events are tagged with.
+   */
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = Objects.requireNonNull(name, "name");
+  }
+
+  @Override
+  public int getMinIdle() {
+    return minIdle;
+  }
+
+  public void setMinIdle(int minIdle) {
+    this.minIdle = minIdle;
+  }
+
+  @Override
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public void setMaxSize(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  public long getAcquireTimeoutMillis() {
+    return acquireTimeoutMillis;
+  }
+
+  public void setAcquireTimeoutMillis(long acquireTimeoutMillis) {
+    this.acquireTimeoutMillis = acquireTimeoutMillis;
+  }
+
+  public long getIdleTimeoutMillis() {
+    return idleTimeoutMillis;
+  }
+
+  public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+    this.idleTimeoutMillis = idleTimeoutMillis;
+  }
+
+  public long getMaxLifetimeMillis() {
+    return maxLifetimeMillis;
+  }
+
+  public void setMaxLifetimeMillis(long maxLifetimeMillis) {
+    this.maxLifetimeMillis = maxLifetimeMillis;
+  }
+
+  public long getValidationBypassMillis() {
+    return validationBypassMillis;
+  }
+
+  public void setValidationBypassMillis(long validationBypassMillis) {
+    this.validationBypassMillis = validationBypassMillis;
+  }
+
+  public int getValidationTimeoutSeconds() {
+    return validationTimeoutSeconds;
+  }
+
+  public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+    this.validationTimeoutSeconds = validationTimeoutSeconds;
+  }
+
+  public long getHousekeepingIntervalMillis() {
+    return housekeepingIntervalMillis;
+  }
+
+  public void setHousekeepingIntervalMillis(long housekeepingIntervalMillis) {
+    this.housekeepingIntervalMillis = housekeepingIntervalMillis;
+  }
+
+  public int getStatementCacheSize() {
+    return statementCacheSize;
+  }
+
+  /**
+   * @param statementCacheSize The most prepared statements cached per connection. Zero (the
+   *        default) turns the cache off.
+   */
+  public void setStatementCacheSize(int statementCacheSize) {
+    this.statementCacheSize = statementCacheSize;
+  }
+
+  public boolean isServerPrepare() {
+    return serverPrepare;
+  }
+
+  /**
+   * @param serverPrepare {@code true} to have MySQL prepare statements on the server. This only
+   *        affects connections opened after it is set, and is ignored for other databases.
+   */
+  public void setServerPrepare(boolean serverPrepare) {
+    this.serverPrepare = serverPrepare;
+  }
+
+  public LongConsumer getAcquireListener() {
+    return acquireListener;
+  }
+
+  /**
+   * @param acquireListener Called with the number of nanoseconds each successful
+   *        {@link #getConnection()} took, including any time spent waiting for a connection, opening
+   *        one or validating it. It is called on the borrowing thread, so it must be fast and thread
+   *        safe. {@code null} (the default) turns this off.
+   */
+  public void setAcquireListener(LongConsumer acquireListener) {
+    this.acquireListener = acquireListener;
+  }
+
+  /**
+   * Credentials are part of the pool's URL, so a connection for a different user is not supported.
+   */
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    throw new SQLFeatureNotSupportedException("Credentials are set in the pool's URL.");
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return DriverManager.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    DriverManager.setLogWriter(out);
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    DriverManager.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return DriverManager.getLoginTimeout();
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if(iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+
+    throw new SQLException("Not a wrapper for " + iface.getName());
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this);
+  }
+
+  /**
+   * This holds a physical connection and the bookkeeping the pool needs for it.
+   *
+   * @author Promineo
+   *
+   */
+  private class PooledConnection {
+    final Connection physical;
+    final long createdAt = System.currentTimeMillis();
+    volatile long lastReturned;
+    volatile boolean broken;
+
+    /*
+     * The idle cached statements, least recently used first. Only the borrower uses this, so it
+     * needs no lock. A statement in use is not in the map.
+     */
+    @SuppressWarnings("serial")
+    final Map<List<Object>, CachedStatement> statements =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedStatement> eldest) {
+            if(size() > statementCacheSize) {
+              statementEvictions.increment();
+              eldest.getValue().closePhysical();
+              return true;
+            }
+
+            return false;
+          }
+        };
+
+    PooledConnection(Connection physical) {
+      this.physical = physical;
+    }
+
+    boolean isExpired(long now) {
+      return now - createdAt > maxLifetimeMillis;
+    }
+
+    /**
+     * Mark the connection broken if the exception is a connection exception (SQL state class 08),
+     * so it is not put back in the pool.
+     */
+    void checkBroken(Throwable cause) {
+      if(cause instanceof SQLException) {
+        String state = ((SQLException)cause).getSQLState();
+        broken |= Objects.nonNull(state) && state.startsWith("08");
+      }
+    }
+
+    /**
+     * Return a cached statement for the arguments to prepareStatement(), or prepare a new one.
+     *
+     * @param lease The borrower's lease of this connection.
+     * @param proxy The borrower's connection proxy, returned by the statement's getConnection().
+     * @param method The prepareStatement() overload that was called.
+     * @param args Its arguments.
+     * @return The statement proxy.
+     */
+    PreparedStatement prepare(Lease lease, Connection proxy, Method method, Object[] args)
+        throws ReflectiveOperationException, SQLException {
+      List<Object> key = statementKey(args);
+      CachedStatement cached = statements.remove(key);
+
+      /* A borrower may have closed the physical statement through unwrap(). */
+      if(Objects.nonNull(cached) && cached.physical.isClosed()) {
+        cached = null;
+      }
+
+      if(Objects.nonNull(cached)) {
+        statementHits.increment();
+      }
+      else {
+        statementMisses.increment();
+        cached = new CachedStatement(this, key, (PreparedStatement)method.invoke(physical, args));
+      }
+
+      return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+          new Class<?>[] {PreparedStatement.class}, new StatementLease(cached, lease, proxy));
+    }
+
+    /**
+     * Put a statement the borrower closed back in the cache, or close it if it can not be reused.
+     */
+    void recycle(CachedStatement cached) {
+      if(broken || statementCacheSize < 1 || statements.containsKey(cached.key)) {
+        cached.closePhysical();
+        return;
+      }
+
+      try {
+        cached.reset();
+        statements.put(cached.key, cached);
+      }
+      catch(SQLException e) {
+        checkBroken(e);
+        cached.closePhysical();
+      }
+    }
+
+    /**
+     * Hand this connection to a borrower. Each borrower gets its own proxy so that a borrower who
+     * keeps a reference after closing it cannot use the connection while someone else has it.
+     *
+     * @return The proxy the borrower uses.
+     */
+    Connection lease() {
+      return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+          new Class<?>[] {Connection.class}, new Lease(this));
+    }
+  }
+
+  /**
+   * This is the proxy handler for one borrow of a pooled connection. It turns
+   * {@link Connection#close()} into a return to the pool and passes everything else to the physical
+   * connection.
+   *
+   * @author Promineo
+   *
+   */
+  private class Lease implements InvocationHandler {
+    private final PooledConnection pooled;
+    private final DbEvents.ConnectionClosed held = new DbEvents.ConnectionClosed();
+
+    /* Read by the statements of this lease, which an async task may cancel from another thread. */
+    private volatile boolean returned;
+
+    Lease(PooledConnection pooled) {
+      this.pooled = pooled;
+      held.begin();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch(method.getName()) {
+        case "close":
+          if(!returned) {
+            returned = true;
+            giveBack(pooled);
+
+            if(held.shouldCommit()) {
+              held.pool = name;
+              held.commit();
+            }
+          }
+
+          return null;
+
+        case "isClosed":
+          return returned || pooled.physical.isClosed();
+
+        case "equals":
+          return proxy == args[0];
+
+        case "hashCode":
+          return System.identityHashCode(proxy);
+
+        case "toString":
+          return "Pooled[" + pooled.physical + "]";
+
+        default:
+          break;
+      }
+
+      if(returned) {
+        throw new SQLException("The connection has been returned to the pool.");
+      }
+
+      try {
+        Object result;
+
+        if(statementCacheSize > 0 && method.getName().equals("prepareStatement")) {
+          result = pooled.prepare(this, (Connection)proxy, method, args);
+        }
+        else {
+          result = method.invoke(pooled.physical, args);
+        }
+
+        /* Let an async task cancel the statements it creates. */
+        if(result instanceof Statement) {
+          AsyncExecutor.track((Statement)result);
+        }
+
+        return result;
+      }
+      catch(InvocationTargetException e) {
+        Throwable cause = e.getCause();
+
+        /* SQL state class 08 is a connection exception. Don't put this one back in the pool. */
+        pooled.checkBroken(cause);
+        throw cause;
+      }
+    }
+  }
+
+  /**
+   * Build the cache key for the arguments to one of the prepareStatement() overloads: the SQL text
+   * followed by the other arguments, with arrays (column names or indexes) turned into lists so
+   * they compare by value.
+   */
+  private static List<Object> statementKey(Object[] args) {
+    List<Object> key = new ArrayList<>(args.length);
+
+    for(Object arg : args) {
+      if(arg instanceof int[]) {
+        key.add(Arrays.toString((int[])arg));
+      }
+      else if(arg instanceof Object[]) {
+        key.add(Arrays.asList((Object[])arg));
+      }
+      else {
+        key.add(arg);
+      }
+    }
+
+    return key;
+  }
+
+  /**
+   * This is a physical prepared statement kept in a connection's statement cache, with the settings
+   * it had when it was prepared. The settings are put back each time the statement is returned to
+   * the cache, so a borrower that changes the fetch size (for streaming, for example) does not
+   * affect the next one.
+   *
+   * @author Promineo
+   *
+   */
+  private static class CachedStatement {
+    final PooledConnection owner;
+    final List<Object> key;
+    final PreparedStatement physical;
+    final int fetchSize;
+    final int maxRows;
+    final int queryTimeout;
+
+    CachedStatement(PooledConnection owner, List<Object> key, PreparedStatement physical)
+        throws SQLException {
+      this.owner = owner;
+      this.key = key;
+      this.physical = physical;
+      this.fetchSize = physical.getFetchSize();
+      this.maxRows = physical.getMaxRows();
+      this.queryTimeout = physical.getQueryTimeout();
+    }
+
+    void reset() throws SQLException {
+      physical.clearParameters();
+      physical.clearBatch();
+      physical.clearWarnings();
+      physical.setFetchSize(fetchSize);
+      physical.setMaxRows(maxRows);
+      physical.setQueryTimeout(queryTimeout);
+    }
+
+    void closePhysical() {
+      try {
+        physical.close();
+      }
+      catch(SQLException e) {
+        /* The statement is being thrown away. There is nothing useful to do with this. */
+      }
+    }
+  }
+
+  /**
+   * This is the proxy handler for one use of a cached statement. It turns
+   * {@link PreparedStatement#close()} into a return to the cache and passes everything else to the
+   * physical statement.
+   *
+   * @author Promineo
+   *
+   */
+  private static class StatementLease implements InvocationHandler {
+    private final CachedStatement cached;
+    private final Lease lease;
+    private final Connection connection;
+
+    /*
+     * Read by an async task's canceller on another thread. Closing and cancelling lock the lease, so
+     * a cancel can not reach the physical statement once it is back in the cache.
+     */
+    private volatile boolean closed;
+
+    StatementLease(CachedStatement cached, Lease lease, Connection connection) {
+      this.cached = cached;
+      this.lease = lease;
+      this.connection = connection;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch(method.getName()) {
+        case "close":
+          synchronized(this) {
+            if(closed) {
+              return null;
+            }
+
+            closed = true;
+          }
+
+          AsyncExecutor.untrack((Statement)proxy);
+
+          /*
+           * If the connection has already gone back to the pool, someone else may be using its
+           * cache, so the statement is closed instead.
+           */
+          if(lease.returned) {
+            cached.closePhysical();
+          }
+          else {
+            cached.owner.recycle(cached);
+          }
+
+          return null;
+
+        case "cancel":
+          synchronized(this) {
+            if(!closed) {
+              try {
+                cached.physical.cancel();
+              }
+              catch(SQLException e) {
+                cached.owner.checkBroken(e);
+                throw e;
+              }
+            }
+          }
+
+          return null;
+
+        case "isClosed":
+          return closed || cached.physical.isClosed();
+
+        case "getConnection":
+          return connection;
+
+        case "equals":
+          return proxy == args[0];
+
+        case "hashCode":
+          return System.identityHashCode(proxy);
+
+        case "toString":
+          return "Cached[" + cached.physical + "]";
+
+        default:
+          break;
+      }
+
+      if(closed) {
+        throw new SQLException("The statement has been closed.");
+      }
+
+      try {
+        return method.invoke(cached.physical, args);
+      }
+      catch(InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        cached.owner.checkBroken(cause);
+        throw cause;
+      }
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/**
+ *
+ */
+package provided.util;
+
+/**
+ * The JMX view of a {@link ConnectionPool}. Pools are published by
+ * {@link Metrics#registerPool(String, ConnectionPool)}.
+ *
+ * @author Promineo
+ *
+ */
+public interface ConnectionPoolMXBean {
+  /**
+   * @return The number of physical connections that are open, either idle or in use.
+   */
+  int getTotalConnections();
+
+  /**
+   * @return The number of physical connections that are open and not in use.
+   */
+  int getIdleConnections();
+
+  /**
+   * @return The number of connections borrowed and not yet returned.
+   */
+  int getActiveConnections();
+
+  /**
+   * @return The number of threads waiting for a connection because the pool is at its maximum size.
+   */
+  int getPendingRequests();
+
+  int getMinIdle();
+
+  int getMaxSize();
+
+  long getStatementCacheHits();
+
+  long getStatementCacheMisses();
+
+  long getStatementCacheEvictions();
+}
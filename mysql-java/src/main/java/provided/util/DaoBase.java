@@ -3,20 +3,33 @@
  */
 package provided.util;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Time;
-import java.sql.Timestamp;
 import java.sql.Types;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.sql.DataSource;
 
 /**
  * This class contains utility methods for the DAO class.
@@ -25,6 +38,55 @@ import java.util.Objects;
  *
  */
 public abstract class DaoBase {
+  /**
+   * The fetch size used by {@link #stream(String, List, Class)} for drivers other than MySQL.
+   * MySQL streams one row at a time instead (see the method).
+   */
+  private static final int STREAM_FETCH_SIZE = 1000;
+
+  /* The optional query cache used by query(). It is off (null) unless one is set. */
+  private static volatile QueryCache queryCache;
+
+  /*
+   * The tables written on each connection in its current transaction. They are invalidated in the
+   * query cache when the transaction commits. Only tracked while the query cache is on.
+   */
+  private static final Map<Connection, Set<String>> WRITTEN_TABLES =
+      Collections.synchronizedMap(new IdentityHashMap<>());
+
+  /*
+   * Transaction and row metrics, published over JMX by Metrics. A transaction is timed from
+   * startTransaction() (or the previous commit on the connection) to its commit or rollback. The
+   * start time and the transaction's flight recorder event are kept per thread, since a connection
+   * is used by one thread at a time.
+   */
+  private static final Metrics.Timer COMMITS = Metrics.timer("transactions.committed");
+  private static final Metrics.Timer ROLLBACKS = Metrics.timer("transactions.rolledBack");
+  private static final Metrics.Counter ROWS_INSERTED = Metrics.counter("rows.inserted");
+  private static final Metrics.Counter ROWS_UPDATED = Metrics.counter("rows.updated");
+  private static final Metrics.Counter ROWS_DELETED = Metrics.counter("rows.deleted");
+  private static final Metrics.Counter SCRIPT_STATEMENTS = Metrics.counter("script.statements");
+  private static final ThreadLocal<long[]> TRANSACTION_START =
+      ThreadLocal.withInitial(() -> new long[1]);
+  private static final ThreadLocal<DbEvents.Transaction> TRANSACTION_EVENT = new ThreadLocal<>();
+
+  /*
+   * The slow query log that statements are traced by. It is on by default, set up from the system
+   * properties described in SlowQueryLog, and published over JMX.
+   */
+  private static volatile SlowQueryLog slowQueryLog = defaultSlowQueryLog();
+
+  /* Traces statements for flight recorder events and query counters while the log is off. */
+  private static final SlowQueryLog UNLOGGED = unloggedSlowQueryLog();
+
+  /**
+   * This returns the source of connections for the DAO. It is used by methods that manage their
+   * own connection, like {@link #stream(String, List, Class)}.
+   * 
+   * @return The data source.
+   */
+  protected abstract DataSource getDataSource();
+
   /**
    * This starts a MySQL transaction. Normally MySQL starts a transaction before every request and
    * commits it after each request. By turning auto-commit off, the transaction is only committed
@@ -35,6 +97,8 @@ public abstract class DaoBase {
    */
   protected void startTransaction(Connection conn) throws SQLException {
     conn.setAutoCommit(false);
+    TRANSACTION_START.get()[0] = System.nanoTime();
+    beginTransactionEvent();
   }
 
   /**
@@ -45,6 +109,14 @@ public abstract class DaoBase {
    */
   protected void commitTransaction(Connection conn) throws SQLException {
     conn.commit();
+    transactionEnded(COMMITS, true);
+
+    Set<String> tables = WRITTEN_TABLES.remove(conn);
+    QueryCache cache = queryCache;
+
+    if(Objects.nonNull(tables) && Objects.nonNull(cache)) {
+      cache.invalidate(tables);
+    }
   }
 
   /**
@@ -54,7 +126,165 @@ public abstract class DaoBase {
    * @throws SQLException Thrown if an error occurs rolling back the transaction.
    */
   protected void rollbackTransaction(Connection conn) throws SQLException {
+    WRITTEN_TABLES.remove(conn);
     conn.rollback();
+    transactionEnded(ROLLBACKS, false);
+  }
+
+  /**
+   * Time the transaction that just ended and commit its flight recorder event. The next
+   * transaction on the connection starts now.
+   */
+  private static void transactionEnded(Metrics.Timer timer, boolean committed) {
+    long[] start = TRANSACTION_START.get();
+    long now = System.nanoTime();
+    DbEvents.Transaction event = TRANSACTION_EVENT.get();
+
+    timer.record(now - start[0]);
+    start[0] = now;
+
+    if(Objects.nonNull(event) && event.shouldCommit()) {
+      event.committed = committed;
+      event.commit();
+    }
+
+    beginTransactionEvent();
+  }
+
+  private static void beginTransactionEvent() {
+    DbEvents.Transaction event = new DbEvents.Transaction();
+    event.begin();
+    TRANSACTION_EVENT.set(event);
+  }
+
+  /**
+   * Turn on the query cache used by {@link #query(String, List, Class, Duration, String...)}, or
+   * turn it off. The cache is shared by every DAO.
+   * 
+   * @param cache The cache, or {@code null} to turn caching off.
+   */
+  public static void setQueryCache(QueryCache cache) {
+    queryCache = cache;
+    WRITTEN_TABLES.clear();
+  }
+
+  /**
+   * @return The query cache, or {@code null} if caching is off.
+   */
+  public static QueryCache getQueryCache() {
+    return queryCache;
+  }
+
+  /**
+   * Set the slow query log that statements prepared by the DAOs are traced by, and publish it over
+   * JMX, or turn logging off.
+   * 
+   * @param log The log, or {@code null} to stop logging slow statements. Statements are still
+   *        traced for their flight recorder events (see {@link DbEvents}) and for
+   *        {@link QueryCounter}s.
+   */
+  public static void setSlowQueryLog(SlowQueryLog log) {
+    slowQueryLog = log;
+
+    if(Objects.nonNull(log)) {
+      Metrics.registerSlowQueryLog("slowQueries", log);
+    }
+  }
+
+  /**
+   * @return The slow query log, or {@code null} if tracing is off.
+   */
+  public static SlowQueryLog getSlowQueryLog() {
+    return slowQueryLog;
+  }
+
+  private static SlowQueryLog defaultSlowQueryLog() {
+    SlowQueryLog log = SlowQueryLog.fromSystemProperties();
+    Metrics.registerSlowQueryLog("slowQueries", log);
+    return log;
+  }
+
+  private static SlowQueryLog unloggedSlowQueryLog() {
+    SlowQueryLog log = new SlowQueryLog(0, 1);
+    log.setSampleRate(0.0);
+    return log;
+  }
+
+  /**
+   * Prepare a statement that is traced by the slow query log (see
+   * {@link #setSlowQueryLog(SlowQueryLog)}). DAOs should prepare their statements with this instead
+   * of calling {@link Connection#prepareStatement(String)} themselves, so that a statement that
+   * stalls is logged with its SQL, parameters and calling method.
+   * 
+   * @param conn The connection.
+   * @param sql The SQL.
+   * @return The statement.
+   * @throws SQLException Thrown if the statement can not be prepared.
+   */
+  protected PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+    return traced(conn.prepareStatement(sql), sql);
+  }
+
+  /**
+   * Prepare a traced statement that can return generated keys.
+   * 
+   * @param conn The connection.
+   * @param sql The SQL.
+   * @param autoGeneratedKeys {@link Statement#RETURN_GENERATED_KEYS} or
+   *        {@link Statement#NO_GENERATED_KEYS}.
+   * @return The statement.
+   * @throws SQLException Thrown if the statement can not be prepared.
+   */
+  protected PreparedStatement prepareStatement(Connection conn, String sql, int autoGeneratedKeys)
+      throws SQLException {
+    return traced(conn.prepareStatement(sql, autoGeneratedKeys), sql);
+  }
+
+  /**
+   * Create a plain statement that is traced by the slow query log. The SQL of each execution is
+   * taken from the execute or addBatch call.
+   * 
+   * @param conn The connection.
+   * @return The statement.
+   * @throws SQLException Thrown if the statement can not be created.
+   */
+  protected Statement createStatement(Connection conn) throws SQLException {
+    SlowQueryLog log = slowQueryLog;
+    Statement stmt = conn.createStatement();
+
+    return (Objects.isNull(log) ? UNLOGGED : log).trace(stmt);
+  }
+
+  private static PreparedStatement traced(PreparedStatement stmt, String sql) {
+    SlowQueryLog log = slowQueryLog;
+    return (Objects.isNull(log) ? UNLOGGED : log).trace(stmt, sql);
+  }
+
+  /**
+   * Note that tables were written in the connection's transaction. When the transaction commits,
+   * the cached queries that read the tables are dropped. The entity methods in this class
+   * (insertEntity(), updateEntity(), etc.) call this for the entity's table. A DAO calls it for any
+   * other table it writes, including tables changed by ON DELETE CASCADE.
+   * 
+   * @param conn The connection.
+   * @param tables The table names.
+   */
+  protected void tablesWritten(Connection conn, String... tables) {
+    if(Objects.nonNull(queryCache)) {
+      WRITTEN_TABLES.computeIfAbsent(conn, c -> new HashSet<>()).addAll(Arrays.asList(tables));
+    }
+  }
+
+  /**
+   * Drop every cached query. Call this after statements that may have changed any table, like a
+   * script.
+   */
+  protected void invalidateQueryCache() {
+    QueryCache cache = queryCache;
+
+    if(Objects.nonNull(cache)) {
+      cache.invalidateAll();
+    }
   }
 
   /**
@@ -73,8 +303,22 @@ public abstract class DaoBase {
    */
   protected void setParameter(PreparedStatement stmt, int parameterIndex, Object value,
       Class<?> classType) throws SQLException {
-    int sqlType = convertJavaClassToSqlType(classType);
+    setParameter(stmt, parameterIndex, value, convertJavaClassToSqlType(classType));
+  }
 
+  /**
+   * This sets a parameter on a prepared statement using a java.sql.Types value that has already
+   * been looked up, for example from {@link EntityMetadata.Column#getSqlType()}. If the parameter is
+   * null, it is handled correctly.
+   * 
+   * @param stmt The prepared statement on which to set the parameter.
+   * @param parameterIndex This is the one-based index of the parameter.
+   * @param value The parameter value. This may be null.
+   * @param sqlType The java.sql.Types value of the parameter.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected void setParameter(PreparedStatement stmt, int parameterIndex, Object value,
+      int sqlType) throws SQLException {
     if(Objects.isNull(value)) {
       stmt.setNull(parameterIndex, sqlType);
     }
@@ -93,6 +337,7 @@ public abstract class DaoBase {
           break;
 
         case Types.OTHER:
+        case Types.TIMESTAMP:
           stmt.setObject(parameterIndex, value);
           break;
 
@@ -101,7 +346,7 @@ public abstract class DaoBase {
           break;
 
         default:
-          throw new DaoException("Unknown parameter type: " + classType);
+          throw new DaoException("Unknown parameter type: " + sqlType);
       }
     }
   }
@@ -112,7 +357,7 @@ public abstract class DaoBase {
    * @param classType The class type
    * @return A java.sql.Types value
    */
-  private int convertJavaClassToSqlType(Class<?> classType) {
+  static int convertJavaClassToSqlType(Class<?> classType) {
     if(Integer.class.equals(classType)) {
       return Types.INTEGER;
     }
@@ -133,9 +378,353 @@ public abstract class DaoBase {
       return Types.OTHER;
     }
 
+    if(LocalDateTime.class.equals(classType)) {
+      return Types.TIMESTAMP;
+    }
+
     throw new DaoException("Unsupported class type: " + classType.getName());
   }
 
+  /**
+   * @param classType The class type
+   * @return {@code true} if {@link #setParameter(PreparedStatement, int, Object, Class)} can bind a
+   *         value of this type.
+   */
+  static boolean isSupportedType(Class<?> classType) {
+    return Integer.class.equals(classType) || String.class.equals(classType)
+        || Double.class.equals(classType) || BigDecimal.class.equals(classType)
+        || LocalTime.class.equals(classType) || LocalDateTime.class.equals(classType);
+  }
+
+  /**
+   * Insert an entity using the INSERT statement held in its {@link EntityMetadata}. The ID
+   * generated by the database is read from {@link Statement#getGeneratedKeys()} and set in the
+   * entity. The caller manages the transaction.
+   * 
+   * @param <T> The entity type.
+   * @param conn The connection.
+   * @param entity The entity to insert.
+   * @return The entity, with its ID set.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  @SuppressWarnings("unchecked")
+  protected <T> T insertEntity(Connection conn, T entity) throws SQLException {
+    EntityMetadata<T> meta = EntityMetadata.of((Class<T>)entity.getClass());
+
+    try(PreparedStatement stmt =
+        prepareStatement(conn, meta.getInsertSql(), Statement.RETURN_GENERATED_KEYS)) {
+      bindWritableColumns(stmt, meta, entity);
+      ROWS_INSERTED.add(stmt.executeUpdate());
+      tablesWritten(conn, meta.getTableName());
+
+      try(ResultSet rs = stmt.getGeneratedKeys()) {
+        if(!rs.next()) {
+          throw new SQLException("Unable to retrieve the primary key value. No result set!");
+        }
+
+        meta.setId(entity, rs.getInt(1));
+      }
+    }
+
+    return entity;
+  }
+
+  /**
+   * Insert a list of entities of the same class with a single prepared statement. Every row is added
+   * to a JDBC batch, the batch is sent with one call to {@link Statement#executeBatch()}, and the
+   * generated IDs are read back from {@link Statement#getGeneratedKeys()} and set in the entities in
+   * list order. With the MySQL driver option rewriteBatchedStatements=true, the batch is sent as a
+   * multi-row INSERT, so this is a single round trip. The caller manages the transaction.
+   * 
+   * @param <T> The entity type.
+   * @param conn The connection.
+   * @param entities The entities to insert. Their IDs are set when this returns.
+   * @param classType The entity class.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected <T> void insertEntities(Connection conn, List<? extends T> entities,
+      Class<T> classType) throws SQLException {
+    if(entities.isEmpty()) {
+      return;
+    }
+
+    EntityMetadata<T> meta = EntityMetadata.of(classType);
+
+    try(PreparedStatement stmt =
+        prepareStatement(conn, meta.getInsertSql(), Statement.RETURN_GENERATED_KEYS)) {
+      for(T entity : entities) {
+        bindWritableColumns(stmt, meta, entity);
+        stmt.addBatch();
+      }
+
+      stmt.executeBatch();
+      ROWS_INSERTED.add(entities.size());
+      tablesWritten(conn, meta.getTableName());
+
+      try(ResultSet rs = stmt.getGeneratedKeys()) {
+        for(T entity : entities) {
+          if(!rs.next()) {
+            throw new SQLException("Expected " + entities.size()
+                + " generated keys from the batch insert into " + meta.getTableName());
+          }
+
+          meta.setId(entity, rs.getInt(1));
+        }
+      }
+    }
+  }
+
+  /**
+   * Insert a large list of entities in chunks. Each chunk is inserted by
+   * {@link #insertEntities(Connection, List, Class)} and then committed, so the database never holds
+   * more than one chunk of uncommitted rows. If a chunk fails, the chunks before it stay committed
+   * and the exception is thrown; the caller should roll back to discard the failed chunk. The
+   * connection must be in a transaction (see {@link #startTransaction(Connection)}).
+   * 
+   * @param <T> The entity type.
+   * @param conn The connection.
+   * @param entities The entities to insert. Their IDs are set when this returns.
+   * @param classType The entity class.
+   * @param chunkSize The number of rows per batch and per commit.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected <T> void insertEntitiesInChunks(Connection conn, List<? extends T> entities,
+      Class<T> classType, int chunkSize) throws SQLException {
+    if(chunkSize < 1) {
+      throw new DaoException("The chunk size must be at least 1, not " + chunkSize);
+    }
+
+    for(int from = 0; from < entities.size(); from += chunkSize) {
+      int to = Math.min(from + chunkSize, entities.size());
+
+      insertEntities(conn, entities.subList(from, to), classType);
+      commitTransaction(conn);
+    }
+  }
+
+  /**
+   * Insert rows into a join table (like recipe_category) that links one parent row to many child
+   * rows. All rows are sent in one batch. The caller manages the transaction.
+   * 
+   * @param conn The connection.
+   * @param sql An INSERT statement with two parameters: the parent ID and the child ID, in that
+   *        order.
+   * @param parentId The parent ID.
+   * @param childIds The child IDs.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected void insertJoinRows(Connection conn, String sql, Integer parentId,
+      List<Integer> childIds) throws SQLException {
+    if(childIds.isEmpty()) {
+      return;
+    }
+
+    try(PreparedStatement stmt = prepareStatement(conn, sql)) {
+      for(Integer childId : childIds) {
+        setParameter(stmt, 1, parentId, Types.INTEGER);
+        setParameter(stmt, 2, childId, Types.INTEGER);
+        stmt.addBatch();
+      }
+
+      stmt.executeBatch();
+      ROWS_INSERTED.add(childIds.size());
+    }
+  }
+
+  /**
+   * Build the placeholder list for an SQL IN clause, like "(?, ?, ?, ?)". The number of
+   * placeholders is rounded up to the next power of two, so a query for 3 IDs and a query for 4 IDs
+   * have the same statement text. This keeps the number of distinct statements (and so the number
+   * of statements the database has to parse) small. Use
+   * {@link #setInListParameters(PreparedStatement, int, List)} to set the values.
+   * 
+   * @param count The number of values in the list. This must be at least one.
+   * @return The placeholder list, including the parentheses.
+   */
+  protected String inList(int count) {
+    int size = paddedInListSize(count);
+    StringBuilder builder = new StringBuilder(size * 3 + 1).append('(');
+
+    for(int index = 0; index < size; index++) {
+      builder.append(index == 0 ? "?" : ", ?");
+    }
+
+    return builder.append(')').toString();
+  }
+
+  /**
+   * Set the values of an IN list built by {@link #inList(int)}. The unused placeholders are filled
+   * with the last value, which does not change the result of the query.
+   * 
+   * @param stmt The statement.
+   * @param firstIndex The parameter index of the first placeholder in the list.
+   * @param values The values. There must be at least one.
+   * @return The parameter index after the list.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected int setInListParameters(PreparedStatement stmt, int firstIndex, List<Integer> values)
+      throws SQLException {
+    int size = paddedInListSize(values.size());
+    Integer last = values.get(values.size() - 1);
+    int index = 0;
+
+    for(Integer value : values) {
+      setParameter(stmt, firstIndex + index++, value, Types.INTEGER);
+    }
+
+    while(index < size) {
+      setParameter(stmt, firstIndex + index++, last, Types.INTEGER);
+    }
+
+    return firstIndex + size;
+  }
+
+  private static int paddedInListSize(int count) {
+    if(count < 1) {
+      throw new DaoException("An IN list must have at least one value.");
+    }
+
+    return count == 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+  }
+
+  /**
+   * Run every statement in an SQL script. Statements are read one at a time and sent to the
+   * database in JDBC batches of up to chunkSize statements. Each batch is committed after it runs,
+   * so neither the script nor the uncommitted work is ever held in memory all at once. If a batch
+   * fails, the batches before it stay committed; the caller should roll back. The connection must be
+   * in a transaction (see {@link #startTransaction(Connection)}).
+   * 
+   * @param conn The connection.
+   * @param script The script.
+   * @param chunkSize The number of statements per batch.
+   * @return The number of statements run.
+   * @throws SQLException Thrown if a statement fails.
+   * @throws IOException Thrown if the script can not be read.
+   */
+  protected int executeScript(Connection conn, SqlScriptReader script, int chunkSize)
+      throws SQLException, IOException {
+    if(chunkSize < 1) {
+      throw new DaoException("The chunk size must be at least 1, not " + chunkSize);
+    }
+
+    int total = 0;
+
+    try(Statement stmt = createStatement(conn)) {
+      int pending = 0;
+      String sql;
+
+      while((sql = script.nextStatement()) != null) {
+        stmt.addBatch(sql);
+
+        if(++pending == chunkSize) {
+          stmt.executeBatch();
+          commitTransaction(conn);
+          SCRIPT_STATEMENTS.add(pending);
+          total += pending;
+          pending = 0;
+        }
+      }
+
+      if(pending > 0) {
+        stmt.executeBatch();
+        commitTransaction(conn);
+        SCRIPT_STATEMENTS.add(pending);
+        total += pending;
+      }
+    }
+
+    return total;
+  }
+
+  /**
+   * Update an entity's row using the UPDATE statement held in its {@link EntityMetadata}. The
+   * caller manages the transaction.
+   * 
+   * @param <T> The entity type.
+   * @param conn The connection.
+   * @param entity The entity to update. Its ID must be set.
+   * @return {@code true} if a row was updated, {@code false} if no row has the entity's ID.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  @SuppressWarnings("unchecked")
+  protected <T> boolean updateEntity(Connection conn, T entity) throws SQLException {
+    EntityMetadata<T> meta = EntityMetadata.of((Class<T>)entity.getClass());
+
+    try(PreparedStatement stmt = prepareStatement(conn, meta.getUpdateSql())) {
+      int index = bindWritableColumns(stmt, meta, entity);
+      setParameter(stmt, index, meta.getId(entity), meta.getIdColumn().getSqlType());
+      tablesWritten(conn, meta.getTableName());
+
+      int rows = stmt.executeUpdate();
+      ROWS_UPDATED.add(rows);
+      return rows == 1;
+    }
+  }
+
+  /**
+   * Fetch an entity by ID using the SELECT statement held in its {@link EntityMetadata}.
+   * 
+   * @param <T> The entity type.
+   * @param conn The connection.
+   * @param classType The entity class.
+   * @param id The ID.
+   * @return The entity, or {@link Optional#empty()} if no row has the ID.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected <T> Optional<T> fetchEntityById(Connection conn, Class<T> classType, Object id)
+      throws SQLException {
+    EntityMetadata<T> meta = EntityMetadata.of(classType);
+
+    try(PreparedStatement stmt = prepareStatement(conn, meta.getSelectByIdSql())) {
+      setParameter(stmt, 1, id, meta.getIdColumn().getSqlType());
+
+      try(ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? Optional.of(extract(rs, classType)) : Optional.empty();
+      }
+    }
+  }
+
+  /**
+   * Delete an entity's row by ID using the DELETE statement held in its {@link EntityMetadata}.
+   * The caller manages the transaction.
+   * 
+   * @param <T> The entity type.
+   * @param conn The connection.
+   * @param classType The entity class.
+   * @param id The ID.
+   * @return {@code true} if a row was deleted.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected <T> boolean deleteEntityById(Connection conn, Class<T> classType, Object id)
+      throws SQLException {
+    EntityMetadata<T> meta = EntityMetadata.of(classType);
+
+    try(PreparedStatement stmt = prepareStatement(conn, meta.getDeleteByIdSql())) {
+      setParameter(stmt, 1, id, meta.getIdColumn().getSqlType());
+      tablesWritten(conn, meta.getTableName());
+
+      int rows = stmt.executeUpdate();
+      ROWS_DELETED.add(rows);
+      return rows == 1;
+    }
+  }
+
+  /**
+   * Set the writable column values of an entity as statement parameters, starting at parameter 1.
+   * 
+   * @return The index of the next unused parameter.
+   */
+  private <T> int bindWritableColumns(PreparedStatement stmt, EntityMetadata<T> meta, T entity)
+      throws SQLException {
+    int index = 1;
+
+    for(EntityMetadata.Column column : meta.getWritableColumns()) {
+      setParameter(stmt, index++, column.getValue(entity), column.getSqlType());
+    }
+
+    return index;
+  }
+
   /**
    * This retrieves the number of child rows and adds one to the value. It is used to set the order
    * of a child row. For a *real* application, a more sophisticated approach is desired. This method
@@ -147,12 +736,15 @@ public abstract class DaoBase {
    * @param idName The name of the parent ID field
    * @return The count of the entities attached to the parent plus one
    * @throws SQLException Thrown if an error occurs.
+   * @deprecated This runs a COUNT(*) query per child and gives two concurrent writers the same
+   *             number. Use {@link ChildOrderAllocator} instead.
    */
+  @Deprecated
   protected Integer getNextSequenceNumber(Connection conn, Integer id, String tableName,
       String idName) throws SQLException {
     String sql = "SELECT COUNT(*) FROM " + tableName + " WHERE " + idName + " = ?";
 
-    try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+    try(PreparedStatement stmt = prepareStatement(conn, sql)) {
       setParameter(stmt, 1, id, Integer.class);
 
       try(ResultSet rs = stmt.executeQuery()) {
@@ -181,7 +773,7 @@ public abstract class DaoBase {
   protected Integer getLastInsertId(Connection conn, String table) throws SQLException {
     String sql = String.format("SELECT LAST_INSERT_ID() FROM %s", table);
 
-    try(Statement stmt = conn.createStatement()) {
+    try(Statement stmt = createStatement(conn)) {
       try(ResultSet rs = stmt.executeQuery(sql)) {
         if(rs.next()) {
           return rs.getInt(1);
@@ -194,17 +786,19 @@ public abstract class DaoBase {
 
   /**
    * This extracts an object of the given type from a result set. The object must have a
-   * zero-argument constructor. It builds an object from a result set using reflection as follows:
+   * zero-argument constructor. It builds an object from a result set as follows:
    * <ol>
-   * <li>The zero-argument constructor is obtained.</li>
-   * <li>An object of the given class type is created.</li>
-   * <li>A list of fields is obtained using reflection.</li>
-   * <li>The field name is converted from Java naming to SQL naming conventions (camel case to snake
+   * <li>The zero-argument constructor is called to create an object of the given class type.</li>
+   * <li>Each field name is converted from Java naming to SQL naming conventions (camel case to snake
    * case). Obviously, for this to work, the Java name must match the column name. So, if the Java
    * name is numServings, the column name must be num_servings.</li>
-   * <li>The value is assigned to the field in the object.</li>
+   * <li>The column value is assigned to the field in the object.</li>
    * </ol>
    * 
+   * The reflection needed to do this is done once per class and result set shape by
+   * {@link RowMapper}, which caches the result. Extracting a row only reads the matching columns by
+   * index.
+   * 
    * Example: if a query returns values for a recipe, a Recipe object is returned. So:
    * 
    * <pre>
@@ -231,80 +825,227 @@ public abstract class DaoBase {
    * @return A populated class.
    */
   protected <T> T extract(ResultSet rs, Class<T> classType) {
+    return RowMapper.forResultSet(rs, classType).map(rs);
+  }
+
+  /**
+   * This returns the cached mapper for the given class and result set. A loop that reads more than
+   * one entity type from each row (a join, for example) can look up its mappers once before the loop
+   * and call {@link RowMapper#map(ResultSet)} on each row.
+   * 
+   * @param <T> The type of object to create.
+   * @param rs The result set.
+   * @param classType The class to map rows to.
+   * @return The mapper.
+   */
+  protected <T> RowMapper<T> mapperFor(ResultSet rs, Class<T> classType) {
+    return RowMapper.forResultSet(rs, classType);
+  }
+
+  /**
+   * Run a query and return its rows as a lazily populated stream. Rows are read from the database
+   * only as the stream is consumed, and each row is mapped by {@link #extract(ResultSet, Class)}, so
+   * a query that returns millions of rows can be processed with constant memory.
+   * 
+   * The query runs on its own connection, with a forward-only, read-only statement. For MySQL, the
+   * fetch size is set to {@link Integer#MIN_VALUE}, which tells the driver to stream the rows one at
+   * a time instead of reading the whole result into memory. While the rows are streaming, the
+   * connection can not be used for anything else, which is why it is not shared with the caller.
+   * 
+   * The result set, statement and connection are closed when the stream is closed, or when the last
+   * row has been read. <b>Always close the stream</b>, since a stream that is not read to the end
+   * holds a connection until it is closed:
+   * 
+   * <pre>
+   * try(Stream&lt;Ingredient&gt; ingredients = stream(sql, List.of(), Ingredient.class)) {
+   *   ingredients.forEach(...);
+   * }
+   * </pre>
+   * 
+   * @param <T> The type of object to create for each row.
+   * @param sql The query.
+   * @param params The parameter values, in order. The SQL type of each parameter is taken from the
+   *        class of the value. A null value is sent as SQL NULL.
+   * @param classType The class to map rows to.
+   * @return The stream of rows.
+   * @throws DaoException Thrown if the query can not be run.
+   */
+  protected <T> Stream<T> stream(String sql, List<?> params, Class<T> classType) {
+    Connection conn = null;
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+
     try {
-      /* Obtain the constructor and create an object of the correct type. */
-      Constructor<T> con = classType.getConstructor();
-      T obj = con.newInstance();
-
-      /* Get the list of fields and loop through them. */
-      for(Field field : classType.getDeclaredFields()) {
-        String colName = camelCaseToSnakeCase(field.getName());
-        Class<?> fieldType = field.getType();
-
-        /*
-         * Set the field accessible flag which means that we can populate even private fields
-         * without using the setter.
-         */
-        field.setAccessible(true);
-        Object fieldValue = null;
+      conn = getDataSource().getConnection();
+      stmt = traced(conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+          ResultSet.CONCUR_READ_ONLY), sql);
 
-        try {
-          fieldValue = rs.getObject(colName);
-        }
-        catch(SQLException e) {
-          /*
-           * An exception caught here means that the field name isn't in the result set. Don't take
-           * any action.
-           */
-        }
+      boolean mysql = conn.getMetaData().getDriverName().startsWith("MySQL");
+      stmt.setFetchSize(mysql ? Integer.MIN_VALUE : STREAM_FETCH_SIZE);
 
-        /*
-         * Only set the value in the object if there is a value with the same name in the result
-         * set. This will preserve instance variables (like lists) that are assigned values when the
-         * object is created.
-         */
-        if(Objects.nonNull(fieldValue)) {
-          /*
-           * Convert the following types: Time -> LocalTime, and Timestamp -> LocalDateTime.
-           */
-          if(fieldValue instanceof Time && fieldType.equals(LocalTime.class)) {
-            fieldValue = ((Time)fieldValue).toLocalTime();
-          }
-          else if(fieldValue instanceof Timestamp && fieldType.equals(LocalDateTime.class)) {
-            fieldValue = ((Timestamp)fieldValue).toLocalDateTime();
-          }
+      setParameters(stmt, params);
+      rs = stmt.executeQuery();
+    }
+    catch(SQLException | RuntimeException e) {
+      DaoException exception = new DaoException("Unable to run query: " + sql, e);
+      closeQuietly(exception, rs, stmt, conn);
+      throw exception;
+    }
+
+    RowSpliterator<T> rows = new RowSpliterator<>(conn, stmt, rs, classType);
+    return StreamSupport.stream(rows, false).onClose(rows::close);
+  }
+
+  /**
+   * Run a query and return all of its rows. If the query cache is on (see
+   * {@link #setQueryCache(QueryCache)}), the rows are cached under the SQL text and parameter
+   * values, and the same query with the same parameters returns the cached rows until the TTL
+   * passes or a write to one of the tables is committed. If the cache is off, the query is simply
+   * run.
+   * 
+   * The query runs on its own connection, in auto-commit mode. Use this for list and search queries
+   * that are run often with the same parameters.
+   * 
+   * @param <T> The type of object to create for each row.
+   * @param sql The query.
+   * @param params The parameter values, in order. The SQL type of each parameter is taken from the
+   *        class of the value. A null value is sent as SQL NULL.
+   * @param classType The class to map rows to.
+   * @param ttl How long the rows may be cached.
+   * @param tables Every table the query reads. A committed write to any of them drops the rows.
+   * @return The rows. The list can not be changed, and when it comes from the cache, the entities
+   *         in it are shared, so they must not be changed either.
+   * @throws DaoException Thrown if the query fails.
+   */
+  protected <T> List<T> query(String sql, List<?> params, Class<T> classType, Duration ttl,
+      String... tables) {
+    QueryCache cache = queryCache;
+
+    if(Objects.isNull(cache)) {
+      try {
+        return Collections.unmodifiableList(readAll(sql, params, classType));
+      }
+      catch(SQLException e) {
+        throw new DaoException("Unable to run query: " + sql, e);
+      }
+    }
+
+    return cache.get(getDataSource(), sql, params, ttl, Arrays.asList(tables),
+        () -> readAll(sql, params, classType));
+  }
+
+  private <T> List<T> readAll(String sql, List<?> params, Class<T> classType)
+      throws SQLException {
+    List<T> rows = new ArrayList<>();
+
+    try(Connection conn = getDataSource().getConnection();
+        PreparedStatement stmt = prepareStatement(conn, sql)) {
+      setParameters(stmt, params);
+
+      try(ResultSet rs = stmt.executeQuery()) {
+        RowMapper<T> mapper = mapperFor(rs, classType);
 
-          field.set(obj, fieldValue);
+        while(rs.next()) {
+          rows.add(mapper.map(rs));
         }
       }
+    }
+
+    return rows;
+  }
 
-      return obj;
+  /**
+   * Set the parameters of a statement from a list of values, taking the SQL type of each from the
+   * class of the value. A null value is sent as SQL NULL.
+   */
+  private void setParameters(PreparedStatement stmt, List<?> params) throws SQLException {
+    int index = 1;
 
+    for(Object value : params) {
+      if(Objects.isNull(value)) {
+        stmt.setNull(index++, Types.NULL);
+      }
+      else {
+        setParameter(stmt, index++, value, value.getClass());
+      }
     }
-    catch(Exception e) {
-      throw new DaoException("Unable to create object of type " + classType.getName(), e);
+  }
+
+  /**
+   * Close resources in order, adding any exceptions as suppressed exceptions of the given one.
+   */
+  private static void closeQuietly(Exception exception, AutoCloseable... resources) {
+    for(AutoCloseable resource : resources) {
+      if(Objects.nonNull(resource)) {
+        try {
+          resource.close();
+        }
+        catch(Exception e) {
+          exception.addSuppressed(e);
+        }
+      }
     }
   }
 
   /**
-   * This converts a camel case value (rowInsertTime) to snake case (row_insert_time).
-   * 
-   * @param identifier The name in camel case to convert.
-   * @return The name converted to snake case.
+   * This feeds the rows of an open result set to a stream, one row per call to
+   * {@link #tryAdvance(Consumer)}. It owns the result set, statement and connection and closes them
+   * once.
    */
-  private String camelCaseToSnakeCase(String identifier) {
-    StringBuilder nameBuilder = new StringBuilder();
+  private static class RowSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+    private final Connection conn;
+    private final PreparedStatement stmt;
+    private final ResultSet rs;
+    private final Class<T> classType;
+    private RowMapper<T> mapper;
+    private boolean closed;
+
+    RowSpliterator(Connection conn, PreparedStatement stmt, ResultSet rs, Class<T> classType) {
+      super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+      this.conn = conn;
+      this.stmt = stmt;
+      this.rs = rs;
+      this.classType = classType;
+    }
 
-    for(char ch : identifier.toCharArray()) {
-      if(Character.isUpperCase(ch)) {
-        nameBuilder.append('_').append(Character.toLowerCase(ch));
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      if(closed) {
+        return false;
       }
-      else {
-        nameBuilder.append(ch);
+
+      try {
+        if(!rs.next()) {
+          close();
+          return false;
+        }
+
+        if(Objects.isNull(mapper)) {
+          mapper = RowMapper.forResultSet(rs, classType);
+        }
+
+        action.accept(mapper.map(rs));
+        return true;
+      }
+      catch(SQLException e) {
+        throw new DaoException("Unable to read the next row of " + classType.getName(), e);
       }
     }
 
-    return nameBuilder.toString();
+    void close() {
+      if(closed) {
+        return;
+      }
+
+      closed = true;
+
+      DaoException exception = new DaoException("Unable to close the query result set");
+      closeQuietly(exception, rs, stmt, conn);
+
+      if(exception.getSuppressed().length > 0) {
+        throw exception;
+      }
+    }
   }
 
   /**
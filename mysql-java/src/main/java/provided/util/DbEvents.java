@@ -0,0 +1,126 @@
+/**
+ *
+ */
+package provided.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * These are the Java Flight Recorder events of the data layer. They show connection, transaction
+ * and statement times in a recording next to the JVM's own events, so a slow DAO call can be lined
+ * up with the GC pauses, lock contention and I/O around it.
+ * <ul>
+ * <li>{@link ConnectionAcquired}: a connection was borrowed from a {@link ConnectionPool}. The
+ * duration is the time spent waiting for it.</li>
+ * <li>{@link ConnectionClosed}: a borrowed connection was returned to its pool. The duration is the
+ * time it was held.</li>
+ * <li>{@link Transaction}: a transaction started by {@link DaoBase} was committed or rolled
+ * back.</li>
+ * <li>{@link StatementExecuted}: a statement prepared by {@link DaoBase} was executed.</li>
+ * </ul>
+ *
+ * Each event has a default threshold, so a recording with the JDK's default settings only has the
+ * slow ones. The thresholds can be changed in a .jfc file. src/main/resources/jfr/database.jfc
+ * lowers them to show most database calls, and is used on top of the JDK's settings:
+ *
+ * <pre>
+ * java -XX:StartFlightRecording=settings=default,settings=database.jfc,filename=app.jfr ...
+ * </pre>
+ *
+ * @author Promineo
+ *
+ */
+public final class DbEvents {
+  static final String CATEGORY = "Database";
+
+  private DbEvents() {
+  }
+
+  /**
+   * A connection was borrowed from a pool.
+   */
+  @Name("provided.util.ConnectionAcquired")
+  @Label("Connection Acquired")
+  @Description("A connection was borrowed from a connection pool")
+  @Category(CATEGORY)
+  @Threshold("10 ms")
+  @StackTrace(false)
+  public static class ConnectionAcquired extends Event {
+    @Label("Pool")
+    String pool;
+
+    @Label("Active Connections")
+    @Description("The connections in use, including this one")
+    int activeConnections;
+
+    @Label("Pending Requests")
+    @Description("The threads still waiting for a connection")
+    int pendingRequests;
+  }
+
+  /**
+   * A borrowed connection was returned to its pool.
+   */
+  @Name("provided.util.ConnectionClosed")
+  @Label("Connection Closed")
+  @Description("A borrowed connection was returned to its pool. The duration is the time it was "
+      + "held.")
+  @Category(CATEGORY)
+  @Threshold("100 ms")
+  public static class ConnectionClosed extends Event {
+    @Label("Pool")
+    String pool;
+  }
+
+  /**
+   * A transaction was committed or rolled back.
+   */
+  @Name("provided.util.Transaction")
+  @Label("Transaction")
+  @Description("A transaction was committed or rolled back")
+  @Category(CATEGORY)
+  @Threshold("20 ms")
+  public static class Transaction extends Event {
+    @Label("Committed")
+    @Description("True if the transaction was committed, false if it was rolled back")
+    boolean committed;
+  }
+
+  /**
+   * A statement was executed.
+   */
+  @Name("provided.util.StatementExecuted")
+  @Label("Statement Executed")
+  @Description("A statement was executed. Literal values in the SQL are replaced by ?.")
+  @Category(CATEGORY)
+  @Threshold("20 ms")
+  public static class StatementExecuted extends Event {
+    @Label("SQL Fingerprint")
+    String fingerprint;
+
+    @Label("Method")
+    @Description("The JDBC method called, like executeUpdate")
+    String method;
+
+    @Label("Rows")
+    @Description("The rows inserted, updated or deleted, or -1 for a query or if not known")
+    long rows;
+
+    @Label("Batch Size")
+    @Description("The statements or rows in the batch, or 0 if not a batch")
+    int batchSize;
+
+    @Label("Parameters")
+    @Description("The number of bound parameters")
+    int parameters;
+
+    @Label("Failed")
+    boolean failed;
+  }
+}
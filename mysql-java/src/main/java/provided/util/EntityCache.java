@@ -0,0 +1,307 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This is a size-bounded cache of fully assembled entities (a recipe with its ingredients, steps and
+ * categories, for example) keyed by ID. It sits in front of a DAO's fetch methods, so a recipe that
+ * is read over and over is read from the database once.
+ * <ul>
+ * <li><b>Size:</b> the cache holds at most maxSize entries. When it is full, the least recently
+ * used entry is evicted. To keep threads from waiting on each other, the cache is split into
+ * segments by key, each with its own lock and its own share of the size. So the least recently used
+ * entry is chosen per segment, which is close to, but not exactly, global LRU.</li>
+ * <li><b>Time to live:</b> an entry is dropped when it is older than the TTL, so changes made
+ * outside this JVM are seen within the TTL.</li>
+ * <li><b>Invalidation:</b> the DAO calls {@link #invalidate(Object)} after every committed insert,
+ * update or delete of an entity, and {@link #invalidateAll()} after anything that may change many
+ * of them (like running a script).</li>
+ * <li><b>Statistics:</b> hits, misses and evictions are counted. See {@link #getStats()}.</li>
+ * </ul>
+ *
+ * A read that misses loads from the database and then adds the entity to the cache. If an
+ * invalidation happens while it is loading, what it read may already be stale. To avoid caching it,
+ * the reader takes a {@link #stamp()} before it reads, and {@link #put(Object, Object, long)} drops
+ * the entity if anything was invalidated since the stamp.
+ *
+ * <b>Cached entities are shared by every caller, so they must be treated as read-only.</b>
+ *
+ * @author Promineo
+ *
+ * @param <K> The key type.
+ * @param <V> The entity type.
+ */
+public class EntityCache<K, V> {
+  private static final int MAX_SEGMENTS = 16;
+
+  private final Segment<K, V>[] segments;
+  private final long ttlNanos;
+  private final int maxSize;
+
+  private final AtomicLong generation = new AtomicLong();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * @param maxSize The most entries held.
+   * @param ttl The time to live of an entry.
+   */
+  @SuppressWarnings("unchecked")
+  public EntityCache(int maxSize, Duration ttl) {
+    if(maxSize < 1) {
+      throw new DaoException("The cache size must be at least 1, not " + maxSize);
+    }
+
+    /* A power of two, and no more segments than entries. */
+    int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize));
+
+    this.maxSize = maxSize;
+    this.ttlNanos = ttl.toNanos();
+    this.segments = (Segment<K, V>[])new Segment<?, ?>[count];
+
+    /* Spread the size over the segments, giving the remainder to the first ones. */
+    for(int index = 0; index < count; index++) {
+      int capacity = maxSize / count + (index < maxSize % count ? 1 : 0);
+      segments[index] = new Segment<>(capacity, evictions);
+    }
+  }
+
+  /**
+   * @param key The key.
+   * @return The cached entity, or {@code null} if it is not cached or has expired.
+   */
+  public V get(K key) {
+    V value = segmentFor(key).get(key, System.nanoTime());
+
+    if(Objects.isNull(value)) {
+      misses.increment();
+    }
+    else {
+      hits.increment();
+    }
+
+    return value;
+  }
+
+  /**
+   * Take a stamp before reading an entity from the database. Pass it to
+   * {@link #put(Object, Object, long)}.
+   *
+   * @return The stamp.
+   */
+  public long stamp() {
+    return generation.get();
+  }
+
+  /**
+   * Add an entity read from the database, unless something was invalidated after the stamp was
+   * taken.
+   *
+   * @param key The key.
+   * @param value The entity.
+   * @param stamp The stamp taken before the entity was read.
+   */
+  public void put(K key, V value, long stamp) {
+    Segment<K, V> segment = segmentFor(key);
+
+    segment.lock.lock();
+
+    try {
+      /* Checked under the lock, so an invalidation can not slip in between. */
+      if(generation.get() == stamp) {
+        segment.entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+      }
+    }
+    finally {
+      segment.lock.unlock();
+    }
+  }
+
+  /**
+   * Remove an entity. Call this after a change to the entity is committed.
+   *
+   * @param key The key.
+   */
+  public void invalidate(K key) {
+    Segment<K, V> segment = segmentFor(key);
+
+    segment.lock.lock();
+
+    try {
+      generation.incrementAndGet();
+      segment.entries.remove(key);
+    }
+    finally {
+      segment.lock.unlock();
+    }
+  }
+
+  /**
+   * Remove every entity.
+   */
+  public void invalidateAll() {
+    generation.incrementAndGet();
+
+    for(Segment<K, V> segment : segments) {
+      segment.lock.lock();
+
+      try {
+        segment.entries.clear();
+      }
+      finally {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * @return The hit, miss and eviction counts, and the current size.
+   */
+  public Stats getStats() {
+    int size = 0;
+
+    for(Segment<K, V> segment : segments) {
+      segment.lock.lock();
+
+      try {
+        size += segment.entries.size();
+      }
+      finally {
+        segment.lock.unlock();
+      }
+    }
+
+    return new Stats(hits.sum(), misses.sum(), evictions.sum(), size, maxSize);
+  }
+
+  private Segment<K, V> segmentFor(K key) {
+    int hash = key.hashCode();
+    return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+  }
+
+  /**
+   * One segment: an access-ordered map, so the eldest entry is the least recently used.
+   */
+  private static class Segment<K, V> {
+    final ReentrantLock lock = new ReentrantLock();
+    final LinkedHashMap<K, Entry<V>> entries;
+
+    @SuppressWarnings("serial")
+    Segment(int capacity, LongAdder evictions) {
+      this.entries = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+          if(size() > capacity) {
+            evictions.increment();
+            return true;
+          }
+
+          return false;
+        }
+      };
+    }
+
+    V get(K key, long now) {
+      lock.lock();
+
+      try {
+        Entry<V> entry = entries.get(key);
+
+        if(Objects.isNull(entry)) {
+          return null;
+        }
+
+        if(now - entry.expiresAt >= 0) {
+          entries.remove(key);
+          return null;
+        }
+
+        return entry.value;
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private static class Entry<V> {
+    final V value;
+    final long expiresAt;
+
+    Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /**
+   * A snapshot of the cache counters.
+   *
+   * @author Promineo
+   *
+   */
+  public static class Stats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final int maxSize;
+
+    Stats(long hits, long misses, long evictions, int size, int maxSize) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.size = size;
+      this.maxSize = maxSize;
+    }
+
+    public long getHits() {
+      return hits;
+    }
+
+    public long getMisses() {
+      return misses;
+    }
+
+    /**
+     * @return The number of entries evicted to make room. Expired and invalidated entries are not
+     *         counted.
+     */
+    public long getEvictions() {
+      return evictions;
+    }
+
+    public int getSize() {
+      return size;
+    }
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    /**
+     * @return Hits divided by lookups, or 0 if there have been no lookups.
+     */
+    public double getHitRate() {
+      long lookups = hits + misses;
+      return lookups == 0 ? 0 : (double)hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Stats [hits=%d, misses=%d, hitRate=%.3f, evictions=%d, size=%d/%d]",
+          hits, misses, getHitRate(), evictions, size, maxSize);
+    }
+  }
+}
@@ -0,0 +1,400 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This holds everything the DAO layer needs to know to read and write one entity class: the table
+ * name, the ID column, the column list with the SQL type of each column, and the text of the
+ * INSERT, UPDATE, SELECT and DELETE statements. It is built once per class and kept in a registry,
+ * so the generic methods in {@link DaoBase} never build SQL strings or look up types when they are
+ * called.
+ *
+ * Metadata is derived from the entity's fields using the same naming convention as
+ * {@link DaoBase#extract(java.sql.ResultSet, Class)}:
+ * <ul>
+ * <li>The table name defaults to the class name in snake case (Recipe -> recipe).</li>
+ * <li>The ID field is named after the class (Recipe -> recipeId). The database generates its value
+ * (AUTO_INCREMENT), so it is never written by an INSERT.</li>
+ * <li>Each field of type Integer, String, Double, BigDecimal, LocalTime or LocalDateTime is a
+ * column named after the field in snake case (numServings -> num_servings).</li>
+ * <li>A field whose type is another entity is a foreign key column named after the field plus
+ * "_id". So Ingredient.unit is written to ingredient.unit_id using the unit's ID. A class is an
+ * entity if it has an ID field named after it. A field of any other type (like Boolean or an enum)
+ * is rejected when the metadata is built.</li>
+ * <li>Collections (like the ingredient list in Recipe) are not columns.</li>
+ * </ul>
+ *
+ * A DAO registers the entities it uses when it is loaded, like this:
+ *
+ * <pre>
+ * private static final EntityMetadata&lt;Recipe&gt; RECIPE =
+ *     EntityMetadata.register(Recipe.class, RECIPE_TABLE, "createdAt");
+ * </pre>
+ *
+ * @author Promineo
+ *
+ * @param <T> The entity type.
+ */
+public final class EntityMetadata<T> {
+  private static final Map<Class<?>, EntityMetadata<?>> REGISTRY = new ConcurrentHashMap<>();
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType SETTER_TYPE =
+      MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final Class<T> entityType;
+  private final String tableName;
+  private final Column idColumn;
+  private final List<Column> columns;
+  private final List<Column> writableColumns;
+
+  private final String insertSql;
+  private final String updateSql;
+  private final String selectSql;
+  private final String selectByIdSql;
+  private final String deleteByIdSql;
+
+  private EntityMetadata(Class<T> entityType, String tableName, Set<String> generatedFields) {
+    this.entityType = entityType;
+    this.tableName = tableName;
+
+    String idField = idFieldName(entityType);
+
+    List<Column> allColumns = new ArrayList<>();
+    List<Column> writable = new ArrayList<>();
+    Column id = null;
+
+    for(Field field : entityType.getDeclaredFields()) {
+      if(Modifier.isStatic(field.getModifiers())
+          || Collection.class.isAssignableFrom(field.getType())) {
+        continue;
+      }
+
+      Column column = new Column(field);
+      allColumns.add(column);
+
+      if(field.getName().equals(idField)) {
+        id = column;
+      }
+      else if(!generatedFields.contains(field.getName())) {
+        writable.add(column);
+      }
+    }
+
+    if(Objects.isNull(id)) {
+      throw new DaoException(
+          "Entity " + entityType.getName() + " has no ID field named " + idField);
+    }
+
+    this.idColumn = id;
+    this.columns = Collections.unmodifiableList(allColumns);
+    this.writableColumns = Collections.unmodifiableList(writable);
+
+    String columnList = join(columns, "", ", ");
+    String writableList = join(writableColumns, "", ", ");
+    String placeholders =
+        writableColumns.stream().map(col -> "?").collect(Collectors.joining(", "));
+
+    // @formatter:off
+    this.insertSql = "INSERT INTO " + tableName + " (" + writableList + ") VALUES (" + placeholders + ")";
+    this.updateSql = "UPDATE " + tableName + " SET " + join(writableColumns, " = ?", ", ")
+        + " WHERE " + idColumn.columnName + " = ?";
+    this.selectSql = "SELECT " + columnList + " FROM " + tableName;
+    this.selectByIdSql = selectSql + " WHERE " + idColumn.columnName + " = ?";
+    this.deleteByIdSql = "DELETE FROM " + tableName + " WHERE " + idColumn.columnName + " = ?";
+    // @formatter:on
+  }
+
+  /**
+   * Register an entity class with its table name. This is normally called from a static field in the
+   * DAO. Registering a class that is already registered returns the existing metadata.
+   *
+   * @param <T> The entity type.
+   * @param entityType The entity class.
+   * @param tableName The table the entity is stored in.
+   * @param generatedFields The names of fields (other than the ID) whose values are set by the
+   *        database, like a creation timestamp with a default value. These are read but never
+   *        written.
+   * @return The metadata for the class.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> EntityMetadata<T> register(Class<T> entityType, String tableName,
+      String... generatedFields) {
+    return (EntityMetadata<T>)REGISTRY.computeIfAbsent(entityType,
+        type -> new EntityMetadata<>(entityType, tableName, Set.of(generatedFields)));
+  }
+
+  /**
+   * Return the metadata for an entity class. If the class has not been registered, it is registered
+   * with the default table name (the class name in snake case).
+   *
+   * @param <T> The entity type.
+   * @param entityType The entity class.
+   * @return The metadata for the class.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> EntityMetadata<T> of(Class<T> entityType) {
+    EntityMetadata<T> meta = (EntityMetadata<T>)REGISTRY.get(entityType);
+
+    if(Objects.nonNull(meta)) {
+      return meta;
+    }
+
+    String tableName = RowMapper.camelCaseToSnakeCase(entityType.getSimpleName()).substring(1);
+    return register(entityType, tableName);
+  }
+
+  public Class<T> getEntityType() {
+    return entityType;
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  public Column getIdColumn() {
+    return idColumn;
+  }
+
+  /**
+   * @return Every column, including the ID and generated columns, in field declaration order.
+   */
+  public List<Column> getColumns() {
+    return columns;
+  }
+
+  /**
+   * @return The columns written by an INSERT or UPDATE, in the order of the statement parameters.
+   *         The ID and generated columns are not included.
+   */
+  public List<Column> getWritableColumns() {
+    return writableColumns;
+  }
+
+  /**
+   * @return INSERT INTO table (writable columns) VALUES (?, ...)
+   */
+  public String getInsertSql() {
+    return insertSql;
+  }
+
+  /**
+   * @return UPDATE table SET col = ?, ... WHERE id = ?. The ID is the last parameter.
+   */
+  public String getUpdateSql() {
+    return updateSql;
+  }
+
+  /**
+   * @return SELECT (all columns) FROM table, without a WHERE clause.
+   */
+  public String getSelectSql() {
+    return selectSql;
+  }
+
+  /**
+   * @return SELECT (all columns) FROM table WHERE id = ?
+   */
+  public String getSelectByIdSql() {
+    return selectByIdSql;
+  }
+
+  /**
+   * @return DELETE FROM table WHERE id = ?
+   */
+  public String getDeleteByIdSql() {
+    return deleteByIdSql;
+  }
+
+  /**
+   * @param entity The entity.
+   * @return The value of the entity's ID field.
+   */
+  public Object getId(T entity) {
+    return idColumn.getValue(entity);
+  }
+
+  /**
+   * @param entity The entity.
+   * @param id The ID value to set.
+   */
+  public void setId(T entity, Object id) {
+    idColumn.setValue(entity, id);
+  }
+
+  /**
+   * @return The name of the ID field of an entity class: Recipe -> recipeId.
+   */
+  private static String idFieldName(Class<?> entityType) {
+    return Character.toLowerCase(entityType.getSimpleName().charAt(0))
+        + entityType.getSimpleName().substring(1) + "Id";
+  }
+
+  /**
+   * @return {@code true} if the class can be the target of a foreign key: it has an ID field of a
+   *         supported type. The class's own metadata is not built here, so entities that refer to
+   *         each other don't recurse.
+   */
+  private static boolean isEntity(Class<?> type) {
+    if(type.isPrimitive() || type.isArray() || type.isEnum()) {
+      return false;
+    }
+
+    try {
+      Field id = type.getDeclaredField(idFieldName(type));
+      return !Modifier.isStatic(id.getModifiers()) && DaoBase.isSupportedType(id.getType());
+    }
+    catch(NoSuchFieldException e) {
+      return false;
+    }
+  }
+
+  private static String join(List<Column> columns, String suffix, String separator) {
+    return columns.stream().map(col -> col.columnName + suffix)
+        .collect(Collectors.joining(separator));
+  }
+
+  /**
+   * This describes one column: its name, its java.sql.Types value and how to read and write the
+   * field that holds it.
+   *
+   * @author Promineo
+   *
+   */
+  public static final class Column {
+    private final String fieldName;
+    private final String columnName;
+    private final Class<?> javaType;
+    private final int sqlType;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+    private final boolean reference;
+    private final Class<?> referenceType;
+    private volatile EntityMetadata<Object> referenceMetadata;
+
+    private Column(Field field) {
+      Class<?> fieldType = field.getType();
+
+      this.fieldName = field.getName();
+      this.reference = !DaoBase.isSupportedType(fieldType);
+      this.referenceType = reference ? fieldType : null;
+
+      if(reference && !isEntity(fieldType)) {
+        throw new DaoException("Field " + field.getDeclaringClass().getName() + "." + fieldName
+            + " has type " + fieldType.getName() + ", which is not a column type and not an entity"
+            + " with an ID field named " + idFieldName(fieldType));
+      }
+
+      if(reference) {
+        /* A foreign key. The column holds the referenced entity's ID. */
+        this.columnName = RowMapper.camelCaseToSnakeCase(fieldName) + "_id";
+        this.javaType = Integer.class;
+      }
+      else {
+        this.columnName = RowMapper.camelCaseToSnakeCase(fieldName);
+        this.javaType = fieldType;
+      }
+
+      this.sqlType = DaoBase.convertJavaClassToSqlType(javaType);
+
+      try {
+        field.setAccessible(true);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+        this.setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+      }
+      catch(IllegalAccessException | RuntimeException e) {
+        throw new DaoException("Unable to access field " + field, e);
+      }
+    }
+
+    public String getFieldName() {
+      return fieldName;
+    }
+
+    public String getColumnName() {
+      return columnName;
+    }
+
+    public Class<?> getJavaType() {
+      return javaType;
+    }
+
+    /**
+     * @return The java.sql.Types value for the column.
+     */
+    public int getSqlType() {
+      return sqlType;
+    }
+
+    /**
+     * @return {@code true} if this column is a foreign key held in the entity as an object.
+     */
+    public boolean isReference() {
+      return reference;
+    }
+
+    /**
+     * Read the column value from an entity. For a foreign key, this is the ID of the referenced
+     * entity, or {@code null} if there is no referenced entity.
+     *
+     * @param entity The entity.
+     * @return The value to write to the column.
+     */
+    @SuppressWarnings("unchecked")
+    public Object getValue(Object entity) {
+      try {
+        Object value = (Object)getter.invokeExact(entity);
+
+        if(reference && Objects.nonNull(value)) {
+          EntityMetadata<Object> target = referenceMetadata;
+
+          if(Objects.isNull(target)) {
+            target = (EntityMetadata<Object>)of(referenceType);
+            referenceMetadata = target;
+          }
+
+          value = target.getId(value);
+        }
+
+        return value;
+      }
+      catch(Throwable e) {
+        throw new DaoException("Unable to read field " + fieldName, e);
+      }
+    }
+
+    /**
+     * Set the field in the entity. This is only used for non-reference columns.
+     *
+     * @param entity The entity.
+     * @param value The value.
+     */
+    public void setValue(Object entity, Object value) {
+      try {
+        setter.invokeExact(entity, value);
+      }
+      catch(Throwable e) {
+        throw new DaoException("Unable to set field " + fieldName, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,234 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.sql.DataSource;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This is a read-through cache of a small lookup table, like unit or category. The whole table is
+ * loaded with one query the first time any row is asked for, and each row is then held as a single
+ * shared object (a flyweight). Every ingredient with the unit "cup" refers to the same Unit object,
+ * so reading a large list of ingredients creates no Unit objects at all, and a join against the
+ * lookup table can be replaced by a lookup in memory.
+ *
+ * <b>The cached objects are shared, so they must be treated as read-only.</b> To change a row, write
+ * a new object through the DAO and then call {@link #invalidate()}. DAOs call {@link #invalidate()}
+ * after any write to the table, so the next read loads the table again.
+ *
+ * A row that is not in the cache (one added by another process, for example) is read from the
+ * database on its own and added. Reads never lock: the rows are held in an immutable map that is
+ * replaced, not changed, when a row is added.
+ *
+ * A caller that already holds a connection should use {@link #get(Connection, Object)}, so that a
+ * miss is read on that connection. Borrowing a second connection from a pool while holding one can
+ * wait forever when every other connection is held by a caller doing the same.
+ *
+ * @author Promineo
+ *
+ * @param <T> The entity type. It must be registered with {@link EntityMetadata}.
+ */
+public class LookupCache<T> {
+  private final DataSource dataSource;
+  private final Class<T> entityType;
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /* The cached rows by ID, or null if the table must be loaded. */
+  private volatile Map<Object, T> rows;
+
+  /**
+   * @param dataSource The source of connections used to load the table.
+   * @param entityType The entity type.
+   */
+  public LookupCache(DataSource dataSource, Class<T> entityType) {
+    this.dataSource = dataSource;
+    this.entityType = entityType;
+  }
+
+  /**
+   * Return the shared object for an ID.
+   *
+   * @param id The ID.
+   * @return The object, or {@code null} if the ID is null or there is no row with the ID.
+   */
+  public T get(Object id) {
+    return get(null, id);
+  }
+
+  /**
+   * Return the shared object for an ID. If the table must be loaded or the row is not cached, it is
+   * read on the caller's connection.
+   *
+   * @param conn The caller's connection, or {@code null} to use one from the data source.
+   * @param id The ID.
+   * @return The object, or {@code null} if the ID is null or there is no row with the ID.
+   */
+  public T get(Connection conn, Object id) {
+    if(Objects.isNull(id)) {
+      return null;
+    }
+
+    T value = rows(conn).get(id);
+    return Objects.nonNull(value) ? value : readThrough(conn, id);
+  }
+
+  /**
+   * @return Every cached row, in no particular order.
+   */
+  public List<T> getAll() {
+    return new ArrayList<>(rows(null).values());
+  }
+
+  /**
+   * Load the table now, if it is not already loaded. Call this at startup to keep the first read
+   * from paying for the load.
+   */
+  public void load() {
+    rows(null);
+  }
+
+  /**
+   * Drop the cached rows. The table is loaded again the next time a row is asked for. Call this after
+   * any insert, update or delete on the table has been committed.
+   */
+  public void invalidate() {
+    lock.lock();
+
+    try {
+      rows = null;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private Map<Object, T> rows(Connection conn) {
+    Map<Object, T> current = rows;
+
+    if(Objects.nonNull(current)) {
+      return current;
+    }
+
+    lock.lock();
+
+    try {
+      if(Objects.isNull(rows)) {
+        rows = loadAll(conn);
+      }
+
+      return rows;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Read the whole table, on the caller's connection or, if that is null, on one from the data
+   * source.
+   */
+  private Map<Object, T> loadAll(Connection callerConn) {
+    EntityMetadata<T> meta = EntityMetadata.of(entityType);
+
+    try {
+      if(Objects.nonNull(callerConn)) {
+        return selectAll(callerConn, meta);
+      }
+
+      try(Connection conn = dataSource.getConnection()) {
+        return selectAll(conn, meta);
+      }
+    }
+    catch(SQLException e) {
+      throw new DaoException("Unable to load the " + meta.getTableName() + " table", e);
+    }
+  }
+
+  private Map<Object, T> selectAll(Connection conn, EntityMetadata<T> meta) throws SQLException {
+    Map<Object, T> loaded = new HashMap<>();
+
+    try(PreparedStatement stmt = conn.prepareStatement(meta.getSelectSql());
+        ResultSet rs = stmt.executeQuery()) {
+      RowMapper<T> mapper = RowMapper.forResultSet(rs, entityType);
+
+      while(rs.next()) {
+        T value = mapper.map(rs);
+        loaded.put(meta.getId(value), value);
+      }
+    }
+
+    return Collections.unmodifiableMap(loaded);
+  }
+
+  /**
+   * Read one row that is not in the cache and add it.
+   */
+  private T readThrough(Connection callerConn, Object id) {
+    EntityMetadata<T> meta = EntityMetadata.of(entityType);
+    T value;
+
+    try {
+      if(Objects.nonNull(callerConn)) {
+        value = selectById(callerConn, meta, id);
+      }
+      else {
+        try(Connection conn = dataSource.getConnection()) {
+          value = selectById(conn, meta, id);
+        }
+      }
+    }
+    catch(SQLException e) {
+      throw new DaoException("Unable to read " + meta.getTableName() + " row " + id, e);
+    }
+
+    if(Objects.isNull(value)) {
+      return null;
+    }
+
+    lock.lock();
+
+    try {
+      Map<Object, T> current = rows;
+
+      if(Objects.nonNull(current)) {
+        /* Another thread may have added the row already. Keep its object. */
+        T existing = current.get(id);
+
+        if(Objects.nonNull(existing)) {
+          return existing;
+        }
+
+        Map<Object, T> updated = new HashMap<>(current);
+        updated.put(id, value);
+        rows = Collections.unmodifiableMap(updated);
+      }
+
+      return value;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private T selectById(Connection conn, EntityMetadata<T> meta, Object id) throws SQLException {
+    try(PreparedStatement stmt = conn.prepareStatement(meta.getSelectByIdSql())) {
+      stmt.setObject(1, id);
+
+      try(ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? RowMapper.forResultSet(rs, entityType).map(rs) : null;
+      }
+    }
+  }
+}
@@ -0,0 +1,285 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This is the registry of the data layer's timers and counters. Every metric is published as an
+ * MXBean on the platform MBean server, so it can be watched in JConsole, VisualVM or any other JMX
+ * client, under the domain {@value #DOMAIN}:
+ * <ul>
+ * <li><b>Timers</b> ({@code type=Timer}) count calls and sum and track the longest duration. The
+ * DAOs have one per public method (like {@code RecipeDao.insertRecipe}), and {@link DaoBase} has
+ * one for committed and one for rolled back transactions.</li>
+ * <li><b>Counters</b> ({@code type=Counter}) count things, like the rows inserted, updated and
+ * deleted.</li>
+ * <li><b>Connection pools</b> ({@code type=ConnectionPool}) show how many connections are open, in
+ * use and waited for. Each pool's acquire timer is published as {@code <pool>.acquire}.</li>
+ * <li><b>The slow query log</b> ({@code type=SlowQueryLog}) holds the most recent slow statements.
+ * See {@link SlowQueryLog}.</li>
+ * </ul>
+ *
+ * Metrics are looked up once, when a class is loaded, and kept in static final fields. Recording
+ * updates {@link LongAdder}s and a {@link LongAccumulator}, so it never takes a lock and, once the
+ * adders have grown to the number of threads that contend on them, never allocates.
+ *
+ * <pre>
+ * private static final Metrics.Timer INSERT_TIMER = Metrics.timer("RecipeDao.insertRecipe");
+ *
+ * long start = System.nanoTime();
+ * ...
+ * INSERT_TIMER.stop(start);
+ * </pre>
+ *
+ * If a metric can not be registered with JMX (for example, there is no platform MBean server), it
+ * is still recorded and can be read with {@link #getMetrics()}.
+ *
+ * @author Promineo
+ *
+ */
+public final class Metrics {
+  /** The JMX domain of every metric. */
+  public static final String DOMAIN = "provided.util";
+
+  private static final Map<String, Object> METRICS = new ConcurrentHashMap<>();
+
+  private Metrics() {
+  }
+
+  /**
+   * Get the timer with the given name, creating and registering it if it does not exist.
+   *
+   * @param name The name, like "RecipeDao.insertRecipe".
+   * @return The timer.
+   */
+  public static Timer timer(String name) {
+    return (Timer)METRICS.computeIfAbsent(name, key -> register("Timer", key, new Timer()));
+  }
+
+  /**
+   * Get the counter with the given name, creating and registering it if it does not exist.
+   *
+   * @param name The name, like "rows.inserted".
+   * @return The counter.
+   */
+  public static Counter counter(String name) {
+    return (Counter)METRICS.computeIfAbsent(name, key -> register("Counter", key, new Counter()));
+  }
+
+  /**
+   * Publish a connection pool and its acquire timer. A pool registered earlier under the same name
+   * is replaced.
+   *
+   * @param name The pool's name, like "recipes".
+   * @param pool The pool.
+   */
+  public static void registerPool(String name, ConnectionPool pool) {
+    METRICS.put(name, register("ConnectionPool", name, pool));
+    METRICS.put(name + ".acquire", register("Timer", name + ".acquire", pool.getAcquireTimer()));
+  }
+
+  /**
+   * Publish a slow query log. A log registered earlier under the same name is replaced.
+   *
+   * @param name The log's name, like "slowQueries".
+   * @param log The log.
+   */
+  public static void registerSlowQueryLog(String name, SlowQueryLog log) {
+    METRICS.put(name, register("SlowQueryLog", name, log));
+  }
+
+  /**
+   * @return Every metric, by name. The values are {@link Timer}s, {@link Counter}s,
+   *         {@link ConnectionPool}s and {@link SlowQueryLog}s.
+   */
+  public static Map<String, Object> getMetrics() {
+    return Collections.unmodifiableMap(METRICS);
+  }
+
+  /**
+   * Reset every timer and counter.
+   */
+  public static void resetAll() {
+    for(Object metric : METRICS.values()) {
+      if(metric instanceof Timer) {
+        ((Timer)metric).reset();
+      }
+      else if(metric instanceof Counter) {
+        ((Counter)metric).reset();
+      }
+    }
+  }
+
+  private static <T> T register(String type, String name, T metric) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      String value = name.matches("[\\w.-]+") ? name : ObjectName.quote(name);
+      ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + value);
+
+      if(server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+
+      server.registerMBean(metric, objectName);
+    }
+    catch(JMException | RuntimeException e) {
+      /* The metric is still recorded. It is just not visible over JMX. */
+    }
+
+    return metric;
+  }
+
+  /**
+   * The JMX view of a {@link Timer}.
+   */
+  public interface TimerMXBean {
+    long getCount();
+
+    double getTotalMillis();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    void reset();
+  }
+
+  /**
+   * The JMX view of a {@link Counter}.
+   */
+  public interface CounterMXBean {
+    long getCount();
+
+    void reset();
+  }
+
+  /**
+   * This counts timed events and sums and tracks the longest of their durations.
+   *
+   * @author Promineo
+   *
+   */
+  public static class Timer implements TimerMXBean {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Create a timer that is not registered. Use {@link Metrics#timer(String)} for one that is.
+     */
+    public Timer() {
+    }
+
+    /**
+     * Record one event.
+     *
+     * @param nanos The event's duration, in nanoseconds.
+     */
+    public void record(long nanos) {
+      count.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Record one event that started at the given time.
+     *
+     * @param startNanos The {@link System#nanoTime()} value when the event started.
+     */
+    public void stop(long startNanos) {
+      record(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getTotalNanos() {
+      return totalNanos.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+      return toMillis(totalNanos.sum());
+    }
+
+    /**
+     * @return The mean duration, or 0 if nothing has been recorded.
+     */
+    @Override
+    public double getMeanMillis() {
+      long events = count.sum();
+      return events == 0 ? 0.0 : toMillis(totalNanos.sum()) / events;
+    }
+
+    @Override
+    public double getMaxMillis() {
+      return toMillis(maxNanos.get());
+    }
+
+    /**
+     * Reset the count, total and maximum. Events recorded while this runs may be partly lost.
+     */
+    @Override
+    public void reset() {
+      count.reset();
+      totalNanos.reset();
+      maxNanos.reset();
+    }
+
+    private static double toMillis(long nanos) {
+      return nanos / (double)TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("count=%d, mean=%.3fms, max=%.3fms", getCount(), getMeanMillis(),
+          getMaxMillis());
+    }
+  }
+
+  /**
+   * This is a counter that many threads can add to at once.
+   *
+   * @author Promineo
+   *
+   */
+  public static class Counter implements CounterMXBean {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+      count.increment();
+    }
+
+    public void add(long amount) {
+      count.add(amount);
+    }
+
+    @Override
+    public long getCount() {
+      return count.sum();
+    }
+
+    @Override
+    public void reset() {
+      count.reset();
+    }
+
+    @Override
+    public String toString() {
+      return Long.toString(getCount());
+    }
+  }
+}
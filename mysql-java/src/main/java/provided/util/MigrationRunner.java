@@ -0,0 +1,238 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This applies SQL scripts (schema and seed data files on the classpath) only when they are new or
+ * have changed. The name and SHA-256 checksum of each applied script is recorded in a bookkeeping
+ * table in the same schema:
+ *
+ * <pre>
+ * CREATE TABLE schema_migration (
+ *   script_name VARCHAR(128) NOT NULL,
+ *   checksum CHAR(64) NOT NULL,
+ *   applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+ *   PRIMARY KEY (script_name)
+ * );
+ * </pre>
+ *
+ * The table is created if it does not exist. When every script matches its recorded checksum,
+ * {@link #migrate()} reads the scripts to check them and runs one query, so it finishes in
+ * milliseconds.
+ *
+ * The scripts added to a runner form a chain, applied in the order they were added. A schema file
+ * drops and recreates its tables, and a data file expects the empty tables the schema file just
+ * created, so the scripts in a chain can not be applied one at a time: if any script is new or has
+ * changed, the whole chain is applied from the first script. Use a separate runner for scripts that
+ * are independent of each other (the recipe and project schemas, for example).
+ *
+ * Scripts are recorded after the whole chain has been applied, so if a script fails, the chain is
+ * applied again next time. The runner does not lock against other processes migrating the same
+ * schema at the same time.
+ *
+ * @author Promineo
+ *
+ */
+public class MigrationRunner {
+  /** The name of the bookkeeping table. */
+  public static final String MIGRATION_TABLE = "schema_migration";
+
+  // @formatter:off
+  private static final String CREATE_TABLE_SQL = ""
+      + "CREATE TABLE IF NOT EXISTS " + MIGRATION_TABLE + " ("
+      + "script_name VARCHAR(128) NOT NULL, "
+      + "checksum CHAR(64) NOT NULL, "
+      + "applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+      + "PRIMARY KEY (script_name)"
+      + ")";
+  private static final String SELECT_SQL = ""
+      + "SELECT script_name, checksum FROM " + MIGRATION_TABLE;
+  private static final String DELETE_SQL = ""
+      + "DELETE FROM " + MIGRATION_TABLE + " WHERE script_name = ?";
+  private static final String INSERT_SQL = ""
+      + "INSERT INTO " + MIGRATION_TABLE + " (script_name, checksum) VALUES (?, ?)";
+  // @formatter:on
+
+  private final DataSource dataSource;
+  private final ClassLoader classLoader;
+  private final Map<String, Consumer<Reader>> scripts = new LinkedHashMap<>();
+
+  /**
+   * @param dataSource The source of connections to the schema being migrated.
+   * @param classLoader The class loader used to find the scripts.
+   */
+  public MigrationRunner(DataSource dataSource, ClassLoader classLoader) {
+    this.dataSource = dataSource;
+    this.classLoader = classLoader;
+  }
+
+  /**
+   * Add a script to the end of the chain.
+   *
+   * @param scriptName The name of the script on the classpath, like "recipe_schema.sql". This is
+   *        also the name recorded in the bookkeeping table.
+   * @param applier The method that runs the script, like a DAO method that takes a
+   *        {@link Reader}. It must close the reader.
+   * @return This runner, so calls can be chained.
+   */
+  public MigrationRunner add(String scriptName, Consumer<Reader> applier) {
+    scripts.put(scriptName, applier);
+    return this;
+  }
+
+  /**
+   * Apply the chain if any script in it is new or has changed.
+   *
+   * @return The names of the scripts that were applied. The list is empty if the schema is
+   *         current.
+   * @throws DaoException Thrown if a script can not be read or the bookkeeping table can not be
+   *         read or written. An exception thrown by a script's applier is passed through.
+   */
+  public List<String> migrate() {
+    return migrate(false);
+  }
+
+  /**
+   * Apply the chain.
+   *
+   * @param force If {@code true}, the chain is applied even if no script has changed. This resets
+   *        the tables to the state in the scripts.
+   * @return The names of the scripts that were applied.
+   */
+  public List<String> migrate(boolean force) {
+    Map<String, String> checksums = new LinkedHashMap<>();
+
+    for(String scriptName : scripts.keySet()) {
+      checksums.put(scriptName, checksum(scriptName));
+    }
+
+    try {
+      Map<String, String> applied = readApplied(checksums);
+
+      if(!force && checksums.equals(applied)) {
+        return List.of();
+      }
+
+      for(Map.Entry<String, Consumer<Reader>> entry : scripts.entrySet()) {
+        entry.getValue().accept(
+            new InputStreamReader(open(entry.getKey()), StandardCharsets.UTF_8));
+      }
+
+      record(checksums);
+      return new ArrayList<>(scripts.keySet());
+    }
+    catch(SQLException e) {
+      throw new DaoException("Unable to read or write " + MIGRATION_TABLE, e);
+    }
+  }
+
+  /**
+   * Create the bookkeeping table if needed and read the recorded checksums of the given scripts.
+   *
+   * @return The recorded checksums. Scripts that have never been applied are not in the map.
+   */
+  private Map<String, String> readApplied(Map<String, String> checksums) throws SQLException {
+    Map<String, String> applied = new HashMap<>();
+
+    try(Connection conn = dataSource.getConnection()) {
+      try(Statement stmt = conn.createStatement()) {
+        stmt.execute(CREATE_TABLE_SQL);
+
+        try(ResultSet rs = stmt.executeQuery(SELECT_SQL)) {
+          while(rs.next()) {
+            if(checksums.containsKey(rs.getString(1))) {
+              applied.put(rs.getString(1), rs.getString(2));
+            }
+          }
+        }
+      }
+    }
+
+    return applied;
+  }
+
+  /**
+   * Record the checksums of the applied scripts in one transaction.
+   */
+  private void record(Map<String, String> checksums) throws SQLException {
+    try(Connection conn = dataSource.getConnection()) {
+      conn.setAutoCommit(false);
+
+      try(PreparedStatement delete = conn.prepareStatement(DELETE_SQL);
+          PreparedStatement insert = conn.prepareStatement(INSERT_SQL)) {
+        for(Map.Entry<String, String> entry : checksums.entrySet()) {
+          delete.setString(1, entry.getKey());
+          delete.addBatch();
+
+          insert.setString(1, entry.getKey());
+          insert.setString(2, entry.getValue());
+          insert.addBatch();
+        }
+
+        delete.executeBatch();
+        insert.executeBatch();
+        conn.commit();
+      }
+      catch(SQLException e) {
+        conn.rollback();
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Compute the SHA-256 checksum of a script, reading it as a stream.
+   *
+   * @return The checksum in lower case hex.
+   */
+  private String checksum(String scriptName) {
+    try(DigestInputStream in =
+        new DigestInputStream(open(scriptName), MessageDigest.getInstance("SHA-256"))) {
+      byte[] buffer = new byte[8192];
+
+      while(in.read(buffer) != -1) {
+        /* The digest is updated as the stream is read. */
+      }
+
+      return HexFormat.of().formatHex(in.getMessageDigest().digest());
+    }
+    catch(IOException | NoSuchAlgorithmException e) {
+      throw new DaoException("Unable to read " + scriptName, e);
+    }
+  }
+
+  private InputStream open(String scriptName) {
+    InputStream in = classLoader.getResourceAsStream(scriptName);
+
+    if(Objects.isNull(in)) {
+      throw new DaoException("Unable to find " + scriptName + " on the classpath");
+    }
+
+    return in;
+  }
+}
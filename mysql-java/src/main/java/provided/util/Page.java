@@ -0,0 +1,125 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This holds one page of a keyset-paginated list. Keyset (or "seek") pagination asks for the rows
+ * that come after the last row of the previous page (WHERE id > ?) instead of skipping rows with
+ * OFFSET. The database goes straight to the first row of the page using the index, so every page
+ * costs the same as the first.
+ *
+ * The position of the next page is returned as an opaque token. The caller passes it back
+ * unchanged to get the next page. A {@code null} token means this is the last page.
+ *
+ * @author Promineo
+ *
+ * @param <T> The type of item in the page.
+ */
+public class Page<T> {
+  /** The most items returned in one page. Larger requests are cut to this size. */
+  public static final int MAX_PAGE_SIZE = 100;
+
+  private static final char SEPARATOR = '|';
+
+  private final List<T> items;
+  private final String nextPageToken;
+
+  /**
+   * @param items The items in the page.
+   * @param nextPageToken The token for the next page, or {@code null} if this is the last page.
+   */
+  public Page(List<T> items, String nextPageToken) {
+    this.items = Collections.unmodifiableList(items);
+    this.nextPageToken = nextPageToken;
+  }
+
+  public List<T> getItems() {
+    return items;
+  }
+
+  /**
+   * @return The token to pass in to get the next page, or {@code null} if this is the last page.
+   */
+  public String getNextPageToken() {
+    return nextPageToken;
+  }
+
+  public boolean hasNextPage() {
+    return Objects.nonNull(nextPageToken);
+  }
+
+  /**
+   * Check a requested page size and cap it at {@link #MAX_PAGE_SIZE}.
+   *
+   * @param pageSize The requested page size.
+   * @return The page size to use.
+   * @throws DaoException Thrown if the page size is less than 1.
+   */
+  public static int limitPageSize(int pageSize) {
+    if(pageSize < 1) {
+      throw new DaoException("The page size must be at least 1, not " + pageSize);
+    }
+
+    return Math.min(pageSize, MAX_PAGE_SIZE);
+  }
+
+  /**
+   * Build a page token from the sort order and the key values of the last row on the page. The
+   * token is URL-safe Base64, so callers treat it as opaque.
+   *
+   * @param sort The name of the sort order. A token can only be used with the same sort order.
+   * @param keys The key values of the last row, in sort order. These must not contain the
+   *        character '|'.
+   * @return The token.
+   */
+  public static String encodeToken(String sort, Object... keys) {
+    StringBuilder builder = new StringBuilder(sort);
+
+    for(Object key : keys) {
+      builder.append(SEPARATOR).append(key);
+    }
+
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(builder.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decode a page token built by {@link #encodeToken(String, Object...)}.
+   *
+   * @param token The token.
+   * @param sort The sort order the token must have been built for.
+   * @param keyCount The number of key values the token must hold.
+   * @return The key values, as strings.
+   * @throws DaoException Thrown if the token is not valid for this sort order.
+   */
+  public static String[] decodeToken(String token, String sort, int keyCount) {
+    try {
+      String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+      String[] parts = decoded.split("\\|", -1);
+
+      if(parts.length == keyCount + 1 && parts[0].equals(sort)) {
+        String[] keys = new String[keyCount];
+        System.arraycopy(parts, 1, keys, 0, keyCount);
+        return keys;
+      }
+    }
+    catch(IllegalArgumentException e) {
+      /* Not Base64. Fall through. */
+    }
+
+    throw new DaoException("Invalid page token: " + token);
+  }
+
+  @Override
+  public String toString() {
+    return "Page [items=" + items.size() + ", nextPageToken=" + nextPageToken + "]";
+  }
+}
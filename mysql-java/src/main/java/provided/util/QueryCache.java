@@ -0,0 +1,451 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This caches the rows returned by queries, keyed by the SQL text and the bound parameter values.
+ * It is used by {@link DaoBase#query(String, List, Class, Duration, String...)}, which is how a DAO
+ * runs a list or search query that is repeated often with the same parameters.
+ * <ul>
+ * <li><b>Key:</b> the SQL text, with each run of whitespace outside of quotes collapsed to one
+ * space, plus the parameter values in order. A scope (the DAO's data source) is added to the key,
+ * so the same SQL run against two schemas is cached twice.</li>
+ * <li><b>Time to live:</b> each query gives its own TTL. An entry older than its TTL is read
+ * again.</li>
+ * <li><b>Tags:</b> each query names the tables it reads. When a write to one of the tables is
+ * committed, {@link #invalidate(Collection)} drops every entry tagged with the table. DaoBase does
+ * this in {@link DaoBase#commitTransaction(java.sql.Connection)} for the tables written on the
+ * connection.</li>
+ * <li><b>Size:</b> at most maxEntries entries are held. When full, the least recently used entry
+ * is evicted.</li>
+ * <li><b>Coalescing:</b> when several threads miss on the same key at the same time, one of them
+ * runs the query and the others wait for its rows, so a popular entry that expires does not send a
+ * burst of identical queries to the database.</li>
+ * </ul>
+ *
+ * A query that is running when one of its tables is invalidated may have read the rows as they were
+ * before the write, so its rows are returned but not cached. A miss after the invalidation does not
+ * wait for that query either. It runs its own, so a thread always reads its own committed writes.
+ *
+ * <b>The cached lists and the entities in them are shared by every caller, so they must be treated
+ * as read-only.</b> The lists can not be changed.
+ *
+ * @author Promineo
+ *
+ */
+public class QueryCache {
+  /**
+   * Runs the query on a miss.
+   *
+   * @param <T> The row type.
+   */
+  @FunctionalInterface
+  public interface Loader<T> {
+    List<T> load() throws SQLException;
+  }
+
+  private final int maxEntries;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final LinkedHashMap<Key, Entry> entries;
+
+  /* The keys of the entries that read each table. */
+  private final Map<String, Set<Key>> keysByTable = new HashMap<>();
+
+  /*
+   * Each invalidation gets the next sequence number. A query takes the current number before it
+   * runs, and its rows are cached only if none of its tables were invalidated after that.
+   */
+  private long sequence;
+  private long allInvalidatedAt;
+  private final Map<String, Long> tableInvalidatedAt = new HashMap<>();
+
+  private final Map<Key, Load> running = new ConcurrentHashMap<>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * @param maxEntries The most query results held.
+   */
+  @SuppressWarnings("serial")
+  public QueryCache(int maxEntries) {
+    if(maxEntries < 1) {
+      throw new DaoException("The cache size must be at least 1, not " + maxEntries);
+    }
+
+    this.maxEntries = maxEntries;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        if(size() > QueryCache.this.maxEntries) {
+          evictions.increment();
+          unindex(eldest.getKey(), eldest.getValue());
+          return true;
+        }
+
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Return the cached rows for a query, or run the query and cache its rows.
+   *
+   * @param <T> The row type.
+   * @param scope Separates queries with the same text that run against different databases.
+   * @param sql The query.
+   * @param params The parameter values, in order. Values may be null.
+   * @param ttl How long the rows are cached.
+   * @param tables The tables the query reads.
+   * @param loader Runs the query. It is called at most once per miss, no matter how many threads
+   *        miss at the same time.
+   * @return The rows. The list can not be changed.
+   * @throws DaoException Thrown if the query fails.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> List<T> get(Object scope, String sql, List<?> params, Duration ttl,
+      Collection<String> tables, Loader<T> loader) {
+    Key key = new Key(scope, normalize(sql), params);
+    long stamp;
+
+    lock.lock();
+
+    try {
+      Entry entry = entries.get(key);
+
+      if(Objects.nonNull(entry)) {
+        if(System.nanoTime() - entry.expiresAt < 0) {
+          hits.increment();
+          return (List<T>)entry.rows;
+        }
+
+        remove(key);
+      }
+
+      stamp = sequence;
+    }
+    finally {
+      lock.unlock();
+    }
+
+    Set<String> tags = tags(tables);
+    Load mine = new Load(stamp);
+
+    for(Load other = running.putIfAbsent(key, mine); Objects.nonNull(other);
+        other = running.putIfAbsent(key, mine)) {
+      if(!stale(other, tags)) {
+        coalesced.increment();
+
+        try {
+          return (List<T>)other.rows.join();
+        }
+        catch(CompletionException e) {
+          throw new DaoException("Unable to run query: " + sql, e.getCause());
+        }
+      }
+
+      /*
+       * The running query started before a write this thread may have made, so its rows may be out
+       * of date. Run a new query, and let later misses wait for that one instead.
+       */
+      if(running.replace(key, other, mine)) {
+        break;
+      }
+    }
+
+    misses.increment();
+
+    try {
+      List<T> rows = Collections.unmodifiableList(new ArrayList<>(loader.load()));
+
+      lock.lock();
+
+      try {
+        if(!invalidatedSince(tags, stamp)) {
+          entries.put(key, new Entry(rows, System.nanoTime() + ttl.toNanos(), tags));
+
+          for(String table : tags) {
+            keysByTable.computeIfAbsent(table, t -> new HashSet<>()).add(key);
+          }
+        }
+      }
+      finally {
+        lock.unlock();
+      }
+
+      mine.rows.complete(rows);
+      return rows;
+    }
+    catch(SQLException | RuntimeException e) {
+      mine.rows.completeExceptionally(e);
+      throw e instanceof DaoException ? (DaoException)e
+          : new DaoException("Unable to run query: " + sql, e);
+    }
+    finally {
+      running.remove(key, mine);
+    }
+  }
+
+  /**
+   * Drop every entry that reads any of the given tables. Call this after a write to the tables has
+   * been committed.
+   *
+   * @param tables The table names.
+   */
+  public void invalidate(Collection<String> tables) {
+    lock.lock();
+
+    try {
+      sequence++;
+
+      for(String table : tags(tables)) {
+        tableInvalidatedAt.put(table, sequence);
+
+        Set<Key> keys = keysByTable.get(table);
+
+        if(Objects.nonNull(keys)) {
+          for(Key key : new ArrayList<>(keys)) {
+            remove(key);
+          }
+        }
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Drop every entry. Call this after a change that may touch any table, like running a script.
+   */
+  public void invalidateAll() {
+    lock.lock();
+
+    try {
+      allInvalidatedAt = ++sequence;
+      entries.clear();
+      keysByTable.clear();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return The hit, miss and eviction counts, and the current size.
+   */
+  public EntityCache.Stats getStats() {
+    lock.lock();
+
+    try {
+      return new EntityCache.Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size(),
+          maxEntries);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of misses that waited for another thread's query instead of running their
+   *         own. These are not counted as misses.
+   */
+  public long getCoalesced() {
+    return coalesced.sum();
+  }
+
+  /**
+   * Collapse each run of whitespace outside of quotes to one space and trim the ends, so the same
+   * query formatted two ways has one key.
+   */
+  static String normalize(String sql) {
+    StringBuilder normalized = new StringBuilder(sql.length());
+    char quote = 0;
+    boolean space = false;
+
+    for(int index = 0; index < sql.length(); index++) {
+      char ch = sql.charAt(index);
+
+      if(quote != 0) {
+        normalized.append(ch);
+
+        if(ch == '\\' && quote != '`' && index + 1 < sql.length()) {
+          normalized.append(sql.charAt(++index));
+        }
+        else if(ch == quote) {
+          quote = 0;
+        }
+      }
+      else if(Character.isWhitespace(ch)) {
+        space = normalized.length() > 0;
+      }
+      else {
+        if(space) {
+          normalized.append(' ');
+          space = false;
+        }
+
+        if(ch == '\'' || ch == '"' || ch == '`') {
+          quote = ch;
+        }
+
+        normalized.append(ch);
+      }
+    }
+
+    return normalized.toString();
+  }
+
+  private Set<String> tags(Collection<String> tables) {
+    Set<String> tags = new HashSet<>();
+
+    for(String table : tables) {
+      tags.add(table.toLowerCase(Locale.ROOT));
+    }
+
+    return tags;
+  }
+
+  /**
+   * @return {@code true} if any of the tables was invalidated after the stamp was taken. Call with
+   *         the lock held.
+   */
+  private boolean invalidatedSince(Set<String> tags, long stamp) {
+    if(allInvalidatedAt > stamp) {
+      return true;
+    }
+
+    for(String table : tags) {
+      Long invalidatedAt = tableInvalidatedAt.get(table);
+
+      if(Objects.nonNull(invalidatedAt) && invalidatedAt > stamp) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @return {@code true} if any of the tables was invalidated after the running query started.
+   */
+  private boolean stale(Load load, Set<String> tags) {
+    lock.lock();
+
+    try {
+      return invalidatedSince(tags, load.stamp);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Remove an entry and its tag references. Call with the lock held.
+   */
+  private void remove(Key key) {
+    Entry entry = entries.remove(key);
+
+    if(Objects.nonNull(entry)) {
+      unindex(key, entry);
+    }
+  }
+
+  private void unindex(Key key, Entry entry) {
+    for(String table : entry.tables) {
+      Set<Key> keys = keysByTable.get(table);
+
+      if(Objects.nonNull(keys)) {
+        keys.remove(key);
+
+        if(keys.isEmpty()) {
+          keysByTable.remove(table);
+        }
+      }
+    }
+  }
+
+  private static final class Key {
+    private final Object scope;
+    private final String sql;
+    private final List<Object> params;
+    private final int hash;
+
+    Key(Object scope, String sql, List<?> params) {
+      this.scope = scope;
+      this.sql = sql;
+
+      /* A copy, since the caller may reuse its list. List.copyOf() does not allow nulls. */
+      this.params = Arrays.asList(params.toArray());
+      this.hash = Objects.hash(scope, sql, this.params);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(this == obj) {
+        return true;
+      }
+
+      if(!(obj instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key)obj;
+      return hash == other.hash && Objects.equals(scope, other.scope) && sql.equals(other.sql)
+          && params.equals(other.params);
+    }
+  }
+
+  /**
+   * A query that is running: the sequence number taken before it started, and its rows.
+   */
+  private static final class Load {
+    final long stamp;
+    final CompletableFuture<List<?>> rows = new CompletableFuture<>();
+
+    Load(long stamp) {
+      this.stamp = stamp;
+    }
+  }
+
+  private static final class Entry {
+    final List<?> rows;
+    final long expiresAt;
+    final Set<String> tables;
+
+    Entry(List<?> rows, long expiresAt, Set<String> tables) {
+      this.rows = rows;
+      this.expiresAt = expiresAt;
+      this.tables = tables;
+    }
+  }
+}
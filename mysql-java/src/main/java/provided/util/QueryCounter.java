@@ -0,0 +1,374 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This counts the statements run through {@link DaoBase} on the current thread while it is open,
+ * grouped by {@link SqlFingerprint}. It is meant to catch N+1 query patterns: a fetch that should
+ * run one query per table but runs one per row.
+ *
+ * <pre>
+ * try(QueryCounter counter = QueryCounter.open("fetch recipes")) {
+ *   dao.fetchRecipes(ids);
+ *
+ *   assert counter.getRoundTrips() == 4 : counter;
+ * }
+ * </pre>
+ *
+ * For each fingerprint, three things are counted:
+ * <ul>
+ * <li><b>Statements:</b> each execute call counts one, except a batch, which counts one per
+ * statement or row in it.</li>
+ * <li><b>Round trips:</b> each execute call counts one, batch or not.</li>
+ * <li><b>Rows:</b> the rows inserted, updated or deleted, or the rows read from a query's result
+ * set.</li>
+ * </ul>
+ *
+ * A counter can be given a budget: the most round trips in total ({@link #setMaxRoundTrips(int)})
+ * and the most round trips of any one fingerprint ({@link #setMaxRepeats(int)}). If a budget is
+ * exceeded, closing the counter logs a warning, or, if {@link #setFailOnClose(boolean)} is set,
+ * throws a {@link DaoException}.
+ *
+ * Counters can be nested. A statement is counted by every open counter on the thread. Work handed
+ * to another thread (like an {@link AsyncExecutor} task) is not counted.
+ *
+ * The DAOs guard their fetch methods with {@link #guard(String, int)}, which opens a counter only
+ * when the system property {@value #GUARD_PROPERTY} is true (in staging, for example), so a fetch
+ * that starts running a query per row is logged.
+ *
+ * @author Promineo
+ *
+ */
+public final class QueryCounter implements AutoCloseable {
+  public static final String GUARD_PROPERTY = "provided.util.queryGuard";
+
+  private static final boolean GUARDS_ON = Boolean.getBoolean(GUARD_PROPERTY);
+  private static final int NO_LIMIT = -1;
+
+  private static final Logger LOGGER = Logger.getLogger(QueryCounter.class.getName());
+  private static final ThreadLocal<QueryCounter> CURRENT = new ThreadLocal<>();
+
+  private final String name;
+  private final QueryCounter parent;
+  private final Map<String, Counts> counts = new LinkedHashMap<>();
+  private int maxRoundTrips = NO_LIMIT;
+  private int maxRepeats = NO_LIMIT;
+  private boolean failOnClose;
+  private boolean closed;
+
+  private QueryCounter(String name, QueryCounter parent) {
+    this.name = name;
+    this.parent = parent;
+  }
+
+  /**
+   * Start counting the statements run on this thread.
+   *
+   * @return The counter. Close it to stop counting.
+   */
+  public static QueryCounter open() {
+    return open("query counter");
+  }
+
+  /**
+   * Start counting the statements run on this thread.
+   *
+   * @param name The name used in the warning logged if the counter goes over its budget.
+   * @return The counter. Close it to stop counting.
+   */
+  public static QueryCounter open(String name) {
+    QueryCounter counter = new QueryCounter(name, CURRENT.get());
+
+    CURRENT.set(counter);
+    return counter;
+  }
+
+  /**
+   * Open a counter that allows each fingerprint at most the given number of round trips, if
+   * guards are turned on with the system property {@value #GUARD_PROPERTY}. Otherwise nothing is
+   * counted and {@code null} is returned, which a try-with-resources statement accepts.
+   *
+   * @param name The name used in the warning, like "RecipeDao.fetchRecipes".
+   * @param maxRepeats The most round trips of any one fingerprint.
+   * @return The counter, or {@code null} if guards are off.
+   */
+  public static QueryCounter guard(String name, int maxRepeats) {
+    if(!GUARDS_ON) {
+      return null;
+    }
+
+    QueryCounter counter = open(name);
+    counter.setMaxRepeats(maxRepeats);
+    return counter;
+  }
+
+  /**
+   * @return {@code true} if a counter is open on this thread.
+   */
+  static boolean isCounting() {
+    return Objects.nonNull(CURRENT.get());
+  }
+
+  /**
+   * Count an execute call in every open counter on this thread. If it returned a result set, the
+   * result set is wrapped so that the rows read from it are counted.
+   *
+   * @param sql The SQL run.
+   * @param statements The statements run: 1, or the size of a batch.
+   * @param result What the execute call returned.
+   * @param rows The rows changed, or -1 if not known.
+   * @return The result to hand back to the caller.
+   */
+  static Object executed(String sql, int statements, Object result, long rows) {
+    String fingerprint = SqlFingerprint.of(String.valueOf(sql));
+    List<Counts> entries = new ArrayList<>(2);
+
+    for(QueryCounter counter = CURRENT.get(); Objects.nonNull(counter);
+        counter = counter.parent) {
+      Counts entry = counter.counts.computeIfAbsent(fingerprint, key -> new Counts());
+
+      entry.statements += statements;
+      entry.roundTrips++;
+      entry.rows += Math.max(rows, 0);
+      entries.add(entry);
+    }
+
+    if(result instanceof ResultSet) {
+      return Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+          new Class<?>[] {ResultSet.class}, new CountingResultSet((ResultSet)result, entries));
+    }
+
+    return result;
+  }
+
+  /**
+   * @return The counts, by SQL fingerprint, in the order the fingerprints were first run.
+   */
+  public Map<String, Counts> getCounts() {
+    return Collections.unmodifiableMap(counts);
+  }
+
+  /**
+   * @param sql The SQL, or its fingerprint.
+   * @return The counts of the SQL's fingerprint. They are all zero if it has not been run.
+   */
+  public Counts getCounts(String sql) {
+    return counts.getOrDefault(SqlFingerprint.of(sql), new Counts());
+  }
+
+  public long getStatements() {
+    long total = 0;
+
+    for(Counts entry : counts.values()) {
+      total += entry.statements;
+    }
+
+    return total;
+  }
+
+  public long getRoundTrips() {
+    long total = 0;
+
+    for(Counts entry : counts.values()) {
+      total += entry.roundTrips;
+    }
+
+    return total;
+  }
+
+  public long getRows() {
+    long total = 0;
+
+    for(Counts entry : counts.values()) {
+      total += entry.rows;
+    }
+
+    return total;
+  }
+
+  /**
+   * @param maxRoundTrips The most round trips in total, or -1 for no limit.
+   */
+  public void setMaxRoundTrips(int maxRoundTrips) {
+    this.maxRoundTrips = maxRoundTrips;
+  }
+
+  /**
+   * @param maxRepeats The most round trips of any one fingerprint, or -1 for no limit.
+   */
+  public void setMaxRepeats(int maxRepeats) {
+    this.maxRepeats = maxRepeats;
+  }
+
+  /**
+   * @param failOnClose If {@code true}, {@link #close()} throws a {@link DaoException} when a
+   *        budget is exceeded, instead of logging a warning. Use this in tests.
+   */
+  public void setFailOnClose(boolean failOnClose) {
+    this.failOnClose = failOnClose;
+  }
+
+  /**
+   * @return A description of each budget that has been exceeded, or an empty list.
+   */
+  public List<String> getViolations() {
+    List<String> violations = new ArrayList<>();
+    long roundTrips = getRoundTrips();
+
+    if(maxRoundTrips != NO_LIMIT && roundTrips > maxRoundTrips) {
+      violations.add(roundTrips + " round trips, budget " + maxRoundTrips);
+    }
+
+    if(maxRepeats != NO_LIMIT) {
+      for(Map.Entry<String, Counts> entry : counts.entrySet()) {
+        if(entry.getValue().roundTrips > maxRepeats) {
+          violations.add(entry.getValue().roundTrips + " round trips, budget " + maxRepeats
+              + ": " + entry.getKey());
+        }
+      }
+    }
+
+    return violations;
+  }
+
+  /**
+   * Stop counting, and log a warning or throw an exception if a budget was exceeded.
+   *
+   * @throws DaoException Thrown if a budget was exceeded and {@link #setFailOnClose(boolean)} is
+   *         set.
+   */
+  @Override
+  public void close() {
+    if(closed) {
+      return;
+    }
+
+    closed = true;
+
+    if(Objects.isNull(parent)) {
+      CURRENT.remove();
+    }
+    else {
+      CURRENT.set(parent);
+    }
+
+    List<String> violations = getViolations();
+
+    if(violations.isEmpty()) {
+      return;
+    }
+
+    String message = name + " went over its query budget: " + String.join("; ", violations);
+
+    if(failOnClose) {
+      throw new DaoException(message);
+    }
+
+    LOGGER.warning(message);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder(name).append(": ").append(getRoundTrips())
+        .append(" round trips");
+
+    for(Map.Entry<String, Counts> entry : counts.entrySet()) {
+      builder.append(System.lineSeparator()).append("  ").append(entry.getValue()).append(": ")
+          .append(entry.getKey());
+    }
+
+    return builder.toString();
+  }
+
+  /**
+   * The counts of one SQL fingerprint.
+   *
+   * @author Promineo
+   *
+   */
+  public static class Counts {
+    private long statements;
+    private long roundTrips;
+    private long rows;
+
+    public long getStatements() {
+      return statements;
+    }
+
+    public long getRoundTrips() {
+      return roundTrips;
+    }
+
+    public long getRows() {
+      return rows;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d statements, %d round trips, %d rows", statements, roundTrips,
+          rows);
+    }
+  }
+
+  /**
+   * This is the proxy handler of a result set that counts the rows read from it.
+   *
+   * @author Promineo
+   *
+   */
+  private static class CountingResultSet implements InvocationHandler {
+    private final ResultSet rs;
+    private final List<Counts> entries;
+
+    CountingResultSet(ResultSet rs, List<Counts> entries) {
+      this.rs = rs;
+      this.entries = entries;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch(method.getName()) {
+        case "equals":
+          return proxy == args[0];
+
+        case "hashCode":
+          return System.identityHashCode(proxy);
+
+        default:
+          break;
+      }
+
+      Object result;
+
+      try {
+        result = method.invoke(rs, args);
+      }
+      catch(InvocationTargetException e) {
+        throw e.getCause();
+      }
+
+      if(Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+        for(Counts entry : entries) {
+          entry.rows++;
+        }
+      }
+
+      return result;
+    }
+  }
+}
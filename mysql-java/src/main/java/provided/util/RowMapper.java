@@ -0,0 +1,301 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This maps the rows of a result set to objects of one class. It does the same job as the
+ * reflection loop that {@link DaoBase#extract(ResultSet, Class)} used to run on every row, but all
+ * of the expensive work is done once, when the mapper is built:
+ * <ul>
+ * <li>The zero-argument constructor is turned into a {@link MethodHandle}.</li>
+ * <li>Each field name is converted from camel case to snake case and matched against the column
+ * labels in the result set. A field without a column is simply not part of the mapper, so no
+ * exception is needed to find out that the column is missing.</li>
+ * <li>Each matched field gets a setter {@link MethodHandle} bound to the column index.</li>
+ * </ul>
+ *
+ * Mapping a row is then a loop over column indexes. Mappers are cached by class and by the list of
+ * column labels (the "shape" of the result set), so every query that returns the same columns uses
+ * the same mapper.
+ *
+ * @author Promineo
+ *
+ * @param <T> The type of object created for each row.
+ */
+public final class RowMapper<T> {
+  private static final Map<Shape, RowMapper<?>> CACHE = new ConcurrentHashMap<>();
+
+  /*
+   * The mapper most recently used by this thread, and the result set it was used on. A loop calling
+   * extract() on every row of the same result set finds its mapper here without reading the result
+   * set metadata again. The result set is weakly held so that this does not keep rows in memory.
+   */
+  private static final ThreadLocal<LastUsed> LAST_USED = ThreadLocal.withInitial(LastUsed::new);
+
+  private static final int NO_CONVERSION = 0;
+  private static final int TIME_TO_LOCAL_TIME = 1;
+  private static final int TIMESTAMP_TO_LOCAL_DATE_TIME = 2;
+
+  private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+  private static final MethodType SETTER_TYPE =
+      MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final Class<T> classType;
+  private final MethodHandle constructor;
+  private final int[] columnIndexes;
+  private final MethodHandle[] setters;
+  private final int[] conversions;
+
+  private RowMapper(Class<T> classType, MethodHandle constructor, int[] columnIndexes,
+      MethodHandle[] setters, int[] conversions) {
+    this.classType = classType;
+    this.constructor = constructor;
+    this.columnIndexes = columnIndexes;
+    this.setters = setters;
+    this.conversions = conversions;
+  }
+
+  /**
+   * Return the mapper for the given class and the columns in the given result set, building it if
+   * this is the first time this class has been read from a result set with these columns.
+   *
+   * @param <T> The type of object to map rows to.
+   * @param rs The result set.
+   * @param classType The class to map rows to. It must have a public zero-argument constructor.
+   * @return The mapper.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> RowMapper<T> forResultSet(ResultSet rs, Class<T> classType) {
+    LastUsed lastUsed = LAST_USED.get();
+
+    if(lastUsed.mapper.classType == classType && lastUsed.resultSet.get() == rs) {
+      return (RowMapper<T>)lastUsed.mapper;
+    }
+
+    try {
+      Shape shape = new Shape(classType, readLabels(rs.getMetaData()));
+      RowMapper<T> mapper =
+          (RowMapper<T>)CACHE.computeIfAbsent(shape, key -> build(classType, key.labels));
+
+      lastUsed.resultSet = new WeakReference<>(rs);
+      lastUsed.mapper = mapper;
+
+      return mapper;
+    }
+    catch(SQLException e) {
+      throw new DaoException("Unable to read the result set columns for " + classType.getName(),
+          e);
+    }
+  }
+
+  /**
+   * Create an object from the current row of the result set. Fields that have no matching column,
+   * or whose column is SQL NULL, keep the value given to them by the constructor. This preserves
+   * instance variables (like lists) that are initialized when the object is created.
+   *
+   * @param rs The result set, positioned on the row to map by the caller.
+   * @return The populated object.
+   */
+  public T map(ResultSet rs) {
+    try {
+      Object obj = (Object)constructor.invokeExact();
+
+      for(int index = 0; index < columnIndexes.length; index++) {
+        Object value = rs.getObject(columnIndexes[index]);
+
+        if(Objects.nonNull(value)) {
+          setters[index].invokeExact(obj, convert(value, conversions[index]));
+        }
+      }
+
+      return classType.cast(obj);
+    }
+    catch(Throwable e) {
+      throw new DaoException("Unable to create object of type " + classType.getName(), e);
+    }
+  }
+
+  /**
+   * Convert the following types: Time -> LocalTime, and Timestamp -> LocalDateTime.
+   */
+  private static Object convert(Object value, int conversion) {
+    if(conversion == TIME_TO_LOCAL_TIME && value instanceof Time) {
+      return ((Time)value).toLocalTime();
+    }
+
+    if(conversion == TIMESTAMP_TO_LOCAL_DATE_TIME && value instanceof Timestamp) {
+      return ((Timestamp)value).toLocalDateTime();
+    }
+
+    return value;
+  }
+
+  /**
+   * Build a mapper. This is where all the reflection happens.
+   *
+   * @param classType The class to map rows to.
+   * @param labels The column labels of the result set, in lower case, in column order.
+   * @return The new mapper.
+   */
+  private static <T> RowMapper<T> build(Class<T> classType, String[] labels) {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      MethodHandle constructor =
+          lookup.unreflectConstructor(classType.getConstructor()).asType(CONSTRUCTOR_TYPE);
+
+      List<Integer> columnIndexes = new ArrayList<>();
+      List<MethodHandle> setters = new ArrayList<>();
+      List<Integer> conversions = new ArrayList<>();
+
+      for(Field field : classType.getDeclaredFields()) {
+        if(Modifier.isStatic(field.getModifiers())) {
+          continue;
+        }
+
+        int column = indexOf(labels, camelCaseToSnakeCase(field.getName()));
+
+        if(column == 0) {
+          continue;
+        }
+
+        /* Private fields are populated directly, without using the setter. */
+        field.setAccessible(true);
+
+        columnIndexes.add(column);
+        setters.add(lookup.unreflectSetter(field).asType(SETTER_TYPE));
+        conversions.add(conversionFor(field.getType()));
+      }
+
+      return new RowMapper<>(classType, constructor,
+          columnIndexes.stream().mapToInt(Integer::intValue).toArray(),
+          setters.toArray(new MethodHandle[0]),
+          conversions.stream().mapToInt(Integer::intValue).toArray());
+    }
+    catch(ReflectiveOperationException | RuntimeException e) {
+      throw new DaoException("Unable to create object of type " + classType.getName(), e);
+    }
+  }
+
+  private static int conversionFor(Class<?> fieldType) {
+    if(LocalTime.class.equals(fieldType)) {
+      return TIME_TO_LOCAL_TIME;
+    }
+
+    if(LocalDateTime.class.equals(fieldType)) {
+      return TIMESTAMP_TO_LOCAL_DATE_TIME;
+    }
+
+    return NO_CONVERSION;
+  }
+
+  /**
+   * Find a column by name. Like {@link ResultSet#findColumn(String)}, this is case-insensitive and
+   * returns the first matching column.
+   *
+   * @return The one-based column index, or zero if there is no such column.
+   */
+  private static int indexOf(String[] labels, String columnName) {
+    for(int index = 0; index < labels.length; index++) {
+      if(labels[index].equals(columnName)) {
+        return index + 1;
+      }
+    }
+
+    return 0;
+  }
+
+  private static String[] readLabels(ResultSetMetaData meta) throws SQLException {
+    String[] labels = new String[meta.getColumnCount()];
+
+    for(int index = 0; index < labels.length; index++) {
+      labels[index] = meta.getColumnLabel(index + 1).toLowerCase();
+    }
+
+    return labels;
+  }
+
+  /**
+   * This converts a camel case value (rowInsertTime) to snake case (row_insert_time).
+   *
+   * @param identifier The name in camel case to convert.
+   * @return The name converted to snake case.
+   */
+  static String camelCaseToSnakeCase(String identifier) {
+    StringBuilder nameBuilder = new StringBuilder(identifier.length() + 4);
+
+    for(int index = 0; index < identifier.length(); index++) {
+      char ch = identifier.charAt(index);
+
+      if(Character.isUpperCase(ch)) {
+        nameBuilder.append('_').append(Character.toLowerCase(ch));
+      }
+      else {
+        nameBuilder.append(ch);
+      }
+    }
+
+    return nameBuilder.toString();
+  }
+
+  /**
+   * The cache key: a class plus the column labels of a result set.
+   */
+  private static final class Shape {
+    private final Class<?> classType;
+    private final String[] labels;
+    private final int hash;
+
+    Shape(Class<?> classType, String[] labels) {
+      this.classType = classType;
+      this.labels = labels;
+      this.hash = 31 * classType.hashCode() + Arrays.hashCode(labels);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(!(obj instanceof Shape)) {
+        return false;
+      }
+
+      Shape other = (Shape)obj;
+      return classType == other.classType && Arrays.equals(labels, other.labels);
+    }
+  }
+
+  /**
+   * Holder for the per-thread most recently used mapper.
+   */
+  private static final class LastUsed {
+    private static final RowMapper<?> NONE = new RowMapper<>(Void.class, null, null, null, null);
+
+    WeakReference<ResultSet> resultSet = new WeakReference<>(null);
+    RowMapper<?> mapper = NONE;
+  }
+}
@@ -0,0 +1,546 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This loads a seed data script (a file of INSERT statements, like recipe_data.sql) into tables
+ * that already exist. It is much faster than running the script one statement at a time:
+ * <ol>
+ * <li>The statements are grouped by the table they write to. The order of the statements for each
+ * table is kept.</li>
+ * <li>The foreign keys of those tables are read from the database metadata. A table is loaded only
+ * after every table it references has been loaded, so unit and category are loaded before recipe,
+ * and recipe before ingredient, step and recipe_category.</li>
+ * <li>Tables that do not depend on each other are loaded at the same time, each on its own
+ * connection from the data source and in its own transaction.</li>
+ * <li>Consecutive single-row INSERTs into the same table with the same column list are collapsed
+ * into one multi-row INSERT, so a thousand rows take one statement instead of a thousand.</li>
+ * </ol>
+ *
+ * Because each table is loaded by one thread in script order, AUTO_INCREMENT keys are the same as
+ * they would be if the script were run in order. Loading by table holds the whole script in memory,
+ * and it only reorders INSERTs: if the script contains anything else (an UPDATE, a DELETE or DDL),
+ * the order between tables matters, and the script is run in order on one connection instead.
+ *
+ * {@link #loadInOrder(Reader)} always runs the script in order on one connection. It still
+ * collapses INSERTs, but it streams the script, holding only the statements waiting to be sent.
+ *
+ * @author Promineo
+ *
+ */
+public class SeedLoader {
+  /** The default number of tables loaded at the same time. */
+  public static final int DEFAULT_PARALLELISM = 4;
+
+  /** The default maximum number of rows in a collapsed INSERT. */
+  public static final int DEFAULT_MAX_ROWS_PER_INSERT = 500;
+
+  /*
+   * Collapsed INSERTs are kept well under MySQL's default max_allowed_packet (64MB) and under the
+   * size at which a single statement starts to slow the server down.
+   */
+  private static final int MAX_STATEMENT_LENGTH = 1024 * 1024;
+
+  /* In-order loading sends a batch once it holds this many statements or characters. */
+  private static final int MAX_BATCH_STATEMENTS = 100;
+  private static final int MAX_BATCH_LENGTH = 4 * MAX_STATEMENT_LENGTH;
+
+  private static final Pattern INSERT_TABLE =
+      Pattern.compile("^INSERT\\s+(?:IGNORE\\s+)?INTO\\s+([`\\w.]+)", Pattern.CASE_INSENSITIVE);
+
+  private final DataSource dataSource;
+  private int parallelism = DEFAULT_PARALLELISM;
+  private int maxRowsPerInsert = DEFAULT_MAX_ROWS_PER_INSERT;
+
+  /**
+   * @param dataSource The source of connections. It should be able to hand out at least
+   *        {@link #getParallelism()} connections at a time.
+   */
+  public SeedLoader(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * @param parallelism The most tables loaded at the same time. Use 1 to load the tables one after
+   *        the other (but still in dependency order and with collapsed INSERTs).
+   */
+  public void setParallelism(int parallelism) {
+    if(parallelism < 1) {
+      throw new DaoException("The parallelism must be at least 1, not " + parallelism);
+    }
+
+    this.parallelism = parallelism;
+  }
+
+  public int getMaxRowsPerInsert() {
+    return maxRowsPerInsert;
+  }
+
+  /**
+   * @param maxRowsPerInsert The most rows collapsed into one INSERT. Use 1 to turn collapsing off.
+   */
+  public void setMaxRowsPerInsert(int maxRowsPerInsert) {
+    if(maxRowsPerInsert < 1) {
+      throw new DaoException("The rows per insert must be at least 1, not " + maxRowsPerInsert);
+    }
+
+    this.maxRowsPerInsert = maxRowsPerInsert;
+  }
+
+  /**
+   * Load a seed data script table by table. If the script contains anything but INSERTs, it is run
+   * in order instead, as by {@link #loadInOrder(Reader)}.
+   *
+   * @param reader The script. It is closed when this returns.
+   * @return The number of statements sent to the database, after collapsing.
+   * @throws DaoException Thrown if the script can not be read or a statement fails. When loading by
+   *         table, tables that were loaded before the failure stay loaded.
+   */
+  public int load(Reader reader) {
+    Map<String, List<String>> tables = new LinkedHashMap<>();
+    List<String> statements = new ArrayList<>();
+
+    try(SqlScriptReader script = new SqlScriptReader(reader)) {
+      String sql;
+
+      while((sql = script.nextStatement()) != null) {
+        String table = insertTable(sql);
+        statements.add(sql);
+
+        if(Objects.isNull(table)) {
+          /* The fallback: run the statements read so far, then the rest, in order. */
+          tables.clear();
+          return runInOrder(statements, script);
+        }
+
+        tables.computeIfAbsent(table, name -> new ArrayList<>()).add(sql);
+      }
+    }
+    catch(IOException e) {
+      throw new DaoException("Unable to read the seed data script", e);
+    }
+
+    statements.clear();
+
+    try {
+      return loadByTable(tables, readDependencies(tables.keySet()));
+    }
+    catch(SQLException e) {
+      throw new DaoException("Unable to read the foreign keys of the seed data tables", e);
+    }
+  }
+
+  /**
+   * Run a seed data script in order on one connection, in one transaction. Consecutive single-row
+   * INSERTs are collapsed as they are read, and the statements are sent in batches, so only one
+   * batch is held in memory.
+   *
+   * @param reader The script. It is closed when this returns.
+   * @return The number of statements sent to the database, after collapsing.
+   * @throws DaoException Thrown if the script can not be read or a statement fails. Nothing is
+   *         loaded unless the script contains statements that commit implicitly, like DDL.
+   */
+  public int loadInOrder(Reader reader) {
+    try(SqlScriptReader script = new SqlScriptReader(reader)) {
+      return runInOrder(new ArrayList<>(), script);
+    }
+    catch(IOException e) {
+      throw new DaoException("Unable to read the seed data script", e);
+    }
+  }
+
+  /**
+   * Load each table once the tables it references are loaded. Each table gets a future that runs
+   * after the futures of its parents complete, so independent tables run at the same time.
+   */
+  private int loadByTable(Map<String, List<String>> tables, Map<String, Set<String>> parents) {
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+      Thread thread = new Thread(runnable, "seed-loader");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    AtomicInteger count = new AtomicInteger();
+    Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+
+    try {
+      for(String table : order(tables.keySet(), parents)) {
+        CompletableFuture<?>[] waitFor =
+            parents.get(table).stream().map(futures::get).toArray(CompletableFuture[]::new);
+        List<String> statements = collapse(tables.get(table));
+
+        futures.put(table, CompletableFuture.allOf(waitFor)
+            .thenRunAsync(() -> count.addAndGet(run(statements)), executor));
+      }
+
+      CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+      return count.get();
+    }
+    catch(CompletionException e) {
+      if(e.getCause() instanceof DaoException) {
+        throw (DaoException)e.getCause();
+      }
+
+      throw new DaoException("Unable to load the seed data", e.getCause());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Run statements in one transaction on a connection of their own.
+   *
+   * @return The number of statements run.
+   */
+  private int run(List<String> statements) {
+    try(Connection conn = dataSource.getConnection()) {
+      conn.setAutoCommit(false);
+
+      try(Statement stmt = conn.createStatement()) {
+        for(String sql : statements) {
+          stmt.addBatch(sql);
+        }
+
+        stmt.executeBatch();
+        conn.commit();
+
+        return statements.size();
+      }
+      catch(SQLException | RuntimeException e) {
+        conn.rollback();
+        throw e;
+      }
+    }
+    catch(SQLException e) {
+      throw new DaoException("Unable to load the seed data", e);
+    }
+  }
+
+  /**
+   * Collapse the statements for one table.
+   */
+  private List<String> collapse(List<String> statements) {
+    List<String> collapsed = new ArrayList<>();
+    InsertCollapser collapser = new InsertCollapser(maxRowsPerInsert, collapsed::add);
+
+    for(String sql : statements) {
+      collapser.add(sql);
+    }
+
+    collapser.flush();
+    statements.clear();
+
+    return collapsed;
+  }
+
+  /**
+   * Run statements that have already been read, then the rest of the script, in order on one
+   * connection and in one transaction.
+   *
+   * @return The number of statements run, after collapsing.
+   */
+  private int runInOrder(List<String> statements, SqlScriptReader script) throws IOException {
+    try(Connection conn = dataSource.getConnection()) {
+      conn.setAutoCommit(false);
+
+      try(Statement stmt = conn.createStatement()) {
+        Batch batch = new Batch(stmt);
+        InsertCollapser collapser = new InsertCollapser(maxRowsPerInsert, batch);
+
+        for(String sql : statements) {
+          collapser.add(sql);
+        }
+
+        statements.clear();
+        String sql;
+
+        while((sql = script.nextStatement()) != null) {
+          collapser.add(sql);
+        }
+
+        collapser.flush();
+        batch.execute();
+        conn.commit();
+
+        return batch.total;
+      }
+      catch(SQLException | IOException | RuntimeException e) {
+        conn.rollback();
+        throw e;
+      }
+    }
+    catch(SQLException e) {
+      throw new DaoException("Unable to load the seed data", e);
+    }
+  }
+
+  /**
+   * Read the foreign keys of each table and keep the ones that point to another table in the
+   * script. A table that references itself does not depend on itself.
+   *
+   * @return The parents of each table.
+   */
+  private Map<String, Set<String>> readDependencies(Set<String> tableNames) throws SQLException {
+    Map<String, Set<String>> parents = new LinkedHashMap<>();
+
+    try(Connection conn = dataSource.getConnection()) {
+      DatabaseMetaData meta = conn.getMetaData();
+
+      for(String table : tableNames) {
+        Set<String> references = new HashSet<>();
+
+        try(ResultSet rs = meta.getImportedKeys(conn.getCatalog(), null, table)) {
+          while(rs.next()) {
+            String parent = rs.getString("PKTABLE_NAME").toLowerCase(Locale.ROOT);
+
+            if(!parent.equals(table) && tableNames.contains(parent)) {
+              references.add(parent);
+            }
+          }
+        }
+
+        parents.put(table, references);
+      }
+    }
+
+    return parents;
+  }
+
+  /**
+   * Sort the tables so that every table comes after its parents. Among tables that are ready at the
+   * same time, script order is kept.
+   *
+   * @throws DaoException Thrown if the foreign keys form a cycle.
+   */
+  private static List<String> order(Set<String> tables, Map<String, Set<String>> parents) {
+    List<String> sorted = new ArrayList<>(tables.size());
+    Set<String> done = new HashSet<>();
+
+    while(sorted.size() < tables.size()) {
+      boolean progress = false;
+
+      for(String table : tables) {
+        if(!done.contains(table) && done.containsAll(parents.get(table))) {
+          sorted.add(table);
+          done.add(table);
+          progress = true;
+        }
+      }
+
+      if(!progress) {
+        throw new DaoException("The foreign keys between the seed data tables form a cycle");
+      }
+    }
+
+    return sorted;
+  }
+
+  /**
+   * @return The lower case name of the table the statement inserts into, or {@code null} if it is
+   *         not an INSERT.
+   */
+  private static String insertTable(String sql) {
+    Matcher matcher = INSERT_TABLE.matcher(sql);
+
+    if(!matcher.find()) {
+      return null;
+    }
+
+    String table = matcher.group(1).replace("`", "");
+    return table.substring(table.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * This sends statements to the database in JDBC batches as they arrive.
+   */
+  private static class Batch implements Consumer<String> {
+    private final Statement stmt;
+    private int statements;
+    private int length;
+    int total;
+
+    Batch(Statement stmt) {
+      this.stmt = stmt;
+    }
+
+    @Override
+    public void accept(String sql) {
+      try {
+        stmt.addBatch(sql);
+        statements++;
+        length += sql.length();
+
+        if(statements == MAX_BATCH_STATEMENTS || length >= MAX_BATCH_LENGTH) {
+          execute();
+        }
+      }
+      catch(SQLException e) {
+        throw new DaoException("Unable to load the seed data", e);
+      }
+    }
+
+    void execute() throws SQLException {
+      if(statements > 0) {
+        stmt.executeBatch();
+        total += statements;
+        statements = 0;
+        length = 0;
+      }
+    }
+  }
+
+  /**
+   * This collapses consecutive single-row INSERTs with the same table and column list into
+   * multi-row INSERTs. Any other statement is passed through unchanged, in order.
+   */
+  static class InsertCollapser {
+    private final int maxRows;
+    private final Consumer<String> sink;
+
+    /* The INSERT being collapsed: its text up to VALUES, and its row count. */
+    private String insertPrefix;
+    private StringBuilder insert;
+    private int rows;
+
+    /**
+     * @param maxRows The most rows in a collapsed INSERT.
+     * @param sink This receives the statements, collapsed, in order.
+     */
+    InsertCollapser(int maxRows, Consumer<String> sink) {
+      this.maxRows = maxRows;
+      this.sink = sink;
+    }
+
+    void add(String sql) {
+      int valuesAt = singleRowValues(sql);
+
+      if(valuesAt < 0) {
+        flush();
+        sink.accept(sql);
+        return;
+      }
+
+      String prefix = sql.substring(0, valuesAt);
+      String row = sql.substring(valuesAt);
+
+      if(Objects.nonNull(insert) && (!prefix.equals(insertPrefix) || rows == maxRows
+          || insert.length() + row.length() + 2 > MAX_STATEMENT_LENGTH)) {
+        flush();
+      }
+
+      if(Objects.isNull(insert)) {
+        insertPrefix = prefix;
+        insert = new StringBuilder(prefix).append(row);
+      }
+      else {
+        insert.append(", ").append(row);
+      }
+
+      rows++;
+    }
+
+    /**
+     * Send the INSERT being collapsed, if there is one. Call this after the last statement.
+     */
+    void flush() {
+      if(Objects.nonNull(insert)) {
+        sink.accept(insert.toString());
+        insert = null;
+        insertPrefix = null;
+        rows = 0;
+      }
+    }
+
+    /**
+     * Find the row of a single-row INSERT ... VALUES (...). The statement must have exactly one
+     * parenthesized row after VALUES and nothing after it (no ON DUPLICATE KEY UPDATE, for example).
+     *
+     * @return The index of the opening parenthesis of the row, or -1 if this is not a single-row
+     *         INSERT.
+     */
+    private static int singleRowValues(String sql) {
+      if(!sql.regionMatches(true, 0, "INSERT", 0, 6)) {
+        return -1;
+      }
+
+      int depth = 0;
+      char quote = 0;
+      int row = -1;
+
+      for(int index = 0; index < sql.length(); index++) {
+        char ch = sql.charAt(index);
+
+        if(quote != 0) {
+          if(ch == '\\' && quote != '`') {
+            index++;
+          }
+          else if(ch == quote) {
+            quote = 0;
+          }
+        }
+        else if(ch == '\'' || ch == '"' || ch == '`') {
+          quote = ch;
+        }
+        else if(ch == '(') {
+          if(depth == 0 && row < 0 && isAfterValues(sql, index)) {
+            row = index;
+          }
+
+          depth++;
+        }
+        else if(ch == ')') {
+          depth--;
+
+          if(depth == 0 && row >= 0) {
+            return index == sql.length() - 1 ? row : -1;
+          }
+        }
+      }
+
+      return -1;
+    }
+
+    private static boolean isAfterValues(String sql, int paren) {
+      int end = paren;
+
+      while(end > 0 && sql.charAt(end - 1) == ' ') {
+        end--;
+      }
+
+      return end >= 6 && sql.regionMatches(true, end - 6, "VALUES", 0, 6)
+          && (end == 6 || !Character.isLetterOrDigit(sql.charAt(end - 7)));
+    }
+  }
+}
@@ -0,0 +1,857 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.StackWalker.StackFrame;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jdk.jfr.EventType;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This records the statements that take longer than a threshold to run. {@link DaoBase} wraps each
+ * statement it prepares with {@link #trace(PreparedStatement, String)}, and every execute call on
+ * the statement is timed. When one takes at least the threshold, a {@link SlowQuery} is recorded
+ * with the SQL text, the bound parameter values, the duration, the row count and the DAO method
+ * that ran it.
+ * <ul>
+ * <li><b>Ring buffer:</b> the most recent slow queries are kept in a fixed-size ring. Adding one
+ * claims the next slot with an atomic increment, so it never takes a lock. The ring can be read at
+ * any time with {@link #getRecent()} or, over JMX, with the dump operation.</li>
+ * <li><b>Log sink:</b> each slow query is also handed to a sink (by default, a
+ * {@link java.util.logging.Logger} named after this class) on a background thread, so a slow sink
+ * never holds up a DAO. If the sink falls too far behind, queries are dropped from the sink (but
+ * not from the ring) and counted.</li>
+ * <li><b>Masking:</b> parameters bound to a masked column (like "password") are shown as ***. The
+ * column of each parameter is read from the SQL: the column list of an INSERT, or the column in
+ * front of the ? elsewhere (col = ?, col IN (?, ?), col BETWEEN ? AND ?). A masked column of "*"
+ * masks every parameter. Long values are cut to {@link #getMaxValueLength()} characters.</li>
+ * <li><b>Sampling:</b> only the given fraction of statements is logged. The others are returned
+ * unwrapped and cost nothing.</li>
+ * </ul>
+ *
+ * Traced statements also emit a {@link DbEvents.StatementExecuted} flight recorder event for each
+ * execution, and are counted by any open {@link QueryCounter}. While a recording has the event
+ * enabled or a counter is open, every statement is traced for them, sampled or not.
+ *
+ * Tracing is not free. Every call on a traced statement, including each setter and addBatch(),
+ * goes through a dynamic proxy and a reflective {@link Method#invoke(Object, Object...)}, and each
+ * parameter value is kept. Each execution also calls {@link System#nanoTime()} twice, and creates
+ * a flight recorder event when one is being recorded. See SlowQueryLogBenchmark in the benchmarks
+ * module for the cost against an unwrapped statement. This is why only a fraction of statements
+ * is traced by default: a statement that is slow every time it runs is still caught, at a tenth of
+ * the cost. The parameters are formatted, masked and the stack walked for the calling DAO method
+ * only when a statement is slow.
+ *
+ * The defaults can be set with system properties:
+ * <ul>
+ * <li>{@value #THRESHOLD_PROPERTY}: the threshold in milliseconds (default 1000).</li>
+ * <li>{@value #SAMPLE_RATE_PROPERTY}: the fraction of statements traced, from 0 to 1 (default
+ * 0.1). Use 1 to trace every statement.</li>
+ * <li>{@value #MASK_PROPERTY}: a comma-separated list of masked column names.</li>
+ * </ul>
+ *
+ * @author Promineo
+ *
+ */
+public class SlowQueryLog implements SlowQueryLogMXBean {
+  public static final String THRESHOLD_PROPERTY = "provided.util.slowQueryMillis";
+  public static final String SAMPLE_RATE_PROPERTY = "provided.util.slowQuerySampleRate";
+  public static final String MASK_PROPERTY = "provided.util.slowQueryMask";
+
+  private static final long DEFAULT_THRESHOLD_MILLIS = 1000;
+  private static final double DEFAULT_SAMPLE_RATE = 0.1;
+  private static final int DEFAULT_CAPACITY = 256;
+  private static final int DEFAULT_MAX_VALUE_LENGTH = 64;
+  private static final int SINK_QUEUE_SIZE = 1024;
+
+  private static final Logger LOGGER = Logger.getLogger(SlowQueryLog.class.getName());
+  private static final StackWalker WALKER =
+      StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+  private static final Pattern INSERT_COLUMNS = Pattern.compile(
+      "^\\s*(?:INSERT|REPLACE)\\s+(?:IGNORE\\s+)?INTO\\s+[\\w`.]+\\s*\\(([^)]*)\\)\\s*VALUES",
+      Pattern.CASE_INSENSITIVE);
+
+  /* Words that can come between a column and its parameter: col NOT IN (?), col BETWEEN ? AND ?. */
+  private static final Set<String> OPERATOR_WORDS =
+      Set.of("AND", "OR", "NOT", "IN", "IS", "LIKE", "BETWEEN", "ESCAPE");
+
+  /* Words after which a parameter is not bound to a column. */
+  private static final Set<String> CLAUSE_WORDS = Set.of("LIMIT", "OFFSET", "VALUES", "SELECT");
+
+  private static final Object[] NO_PARAMETERS = {};
+
+  private static final EventType STATEMENT_EVENTS =
+      EventType.getEventType(DbEvents.StatementExecuted.class);
+
+  private volatile long thresholdNanos;
+  private volatile double sampleRate = DEFAULT_SAMPLE_RATE;
+  private volatile Set<String> maskedColumns = Collections.emptySet();
+  private volatile int maxValueLength = DEFAULT_MAX_VALUE_LENGTH;
+  private volatile Consumer<SlowQuery> sink =
+      query -> LOGGER.log(Level.WARNING, "Slow query: {0}", query);
+
+  private final AtomicReferenceArray<SlowQuery> ring;
+  private final int mask;
+  private final AtomicLong sequence = new AtomicLong();
+  private final LongAdder dropped = new LongAdder();
+
+  private final BlockingQueue<SlowQuery> queue = new ArrayBlockingQueue<>(SINK_QUEUE_SIZE);
+  private final AtomicBoolean writerStarted = new AtomicBoolean();
+
+  /**
+   * Create a log with the default ring size.
+   *
+   * @param thresholdMillis The shortest execution time recorded, in milliseconds.
+   */
+  public SlowQueryLog(long thresholdMillis) {
+    this(thresholdMillis, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param thresholdMillis The shortest execution time recorded, in milliseconds.
+   * @param capacity The number of slow queries kept in the ring. It is rounded up to a power of
+   *        two.
+   */
+  public SlowQueryLog(long thresholdMillis, int capacity) {
+    if(capacity < 1) {
+      throw new DaoException("The capacity must be at least 1, not " + capacity);
+    }
+
+    int size = Integer.highestOneBit(capacity);
+
+    if(size < capacity) {
+      size <<= 1;
+    }
+
+    this.ring = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+    setThresholdMillis(thresholdMillis);
+  }
+
+  /**
+   * Create a log set up from the system properties listed in the class comment.
+   *
+   * @return The log.
+   */
+  public static SlowQueryLog fromSystemProperties() {
+    SlowQueryLog log =
+        new SlowQueryLog(Long.getLong(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD_MILLIS));
+    String sampleRate = System.getProperty(SAMPLE_RATE_PROPERTY);
+    String masked = System.getProperty(MASK_PROPERTY);
+
+    if(Objects.nonNull(sampleRate)) {
+      log.setSampleRate(Double.parseDouble(sampleRate));
+    }
+
+    if(Objects.nonNull(masked)) {
+      log.setMaskedColumns(masked.split(","));
+    }
+
+    return log;
+  }
+
+  /**
+   * Wrap a statement so that its executions are timed. If the statement is not sampled, it is
+   * returned as is.
+   *
+   * @param stmt The statement.
+   * @param sql The SQL it was prepared with.
+   * @return The traced statement.
+   */
+  public PreparedStatement trace(PreparedStatement stmt, String sql) {
+    boolean logged = sampled();
+
+    if(!logged && !STATEMENT_EVENTS.isEnabled() && !QueryCounter.isCounting()) {
+      return stmt;
+    }
+
+    return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+        new Class<?>[] {PreparedStatement.class}, new TracedStatement(stmt, sql, logged));
+  }
+
+  /**
+   * Wrap a plain statement so that its executions are timed. The SQL is taken from the execute and
+   * addBatch calls. If the statement is not sampled, it is returned as is.
+   *
+   * @param stmt The statement.
+   * @return The traced statement.
+   */
+  public Statement trace(Statement stmt) {
+    boolean logged = sampled();
+
+    if(!logged && !STATEMENT_EVENTS.isEnabled() && !QueryCounter.isCounting()) {
+      return stmt;
+    }
+
+    return (Statement)Proxy.newProxyInstance(Statement.class.getClassLoader(),
+        new Class<?>[] {Statement.class}, new TracedStatement(stmt, null, logged));
+  }
+
+  private boolean sampled() {
+    double rate = sampleRate;
+    return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
+  }
+
+  /**
+   * @return The slow queries in the ring, oldest first.
+   */
+  public List<SlowQuery> getRecent() {
+    long end = sequence.get();
+    long start = Math.max(0, end - ring.length());
+    List<SlowQuery> recent = new ArrayList<>((int)(end - start));
+
+    for(long next = start; next < end; next++) {
+      SlowQuery query = ring.get((int)(next & mask));
+
+      /* Skip a slot that is not filled in yet or has already been reused by a newer query. */
+      if(Objects.nonNull(query) && query.sequence == next) {
+        recent.add(query);
+      }
+    }
+
+    return recent;
+  }
+
+  @Override
+  public List<String> dump() {
+    List<String> lines = new ArrayList<>();
+
+    for(SlowQuery query : getRecent()) {
+      lines.add(query.toString());
+    }
+
+    return lines;
+  }
+
+  @Override
+  public void clear() {
+    for(int index = 0; index < ring.length(); index++) {
+      ring.set(index, null);
+    }
+  }
+
+  @Override
+  public long getSlowQueryCount() {
+    return sequence.get();
+  }
+
+  @Override
+  public long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  @Override
+  public long getThresholdMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+  }
+
+  @Override
+  public void setThresholdMillis(long thresholdMillis) {
+    if(thresholdMillis < 0) {
+      throw new DaoException("The threshold can not be negative: " + thresholdMillis);
+    }
+
+    this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+  }
+
+  @Override
+  public double getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+   * @param sampleRate The fraction of statements traced, from 0 (none) to 1 (all).
+   */
+  @Override
+  public void setSampleRate(double sampleRate) {
+    if(!(sampleRate >= 0.0 && sampleRate <= 1.0)) {
+      throw new DaoException("The sample rate must be from 0 to 1, not " + sampleRate);
+    }
+
+    this.sampleRate = sampleRate;
+  }
+
+  @Override
+  public List<String> getMaskedColumns() {
+    return new ArrayList<>(maskedColumns);
+  }
+
+  /**
+   * @param columns The names of the columns whose values are never shown, or "*" for all of them.
+   *        Case does not matter.
+   */
+  public void setMaskedColumns(String... columns) {
+    Set<String> names = new HashSet<>();
+
+    for(String column : columns) {
+      if(!column.isBlank()) {
+        names.add(column.strip().toLowerCase(Locale.ROOT));
+      }
+    }
+
+    this.maskedColumns = Collections.unmodifiableSet(names);
+  }
+
+  public int getMaxValueLength() {
+    return maxValueLength;
+  }
+
+  /**
+   * @param maxValueLength The most characters shown of a parameter value. Longer values are cut.
+   */
+  public void setMaxValueLength(int maxValueLength) {
+    if(maxValueLength < 1) {
+      throw new DaoException("The maximum value length must be at least 1, not " + maxValueLength);
+    }
+
+    this.maxValueLength = maxValueLength;
+  }
+
+  /**
+   * @param sink Called with each slow query, on the log's background thread.
+   */
+  public void setSink(Consumer<SlowQuery> sink) {
+    this.sink = Objects.requireNonNull(sink);
+  }
+
+  /**
+   * Add a slow query to the ring and queue it for the sink.
+   */
+  private void record(SlowQuery query) {
+    ring.set((int)(query.sequence & mask), query);
+
+    if(writerStarted.compareAndSet(false, true)) {
+      Thread writer = new Thread(this::writeToSink, "slow-query-log");
+      writer.setDaemon(true);
+      writer.start();
+    }
+
+    if(!queue.offer(query)) {
+      dropped.increment();
+    }
+  }
+
+  private void writeToSink() {
+    while(true) {
+      SlowQuery query;
+
+      try {
+        query = queue.take();
+      }
+      catch(InterruptedException e) {
+        return;
+      }
+
+      try {
+        sink.accept(query);
+      }
+      catch(RuntimeException e) {
+        /* A failing sink must not stop the writer. The query is still in the ring. */
+      }
+    }
+  }
+
+  /**
+   * Work out which column each parameter of a statement is bound to, so that masked columns can be
+   * found. An entry is {@code null} if the column can not be told from the SQL.
+   *
+   * @param sql The SQL.
+   * @param count The number of parameters.
+   * @return The lower case column name of each parameter, from index 0.
+   */
+  static String[] parameterColumns(String sql, int count) {
+    String[] columns = new String[count];
+    Matcher insert = INSERT_COLUMNS.matcher(sql);
+
+    if(insert.find()) {
+      String[] names = insert.group(1).split(",");
+
+      /* A multi-row insert repeats the column list for each row. */
+      for(int index = 0; index < count; index++) {
+        columns[index] = columnName(names[index % names.length]);
+      }
+
+      return columns;
+    }
+
+    String column = null;
+    int parameter = 0;
+    int pos = 0;
+
+    while(pos < sql.length() && parameter < count) {
+      char ch = sql.charAt(pos);
+
+      if(ch == '\'') {
+        /* Skip a string literal. A doubled quote inside it is an escaped quote. */
+        pos++;
+
+        while(pos < sql.length()) {
+          if(sql.charAt(pos++) == '\'') {
+            if(pos < sql.length() && sql.charAt(pos) == '\'') {
+              pos++;
+            }
+            else {
+              break;
+            }
+          }
+        }
+      }
+      else if(ch == '?') {
+        columns[parameter++] = column;
+        pos++;
+      }
+      else if(Character.isLetter(ch) || ch == '_' || ch == '`') {
+        int start = pos;
+
+        while(pos < sql.length() && (Character.isLetterOrDigit(sql.charAt(pos))
+            || "_.`".indexOf(sql.charAt(pos)) >= 0)) {
+          pos++;
+        }
+
+        String word = sql.substring(start, pos).toUpperCase(Locale.ROOT);
+
+        if(CLAUSE_WORDS.contains(word)) {
+          column = null;
+        }
+        else if(!OPERATOR_WORDS.contains(word)) {
+          column = columnName(sql.substring(start, pos));
+        }
+      }
+      else {
+        pos++;
+      }
+    }
+
+    return columns;
+  }
+
+  /**
+   * Strip the table name and quotes from a column reference and make it lower case.
+   */
+  private static String columnName(String reference) {
+    String name = reference.strip().replace("`", "");
+    return name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Find the DAO method that ran the current statement: the first frame in a subclass of
+   * {@link DaoBase}, or failing that in DaoBase itself. Lambdas are skipped in favor of the method
+   * that contains them.
+   */
+  private static String findCaller() {
+    return WALKER.walk(frames -> {
+      StackFrame base = null;
+
+      for(Iterator<StackFrame> iter = frames.iterator(); iter.hasNext();) {
+        StackFrame frame = iter.next();
+        Class<?> declaringClass = frame.getDeclaringClass();
+
+        if(!DaoBase.class.isAssignableFrom(declaringClass)
+            || frame.getMethodName().startsWith("lambda$")) {
+          continue;
+        }
+
+        if(declaringClass != DaoBase.class) {
+          return declaringClass.getSimpleName() + "." + frame.getMethodName();
+        }
+
+        if(Objects.isNull(base)) {
+          base = frame;
+        }
+      }
+
+      return Objects.isNull(base) ? "unknown" : "DaoBase." + base.getMethodName();
+    });
+  }
+
+  /**
+   * This is one slow statement execution.
+   *
+   * @author Promineo
+   *
+   */
+  public static class SlowQuery {
+    private final long sequence;
+    private final Instant time;
+    private final String sql;
+    private final List<String> parameters;
+    private final int batchSize;
+    private final long nanos;
+    private final long rows;
+    private final String caller;
+    private final String thread;
+    private final String error;
+
+    SlowQuery(long sequence, String sql, List<String> parameters, int batchSize, long nanos,
+        long rows, String caller, String error) {
+      this.sequence = sequence;
+      this.time = Instant.now();
+      this.sql = sql;
+      this.parameters = parameters;
+      this.batchSize = batchSize;
+      this.nanos = nanos;
+      this.rows = rows;
+      this.caller = caller;
+      this.thread = Thread.currentThread().getName();
+      this.error = error;
+    }
+
+    /**
+     * @return When the statement finished.
+     */
+    public Instant getTime() {
+      return time;
+    }
+
+    public String getSql() {
+      return sql;
+    }
+
+    /**
+     * @return The bound parameter values, formatted and masked. For a batch, these are the values
+     *         of its first row.
+     */
+    public List<String> getParameters() {
+      return parameters;
+    }
+
+    /**
+     * @return The number of rows in the batch, or 0 if the statement was not run as a batch.
+     */
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public long getNanos() {
+      return nanos;
+    }
+
+    /**
+     * @return The rows inserted, updated or deleted, or -1 for a query or if the count is not
+     *         known.
+     */
+    public long getRows() {
+      return rows;
+    }
+
+    /**
+     * @return The DAO method that ran the statement, like "RecipeDao.insertRecipe".
+     */
+    public String getCaller() {
+      return caller;
+    }
+
+    public String getThread() {
+      return thread;
+    }
+
+    /**
+     * @return The exception message if the statement failed, or {@code null}.
+     */
+    public String getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder();
+
+      builder.append(time).append(' ').append(caller).append(" [").append(thread).append("] ")
+          .append(String.format("%.1f ms", nanos / 1e6));
+
+      if(batchSize > 0) {
+        builder.append(", batch of ").append(batchSize);
+      }
+
+      if(rows >= 0) {
+        builder.append(", ").append(rows).append(rows == 1 ? " row" : " rows");
+      }
+
+      if(Objects.nonNull(error)) {
+        builder.append(", failed: ").append(error);
+      }
+
+      builder.append(": ").append(sql);
+
+      if(!parameters.isEmpty()) {
+        builder.append(" ").append(parameters);
+      }
+
+      return builder.toString();
+    }
+  }
+
+  /**
+   * This is the proxy handler of a traced statement. It keeps the parameter values as they are
+   * bound, times each execute call and records the slow ones.
+   *
+   * @author Promineo
+   *
+   */
+  private class TracedStatement implements InvocationHandler {
+    private final Statement stmt;
+    private final String preparedSql;
+    private final boolean logged;
+    private Object[] parameters = NO_PARAMETERS;
+    private int parameterCount;
+    private Object[] firstBatchRow;
+    private String firstBatchSql;
+    private int batchSize;
+
+    TracedStatement(Statement stmt, String preparedSql, boolean logged) {
+      this.stmt = stmt;
+      this.preparedSql = preparedSql;
+      this.logged = logged;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+
+      switch(name) {
+        case "equals":
+          return proxy == args[0];
+
+        case "hashCode":
+          return System.identityHashCode(proxy);
+
+        case "toString":
+          return "Traced[" + stmt + "]";
+
+        default:
+          break;
+      }
+
+      if(name.startsWith("execute")) {
+        return execute(method, args);
+      }
+
+      Object result = call(method, args);
+
+      if(name.startsWith("set") && Objects.nonNull(args) && args.length >= 2
+          && args[0] instanceof Integer) {
+        bind((Integer)args[0], name.equals("setNull") ? null : args[1]);
+      }
+      else if(name.equals("clearParameters")) {
+        Arrays.fill(parameters, null);
+        parameterCount = 0;
+      }
+      else if(name.equals("addBatch")) {
+        if(batchSize++ == 0) {
+          firstBatchRow = Arrays.copyOf(parameters, parameterCount);
+          firstBatchSql = Objects.isNull(args) ? null : (String)args[0];
+        }
+      }
+      else if(name.equals("clearBatch")) {
+        clearBatch();
+      }
+
+      return result;
+    }
+
+    private Object execute(Method method, Object[] args) throws Throwable {
+      DbEvents.StatementExecuted event = null;
+
+      if(STATEMENT_EVENTS.isEnabled()) {
+        event = new DbEvents.StatementExecuted();
+        event.begin();
+      }
+
+      long start = System.nanoTime();
+      Object result = null;
+      Throwable error = null;
+
+      try {
+        result = call(method, args);
+
+        if(QueryCounter.isCounting()) {
+          String name = method.getName();
+          int statements = name.endsWith("Batch") ? batchSize : 1;
+
+          result = QueryCounter.executed(sql(name, args), statements, result, rows(result));
+        }
+
+        return result;
+      }
+      catch(Throwable e) {
+        error = e;
+        throw e;
+      }
+      finally {
+        long nanos = System.nanoTime() - start;
+
+        if(logged && nanos >= thresholdNanos) {
+          slow(method.getName(), args, result, error, nanos);
+        }
+
+        if(Objects.nonNull(event) && event.shouldCommit()) {
+          String sql = sql(method.getName(), args);
+
+          event.fingerprint = Objects.isNull(sql) ? null : SqlFingerprint.of(sql);
+          event.method = method.getName();
+          event.rows = rows(result);
+          event.batchSize = method.getName().endsWith("Batch") ? batchSize : 0;
+          event.parameters = parameterCount;
+          event.failed = Objects.nonNull(error);
+          event.commit();
+        }
+
+        if(method.getName().endsWith("Batch")) {
+          clearBatch();
+        }
+      }
+    }
+
+    private void slow(String name, Object[] args, Object result, Throwable error, long nanos) {
+      boolean batch = name.endsWith("Batch");
+      String sql = sql(name, args);
+      Object[] values = batch && Objects.nonNull(firstBatchRow) ? firstBatchRow
+          : Arrays.copyOf(parameters, parameterCount);
+
+      if(batch && Objects.isNull(preparedSql) && batchSize > 1) {
+        sql += " ...";
+      }
+
+      SlowQuery query = new SlowQuery(sequence.getAndIncrement(), String.valueOf(sql),
+          format(String.valueOf(sql), values), batch ? batchSize : 0, nanos, rows(result),
+          findCaller(), Objects.isNull(error) ? null : String.valueOf(error.getMessage()));
+
+      record(query);
+    }
+
+    /**
+     * The SQL that an execute call ran: the SQL passed to it, the SQL the statement was prepared
+     * with, or the first SQL added to a batch of a plain statement.
+     */
+    private String sql(String name, Object[] args) {
+      if(Objects.nonNull(args) && args.length > 0 && args[0] instanceof String) {
+        return (String)args[0];
+      }
+
+      return name.endsWith("Batch") && Objects.isNull(preparedSql) ? firstBatchSql : preparedSql;
+    }
+
+    private void bind(int index, Object value) {
+      if(index < 1) {
+        return;
+      }
+
+      if(index > parameters.length) {
+        parameters = Arrays.copyOf(parameters, Math.max(index, parameters.length * 2));
+      }
+
+      parameters[index - 1] = value;
+      parameterCount = Math.max(parameterCount, index);
+    }
+
+    private void clearBatch() {
+      batchSize = 0;
+      firstBatchRow = null;
+      firstBatchSql = null;
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+      try {
+        return method.invoke(stmt, args);
+      }
+      catch(InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+
+  /**
+   * Format parameter values for the log, masking those bound to masked columns and cutting long
+   * ones.
+   */
+  private List<String> format(String sql, Object[] values) {
+    if(values.length == 0) {
+      return Collections.emptyList();
+    }
+
+    Set<String> masked = maskedColumns;
+    boolean maskAll = masked.contains("*");
+    String[] columns = masked.isEmpty() || maskAll ? new String[values.length]
+        : parameterColumns(sql, values.length);
+    List<String> formatted = new ArrayList<>(values.length);
+
+    for(int index = 0; index < values.length; index++) {
+      Object value = values[index];
+
+      if(maskAll || (Objects.nonNull(columns[index]) && masked.contains(columns[index]))) {
+        formatted.add("***");
+      }
+      else if(Objects.isNull(value)) {
+        formatted.add("NULL");
+      }
+      else if(value instanceof byte[]) {
+        formatted.add("<" + ((byte[])value).length + " bytes>");
+      }
+      else {
+        String text = value.toString();
+        int max = maxValueLength;
+
+        if(text.length() > max) {
+          text = text.substring(0, max) + "...";
+        }
+
+        formatted.add(value instanceof CharSequence ? "'" + text + "'" : text);
+      }
+    }
+
+    return Collections.unmodifiableList(formatted);
+  }
+
+  /**
+   * The rows changed by an executeUpdate or executeBatch call, or -1 if not known.
+   */
+  private static long rows(Object result) {
+    if(result instanceof Number) {
+      return ((Number)result).longValue();
+    }
+
+    long rows = -1;
+
+    if(result instanceof int[]) {
+      for(int count : (int[])result) {
+        rows = count >= 0 ? Math.max(rows, 0) + count : rows;
+      }
+    }
+    else if(result instanceof long[]) {
+      for(long count : (long[])result) {
+        rows = count >= 0 ? Math.max(rows, 0) + count : rows;
+      }
+    }
+
+    return rows;
+  }
+}
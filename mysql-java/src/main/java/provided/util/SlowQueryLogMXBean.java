@@ -0,0 +1,45 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.util.List;
+
+/**
+ * The JMX view of a {@link SlowQueryLog}. The log used by the DAOs is published by
+ * {@link DaoBase#setSlowQueryLog(SlowQueryLog)}.
+ *
+ * @author Promineo
+ *
+ */
+public interface SlowQueryLogMXBean {
+  long getThresholdMillis();
+
+  void setThresholdMillis(long thresholdMillis);
+
+  double getSampleRate();
+
+  void setSampleRate(double sampleRate);
+
+  List<String> getMaskedColumns();
+
+  /**
+   * @return The number of slow queries recorded since the log was created.
+   */
+  long getSlowQueryCount();
+
+  /**
+   * @return The number of slow queries the sink fell too far behind to be given.
+   */
+  long getDroppedCount();
+
+  /**
+   * @return The slow queries in the ring, oldest first, one per line.
+   */
+  List<String> dump();
+
+  /**
+   * Empty the ring.
+   */
+  void clear();
+}
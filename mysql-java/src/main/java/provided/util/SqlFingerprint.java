@@ -0,0 +1,166 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This reduces a SQL statement to its fingerprint: the statement with its literal values replaced
+ * by ?, so that statements that differ only in their values are grouped together.
+ * <ul>
+ * <li>String and number literals become ?.</li>
+ * <li>A list of parameters, like the (?, ?, ?) of an IN list, becomes (?+), whatever its
+ * length.</li>
+ * <li>Runs of white space become a single space.</li>
+ * </ul>
+ *
+ * For example, {@code SELECT * FROM recipe WHERE recipe_id IN (?, ?, ?) AND notes = 'x'} becomes
+ * {@code SELECT * FROM recipe WHERE recipe_id IN (?+) AND notes = ?}.
+ *
+ * The DAOs run the same few statements over and over, so fingerprints are cached. To keep the
+ * cache from growing without limit when statements are built with literal values in them, it stops
+ * taking new entries once it is full.
+ *
+ * @author Promineo
+ *
+ */
+public final class SqlFingerprint {
+  private static final int MAX_CACHED = 1024;
+
+  private static final Map<String, String> CACHE = new ConcurrentHashMap<>();
+
+  private SqlFingerprint() {
+  }
+
+  /**
+   * @param sql The SQL.
+   * @return The fingerprint.
+   */
+  public static String of(String sql) {
+    String fingerprint = CACHE.get(sql);
+
+    if(fingerprint == null) {
+      fingerprint = compute(sql);
+
+      if(CACHE.size() < MAX_CACHED) {
+        CACHE.put(sql, fingerprint);
+      }
+    }
+
+    return fingerprint;
+  }
+
+  private static String compute(String sql) {
+    StringBuilder builder = new StringBuilder(sql.length());
+    int pos = 0;
+
+    while(pos < sql.length()) {
+      char ch = sql.charAt(pos);
+
+      if(ch == '\'' || ch == '"') {
+        pos = skipString(sql, pos);
+        parameter(builder);
+      }
+      else if(Character.isDigit(ch) && !partOfWord(builder)) {
+        while(pos < sql.length()
+            && (Character.isLetterOrDigit(sql.charAt(pos)) || sql.charAt(pos) == '.')) {
+          pos++;
+        }
+
+        parameter(builder);
+      }
+      else if(Character.isWhitespace(ch)) {
+        while(pos < sql.length() && Character.isWhitespace(sql.charAt(pos))) {
+          pos++;
+        }
+
+        if(builder.length() > 0 && pos < sql.length()) {
+          builder.append(' ');
+        }
+      }
+      else if(ch == '?') {
+        parameter(builder);
+        pos++;
+      }
+      else {
+        builder.append(ch);
+        pos++;
+      }
+    }
+
+    return builder.toString();
+  }
+
+  /**
+   * Append a parameter, or, if it continues a list of parameters (?, ?), turn the list into ?+.
+   */
+  private static void parameter(StringBuilder builder) {
+    int end = builder.length();
+
+    while(end > 0 && builder.charAt(end - 1) == ' ') {
+      end--;
+    }
+
+    if(end > 0 && builder.charAt(end - 1) == ',') {
+      int previous = end - 1;
+
+      while(previous > 0 && builder.charAt(previous - 1) == ' ') {
+        previous--;
+      }
+
+      if(previous > 0 && builder.charAt(previous - 1) == '+') {
+        builder.setLength(previous);
+        return;
+      }
+
+      if(previous > 0 && builder.charAt(previous - 1) == '?') {
+        builder.setLength(previous);
+        builder.append('+');
+        return;
+      }
+    }
+
+    builder.append('?');
+  }
+
+  /**
+   * @return {@code true} if the last character written is part of a word, so a digit that follows
+   *         it is part of a name (like recipe2) and not a number.
+   */
+  private static boolean partOfWord(StringBuilder builder) {
+    if(builder.length() == 0) {
+      return false;
+    }
+
+    char last = builder.charAt(builder.length() - 1);
+    return Character.isLetterOrDigit(last) || last == '_' || last == '`' || last == '.';
+  }
+
+  /**
+   * @return The position after the string literal that starts at pos. A doubled quote or a
+   *         backslash escapes a quote.
+   */
+  private static int skipString(String sql, int pos) {
+    char quote = sql.charAt(pos++);
+
+    while(pos < sql.length()) {
+      char ch = sql.charAt(pos++);
+
+      if(ch == '\\') {
+        pos++;
+      }
+      else if(ch == quote) {
+        if(pos < sql.length() && sql.charAt(pos) == quote) {
+          pos++;
+        }
+        else {
+          break;
+        }
+      }
+    }
+
+    return Math.min(pos, sql.length());
+  }
+}
@@ -0,0 +1,307 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * This reads SQL statements one at a time from a script, like a schema or seed data file. It makes
+ * a single pass over the characters, reading them from the underlying {@link Reader} in blocks, so
+ * a script of any size is read in linear time and only the current statement is held in memory.
+ *
+ * The reader understands enough MySQL syntax to find the statement boundaries correctly:
+ * <ul>
+ * <li>A semicolon ends a statement, unless it is in a quoted string or a comment.</li>
+ * <li>Strings in single quotes, double quotes and back-ticks are copied unchanged. A quote is
+ * escaped by doubling it (''). In single- and double-quoted strings, a backslash escapes the next
+ * character (\' or \\).</li>
+ * <li>"-- " (two dashes followed by whitespace) and "#" start a comment that runs to the end of the
+ * line. "/* ... *&#47;" comments may span lines. Comments are removed. MySQL executable comments
+ * ("/*! ... *&#47;") and optimizer hints ("/*+ ... *&#47;") are kept, since the server acts on
+ * them.</li>
+ * <li>Outside of strings, each run of whitespace (including a removed comment) becomes a single
+ * space, and leading and trailing whitespace is removed.</li>
+ * </ul>
+ *
+ * Empty statements are skipped. Use it like this:
+ *
+ * <pre>
+ * try(SqlScriptReader script = new SqlScriptReader(reader)) {
+ *   String sql;
+ *
+ *   while((sql = script.nextStatement()) != null) {
+ *     stmt.addBatch(sql);
+ *   }
+ * }
+ * </pre>
+ *
+ * @author Promineo
+ *
+ */
+public class SqlScriptReader implements Closeable {
+  private static final int BUFFER_SIZE = 8192;
+  private static final int EOF = -1;
+
+  private final Reader reader;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int position;
+  private int limit;
+  private int lineNumber = 1;
+
+  private final StringBuilder statement = new StringBuilder(256);
+  private boolean pendingSpace;
+
+  /**
+   * @param reader The script. It is closed when this is closed.
+   */
+  public SqlScriptReader(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Read the next statement.
+   *
+   * @return The statement text without the terminating semicolon, or {@code null} at the end of the
+   *         script. The last statement does not need a semicolon.
+   * @throws IOException Thrown if the script can not be read, or if it ends inside a quoted string
+   *         or a comment.
+   */
+  public String nextStatement() throws IOException {
+    statement.setLength(0);
+    pendingSpace = false;
+
+    int ch;
+
+    while((ch = read()) != EOF) {
+      switch(ch) {
+        case ';':
+          if(statement.length() > 0) {
+            return statement.toString();
+          }
+
+          pendingSpace = false;
+          break;
+
+        case '\'':
+        case '"':
+        case '`':
+          copyQuoted((char)ch);
+          break;
+
+        case '#':
+          skipLine();
+          break;
+
+        case '-':
+          if(peek() == '-') {
+            read();
+            int next = peek();
+
+            if(next == EOF || Character.isWhitespace(next)) {
+              skipLine();
+            }
+            else {
+              append('-');
+              append('-');
+            }
+          }
+          else {
+            append('-');
+          }
+          break;
+
+        case '/':
+          if(peek() == '*') {
+            read();
+            int next = peek();
+
+            if(next == '!' || next == '+') {
+              copyBlockComment();
+            }
+            else {
+              skipBlockComment();
+            }
+          }
+          else {
+            append('/');
+          }
+          break;
+
+        default:
+          if(Character.isWhitespace(ch)) {
+            separate();
+          }
+          else {
+            append((char)ch);
+          }
+          break;
+      }
+    }
+
+    return statement.length() > 0 ? statement.toString() : null;
+  }
+
+  /**
+   * @return The line number of the current position in the script. This is useful in error
+   *         messages.
+   */
+  public int getLineNumber() {
+    return lineNumber;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  /**
+   * Append a character to the statement, preceded by a space if whitespace was skipped since the
+   * last character.
+   */
+  private void append(char ch) {
+    if(pendingSpace) {
+      statement.append(' ');
+      pendingSpace = false;
+    }
+
+    statement.append(ch);
+  }
+
+  /**
+   * Note that whitespace was skipped. Leading whitespace is dropped.
+   */
+  private void separate() {
+    pendingSpace = statement.length() > 0;
+  }
+
+  /**
+   * Copy a quoted string or identifier, including the quotes. The opening quote has been read.
+   */
+  private void copyQuoted(char quote) throws IOException {
+    int startLine = lineNumber;
+    append(quote);
+
+    while(true) {
+      int ch = read();
+
+      if(ch == EOF) {
+        throw new IOException("Unterminated " + quote + " quote starting on line " + startLine);
+      }
+
+      statement.append((char)ch);
+
+      if(ch == '\\' && quote != '`') {
+        int escaped = read();
+
+        if(escaped == EOF) {
+          throw new IOException("Unterminated " + quote + " quote starting on line " + startLine);
+        }
+
+        statement.append((char)escaped);
+      }
+      else if(ch == quote) {
+        if(peek() != quote) {
+          return;
+        }
+
+        statement.append((char)read());
+      }
+    }
+  }
+
+  /**
+   * Skip to the end of the line. The comment counts as whitespace.
+   */
+  private void skipLine() throws IOException {
+    int ch;
+
+    while((ch = read()) != EOF && ch != '\n') {
+      /* Skip the comment text. */
+    }
+
+    separate();
+  }
+
+  /**
+   * Skip a comment. The slash-star has been read. The comment counts as whitespace.
+   */
+  private void skipBlockComment() throws IOException {
+    int startLine = lineNumber;
+    int ch;
+
+    while((ch = read()) != EOF) {
+      if(ch == '*' && peek() == '/') {
+        read();
+        separate();
+        return;
+      }
+    }
+
+    throw new IOException("Unterminated comment starting on line " + startLine);
+  }
+
+  /**
+   * Copy an executable comment or optimizer hint unchanged. The slash-star has been read.
+   */
+  private void copyBlockComment() throws IOException {
+    int startLine = lineNumber;
+    int ch;
+
+    append('/');
+    statement.append('*');
+
+    while((ch = read()) != EOF) {
+      statement.append((char)ch);
+
+      if(ch == '*' && peek() == '/') {
+        statement.append((char)read());
+        return;
+      }
+    }
+
+    throw new IOException("Unterminated comment starting on line " + startLine);
+  }
+
+  private int read() throws IOException {
+    if(position == limit && !fill()) {
+      return EOF;
+    }
+
+    char ch = buffer[position++];
+
+    if(ch == '\n') {
+      lineNumber++;
+    }
+
+    return ch;
+  }
+
+  private int peek() throws IOException {
+    if(position == limit && !fill()) {
+      return EOF;
+    }
+
+    return buffer[position];
+  }
+
+  /**
+   * Refill the buffer. This is only called when every character in the buffer has been read.
+   *
+   * @return {@code false} at the end of the script.
+   */
+  private boolean fill() throws IOException {
+    int count;
+
+    do {
+      count = reader.read(buffer, 0, buffer.length);
+    } while(count == 0);
+
+    position = 0;
+    limit = Math.max(count, 0);
+
+    return count > 0;
+  }
+}
@@ -126,7 +126,7 @@ public class Recipes {
    * state.
    */
   private void createTables() {
-    recipeService.createAndPopulateTables();
+    recipeService.createAndPopulateTables(true);
     System.out.println("\nTables created and populated!");
   }
 
@@ -1,9 +1,14 @@
 package recipes.dao;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
+import provided.util.ConnectionPool;
+import provided.util.Metrics;
 import recipes.exception.DbException;
 
 public class DBconnection {
@@ -12,21 +17,73 @@ public class DBconnection {
 	private static final String PASSWORD = "recipes";
 	private static final String HOST = "localhost";
 	private static final int PORT = 3306;
-	
+	private static final int MIN_IDLE = 2;
+	private static final int MAX_POOL_SIZE = 10;
+	private static final int STATEMENT_CACHE_SIZE = 64;
+	private static final boolean SERVER_PREPARE = false;
+
+	/* Borrowing is logged at FINE, so the hot path doesn't write to the console. */
+	private static final Logger LOGGER = Logger.getLogger(DBconnection.class.getName());
+
+	/*
+	 * These system properties point the DAOs at another database without a code change,
+	 * for example -Drecipes.db.url=jdbc:h2:mem:recipes;MODE=MySQL for a load test.
+	 */
+	private static final String URL_PROPERTY = "recipes.db.url";
+	private static final String POOL_SIZE_PROPERTY = "recipes.db.maxPoolSize";
+
+	/*
+	 * All DAOs share this pool. Connections are opened once and reused, so a DAO call
+	 * no longer pays for a new TCP connection and login.
+	 */
+	private static final ConnectionPool DATA_SOURCE = createDataSource();
+
+	private static ConnectionPool createDataSource() {
+		String url = System.getProperty(URL_PROPERTY, String.format(
+				"jdbc:mysql://%s:%d/%s?user=%s&password=%s&useSSL=false"
+				+ "&rewriteBatchedStatements=true", HOST, 
+				PORT, SCHEMA, USER, PASSWORD));
+
+		ConnectionPool pool = new ConnectionPool(url);
+		pool.setName(SCHEMA);
+		pool.setMinIdle(MIN_IDLE);
+		pool.setMaxSize(getPoolSize());
+
+		/*
+		 * Each connection keeps its prepared statements, so the DAOs' repeated inserts and
+		 * selects are parsed once per connection. Set SERVER_PREPARE to have MySQL do the
+		 * prepare on the server instead of in the driver.
+		 */
+		pool.setStatementCacheSize(STATEMENT_CACHE_SIZE);
+		pool.setServerPrepare(SERVER_PREPARE);
+
+		/* Publish the pool's usage and acquire times over JMX. */
+		Metrics.registerPool(SCHEMA, pool);
+		return pool;
+	}
+
+	public static DataSource getDataSource() {
+		return DATA_SOURCE;
+	}
+
+	/*
+	 * The most connections the pool opens. Work that runs in the background is limited to this
+	 * many tasks at a time.
+	 */
+	public static int getPoolSize() {
+		return Integer.getInteger(POOL_SIZE_PROPERTY, MAX_POOL_SIZE);
+	}
 
 	public static Connection getConnection()	{
-		String url = String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s&useSSL=false", HOST, 
-				PORT, SCHEMA, USER, PASSWORD);
-		
 		try {
-			Connection conn = DriverManager.getConnection(url);
-			System.out.println("Successfully obtained connection!");
+			Connection conn = DATA_SOURCE.getConnection();
+			LOGGER.fine("Successfully obtained connection!");
 			return conn;
 		} catch (SQLException e)	{
-			System.out.println("Error getting connection.");
+			LOGGER.log(Level.WARNING, "Error getting connection.", e);
 			throw new DbException(e);
 		}
 	
 	}
 
-}
\ No newline at end of file
+}
@@ -1,14 +1,42 @@
 package recipes.dao;
 
+import java.io.Reader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.time.LocalTime;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import javax.sql.DataSource;
+
+import provided.util.ChildOrderAllocator;
 import provided.util.DaoBase;
+import provided.util.EntityCache;
+import provided.util.EntityMetadata;
+import provided.util.LookupCache;
+import provided.util.Metrics;
+import provided.util.Page;
+import provided.util.QueryCounter;
+import provided.util.RowMapper;
+import provided.util.SeedLoader;
+import provided.util.SqlScriptReader;
+import recipes.entity.Category;
+import recipes.entity.Ingredient;
 import recipes.entity.Recipe;
+import recipes.entity.Step;
+import recipes.entity.Unit;
 import recipes.exception.DbException;
 
 /**
@@ -23,7 +51,7 @@ import recipes.exception.DbException;
  * String sql = "...";
  * 
  * try(Connection conn = DbConnection.getConnection()) {
- *   try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+ *   try(PreparedStatement stmt = prepareStatement(conn, sql)) {
  *     setParameter(stmt, 1, parm1, Parm1.class);
  *     ...
  *     
@@ -59,60 +87,361 @@ private static final String RECIPE_CATEGORY = "recipe_category";
 private static final String STEP_TABLE = "step";
 private static final String UNIT_TABLE = "unit";
 
+// @formatter:off
+private static final String INSERT_RECIPE_CATEGORY_SQL = ""
+    + "INSERT INTO " + RECIPE_CATEGORY + " "
+    + "(recipe_id, category_id) "
+    + "VALUES "
+    + "(?, ?)";
+// @formatter:on
+
+/*
+ * These read the children of a list of recipes. The IN list is added by
+ * fetchRecipes(). Units and categories are not joined: they are looked up in
+ * UNITS and CATEGORIES.
+ */
+// @formatter:off
+private static final String SELECT_INGREDIENTS_SQL = ""
+    + "SELECT ingredient_id, recipe_id, unit_id, ingredient_name, "
+    + "instruction, ingredient_order, amount "
+    + "FROM " + INGREDIENT_TABLE + " "
+    + "WHERE recipe_id IN ";
+private static final String SELECT_STEPS_SQL = ""
+    + "SELECT step_id, recipe_id, step_order, step_text "
+    + "FROM " + STEP_TABLE + " "
+    + "WHERE recipe_id IN ";
+private static final String SELECT_CATEGORIES_SQL = ""
+    + "SELECT recipe_id, category_id "
+    + "FROM " + RECIPE_CATEGORY + " "
+    + "WHERE recipe_id IN ";
+// @formatter:on
+
+/*
+ * These list recipes a page at a time. Only the summary columns are read: the
+ * notes can be large and are not needed for a list. Each query seeks past the
+ * last row of the previous page, so it reads only the rows it returns.
+ */
+// @formatter:off
+private static final String SELECT_RECIPE_SUMMARY_SQL = ""
+    + "SELECT recipe_id, recipe_name, num_servings, prep_time, cook_time, "
+    + "created_at "
+    + "FROM " + RECIPE_TABLE + " ";
+private static final String LIST_BY_ID_SQL = SELECT_RECIPE_SUMMARY_SQL
+    + "WHERE recipe_id > ? "
+    + "ORDER BY recipe_id "
+    + "LIMIT ?";
+private static final String LIST_BY_CREATED_AT_SQL = SELECT_RECIPE_SUMMARY_SQL
+    + "WHERE created_at > ? OR (created_at = ? AND recipe_id > ?) "
+    + "ORDER BY created_at, recipe_id "
+    + "LIMIT ?";
+// @formatter:on
+
+/**
+ * The orders in which {@link RecipeDao#listRecipes(RecipeSort, String, int)}
+ * can list recipes.
+ */
+public enum RecipeSort {
+  /** By recipe ID, which is the order the recipes were added. */
+  ID,
+
+  /** By creation time. Recipes created at the same time are sorted by ID. */
+  CREATED_AT
+}
+
+/** The most recipe IDs sent in one IN list. Larger requests are split. */
+private static final int MAX_IN_LIST = 512;
+
+/**
+ * How long a page of recipes may be held in the query cache, if it is on. A
+ * committed write to the recipe table drops the pages sooner.
+ */
+private static final Duration LIST_CACHE_TTL = Duration.ofSeconds(30);
+
+/** The number of rows sent and committed together by the bulk inserts. */
+public static final int DEFAULT_BATCH_SIZE = 1000;
+
+/*
+ * These hand out ingredient_order and step_order values for recipes that
+ * already exist. They are safe across threads and across JVMs.
+ */
+private static final ChildOrderAllocator INGREDIENT_ORDER =
+    new ChildOrderAllocator(DBconnection.getDataSource(), INGREDIENT_TABLE,
+        "recipe_id", "ingredient_order", ChildOrderAllocator.DEFAULT_BLOCK_SIZE);
+private static final ChildOrderAllocator STEP_ORDER =
+    new ChildOrderAllocator(DBconnection.getDataSource(), STEP_TABLE,
+        "recipe_id", "step_order", ChildOrderAllocator.DEFAULT_BLOCK_SIZE);
+
+/*
+ * The unit and category tables are small and rarely change, so they are held
+ * in memory. Each unit and category is one shared object, used by every
+ * ingredient and recipe that refers to it. They are invalidated by any write
+ * to the tables through this DAO.
+ */
+private static final LookupCache<Unit> UNITS =
+    new LookupCache<>(DBconnection.getDataSource(), Unit.class);
+private static final LookupCache<Category> CATEGORIES =
+    new LookupCache<>(DBconnection.getDataSource(), Category.class);
+
+/*
+ * The optional cache of fully assembled recipes, keyed by recipe ID. It is
+ * off (null) unless one is set with setRecipeCache(). Every committed write to
+ * a recipe or its children through this DAO removes the recipe from it.
+ */
+private static volatile EntityCache<Integer, Recipe> recipeCache;
+
+/*
+ * Timers for the public methods, published over JMX by Metrics. Each one
+ * counts the calls and their total and longest time, failed calls included.
+ */
+private static final Metrics.Timer INSERT_RECIPE_TIMER =
+    Metrics.timer("RecipeDao.insertRecipe");
+private static final Metrics.Timer INSERT_RECIPES_TIMER =
+    Metrics.timer("RecipeDao.insertRecipes");
+private static final Metrics.Timer SAVE_RECIPE_GRAPH_TIMER =
+    Metrics.timer("RecipeDao.saveRecipeGraph");
+private static final Metrics.Timer ADD_INGREDIENTS_TIMER =
+    Metrics.timer("RecipeDao.addIngredients");
+private static final Metrics.Timer ADD_STEPS_TIMER =
+    Metrics.timer("RecipeDao.addSteps");
+private static final Metrics.Timer FETCH_RECIPES_TIMER =
+    Metrics.timer("RecipeDao.fetchRecipes");
+private static final Metrics.Timer LIST_RECIPES_TIMER =
+    Metrics.timer("RecipeDao.listRecipes");
+private static final Metrics.Timer UPDATE_RECIPE_TIMER =
+    Metrics.timer("RecipeDao.updateRecipe");
+private static final Metrics.Timer DELETE_RECIPE_TIMER =
+    Metrics.timer("RecipeDao.deleteRecipe");
+private static final Metrics.Timer EXECUTE_SCRIPT_TIMER =
+    Metrics.timer("RecipeDao.executeScript");
+private static final Metrics.Timer LOAD_SEED_DATA_TIMER =
+    Metrics.timer("RecipeDao.loadSeedData");
+private static final Metrics.Timer EXECUTE_BATCH_TIMER =
+    Metrics.timer("RecipeDao.executeBatch");
+
+/*
+ * Register the metadata for each entity in the recipe schema. This builds the
+ * SQL for each table once, when the DAO class is loaded.
+ */
+static {
+  EntityMetadata.register(Recipe.class, RECIPE_TABLE, "createdAt");
+  EntityMetadata.register(Category.class, CATEGORY_TABLE);
+  EntityMetadata.register(Unit.class, UNIT_TABLE);
+  EntityMetadata.register(Ingredient.class, INGREDIENT_TABLE);
+  EntityMetadata.register(Step.class, STEP_TABLE);
+}
+
+/**
+ * Load the unit and category tables into memory now, instead of on the first
+ * read that needs them. This is called at startup.
+ */
+public void loadLookupTables() {
+  try {
+    UNITS.load();
+    CATEGORIES.load();
+  } catch (RuntimeException e) {
+    throw new DbException(e);
+  }
+}
+
+/**
+ * This is called after statements that may have changed any table, like a
+ * script that drops and recreates the tables. It forgets everything held in
+ * memory about the tables.
+ */
+private void tablesChanged() {
+  INGREDIENT_ORDER.clear();
+  STEP_ORDER.clear();
+  UNITS.invalidate();
+  CATEGORIES.invalidate();
+  invalidateQueryCache();
+
+  EntityCache<Integer, Recipe> cache = recipeCache;
+
+  if (Objects.nonNull(cache)) {
+    cache.invalidateAll();
+  }
+}
+
+/**
+ * Turn on the cache of fully assembled recipes, or turn it off. When it is on,
+ * {@link #fetchRecipe(Integer)} and {@link #fetchRecipes(Collection)} return
+ * cached recipes and read only the rest from the database. <b>Cached recipes
+ * are shared by every caller, so they must not be changed.</b> Change a recipe
+ * through this DAO instead.
+ * 
+ * @param cache The cache, or {@code null} to turn caching off.
+ */
+public static void setRecipeCache(EntityCache<Integer, Recipe> cache) {
+  recipeCache = cache;
+}
+
+/**
+ * @return The recipe cache, or {@code null} if caching is off.
+ */
+public static EntityCache<Integer, Recipe> getRecipeCache() {
+  return recipeCache;
+}
+
+/**
+ * Remove a recipe from the cache, if there is one. This is called after a
+ * change to the recipe or its children is committed.
+ */
+private void recipeChanged(Integer recipeId) {
+  EntityCache<Integer, Recipe> cache = recipeCache;
+
+  if (Objects.nonNull(cache) && Objects.nonNull(recipeId)) {
+    cache.invalidate(recipeId);
+  }
+}
+
+@Override
+protected DataSource getDataSource() {
+  return DBconnection.getDataSource();
+}
+
 /**
  * Insert a recipe into the recipe table. This uses a
  * {@link PreparedStatement} so that typed parameters can be passed into the
  * statement, allowing validation and safety checks to be performed. This will
- * mitigate against SQLInjection attacks.
+ * mitigate against SQLInjection attacks. The statement text and parameter
+ * types come from the recipe's {@link EntityMetadata}.
  * 
  * @param recipe The recipe to be inserted.
  * @return The recipe with the primary key value.
  */
 public Recipe insertRecipe(Recipe recipe) {
-  /*
-   * Note that the primary key (recipe_id) is not included in the list of
-   * fields in the insert statement. MySQL will set the correct primary key
-   * value when the row is inserted.
-   */
-  // @formatter:off
-  String sql = ""
-      + "INSERT INTO " + RECIPE_TABLE + " "
-      + "(recipe_name, notes, num_servings, prep_time, cook_time) "
-      + "VALUES "
-      + "(?, ?, ?, ?, ?)";
-  // @formatter:on
+  long start = System.nanoTime();
 
   try (Connection conn = DBconnection.getConnection()) {
     startTransaction(conn);
 
-    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-      setParameter(stmt, 1, recipe.getRecipeName(), String.class);
-      setParameter(stmt, 2, recipe.getNotes(), String.class);
-      setParameter(stmt, 3, recipe.getNumServings(), Integer.class);
-      setParameter(stmt, 4, recipe.getPrepTime(), LocalTime.class);
-      setParameter(stmt, 5, recipe.getCookTime(), LocalTime.class);
-
+    try {
       /*
-       * Insert the row. Statement.executeUpdate() performs inserts,
-       * deletions, and modifications. It does all operations that do not
-       * return result sets.
+       * Note that the primary key (recipe_id) is not included in the list of
+       * fields in the insert statement. MySQL will set the correct primary key
+       * value when the row is inserted, and insertEntity() sets it in the
+       * recipe. This does not fill in the createdAt field. To get that value
+       * we would need to do a fetch on the recipe row.
        */
-      stmt.executeUpdate();
+      insertEntity(conn, recipe);
+      commitTransaction(conn);
 
-      /*
-       * Call a method in the base class to get the last insert ID (primary
-       * key value) in the given table.
-       */
-      Integer recipeId = getLastInsertId(conn, RECIPE_TABLE);
+      return recipe;
+    } 
+    catch (Exception e) {
+      rollbackTransaction(conn);
+      throw new DbException(e);
+    }
+  } catch (SQLException e) {
+    throw new DbException(e);
+  } finally {
+    INSERT_RECIPE_TIMER.stop(start);
+  }
+}
 
-      commitTransaction(conn);
+/**
+ * Insert many recipes (without ingredients, steps, or categories) using JDBC
+ * batching. Rows are sent and committed {@link #DEFAULT_BATCH_SIZE} at a
+ * time.
+ * 
+ * @param recipes The recipes to insert.
+ * @return The same recipes, with the primary key values set.
+ */
+public List<Recipe> insertRecipes(List<Recipe> recipes) {
+  return insertRecipes(recipes, DEFAULT_BATCH_SIZE);
+}
 
-      /*
-       * Set the recipe ID primary key to the value obtained by
-       * getLastInsertId(). This does not fill in the createdAt field. To get
-       * that value we would need to do a fetch on the recipe row.
-       */
-      recipe.setRecipeId(recipeId);
+/**
+ * Insert many recipes (without ingredients, steps, or categories) using JDBC
+ * batching. One prepared statement is used for every row. Each chunk of rows
+ * is sent as one batch and committed, and the generated primary keys are read
+ * back from the same batch. If a chunk fails, the chunks before it remain
+ * committed and their recipes have their IDs set.
+ * 
+ * @param recipes The recipes to insert.
+ * @param batchSize The number of rows to send and commit at a time.
+ * @return The same recipes, with the primary key values set.
+ */
+public List<Recipe> insertRecipes(List<Recipe> recipes, int batchSize) {
+  long start = System.nanoTime();
+
+  try (Connection conn = DBconnection.getConnection()) {
+    startTransaction(conn);
+
+    try {
+      insertEntitiesInChunks(conn, recipes, Recipe.class, batchSize);
+      return recipes;
+    } 
+    catch (Exception e) {
+      rollbackTransaction(conn);
+      throw new DbException(e);
+    }
+  } catch (SQLException e) {
+    throw new DbException(e);
+  } finally {
+    INSERT_RECIPES_TIMER.stop(start);
+  }
+}
+
+/**
+ * Save a new recipe together with its ingredients, steps and categories in one
+ * transaction. The recipe row is inserted first to obtain its ID. Then each
+ * child table is written with a single batched statement:
+ * <ol>
+ * <li>Ingredients are numbered 1, 2, 3... in list order (ingredientOrder), and
+ * linked to the recipe. The ingredient's unit, if any, must already exist.</li>
+ * <li>Steps are numbered the same way (stepOrder).</li>
+ * <li>A recipe_category row is written for each category. The categories must
+ * already exist.</li>
+ * </ol>
+ * The generated IDs are set in the recipe, ingredients and steps, and the
+ * recipe ID is set in every child. If anything fails, nothing is saved.
+ * 
+ * @param recipe The recipe to save, with its children in its lists.
+ * @return The same recipe with all IDs and order numbers set.
+ */
+public Recipe saveRecipeGraph(Recipe recipe) {
+  long start = System.nanoTime();
+
+  try (Connection conn = DBconnection.getConnection()) {
+    startTransaction(conn);
+
+    try {
+      insertEntity(conn, recipe);
+      Integer recipeId = recipe.getRecipeId();
+
+      /* Order numbers are assigned here instead of being counted in the database. */
+      int order = 1;
+
+      for (Ingredient ingredient : recipe.getIngredients()) {
+        ingredient.setRecipeId(recipeId);
+        ingredient.setIngredientOrder(order++);
+      }
+
+      order = 1;
+
+      for (Step step : recipe.getSteps()) {
+        step.setRecipeId(recipeId);
+        step.setStepOrder(order++);
+      }
+
+      List<Integer> categoryIds = new ArrayList<>(recipe.getCategories().size());
+
+      for (Category category : recipe.getCategories()) {
+        if (Objects.isNull(category.getCategoryId())) {
+          throw new DbException("Category " + category.getCategoryName()
+              + " has no ID. Categories must exist before they are added to a recipe.");
+        }
+
+        categoryIds.add(category.getCategoryId());
+      }
+
+      insertEntities(conn, recipe.getIngredients(), Ingredient.class);
+      insertEntities(conn, recipe.getSteps(), Step.class);
+      insertJoinRows(conn, INSERT_RECIPE_CATEGORY_SQL, recipeId, categoryIds);
+      tablesWritten(conn, RECIPE_CATEGORY);
+
+      commitTransaction(conn);
       return recipe;
     } 
     catch (Exception e) {
@@ -120,9 +449,589 @@ public Recipe insertRecipe(Recipe recipe) {
       throw new DbException(e);
     }
   } catch (SQLException e) {
-    throw new DbException(e);}
+    throw new DbException(e);
+  } finally {
+    SAVE_RECIPE_GRAPH_TIMER.stop(start);
+  }
+}
+
+/**
+ * Add ingredients to an existing recipe. The ingredients are numbered after
+ * the recipe's existing ingredients, in list order, and inserted in one
+ * batch. Order numbers come from {@link ChildOrderAllocator}, so concurrent
+ * writers to the same recipe never get the same number.
+ * 
+ * @param recipeId The ID of the recipe.
+ * @param ingredients The ingredients to add.
+ * @return The ingredients with their IDs, recipe ID and order set.
+ */
+public List<Ingredient> addIngredients(Integer recipeId,
+    List<Ingredient> ingredients) {
+  long start = System.nanoTime();
+
+  if (ingredients.isEmpty()) {
+    return ingredients;
+  }
+
+  /* Reserve the order numbers before taking a connection for the insert. */
+  int order = INGREDIENT_ORDER.next(recipeId, ingredients.size());
+
+  for (Ingredient ingredient : ingredients) {
+    ingredient.setRecipeId(recipeId);
+    ingredient.setIngredientOrder(order++);
+  }
+
+  try (Connection conn = DBconnection.getConnection()) {
+    startTransaction(conn);
+
+    try {
+      insertEntities(conn, ingredients, Ingredient.class);
+      commitTransaction(conn);
+      recipeChanged(recipeId);
+
+      return ingredients;
+    } 
+    catch (Exception e) {
+      rollbackTransaction(conn);
+      throw new DbException(e);
+    }
+  } catch (SQLException e) {
+    throw new DbException(e);
+  } finally {
+    ADD_INGREDIENTS_TIMER.stop(start);
+  }
+}
+
+/**
+ * Add steps to an existing recipe. The steps are numbered after the recipe's
+ * existing steps, in list order, and inserted in one batch.
+ * 
+ * @param recipeId The ID of the recipe.
+ * @param steps The steps to add.
+ * @return The steps with their IDs, recipe ID and order set.
+ */
+public List<Step> addSteps(Integer recipeId, List<Step> steps) {
+  long start = System.nanoTime();
+
+  if (steps.isEmpty()) {
+    return steps;
+  }
+
+  int order = STEP_ORDER.next(recipeId, steps.size());
+
+  for (Step step : steps) {
+    step.setRecipeId(recipeId);
+    step.setStepOrder(order++);
+  }
+
+  try (Connection conn = DBconnection.getConnection()) {
+    startTransaction(conn);
+
+    try {
+      insertEntities(conn, steps, Step.class);
+      commitTransaction(conn);
+      recipeChanged(recipeId);
+
+      return steps;
+    } 
+    catch (Exception e) {
+      rollbackTransaction(conn);
+      throw new DbException(e);
+    }
+  } catch (SQLException e) {
+    throw new DbException(e);
+  } finally {
+    ADD_STEPS_TIMER.stop(start);
   }
+}
 
+/**
+ * Fetch a recipe with its ingredients (and their units), steps and
+ * categories.
+ * 
+ * @param recipeId The recipe ID.
+ * @return The recipe, or {@link Optional#empty()} if there is no recipe with
+ *         the ID.
+ */
+public Optional<Recipe> fetchRecipe(Integer recipeId) {
+  List<Recipe> recipes = fetchRecipes(List.of(recipeId));
+  return recipes.isEmpty() ? Optional.empty() : Optional.of(recipes.get(0));
+}
+
+/**
+ * Fetch many recipes with their ingredients (and their units), steps and
+ * categories. This runs four queries, one per table, each with
+ * {@code WHERE recipe_id IN (...)}, no matter how many recipes are requested
+ * (up to {@link #MAX_IN_LIST} IDs; larger requests run four queries per
+ * {@link #MAX_IN_LIST} IDs). The child rows are then added to their recipes
+ * in memory, using a map keyed by recipe ID. All queries run in one
+ * transaction, so they see the same snapshot of the data.
+ * 
+ * If the recipe cache is on (see {@link #setRecipeCache(EntityCache)}), the
+ * recipes found in it are not read, and the recipes read are added to it.
+ * 
+ * With query guards on (see {@link QueryCounter#guard(String, int)}), a
+ * warning is logged if any of the queries runs more than once per
+ * {@link #MAX_IN_LIST} IDs, which would mean the fetch has started running a
+ * query per recipe.
+ * 
+ * @param recipeIds The recipe IDs. Duplicates are ignored.
+ * @return The recipes that exist, in the order their IDs were given.
+ *         Ingredients and steps are in order; categories are sorted by name.
+ */
+public List<Recipe> fetchRecipes(Collection<Integer> recipeIds) {
+  long start = System.nanoTime();
+  int chunks = (recipeIds.size() + MAX_IN_LIST - 1) / MAX_IN_LIST;
+
+  QueryCounter guard =
+      QueryCounter.guard("RecipeDao.fetchRecipes", Math.max(chunks, 1));
+
+  try {
+    return findRecipes(recipeIds);
+  } finally {
+    if (Objects.nonNull(guard)) {
+      guard.close();
+    }
+
+    FETCH_RECIPES_TIMER.stop(start);
+  }
+}
+
+/**
+ * Fetch recipes from the cache, if it is on, and the database. See
+ * {@link #fetchRecipes(Collection)}.
+ */
+private List<Recipe> findRecipes(Collection<Integer> recipeIds) {
+  List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(recipeIds));
+  Map<Integer, Recipe> recipes = new LinkedHashMap<>();
+
+  if (ids.isEmpty()) {
+    return new ArrayList<>();
+  }
+
+  EntityCache<Integer, Recipe> cache = recipeCache;
+  List<Integer> misses = ids;
+  long stamp = 0;
+
+  if (Objects.nonNull(cache)) {
+    /* The stamp is taken before the reads, so a write during them is seen. */
+    stamp = cache.stamp();
+    misses = new ArrayList<>(ids.size());
+
+    for (Integer id : ids) {
+      Recipe cached = cache.get(id);
+
+      if (Objects.nonNull(cached)) {
+        recipes.put(id, cached);
+      } 
+      else {
+        misses.add(id);
+      }
+    }
+  }
+
+  if (!misses.isEmpty()) {
+    readRecipes(misses, recipes);
+
+    if (Objects.nonNull(cache)) {
+      for (Integer id : misses) {
+        Recipe recipe = recipes.get(id);
+
+        if (Objects.nonNull(recipe)) {
+          cache.put(id, recipe, stamp);
+        }
+      }
+    }
+  }
+
+  /* Return the recipes in the order requested. */
+  List<Recipe> result = new ArrayList<>(recipes.size());
+
+  for (Integer id : ids) {
+    Recipe recipe = recipes.get(id);
+
+    if (Objects.nonNull(recipe)) {
+      result.add(recipe);
+    }
+  }
+
+  return result;
+}
+
+/**
+ * Read recipes and their children from the database, four queries per
+ * {@link #MAX_IN_LIST} IDs, in one transaction.
+ */
+private void readRecipes(List<Integer> ids, Map<Integer, Recipe> recipes) {
+  try (Connection conn = DBconnection.getConnection()) {
+    startTransaction(conn);
+
+    try {
+      for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+        List<Integer> chunk =
+            ids.subList(from, Math.min(from + MAX_IN_LIST, ids.size()));
+
+        fetchRecipeRows(conn, chunk, recipes);
+        fetchIngredients(conn, chunk, recipes);
+        fetchSteps(conn, chunk, recipes);
+        fetchCategories(conn, chunk, recipes);
+      }
+
+      commitTransaction(conn);
+    } 
+    catch (Exception e) {
+      rollbackTransaction(conn);
+      throw new DbException(e);
+    }
+  } catch (SQLException e) {
+    throw new DbException(e);
+  }
+}
+
+private void fetchRecipeRows(Connection conn, List<Integer> ids,
+    Map<Integer, Recipe> recipes) throws SQLException {
+  String sql = EntityMetadata.of(Recipe.class).getSelectSql()
+      + " WHERE recipe_id IN " + inList(ids.size());
+
+  try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+    setInListParameters(stmt, 1, ids);
+
+    try (ResultSet rs = stmt.executeQuery()) {
+      RowMapper<Recipe> mapper = mapperFor(rs, Recipe.class);
+
+      while (rs.next()) {
+        Recipe recipe = mapper.map(rs);
+        recipes.put(recipe.getRecipeId(), recipe);
+      }
+    }
+  }
+}
+
+private void fetchIngredients(Connection conn, List<Integer> ids,
+    Map<Integer, Recipe> recipes) throws SQLException {
+  String sql = SELECT_INGREDIENTS_SQL + inList(ids.size())
+      + " ORDER BY recipe_id, ingredient_order";
+
+  try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+    setInListParameters(stmt, 1, ids);
+
+    try (ResultSet rs = stmt.executeQuery()) {
+      RowMapper<Ingredient> ingredientMapper = mapperFor(rs, Ingredient.class);
+      int unitIdColumn = rs.findColumn("unit_id");
+
+      while (rs.next()) {
+        Ingredient ingredient = ingredientMapper.map(rs);
+
+        /* The unit ID is null if the ingredient has no unit. */
+        ingredient.setUnit(
+            UNITS.get(conn, rs.getObject(unitIdColumn, Integer.class)));
+
+        recipes.get(ingredient.getRecipeId()).getIngredients().add(ingredient);
+      }
+    }
+  }
+}
+
+private void fetchSteps(Connection conn, List<Integer> ids,
+    Map<Integer, Recipe> recipes) throws SQLException {
+  String sql = SELECT_STEPS_SQL + inList(ids.size())
+      + " ORDER BY recipe_id, step_order";
+
+  try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+    setInListParameters(stmt, 1, ids);
+
+    try (ResultSet rs = stmt.executeQuery()) {
+      RowMapper<Step> mapper = mapperFor(rs, Step.class);
+
+      while (rs.next()) {
+        Step step = mapper.map(rs);
+        recipes.get(step.getRecipeId()).getSteps().add(step);
+      }
+    }
+  }
+}
+
+private void fetchCategories(Connection conn, List<Integer> ids,
+    Map<Integer, Recipe> recipes) throws SQLException {
+  String sql = SELECT_CATEGORIES_SQL + inList(ids.size());
+
+  try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+    setInListParameters(stmt, 1, ids);
+
+    try (ResultSet rs = stmt.executeQuery()) {
+      while (rs.next()) {
+        Category category = CATEGORIES.get(conn, rs.getInt(2));
+
+        if (Objects.isNull(category)) {
+          throw new DbException("Category with ID=" + rs.getInt(2)
+              + " of recipe with ID=" + rs.getInt(1) + " does not exist.");
+        }
+
+        recipes.get(rs.getInt(1)).getCategories().add(category);
+      }
+    }
+  }
+
+  for (Integer id : ids) {
+    Recipe recipe = recipes.get(id);
+
+    if (Objects.nonNull(recipe)) {
+      recipe.getCategories()
+          .sort(Comparator.comparing(Category::getCategoryName));
+    }
+  }
+}
+
+/**
+ * List recipes a page at a time. The recipes have only their summary columns
+ * set. The notes, ingredients, steps and categories are not read; use
+ * {@link #fetchRecipe(Integer)} to get a whole recipe.
+ * 
+ * Pages are read with keyset pagination: the page token holds the sort key of
+ * the last recipe on the previous page, and the query asks for the recipes
+ * after it. Unlike OFFSET, this reads only the rows on the page no matter how
+ * deep the page is, and a recipe added or deleted while paging does not cause
+ * rows to be skipped or repeated.
+ * 
+ * Pages are read through the query cache (see {@link DaoBase#query}), so when
+ * it is on, a page that is asked for often is read once per
+ * {@link #LIST_CACHE_TTL}, or until a recipe is written.
+ * 
+ * @param sort The sort order.
+ * @param pageToken The token returned with the previous page, or {@code null}
+ *        for the first page. The token must have been returned for the same
+ *        sort order.
+ * @param pageSize The most recipes to return. This is capped at
+ *        {@link Page#MAX_PAGE_SIZE}.
+ * @return The page of recipes.
+ */
+public Page<Recipe> listRecipes(RecipeSort sort, String pageToken,
+    int pageSize) {
+  long start = System.nanoTime();
+
+  int limit = Page.limitPageSize(pageSize);
+  boolean byId = sort == RecipeSort.ID;
+
+  try {
+    List<Object> params = new ArrayList<>();
+
+    if (byId) {
+      Integer afterId = 0;
+
+      if (Objects.nonNull(pageToken)) {
+        String[] keys = Page.decodeToken(pageToken, sort.name(), 1);
+        afterId = Integer.valueOf(keys[0]);
+      }
+
+      params.add(afterId);
+    } 
+    else {
+      LocalDateTime afterTime = LocalDateTime.of(1000, 1, 1, 0, 0);
+      Integer afterId = 0;
+
+      if (Objects.nonNull(pageToken)) {
+        String[] keys = Page.decodeToken(pageToken, sort.name(), 2);
+        afterTime = LocalDateTime.parse(keys[0]);
+        afterId = Integer.valueOf(keys[1]);
+      }
+
+      params.add(afterTime);
+      params.add(afterTime);
+      params.add(afterId);
+    }
+
+    /* Read one extra row to find out if there is another page. */
+    params.add(limit + 1);
+
+    List<Recipe> recipes =
+        new ArrayList<>(query(byId ? LIST_BY_ID_SQL : LIST_BY_CREATED_AT_SQL,
+            params, Recipe.class, LIST_CACHE_TTL, RECIPE_TABLE));
+
+    String nextPageToken = null;
+
+    if (recipes.size() > limit) {
+      recipes.remove(limit);
+      Recipe last = recipes.get(limit - 1);
+
+      nextPageToken = byId
+          ? Page.encodeToken(sort.name(), last.getRecipeId())
+          : Page.encodeToken(sort.name(), last.getCreatedAt(),
+              last.getRecipeId());
+    }
+
+    return new Page<>(recipes, nextPageToken);
+  } catch (RuntimeException e) {
+    throw new DbException(e);
+  } finally {
+    LIST_RECIPES_TIMER.stop(start);
+  }
+}
+
+/**
+ * Stream every ingredient row, ordered by recipe and ingredient order. The
+ * rows are read from the database as the stream is consumed, so this uses
+ * constant memory no matter how many ingredients there are. The unit is not
+ * read. The stream holds a connection until it is closed, so use it in a
+ * try-with-resources block.
+ * 
+ * @return The ingredients.
+ */
+public Stream<Ingredient> streamIngredients() {
+  String sql = EntityMetadata.of(Ingredient.class).getSelectSql()
+      + " ORDER BY recipe_id, ingredient_order";
+
+  try {
+    return stream(sql, List.of(), Ingredient.class);
+  } catch (RuntimeException e) {
+    throw new DbException(e);
+  }
+}
+
+/**
+ * Update the recipe row (but not the ingredients, steps or categories) with
+ * the values in the given recipe.
+ * 
+ * @param recipe The recipe to update. The recipe ID must be set.
+ * @return {@code true} if the recipe was updated, {@code false} if there is no
+ *         recipe with the ID.
+ */
+public boolean updateRecipe(Recipe recipe) {
+  long start = System.nanoTime();
+
+  try (Connection conn = DBconnection.getConnection()) {
+    startTransaction(conn);
+
+    try {
+      boolean updated = updateEntity(conn, recipe);
+      commitTransaction(conn);
+      recipeChanged(recipe.getRecipeId());
+
+      return updated;
+    } 
+    catch (Exception e) {
+      rollbackTransaction(conn);
+      throw new DbException(e);
+    }
+  } catch (SQLException e) {
+    throw new DbException(e);
+  } finally {
+    UPDATE_RECIPE_TIMER.stop(start);
+  }
+}
+
+/**
+ * Delete a recipe. The ingredients, steps and category links are deleted by
+ * the database (ON DELETE CASCADE). The recipe's order counters are deleted in
+ * the same transaction.
+ * 
+ * @param recipeId The ID of the recipe to delete.
+ * @return {@code true} if the recipe was deleted, {@code false} if there is no
+ *         recipe with the ID.
+ */
+public boolean deleteRecipe(Integer recipeId) {
+  long start = System.nanoTime();
+
+  try (Connection conn = DBconnection.getConnection()) {
+    startTransaction(conn);
+
+    try {
+      boolean deleted = deleteEntityById(conn, Recipe.class, recipeId);
+
+      ChildOrderAllocator.deleteCounters(conn, recipeId, INGREDIENT_ORDER,
+          STEP_ORDER);
+
+      /* The child rows are deleted by ON DELETE CASCADE. */
+      tablesWritten(conn, INGREDIENT_TABLE, STEP_TABLE, RECIPE_CATEGORY);
+      commitTransaction(conn);
+      recipeChanged(recipeId);
+
+      INGREDIENT_ORDER.release(recipeId);
+      STEP_ORDER.release(recipeId);
+
+      return deleted;
+    } 
+    catch (Exception e) {
+      rollbackTransaction(conn);
+      throw new DbException(e);
+    }
+  } catch (SQLException e) {
+    throw new DbException(e);
+  } finally {
+    DELETE_RECIPE_TIMER.stop(start);
+  }
+}
+
+
+/**
+ * Run an SQL script, like the schema or seed data file. The script is read
+ * one statement at a time and the statements are sent in batches of
+ * {@link #DEFAULT_BATCH_SIZE}, each committed as it completes. A script of any
+ * size is loaded in one pass, holding only one batch of statements in memory.
+ * 
+ * @param reader The script. It is closed when this returns.
+ * @return The number of statements run.
+ */
+public int executeScript(Reader reader) {
+  long start = System.nanoTime();
+
+  try (Connection conn = DBconnection.getConnection()) {
+    startTransaction(conn);
+
+    try (SqlScriptReader script = new SqlScriptReader(reader)) {
+      return executeScript(conn, script, DEFAULT_BATCH_SIZE);
+    } catch (Exception e) {
+      rollbackTransaction(conn);
+      throw new DbException(e);
+    } finally {
+      /* Batches are committed as they run, so even a failed script counts. */
+      tablesChanged();
+    }
+  } catch (SQLException e) {
+    throw new DbException(e);
+  } finally {
+    EXECUTE_SCRIPT_TIMER.stop(start);
+  }
+}
+
+/**
+ * Load a seed data script with a {@link SeedLoader}, holding the whole script
+ * in memory. The tables are loaded in foreign key order, tables that do not
+ * depend on each other are loaded at the same time on separate connections,
+ * and consecutive single-row INSERTs are sent as multi-row INSERTs. A script
+ * with anything but INSERTs is run in order instead.
+ * 
+ * @param reader The script. It is closed when this returns.
+ * @return The number of statements sent to the database.
+ */
+public int loadSeedData(Reader reader) {
+  return loadSeedData(reader, true);
+}
+
+/**
+ * Load a seed data script in order on one connection with a
+ * {@link SeedLoader}. The script is streamed, and consecutive single-row
+ * INSERTs are sent as multi-row INSERTs.
+ * 
+ * @param reader The script. It is closed when this returns.
+ * @return The number of statements sent to the database.
+ */
+public int streamSeedData(Reader reader) {
+  return loadSeedData(reader, false);
+}
+
+private int loadSeedData(Reader reader, boolean byTable) {
+  long start = System.nanoTime();
+
+  try {
+    SeedLoader loader = new SeedLoader(DBconnection.getDataSource());
+    return byTable ? loader.load(reader) : loader.loadInOrder(reader);
+  } catch (RuntimeException e) {
+    throw new DbException(e);
+  } finally {
+    tablesChanged();
+    LOAD_SEED_DATA_TIMER.stop(start);
+  }
+}
 
 /**
  * This method takes a list of SQL statements, which will be executed as a
@@ -131,10 +1040,12 @@ public Recipe insertRecipe(Recipe recipe) {
  * @param sqlBatch A list of SQL statements that are executed in order.
  */
 public void executeBatch(List<String> sqlBatch) {
+  long start = System.nanoTime();
+
   try (Connection conn = DBconnection.getConnection()) {
     startTransaction(conn);
 
-    try (Statement stmt = conn.createStatement()) {
+    try (Statement stmt = createStatement(conn)) {
       /*
        * Add each SQL line to the Statement so they can be executed as a
        * batch.
@@ -146,13 +1057,18 @@ public void executeBatch(List<String> sqlBatch) {
       stmt.executeBatch();
       commitTransaction(conn);
 
+      /* The batch may have recreated the tables. */
+      tablesChanged();
+
     } catch (Exception e) {
       rollbackTransaction(conn);
       throw new DbException(e);
     }
   } catch (SQLException e) {
     throw new DbException(e);
-  		}
-	}
+  } finally {
+    EXECUTE_BATCH_TIMER.stop(start);
+  }
+}
 
 }
\ No newline at end of file
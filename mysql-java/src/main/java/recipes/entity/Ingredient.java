@@ -3,8 +3,8 @@
 package recipes.entity;
 
 import java.math.BigDecimal;
-import java.util.Objects;
 import provided.entity.EntityBase;
+import provided.entity.TextRenderer;
 
 /**
  * This class holds data for a row in the ingredient table. It contains getters
@@ -28,32 +28,14 @@ public class Ingredient extends EntityBase {
   private BigDecimal amount;
 
   /**
-   * Returns a line like: ID=5: 1/4 cup carrots, thinly sliced. Note that the
-   * {@link #toFraction(BigDecimal)} method in the base class is called to
-   * convert from a decimal to a fraction.
+   * Returns a line like: ID=5: 1/4 cup carrots, thinly sliced. The line is
+   * written by {@link RecipeRenderer#renderIngredient(Ingredient, Appendable)},
+   * which calls {@link #appendFraction(Appendable, BigDecimal)} in the base
+   * class to convert from a decimal to a fraction.
    */
   @Override
   public String toString() {
-    StringBuilder b = new StringBuilder();
-
-    b.append("ID=").append(ingredientId).append(": ");
-    b.append(toFraction(amount));
-
-    if (Objects.nonNull(unit) && Objects.nonNull(unit.getUnitId())) {
-      String singular = unit.getUnitNameSingular();
-      String plural = unit.getUnitNamePlural();
-      String word = amount.compareTo(BigDecimal.ONE) > 0 ? plural : singular;
-
-      b.append(word).append(" ");
-    }
-
-    b.append(ingredientName);
-
-    if (Objects.nonNull(instruction)) {
-      b.append(", ").append(instruction);
-    }
-
-    return b.toString();
+    return TextRenderer.toString(this, RecipeRenderer::renderIngredient);
   }
 
   public Integer getIngredientId() {
@@ -4,10 +4,8 @@ package recipes.entity;
 
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Objects;
 
 /**
  * This class hold data for an entire recipe. A recipe table row data is stored
@@ -34,45 +32,16 @@ public class Recipe {
   private List<Step> steps = new LinkedList<>();
   private List<Category> categories = new LinkedList<>();
 
+  private static final RecipeRenderer RENDERER = new RecipeRenderer();
+
   /**
    * This method prints the recipe instance variables. Then it prints all the
-   * instructions, steps and categories.
+   * instructions, steps and categories. The text is written by
+   * {@link RecipeRenderer}, which can also write it straight to a stream.
    */
   @Override
   public String toString() {
-    DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd-MMM-yyyy HH:mm");
-    String createTime =
-        Objects.nonNull(createdAt) ? fmt.format(createdAt) : "(null)";
-
-    String recipe = "";
-
-    recipe += "\n   ID=" + recipeId;
-    recipe += "\n   recipeName=" + recipeName;
-    recipe += "\n   notes=" + notes;
-    recipe += "\n   numServings=" + numServings;
-    recipe += "\n   prepTime=" + prepTime;
-    recipe += "\n   cookTime=" + cookTime;
-    recipe += "\n   createdAt=" + createTime;
-
-    recipe += "\n   Ingredients:";
-
-    for (Ingredient ingredient : ingredients) {
-      recipe += "\n      " + ingredient;
-    }
-
-    recipe += "\n   Steps:";
-
-    for (Step step : steps) {
-      recipe += "\n      " + step;
-    }
-
-    recipe += "\n   Categories:";
-
-    for (Category category : categories) {
-      recipe += "\n      " + category;
-    }
-
-    return recipe;
+    return RENDERER.toString(this);
   }
 
   public Integer getRecipeId() {
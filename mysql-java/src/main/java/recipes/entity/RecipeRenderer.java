@@ -0,0 +1,118 @@
+// Copyright (c) 2022 Promineo Tech
+
+package recipes.entity;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+import provided.entity.EntityBase;
+import provided.entity.TextRenderer;
+
+/**
+ * This writes a recipe, with its ingredients, steps and categories, as text.
+ * It writes the same text {@link Recipe#toString()} returns, but to any
+ * {@link Appendable}, so a list of recipes can be printed without building a
+ * String for each one:
+ * 
+ * <pre>
+ * new RecipeRenderer().renderAll(recipeService.fetchRecipes(ids), System.out);
+ * </pre>
+ * 
+ * @author Promineo
+ *
+ */
+public class RecipeRenderer extends TextRenderer<Recipe> {
+  private static final DateTimeFormatter CREATED_AT_FORMAT =
+      DateTimeFormatter.ofPattern("dd-MMM-yyyy HH:mm");
+
+  /**
+   * Write the recipe instance variables. Then write all the ingredients, steps
+   * and categories.
+   */
+  @Override
+  public void render(Recipe recipe, Appendable out) throws IOException {
+    field(out, "ID", recipe.getRecipeId());
+    field(out, "recipeName", recipe.getRecipeName());
+    field(out, "notes", recipe.getNotes());
+    field(out, "numServings", recipe.getNumServings());
+    field(out, "prepTime", recipe.getPrepTime());
+    field(out, "cookTime", recipe.getCookTime());
+
+    LocalDateTime createdAt = recipe.getCreatedAt();
+
+    if (Objects.nonNull(createdAt)) {
+      CREATED_AT_FORMAT.formatTo(createdAt, field(out, "createdAt"));
+    } else {
+      field(out, "createdAt").append("(null)");
+    }
+
+    heading(out, "Ingredients");
+
+    for (Ingredient ingredient : recipe.getIngredients()) {
+      renderIngredient(ingredient, child(out));
+    }
+
+    heading(out, "Steps");
+
+    for (Step step : recipe.getSteps()) {
+      renderStep(step, child(out));
+    }
+
+    heading(out, "Categories");
+
+    for (Category category : recipe.getCategories()) {
+      renderCategory(category, child(out));
+    }
+  }
+
+  /**
+   * Write a line like: ID=5: 1/4 cup carrots, thinly sliced. The amount is
+   * converted from a decimal to a fraction by
+   * {@link EntityBase#appendFraction(Appendable, BigDecimal)}.
+   */
+  public static void renderIngredient(Ingredient ingredient, Appendable out)
+      throws IOException {
+    BigDecimal amount = ingredient.getAmount();
+    Unit unit = ingredient.getUnit();
+
+    out.append("ID=");
+    value(out, ingredient.getIngredientId());
+    out.append(": ");
+    EntityBase.appendFraction(out, amount);
+
+    if (Objects.nonNull(unit) && Objects.nonNull(unit.getUnitId())) {
+      String singular = unit.getUnitNameSingular();
+      String plural = unit.getUnitNamePlural();
+      String word = amount.compareTo(BigDecimal.ONE) > 0 ? plural : singular;
+
+      out.append(word).append(' ');
+    }
+
+    out.append(ingredient.getIngredientName());
+
+    if (Objects.nonNull(ingredient.getInstruction())) {
+      out.append(", ").append(ingredient.getInstruction());
+    }
+  }
+
+  /**
+   * Write a line like: ID=2, stepText=Preheat the oven.
+   */
+  private static void renderStep(Step step, Appendable out) throws IOException {
+    out.append("ID=");
+    value(out, step.getStepId());
+    out.append(", stepText=").append(step.getStepText());
+  }
+
+  /**
+   * Write a line like: ID=3, categoryName=Main Dishes.
+   */
+  private static void renderCategory(Category category, Appendable out)
+      throws IOException {
+    out.append("ID=");
+    value(out, category.getCategoryId());
+    out.append(", categoryName=").append(category.getCategoryName());
+  }
+}
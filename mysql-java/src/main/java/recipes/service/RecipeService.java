@@ -1,13 +1,24 @@
 package recipes.service;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.LinkedList;
+import java.io.Reader;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import provided.util.AsyncExecutor;
+import provided.util.EntityCache;
+import provided.util.MigrationRunner;
+import provided.util.Page;
+import recipes.dao.DBconnection;
 import recipes.dao.RecipeDao;
+import recipes.dao.RecipeDao.RecipeSort;
+import recipes.entity.Ingredient;
 import recipes.entity.Recipe;
+import recipes.entity.Step;
 import recipes.exception.DbException;
 
 public class RecipeService {
@@ -15,178 +26,276 @@ public class RecipeService {
 		  private static final String SCHEMA_FILE = "recipe_schema.sql";
 		  private static final String DATA_FILE = "recipe_data.sql";
 
+		  /*
+		   * Runs the async methods. At most one task per pooled connection uses the
+		   * database at a time; the rest wait.
+		   */
+		  private static final AsyncExecutor ASYNC =
+		      new AsyncExecutor(DBconnection.getPoolSize());
+
 		  private RecipeDao recipeDao = new RecipeDao();
 
+		  /**
+		   * This method creates the recipe schema, then populates the tables with data,
+		   * but only if the schema or data file is new or has changed since it was
+		   * last applied. The checksums of the applied files are kept in the
+		   * {@value MigrationRunner#MIGRATION_TABLE} table. If nothing has changed,
+		   * this returns after one query. The data file is streamed in order by
+		   * {@link RecipeDao#streamSeedData(Reader)}, with single-row INSERTs
+		   * collapsed. The unit and category tables are then loaded into memory.
+		   */
+		  public void createAndPopulateTables() {
+		    migrationRunner(recipeDao::streamSeedData).migrate();
+		    recipeDao.loadLookupTables();
+		  }
+
 		  /**
 		   * This method creates the recipe schema, then populates the tables with data.
 		   * Before tables are created, they are dropped, so calling this method resets
-		   * the data tables to a known, initial state.
+		   * the data tables to a known, initial state. This always runs, whether or
+		   * not the files have changed.
+		   * 
+		   * @param parallel If {@code true}, the data file is loaded by
+		   *        {@link RecipeDao#loadSeedData(Reader)}: tables in foreign key
+		   *        order, independent tables at the same time, and single-row INSERTs
+		   *        collapsed. This holds the data file in memory. If {@code false},
+		   *        the data file is run one statement at a time, in order.
 		   */
-		  public void createAndPopulateTables() {
-		    loadFromFile(SCHEMA_FILE);
-		    loadFromFile(DATA_FILE);
+		  public void createAndPopulateTables(boolean parallel) {
+		    migrationRunner(parallel ? recipeDao::loadSeedData
+		        : recipeDao::executeScript).migrate(true);
+		    recipeDao.loadLookupTables();
 		  }
 
 		  /**
-		   * Loads a file from the classpath. On the hard drive, this would be loaded
-		   * from {project root}/target/classes. Maven and Eclipse automatically copies
-		   * files in src/main/resources into a folder on the classpath.
+		   * Build the runner for the schema and data files. Both are loaded from the
+		   * classpath. On the hard drive, they would be loaded from {project
+		   * root}/target/classes. Maven and Eclipse automatically copies files in
+		   * src/main/resources into a folder on the classpath. The files are streamed
+		   * to the DAO, which reads them one statement at a time.
+		   */
+		  private MigrationRunner migrationRunner(Consumer<Reader> dataLoader) {
+		    return new MigrationRunner(DBconnection.getDataSource(),
+		        getClass().getClassLoader())
+		        .add(SCHEMA_FILE, recipeDao::executeScript)
+		        .add(DATA_FILE, dataLoader);
+		  }
+
+		  /**
+		   * This calls the DAO object to insert a recipe into the recipe table.
 		   * 
-		   * @param fileName The name of the file to load.
+		   * @param recipe The recipe to insert.
+		   * @return The original recipe with the primary key (recipeId) set.
 		   */
-		  private void loadFromFile(String fileName) {
-		    String content = readFileContent(fileName);
-		    List<String> sqlStatements = convertContentToSqlStatements(content);
+		  public Recipe addRecipe(Recipe recipe) {
+		    return recipeDao.insertRecipe(recipe);}
 
-		    recipeDao.executeBatch(sqlStatements);
+		  /**
+		   * This calls the DAO object to fetch a recipe with its ingredients, steps
+		   * and categories.
+		   * 
+		   * @param recipeId The recipe ID.
+		   * @return The recipe.
+		   * @throws NoSuchElementException Thrown if there is no recipe with the ID.
+		   */
+		  public Recipe fetchRecipe(Integer recipeId) {
+		    return recipeDao.fetchRecipe(recipeId)
+		        .orElseThrow(() -> new NoSuchElementException(
+		            "Recipe with ID=" + recipeId + " does not exist."));
 		  }
 
 		  /**
-		   * This method converts the given file content to a list of SQL statements.
+		   * This calls the DAO object to fetch many recipes with their ingredients,
+		   * steps and categories, using a fixed number of queries.
 		   * 
-		   * @param content The file content read off the disk.
-		   * @return A list of SQL statements.
+		   * @param recipeIds The recipe IDs.
+		   * @return The recipes that exist, in the order requested.
 		   */
-		  private List<String> convertContentToSqlStatements(String content) {
-		    content = removeComments(content);
-		    content = replaceWhitespaceSequencesWithSingleSpace(content);
+		  public List<Recipe> fetchRecipes(Collection<Integer> recipeIds) {
+		    return recipeDao.fetchRecipes(recipeIds);
+		  }
 
-		    return extractLinesFromContent(content);
+		  /**
+		   * This adds a recipe in the background. Cancelling the returned future
+		   * cancels the insert if it is still running.
+		   * 
+		   * @param recipe The recipe to insert.
+		   * @return The future recipe, with the primary key (recipeId) set.
+		   */
+		  public CompletableFuture<Recipe> addRecipeAsync(Recipe recipe) {
+		    return ASYNC.supply(() -> addRecipe(recipe));
 		  }
 
 		  /**
-		   * This method extracts the SQL statements in the file content. A SQL
-		   * statement is text separated by semicolons.
+		   * This adds many recipes in the background using batched inserts.
 		   * 
-		   * @param content The file content without comments or multiple sequences of
-		   *        whitespace.
-		   * @return The list of extracted SQL statements.
+		   * @param recipes The recipes to insert.
+		   * @return The future recipes, with their primary keys set.
 		   */
-		  private List<String> extractLinesFromContent(String content) {
-		    List<String> lines = new LinkedList<>();
+		  public CompletableFuture<List<Recipe>> addRecipesAsync(List<Recipe> recipes) {
+		    return ASYNC.supply(() -> addRecipes(recipes));
+		  }
 
-		    /*
-		     * Using String.split would probably have been more efficient. Feel free to
-		     * rewrite this using String.split.
-		     */
-		    while (!content.isEmpty()) {
-		      int semicolon = content.indexOf(";");
+		  /**
+		   * This fetches a recipe in the background. Cancelling the returned future
+		   * cancels the queries if they are still running.
+		   * 
+		   * @param recipeId The recipe ID.
+		   * @return The future recipe. It completes with a
+		   *         {@link NoSuchElementException} if there is no recipe with the ID.
+		   */
+		  public CompletableFuture<Recipe> fetchRecipeAsync(Integer recipeId) {
+		    return ASYNC.supply(() -> fetchRecipe(recipeId));
+		  }
 
-		      if (semicolon == -1) {
-		        if (!content.isBlank()) {
-		          lines.add(content);
-		        }
+		  /**
+		   * This fetches many recipes in the background, using a fixed number of
+		   * queries.
+		   * 
+		   * @param recipeIds The recipe IDs.
+		   * @return The future recipes that exist, in the order requested.
+		   */
+		  public CompletableFuture<List<Recipe>> fetchRecipesAsync(
+		      Collection<Integer> recipeIds) {
+		    return ASYNC.supply(() -> fetchRecipes(recipeIds));
+		  }
 
-		        content = "";
-		      } else {
-		        lines.add(content.substring(0, semicolon).trim());
-		        content = content.substring(semicolon + 1);
-		      }
-		    }
+		  /**
+		   * This turns on the cache of fully assembled recipes used by
+		   * {@link #fetchRecipe(Integer)} and {@link #fetchRecipes(Collection)}.
+		   * Recipes returned from the cache are shared, so callers must not change
+		   * them. Any cached recipes are dropped.
+		   * 
+		   * @param maxSize The most recipes held. The least recently used recipe is
+		   *        evicted when the cache is full.
+		   * @param ttl How long a recipe is held before it is read again.
+		   */
+		  public void enableRecipeCache(int maxSize, Duration ttl) {
+		    RecipeDao.setRecipeCache(new EntityCache<>(maxSize, ttl));
+		  }
+
+		  /**
+		   * This turns off the recipe cache.
+		   */
+		  public void disableRecipeCache() {
+		    RecipeDao.setRecipeCache(null);
+		  }
 
-		    return lines;
+		  /**
+		   * @return The recipe cache hit, miss and eviction counts, or
+		   *         {@code null} if the cache is off.
+		   */
+		  public EntityCache.Stats getRecipeCacheStats() {
+		    EntityCache<Integer, Recipe> cache = RecipeDao.getRecipeCache();
+		    return cache == null ? null : cache.getStats();
 		  }
 
 		  /**
-		   * This uses a regular expression to replace all whitespace sequences with
-		   * single spaces.
+		   * This calls the DAO object to list one page of recipe summaries (the
+		   * recipe rows without notes or children).
 		   * 
-		   * @param content The file content.
-		   * @return The trimmed content.
+		   * @param sort The sort order.
+		   * @param pageToken The token returned with the previous page, or
+		   *        {@code null} for the first page.
+		   * @param pageSize The most recipes to return.
+		   * @return The page of recipes and the token for the next page.
 		   */
-		  private String replaceWhitespaceSequencesWithSingleSpace(String content) {
-		    /*
-		     * This regular expression says to find whitespace sequences with one or
-		     * more characters. (\s is a character class that means a whitespace
-		     * character (space, newline, carriage return, and tab). The plus character
-		     * is a quantifier that means 1 or more. In Java, a backslash is an escape
-		     * character. To get an actual backslash to pass to the regular expression
-		     * parser, a double backslash is used (i.e., "\\s" --> "\s"). In replaceAll,
-		     * the first parameter is the regular expression used to search the input
-		     * string (content). The second parameter is the replacement value. So, this
-		     * says to find one or more whitespace sequences and replace the sequence
-		     * with a single space. A good cheat sheet on regular expressions can be
-		     * found here:
-		     * https://cheatography.com/davechild/cheat-sheets/regular-expressions/
-		     * pdf_bw/
-		     */
-		    return content.replaceAll("\\s+", " ");
+		  public Page<Recipe> listRecipes(RecipeSort sort, String pageToken,
+		      int pageSize) {
+		    return recipeDao.listRecipes(sort, pageToken, pageSize);
 		  }
 
 		  /**
-		   * This method removes the single-line comment ("-- ") from a .sql file. It
-		   * does not remove multiline comments (slash-star star-slash). If that comment
-		   * type needs to be removed, additional coding is necessary. Any text
-		   * including and after a single-line comment is removed until an end-of-line
-		   * character ("\n") is found or until the end of the file.
+		   * This calls the DAO object to stream every ingredient row. The stream
+		   * must be closed.
 		   * 
-		   * @param content The file content.
-		   * @return The file content without single-line comments.
+		   * @return The ingredients.
 		   */
-		  private String removeComments(String content) {
-		    StringBuilder builder = new StringBuilder(content);
-		    int commentPos = 0;
+		  public Stream<Ingredient> streamIngredients() {
+		    return recipeDao.streamIngredients();
+		  }
 
-		    while ((commentPos = builder.indexOf("-- ", commentPos)) != -1) {
-		      int eolPos = builder.indexOf("\n", commentPos + 1);
+		  /**
+		   * This calls the DAO object to save a new recipe with all of its
+		   * ingredients, steps and categories in one transaction.
+		   * 
+		   * @param recipe The recipe to save.
+		   * @return The recipe with all primary keys and order numbers set.
+		   */
+		  public Recipe saveRecipeGraph(Recipe recipe) {
+		    return recipeDao.saveRecipeGraph(recipe);
+		  }
 
-		      if (eolPos == -1) {
-		        builder.replace(commentPos, builder.length(), "");
-		      } else {
-		        builder.replace(commentPos, eolPos + 1, "");
-		      }
-		    }
+		  /**
+		   * This calls the DAO object to insert many recipes using batched inserts.
+		   * 
+		   * @param recipes The recipes to insert.
+		   * @return The same recipes with their primary keys (recipeId) set.
+		   */
+		  public List<Recipe> addRecipes(List<Recipe> recipes) {
+		    return recipeDao.insertRecipes(recipes);
+		  }
 
-		    return builder.toString();
+		  /**
+		   * This calls the DAO object to insert many recipes using batched inserts,
+		   * committing every batchSize rows.
+		   * 
+		   * @param recipes The recipes to insert.
+		   * @param batchSize The number of rows to send and commit at a time.
+		   * @return The same recipes with their primary keys (recipeId) set.
+		   */
+		  public List<Recipe> addRecipes(List<Recipe> recipes, int batchSize) {
+		    return recipeDao.insertRecipes(recipes, batchSize);
 		  }
 
 		  /**
-		   * This uses Java library classes in java.nio.file to read a file on the
-		   * classpath and return a String containing the entire file content.
+		   * This calls the DAO object to add ingredients to an existing recipe. The
+		   * ingredients are numbered after the ones the recipe already has.
 		   * 
-		   * @param fileName The name of the file relative to the classpath to read.
-		   * @return The file content.
+		   * @param recipeId The ID of the recipe.
+		   * @param ingredients The ingredients to add.
+		   * @return The ingredients with their primary keys and order set.
 		   */
-		  private String readFileContent(String fileName) {
-		    try {
-		      /*
-		       * This works as follows: 1) This object's class is obtained by calling
-		       * getClass() (short for this.getClass()). 2) The class loader that loaded
-		       * this class is obtained from the class. The class loader knows how to
-		       * read objects on the classpath (as opposed to the file system outside
-		       * the classpath). 3) getResource() is called to create a URL. If the
-		       * resource isn't found getResource() returns null, which will generate a
-		       * NullPointerException when it is dereferenced. 4) The URL.toURI() method
-		       * is called to convert the URL object to a URI object. 5) The URI is
-		       * passed to Paths.get, which returns a Path pointing to the file.
-		       */
-		      Path path =
-		          Paths.get(getClass().getClassLoader().getResource(fileName).toURI());
+		  public List<Ingredient> addIngredients(Integer recipeId,
+		      List<Ingredient> ingredients) {
+		    return recipeDao.addIngredients(recipeId, ingredients);
+		  }
 
-		      /*
-		       * Files.readString takes a Path and reads the contents of the file as a
-		       * String.
-		       */
-		      return Files.readString(path);
+		  /**
+		   * This calls the DAO object to add steps to an existing recipe. The steps
+		   * are numbered after the ones the recipe already has.
+		   * 
+		   * @param recipeId The ID of the recipe.
+		   * @param steps The steps to add.
+		   * @return The steps with their primary keys and order set.
+		   */
+		  public List<Step> addSteps(Integer recipeId, List<Step> steps) {
+		    return recipeDao.addSteps(recipeId, steps);
+		  }
 
-		    } catch (Exception e) {
-		      throw new DbException(e);
+		  /**
+		   * This calls the DAO object to update a recipe row.
+		   * 
+		   * @param recipe The recipe to update. The recipe ID must be set.
+		   * @throws DbException Thrown if there is no recipe with the ID.
+		   */
+		  public void modifyRecipe(Recipe recipe) {
+		    if (!recipeDao.updateRecipe(recipe)) {
+		      throw new DbException("Recipe with ID=" + recipe.getRecipeId() + " does not exist.");
 		    }
 		  }
 
 		  /**
-		   * This calls the DAO object to insert a recipe into the recipe table.
+		   * This calls the DAO object to delete a recipe and its children.
 		   * 
-		   * @param recipe The recipe to insert.
-		   * @return The original recipe with the primary key (recipeId) set.
+		   * @param recipeId The ID of the recipe to delete.
+		   * @throws DbException Thrown if there is no recipe with the ID.
 		   */
-		  public Recipe addRecipe(Recipe recipe) {
-		    return recipeDao.insertRecipe(recipe);}
-
-		public static void deleteRecipe(Integer recipeId) {
-			// TODO Auto-generated method stub
-			
-		}
+		  public void deleteRecipe(Integer recipeId) {
+		    if (!recipeDao.deleteRecipe(recipeId)) {
+		      throw new DbException("Recipe with ID=" + recipeId + " does not exist.");
+		    }
+		  }
 		  }
 
 
@@ -1,3 +1,4 @@
+DROP TABLE IF EXISTS child_order_counter;
 DROP TABLE IF EXISTS ingredient;
 DROP TABLE IF EXISTS step;
 DROP TABLE IF EXISTS recipe_category;
@@ -14,7 +15,8 @@ CREATE TABLE recipe 	(
 	prep_time TIME,
 	cook_time TIME, 
 	created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-	PRIMARY KEY (recipe_id)
+	PRIMARY KEY (recipe_id),
+	INDEX recipe_created_at (created_at, recipe_id)
 );
 
 CREATE TABLE category	(
@@ -59,3 +61,9 @@ CREATE TABLE ingredient	(
 	FOREIGN KEY (unit_id) REFERENCES unit (unit_id)
 );
 
+CREATE TABLE child_order_counter	(
+	child_table VARCHAR(64) NOT NULL,
+	parent_id INT NOT NULL,
+	next_order INT NOT NULL,
+	PRIMARY KEY (child_table, parent_id)
+);
@@ -0,0 +1,112 @@
+package diyproject.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import diyproject.entity.Material;
+import diyproject.entity.Project;
+import diyproject.entity.Step;
+import diyproject.service.ProjectService;
+import provided.util.QueryCounter;
+
+/**
+ * Tests of {@link DIYProjectDao} against an in-memory H2 database in MySQL
+ * mode. The DAO is pointed at H2 with the projects.db.url system property
+ * before it is loaded.
+ * 
+ * @author Promineo
+ *
+ */
+class DIYProjectDaoTest {
+	private static final int PROJECTS = 600;
+	private static final int CHUNK_SIZE = 512;
+
+	private static DIYProjectDao projectDao;
+	private static List<Integer> projectIds;
+
+	@BeforeAll
+	static void createTables() {
+		System.setProperty("projects.db.url", "jdbc:h2:mem:projects;MODE=MySQL;"
+				+ "DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+
+		ProjectService projectService = new ProjectService();
+		projectService.createTables();
+
+		/* The batch insert writes only the project rows. */
+		List<Project> projects = new ArrayList<>(PROJECTS);
+
+		for (int count = 1; count < PROJECTS; count++) {
+			Project project = new Project();
+			project.setProjectName("Project " + count);
+			projects.add(project);
+		}
+
+		projects = new ArrayList<>(projectService.addProjects(projects));
+		projects.add(projectService.saveProjectGraph(project("Project " + PROJECTS)));
+
+		projectIds = new ArrayList<>(PROJECTS);
+
+		for (Project project : projects) {
+			projectIds.add(project.getProjectId());
+		}
+
+		projectDao = new DIYProjectDao();
+	}
+
+	@Test
+	void fetchProjectsRunsFourQueriesPerChunk() {
+		int chunks = (projectIds.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		List<Project> projects;
+
+		assertEquals(2, chunks);
+
+		try (QueryCounter counter = QueryCounter.open("fetchProjects")) {
+			counter.setFailOnClose(true);
+			counter.setMaxRoundTrips(4 * chunks);
+			counter.setMaxRepeats(chunks);
+
+			projects = projectDao.fetchProjects(projectIds);
+
+			assertEquals(4 * chunks, counter.getRoundTrips(), counter.toString());
+		}
+
+		assertEquals(PROJECTS, projects.size());
+
+		Project last = projects.get(PROJECTS - 1);
+		assertEquals("Project " + PROJECTS, last.getProjectName());
+		assertEquals(1, last.getMaterials().size());
+		assertEquals(1, last.getSteps().size());
+	}
+
+	@Test
+	void fetchProjectsOfOneChunkRunsFourQueries() {
+		try (QueryCounter counter = QueryCounter.open("fetchProjects")) {
+			counter.setFailOnClose(true);
+			counter.setMaxRoundTrips(4);
+			counter.setMaxRepeats(1);
+
+			assertEquals(3, projectDao.fetchProjects(projectIds.subList(0, 3)).size());
+		}
+	}
+
+	private static Project project(String name) {
+		Project project = new Project();
+		project.setProjectName(name);
+		project.setDifficulty(2);
+
+		Material material = new Material();
+		material.setMaterialName("2x4 stud");
+		material.setNumRequired(4);
+		material.setCost(new BigDecimal("3.98"));
+		project.getMaterials().add(material);
+
+		Step step = new Step();
+		step.setStepText("Cut the studs to length.");
+		project.getSteps().add(step);
+
+		return project;
+	}
+}
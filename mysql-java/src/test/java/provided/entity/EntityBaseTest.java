@@ -0,0 +1,135 @@
+/**
+ * 
+ */
+package provided.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+/**
+ * This checks the table-driven fraction conversion in {@link EntityBase}
+ * against the algorithm it replaced, kept below in {@link OldFraction}. Every
+ * amount a DECIMAL(7,2) column can hold is compared.
+ * 
+ * @author Promineo
+ *
+ */
+class EntityBaseTest {
+  private static final long MAX_CENTS = 9_999_999;
+
+  private final Amount entity = new Amount();
+  private final OldFraction old = new OldFraction();
+
+  @Test
+  void everyDecimal72MatchesTheOldAlgorithm() throws IOException {
+    StringBuilder builder = new StringBuilder();
+    StringWriter writer = new StringWriter();
+
+    for (long cents = -MAX_CENTS; cents <= MAX_CENTS; cents++) {
+      BigDecimal value = BigDecimal.valueOf(cents, 2);
+      String expected = old.toFraction(value);
+
+      assertEquals(expected, entity.toFraction(value), value::toPlainString);
+
+      builder.setLength(0);
+      EntityBase.appendFraction(builder, value);
+      assertEquals(expected, builder.toString(), value::toPlainString);
+
+      /* The Appendable path writes digits itself. Check a sample of it. */
+      if (cents % 97 == 0) {
+        writer.getBuffer().setLength(0);
+        EntityBase.appendFraction((Appendable) writer, value);
+        assertEquals(expected, writer.toString(), value::toPlainString);
+      }
+    }
+  }
+
+  @Test
+  void nullAndLargeAmountsMatchTheOldAlgorithm() throws IOException {
+    String[] amounts = {"0", "0.001", "0.96875", "0.03125", "1.0000000001",
+        "2147483647.99", "2147483648.5", "99999999999.97", "1e400"};
+
+    assertEquals(old.toFraction(null), entity.toFraction(null));
+
+    for (String amount : amounts) {
+      BigDecimal value = new BigDecimal(amount);
+      StringWriter writer = new StringWriter();
+
+      EntityBase.appendFraction((Appendable) writer, value);
+      assertEquals(old.toFraction(value), entity.toFraction(value), amount);
+      assertEquals(old.toFraction(value), writer.toString(), amount);
+    }
+  }
+
+  /**
+   * An entity with no fields, used only for the inherited conversion.
+   */
+  private static class Amount extends EntityBase {
+  }
+
+  /**
+   * The conversion as it was before the tables, copied as it was.
+   */
+  private static class OldFraction {
+    String toFraction(BigDecimal value) {
+      String result = "";
+      Double amount = Objects.isNull(value) ? null : value.doubleValue();
+
+      if (Objects.nonNull(amount) && amount > 0.0) {
+        int wholePart = Double.valueOf(Math.floor(amount)).intValue();
+        double fractionalPart = amount - wholePart;
+        Factor twoFactor = findFactor(fractionalPart, 16, 2);
+        Factor threeFactor = findFactor(fractionalPart, 15, 5);
+
+        Factor factor =
+            twoFactor.factor < threeFactor.factor ? twoFactor : threeFactor;
+
+        if (wholePart > 0) {
+          result += Integer.valueOf(wholePart).toString();
+        }
+
+        if (factor.num != 0) {
+          if (!result.isEmpty()) {
+            result += " ";
+          }
+
+          result += factor;
+        }
+
+        result += " ";
+      }
+
+      return result;
+    }
+
+    private Factor findFactor(double fractionalPart, int factor, int divisor) {
+      int num = Double.valueOf(Math.round(fractionalPart * factor)).intValue();
+
+      while (num != 0 && num % divisor == 0 && factor % divisor == 0) {
+        num /= divisor;
+        factor /= divisor;
+      }
+
+      return new Factor(num, factor);
+    }
+
+    private static class Factor {
+      int num;
+      int factor;
+
+      Factor(int num, int factor) {
+        this.num = num;
+        this.factor = factor;
+      }
+
+      @Override
+      public String toString() {
+        return num + "/" + factor;
+      }
+    }
+  }
+}
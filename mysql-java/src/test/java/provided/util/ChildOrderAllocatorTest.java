@@ -0,0 +1,180 @@
+/**
+ * 
+ */
+package provided.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link ChildOrderAllocator} against an in-memory H2 database in MySQL mode. Many
+ * threads allocate from the same parents at once, and the runs they get must never overlap.
+ *
+ * @author Promineo
+ *
+ */
+class ChildOrderAllocatorTest {
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  private static final int THREADS = 8;
+  private static final int CALLS = 50;
+  private static final int BLOCK_SIZE = 16;
+
+  private ConnectionPool pool;
+  private ExecutorService executor;
+
+  @BeforeEach
+  void createTables() throws SQLException {
+    pool = new ConnectionPool("jdbc:h2:mem:order" + DATABASES.incrementAndGet()
+        + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+    pool.setMaxSize(THREADS * 2);
+    executor = Executors.newFixedThreadPool(THREADS);
+
+    try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE step (recipe_id INT NOT NULL, step_order INT NOT NULL)");
+      stmt.execute("CREATE TABLE child_order_counter (child_table VARCHAR(64) NOT NULL, "
+          + "parent_id INT NOT NULL, next_order INT NOT NULL, "
+          + "PRIMARY KEY (child_table, parent_id))");
+
+      /* Parent 1 already has steps 1 to 5. Parent 2 has none. */
+      for(int order = 1; order <= 5; order++) {
+        stmt.executeUpdate("INSERT INTO step VALUES (1, " + order + ")");
+      }
+    }
+  }
+
+  @AfterEach
+  void closePool() {
+    executor.shutdownNow();
+    pool.close();
+  }
+
+  @Test
+  void concurrentRunsAreDisjointAndContiguous() throws Exception {
+    for(int count : new int[] {1, 4}) {
+      ChildOrderAllocator allocator = allocator();
+
+      assertContiguous(allocate(allocator, 1, count), 6, count);
+      assertContiguous(allocate(allocator, 2, count), 1, count);
+
+      clearCounters();
+    }
+  }
+
+  @Test
+  void allocatorsSharingTheCounterNeverOverlap() throws Exception {
+    /* Two allocators stand in for two JVMs. Each holds its own blocks. */
+    ChildOrderAllocator first = allocator();
+    ChildOrderAllocator second = allocator();
+
+    List<Future<List<Integer>>> futures = new ArrayList<>();
+
+    for(int thread = 0; thread < THREADS; thread++) {
+      ChildOrderAllocator allocator = thread % 2 == 0 ? first : second;
+      futures.add(executor.submit(runs(allocator, 1, 3)));
+    }
+
+    List<Integer> starts = new ArrayList<>();
+
+    for(Future<List<Integer>> future : futures) {
+      starts.addAll(future.get());
+    }
+
+    starts.sort(null);
+    assertTrue(starts.get(0) >= 6);
+
+    for(int index = 1; index < starts.size(); index++) {
+      assertTrue(starts.get(index) >= starts.get(index - 1) + 3,
+          "Runs starting at " + starts.get(index - 1) + " and " + starts.get(index) + " overlap");
+    }
+  }
+
+  @Test
+  void counterIsInitializedOnceFromExistingRows() throws Exception {
+    allocate(allocator(), 1, 1);
+
+    try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(
+            "SELECT COUNT(*), MAX(next_order) FROM child_order_counter WHERE parent_id = 1")) {
+      assertTrue(rs.next());
+      assertEquals(1, rs.getInt(1));
+
+      /* The counter is past every number handed out, rounded up to whole blocks. */
+      int handedOut = THREADS * CALLS;
+      int reserved = (handedOut + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+      assertEquals(6 + reserved, rs.getInt(2));
+    }
+  }
+
+  /**
+   * Have every thread allocate runs of the given size for one parent at the same time.
+   *
+   * @return The first number of every run, in ascending order.
+   */
+  private List<Integer> allocate(ChildOrderAllocator allocator, int parentId, int count)
+      throws Exception {
+    List<Future<List<Integer>>> futures = new ArrayList<>();
+
+    for(int thread = 0; thread < THREADS; thread++) {
+      futures.add(executor.submit(runs(allocator, parentId, count)));
+    }
+
+    List<Integer> starts = new ArrayList<>();
+
+    for(Future<List<Integer>> future : futures) {
+      starts.addAll(future.get());
+    }
+
+    starts.sort(null);
+    return starts;
+  }
+
+  private static Callable<List<Integer>> runs(ChildOrderAllocator allocator, int parentId,
+      int count) {
+    return () -> {
+      List<Integer> starts = new ArrayList<>();
+
+      for(int call = 0; call < CALLS; call++) {
+        starts.add(allocator.next(parentId, count));
+      }
+
+      return starts;
+    };
+  }
+
+  /**
+   * Check that the runs follow each other with no overlap and no gap. The block size is a multiple
+   * of the run size, so no block is abandoned part way.
+   */
+  private static void assertContiguous(List<Integer> starts, int first, int count) {
+    assertEquals(THREADS * CALLS, starts.size());
+
+    for(int index = 0; index < starts.size(); index++) {
+      assertEquals(first + index * count, starts.get(index));
+    }
+  }
+
+  private ChildOrderAllocator allocator() {
+    return new ChildOrderAllocator(pool, "step", "recipe_id", "step_order", BLOCK_SIZE);
+  }
+
+  private void clearCounters() throws SQLException {
+    try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+      stmt.executeUpdate("DELETE FROM child_order_counter");
+    }
+  }
+}
@@ -0,0 +1,317 @@
+/**
+ * 
+ */
+package provided.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link ConnectionPool} against an in-memory H2 database.
+ *
+ * @author Promineo
+ *
+ */
+class ConnectionPoolTest {
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  private ConnectionPool pool;
+
+  @BeforeEach
+  void createPool() {
+    pool = new ConnectionPool(
+        "jdbc:h2:mem:pool" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+    pool.setMinIdle(0);
+    pool.setMaxSize(2);
+  }
+
+  @AfterEach
+  void closePool() {
+    pool.close();
+  }
+
+  @Test
+  void returnedConnectionIsReused() throws SQLException {
+    Connection first = physical(pool.getConnection());
+    Connection second = physical(pool.getConnection());
+
+    assertSame(first, second);
+    assertEquals(1, pool.getTotalConnections());
+    assertEquals(1, pool.getIdleConnections());
+  }
+
+  @Test
+  void borrowTimesOutWhenEveryConnectionIsInUse() throws SQLException {
+    pool.setMaxSize(1);
+    pool.setAcquireTimeoutMillis(100);
+
+    try(Connection held = pool.getConnection()) {
+      long start = System.nanoTime();
+
+      assertThrows(SQLTimeoutException.class, pool::getConnection);
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    /* Once the connection is returned, the next borrow gets it. */
+    try(Connection conn = pool.getConnection()) {
+      assertFalse(conn.isClosed());
+    }
+  }
+
+  @Test
+  void waitingBorrowGetsReturnedConnection() throws Exception {
+    pool.setMaxSize(1);
+    pool.setAcquireTimeoutMillis(TimeUnit.SECONDS.toMillis(10));
+
+    Connection held = pool.getConnection();
+    Thread returner = new Thread(() -> {
+      try {
+        TimeUnit.MILLISECONDS.sleep(100);
+        held.close();
+      }
+      catch(InterruptedException | SQLException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    returner.start();
+
+    try(Connection conn = pool.getConnection()) {
+      assertFalse(conn.isClosed());
+    }
+
+    returner.join();
+  }
+
+  @Test
+  void invalidConnectionIsReplacedWhenBorrowed() throws SQLException {
+    pool.setValidationBypassMillis(0);
+
+    Connection first = physical(pool.getConnection());
+
+    /* Break the idle connection behind the pool's back. */
+    first.close();
+
+    try(Connection conn = pool.getConnection()) {
+      assertNotSame(first, conn.unwrap(Connection.class));
+      assertTrue(conn.isValid(1));
+    }
+
+    assertEquals(1, pool.getTotalConnections());
+  }
+
+  @Test
+  void expiredConnectionIsReplaced() throws Exception {
+    pool.setMaxLifetimeMillis(50);
+
+    Connection first = physical(pool.getConnection());
+    TimeUnit.MILLISECONDS.sleep(100);
+    Connection second = physical(pool.getConnection());
+
+    assertNotSame(first, second);
+    assertTrue(first.isClosed());
+    assertEquals(1, pool.getTotalConnections());
+  }
+
+  @Test
+  void housekeepingEvictsIdleConnections() throws Exception {
+    pool.setMaxSize(3);
+    pool.setIdleTimeoutMillis(50);
+    pool.setHousekeepingIntervalMillis(20);
+
+    List<Connection> held = new ArrayList<>();
+
+    for(int count = 0; count < 3; count++) {
+      held.add(pool.getConnection());
+    }
+
+    for(Connection conn : held) {
+      conn.close();
+    }
+
+    assertEquals(3, pool.getIdleConnections());
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+    while(pool.getTotalConnections() > 0 && System.nanoTime() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(20);
+    }
+
+    assertEquals(0, pool.getTotalConnections());
+  }
+
+  @Test
+  void uncommittedWorkIsRolledBackOnReturn() throws SQLException {
+    try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE item (id INT)");
+    }
+
+    try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+      conn.setAutoCommit(false);
+      stmt.executeUpdate("INSERT INTO item VALUES (1)");
+    }
+
+    try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM item")) {
+      assertTrue(conn.getAutoCommit());
+      assertTrue(rs.next());
+      assertEquals(0, rs.getInt(1));
+    }
+  }
+
+  @Test
+  void closedConnectionCanNotBeUsed() throws SQLException {
+    Connection conn = pool.getConnection();
+    conn.close();
+
+    assertTrue(conn.isClosed());
+    assertThrows(SQLException.class, conn::createStatement);
+  }
+
+  @Test
+  void closedPoolRefusesBorrows() throws SQLException {
+    pool.getConnection().close();
+    pool.close();
+
+    assertEquals(0, pool.getTotalConnections());
+    assertThrows(SQLException.class, pool::getConnection);
+  }
+
+  @Test
+  void closedStatementIsReusedFromTheCache() throws SQLException {
+    pool.setStatementCacheSize(4);
+
+    PreparedStatement first;
+    PreparedStatement second;
+
+    try(Connection conn = pool.getConnection()) {
+      first = physical(conn.prepareStatement("SELECT ?"));
+      second = physical(conn.prepareStatement("SELECT ?"));
+    }
+
+    assertSame(first, second);
+    assertFalse(first.isClosed());
+    assertEquals(1, pool.getStatementCacheMisses());
+    assertEquals(1, pool.getStatementCacheHits());
+  }
+
+  @Test
+  void reusedStatementHasNoParametersLeftOver() throws SQLException {
+    pool.setStatementCacheSize(4);
+
+    try(Connection conn = pool.getConnection()) {
+      try(PreparedStatement stmt = conn.prepareStatement("SELECT ?")) {
+        stmt.setInt(1, 42);
+        stmt.setMaxRows(1);
+      }
+
+      try(PreparedStatement stmt = conn.prepareStatement("SELECT ?")) {
+        assertEquals(0, stmt.getMaxRows());
+        assertThrows(SQLException.class, stmt::executeQuery);
+      }
+    }
+  }
+
+  @Test
+  void leastRecentlyUsedStatementIsEvictedAndClosed() throws SQLException {
+    pool.setStatementCacheSize(2);
+
+    try(Connection conn = pool.getConnection()) {
+      PreparedStatement first = physical(conn.prepareStatement("SELECT 1"));
+      physical(conn.prepareStatement("SELECT 2"));
+
+      /* Use the first again so the second is the least recently used. */
+      assertSame(first, physical(conn.prepareStatement("SELECT 1")));
+      PreparedStatement second = physical(conn.prepareStatement("SELECT 2"));
+      assertFalse(second.isClosed());
+
+      PreparedStatement third = physical(conn.prepareStatement("SELECT 3"));
+
+      assertEquals(1, pool.getStatementCacheEvictions());
+      assertTrue(first.isClosed());
+      assertFalse(second.isClosed());
+      assertFalse(third.isClosed());
+    }
+  }
+
+  @Test
+  void statementClosedAfterReturnIsNotHandedBack() throws SQLException {
+    pool.setStatementCacheSize(4);
+
+    PreparedStatement stale;
+    PreparedStatement physical;
+
+    try(Connection conn = pool.getConnection()) {
+      stale = conn.prepareStatement("SELECT 1");
+      physical = stale.unwrap(PreparedStatement.class);
+    }
+
+    /* The lease is over, so closing the statement closes it rather than caching it. */
+    stale.close();
+    assertTrue(physical.isClosed());
+
+    try(Connection conn = pool.getConnection();
+        PreparedStatement stmt = conn.prepareStatement("SELECT 1")) {
+      assertNotSame(physical, stmt.unwrap(PreparedStatement.class));
+      assertTrue(stmt.executeQuery().next());
+    }
+  }
+
+  @Test
+  void physicallyClosedStatementIsNotHandedBack() throws SQLException {
+    pool.setStatementCacheSize(4);
+
+    PreparedStatement physical;
+
+    try(Connection conn = pool.getConnection()) {
+      try(PreparedStatement stmt = conn.prepareStatement("SELECT 1")) {
+        physical = stmt.unwrap(PreparedStatement.class);
+      }
+
+      physical.close();
+
+      try(PreparedStatement stmt = conn.prepareStatement("SELECT 1");
+          ResultSet rs = stmt.executeQuery()) {
+        assertNotSame(physical, stmt.unwrap(PreparedStatement.class));
+        assertTrue(rs.next());
+      }
+    }
+
+    assertEquals(2, pool.getStatementCacheMisses());
+  }
+
+  /**
+   * Return a borrowed connection and give back the physical connection under it.
+   */
+  private static Connection physical(Connection conn) throws SQLException {
+    try(conn) {
+      return conn.unwrap(Connection.class);
+    }
+  }
+
+  /**
+   * Close a prepared statement and give back the physical statement under it.
+   */
+  private static PreparedStatement physical(PreparedStatement stmt) throws SQLException {
+    try(stmt) {
+      return stmt.unwrap(PreparedStatement.class);
+    }
+  }
+}
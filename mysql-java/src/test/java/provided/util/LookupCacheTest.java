@@ -0,0 +1,78 @@
+/**
+ * 
+ */
+package provided.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import provided.util.DaoBase.DaoException;
+import recipes.entity.Unit;
+
+/**
+ * Tests of {@link LookupCache} against an in-memory H2 database in MySQL mode. The pool holds a
+ * single connection, so any read that borrows a second one while the caller holds the first times
+ * out.
+ *
+ * @author Promineo
+ *
+ */
+class LookupCacheTest {
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  private ConnectionPool pool;
+  private LookupCache<Unit> units;
+
+  @BeforeEach
+  void createTable() throws SQLException {
+    pool = new ConnectionPool("jdbc:h2:mem:lookup" + DATABASES.incrementAndGet()
+        + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+    pool.setMaxSize(1);
+    pool.setAcquireTimeoutMillis(200);
+
+    EntityMetadata.register(Unit.class, "unit");
+    units = new LookupCache<>(pool, Unit.class);
+
+    try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE unit (unit_id INT PRIMARY KEY, "
+          + "unit_name_singular VARCHAR(32), unit_name_plural VARCHAR(32))");
+      stmt.execute("INSERT INTO unit VALUES (1, 'cup', 'cups')");
+    }
+  }
+
+  @AfterEach
+  void closePool() {
+    pool.close();
+  }
+
+  @Test
+  void loadAndReadThroughUseTheCallersConnection() throws SQLException {
+    try(Connection conn = pool.getConnection()) {
+      Unit cup = units.get(conn, 1);
+      assertEquals("cup", cup.getUnitNameSingular());
+      assertSame(cup, units.get(conn, 1));
+
+      try(Statement stmt = conn.createStatement()) {
+        stmt.execute("INSERT INTO unit VALUES (2, 'teaspoon', 'teaspoons')");
+      }
+
+      /* Not in the loaded table, so it is read on its own. */
+      assertEquals("teaspoon", units.get(conn, 2).getUnitNameSingular());
+      assertNull(units.get(conn, 3));
+
+      /* Without the caller's connection, the cache waits for a second one. */
+      units.invalidate();
+      assertThrows(DaoException.class, () -> units.get(1));
+    }
+
+    assertEquals(2, units.getAll().size());
+  }
+}
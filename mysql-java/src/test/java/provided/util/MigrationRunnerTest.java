@@ -0,0 +1,229 @@
+/**
+ * 
+ */
+package provided.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link MigrationRunner} against an in-memory H2 database in MySQL mode. The scripts are
+ * written to a temporary directory that a class loader reads them from, so a test can change one.
+ *
+ * @author Promineo
+ *
+ */
+class MigrationRunnerTest {
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  private static final String SCHEMA = "schema.sql";
+  private static final String DATA = "data.sql";
+
+  @TempDir
+  Path scripts;
+
+  private ConnectionPool pool;
+  private URLClassLoader classLoader;
+
+  /* The names of the scripts applied, in order. */
+  private final List<String> applied = new ArrayList<>();
+
+  @BeforeEach
+  void writeScripts() throws IOException {
+    pool = new ConnectionPool("jdbc:h2:mem:migrate" + DATABASES.incrementAndGet()
+        + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+    classLoader = new URLClassLoader(new URL[] {scripts.toUri().toURL()}, null);
+
+    write(SCHEMA, "DROP TABLE IF EXISTS unit;\n"
+        + "CREATE TABLE unit (unit_id INT PRIMARY KEY, unit_name VARCHAR(32));\n");
+    write(DATA, "INSERT INTO unit VALUES (1, 'cup');\n");
+  }
+
+  @AfterEach
+  void close() throws IOException {
+    pool.close();
+    classLoader.close();
+  }
+
+  @Test
+  void freshDatabaseGetsTheWholeChain() throws SQLException {
+    assertEquals(List.of(SCHEMA, DATA), runner().migrate());
+    assertEquals(List.of(SCHEMA, DATA), applied);
+
+    assertEquals(List.of("1 cup"), rows("SELECT unit_id, unit_name FROM unit"));
+    assertEquals(2, recorded().size());
+  }
+
+  @Test
+  void unchangedScriptsAreNotApplied() throws SQLException {
+    runner().migrate();
+    Map<String, String> checksums = recorded();
+    applied.clear();
+
+    /* A row added since the migration shows that nothing was reset. */
+    execute("INSERT INTO unit VALUES (2, 'tsp')");
+
+    assertEquals(List.of(), runner().migrate());
+    assertEquals(List.of(), applied);
+    assertEquals(2, rows("SELECT unit_id FROM unit").size());
+    assertEquals(checksums, recorded());
+  }
+
+  @Test
+  void changedScriptReappliesTheWholeChain() throws IOException, SQLException {
+    runner().migrate();
+    Map<String, String> checksums = recorded();
+    applied.clear();
+
+    execute("INSERT INTO unit VALUES (2, 'tsp')");
+    write(DATA, "INSERT INTO unit VALUES (1, 'cup');\nINSERT INTO unit VALUES (3, 'pinch');\n");
+
+    /* Only the data changed, but the schema is applied again so the data has empty tables. */
+    assertEquals(List.of(SCHEMA, DATA), runner().migrate());
+    assertEquals(List.of(SCHEMA, DATA), applied);
+    assertEquals(List.of("1 cup", "3 pinch"),
+        rows("SELECT unit_id, unit_name FROM unit ORDER BY unit_id"));
+
+    Map<String, String> changed = recorded();
+    assertEquals(checksums.get(SCHEMA), changed.get(SCHEMA));
+    assertNotEquals(checksums.get(DATA), changed.get(DATA));
+
+    applied.clear();
+    assertEquals(List.of(), runner().migrate());
+  }
+
+  @Test
+  void forcedMigrationResetsTheTables() throws SQLException {
+    runner().migrate();
+    applied.clear();
+    execute("INSERT INTO unit VALUES (2, 'tsp')");
+
+    assertEquals(List.of(SCHEMA, DATA), runner().migrate(true));
+    assertEquals(List.of(SCHEMA, DATA), applied);
+    assertEquals(List.of("1 cup"), rows("SELECT unit_id, unit_name FROM unit"));
+  }
+
+  @Test
+  void failedChainIsNotRecorded() throws IOException, SQLException {
+    write(DATA, "INSERT INTO no_such_table VALUES (1);\n");
+
+    assertThrows(RuntimeException.class, () -> runner().migrate());
+    assertEquals(Map.of(), recorded());
+
+    write(DATA, "INSERT INTO unit VALUES (1, 'cup');\n");
+    applied.clear();
+
+    assertEquals(List.of(SCHEMA, DATA), runner().migrate());
+    assertEquals(2, recorded().size());
+  }
+
+  @Test
+  void missingScriptIsAnError() {
+    MigrationRunner runner = runner().add("missing.sql", reader -> apply("missing.sql", reader));
+
+    assertThrows(DaoBase.DaoException.class, runner::migrate);
+    assertEquals(List.of(), applied);
+  }
+
+  private MigrationRunner runner() {
+    Consumer<Reader> schema = reader -> apply(SCHEMA, reader);
+    Consumer<Reader> data = reader -> apply(DATA, reader);
+
+    return new MigrationRunner(pool, classLoader).add(SCHEMA, schema).add(DATA, data);
+  }
+
+  /**
+   * Run a script one statement at a time, the way a DAO's script method does.
+   */
+  private void apply(String scriptName, Reader reader) {
+    applied.add(scriptName);
+
+    try(SqlScriptReader script = new SqlScriptReader(reader);
+        Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+      String sql;
+
+      while((sql = script.nextStatement()) != null) {
+        stmt.execute(sql);
+      }
+    }
+    catch(IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    catch(SQLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void write(String scriptName, String text) throws IOException {
+    Files.writeString(scripts.resolve(scriptName), text);
+  }
+
+  private void execute(String sql) throws SQLException {
+    try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+      stmt.execute(sql);
+    }
+  }
+
+  /**
+   * @return The recorded checksum of each script.
+   */
+  private Map<String, String> recorded() throws SQLException {
+    Map<String, String> checksums = new TreeMap<>();
+
+    try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT script_name, checksum FROM "
+            + MigrationRunner.MIGRATION_TABLE)) {
+      while(rs.next()) {
+        checksums.put(rs.getString(1), rs.getString(2));
+      }
+    }
+
+    return checksums;
+  }
+
+  /**
+   * @return Each row's columns, separated by spaces.
+   */
+  private List<String> rows(String sql) throws SQLException {
+    List<String> rows = new ArrayList<>();
+
+    try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(sql)) {
+      int columns = rs.getMetaData().getColumnCount();
+
+      while(rs.next()) {
+        StringBuilder row = new StringBuilder(rs.getString(1));
+
+        for(int column = 2; column <= columns; column++) {
+          row.append(' ').append(rs.getString(column));
+        }
+
+        rows.add(row.toString());
+      }
+    }
+
+    return rows;
+  }
+}
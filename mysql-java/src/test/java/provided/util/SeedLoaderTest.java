@@ -0,0 +1,215 @@
+/**
+ * 
+ */
+package provided.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import provided.util.DaoBase.DaoException;
+import provided.util.SeedLoader.InsertCollapser;
+
+/**
+ * Tests of {@link SeedLoader} against an in-memory H2 database in MySQL mode.
+ *
+ * @author Promineo
+ *
+ */
+class SeedLoaderTest {
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  private ConnectionPool pool;
+  private SeedLoader loader;
+
+  @BeforeEach
+  void createTables() throws SQLException {
+    pool = new ConnectionPool("jdbc:h2:mem:seed" + DATABASES.incrementAndGet()
+        + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+    pool.setMaxSize(SeedLoader.DEFAULT_PARALLELISM + 1);
+    loader = new SeedLoader(pool);
+
+    execute("CREATE TABLE unit (unit_id INT AUTO_INCREMENT PRIMARY KEY, "
+        + "unit_name VARCHAR(32) NOT NULL)");
+    execute("CREATE TABLE recipe (recipe_id INT AUTO_INCREMENT PRIMARY KEY, "
+        + "recipe_name VARCHAR(64) NOT NULL)");
+    execute("CREATE TABLE ingredient (ingredient_id INT AUTO_INCREMENT PRIMARY KEY, "
+        + "recipe_id INT NOT NULL, unit_id INT, ingredient_name VARCHAR(64) NOT NULL, "
+        + "FOREIGN KEY (recipe_id) REFERENCES recipe (recipe_id), "
+        + "FOREIGN KEY (unit_id) REFERENCES unit (unit_id))");
+  }
+
+  @AfterEach
+  void closePool() {
+    pool.close();
+  }
+
+  @Test
+  void consecutiveInsertsAreCollapsed() {
+    List<String> out = collapse(3,
+        "INSERT INTO unit (unit_name) VALUES ('cup')",
+        "INSERT INTO unit (unit_name) VALUES ('tsp')",
+        "INSERT INTO unit (unit_name) VALUES ('tbsp')",
+        "INSERT INTO unit (unit_name) VALUES ('pinch')");
+
+    assertEquals(List.of(
+        "INSERT INTO unit (unit_name) VALUES ('cup'), ('tsp'), ('tbsp')",
+        "INSERT INTO unit (unit_name) VALUES ('pinch')"), out);
+  }
+
+  @Test
+  void collapsingStopsAtADifferentPrefixOrStatement() {
+    List<String> out = collapse(10,
+        "INSERT INTO unit (unit_name) VALUES ('cup')",
+        "INSERT INTO unit (unit_id, unit_name) VALUES (9, 'tsp')",
+        "UPDATE unit SET unit_name = 'c' WHERE unit_id = 1",
+        "INSERT INTO unit (unit_name) VALUES ('pinch')",
+        "INSERT INTO unit (unit_name) VALUES ('dash')");
+
+    assertEquals(List.of(
+        "INSERT INTO unit (unit_name) VALUES ('cup')",
+        "INSERT INTO unit (unit_id, unit_name) VALUES (9, 'tsp')",
+        "UPDATE unit SET unit_name = 'c' WHERE unit_id = 1",
+        "INSERT INTO unit (unit_name) VALUES ('pinch'), ('dash')"), out);
+  }
+
+  @Test
+  void onlySingleRowInsertsAreCollapsed() {
+    String multiRow = "INSERT INTO unit (unit_name) VALUES ('cup'), ('tsp')";
+    String upsert = "INSERT INTO unit (unit_id, unit_name) VALUES (1, 'x') "
+        + "ON DUPLICATE KEY UPDATE unit_name = 'x'";
+    String select = "INSERT INTO unit (unit_name) SELECT recipe_name FROM recipe";
+    String tricky = "INSERT INTO unit (unit_name) VALUES ('a) VALUES (b')";
+
+    List<String> out = collapse(10, multiRow, upsert, select, tricky, tricky);
+
+    assertEquals(List.of(multiRow, upsert, select,
+        "INSERT INTO unit (unit_name) VALUES ('a) VALUES (b'), ('a) VALUES (b')"), out);
+  }
+
+  @Test
+  void tablesAreLoadedInForeignKeyOrder() throws SQLException {
+    /* The children come first in the script, so running it in order would fail. */
+    String script = ""
+        + "INSERT INTO ingredient (recipe_id, unit_id, ingredient_name) VALUES (1, 1, 'flour');\n"
+        + "INSERT INTO ingredient (recipe_id, unit_id, ingredient_name) VALUES (1, 2, 'salt');\n"
+        + "INSERT INTO ingredient (recipe_id, unit_id, ingredient_name) VALUES (2, 1, 'rice');\n"
+        + "INSERT INTO recipe (recipe_name) VALUES ('Bread');\n"
+        + "INSERT INTO unit (unit_name) VALUES ('cup');\n"
+        + "INSERT INTO recipe (recipe_name) VALUES ('Pilaf');\n"
+        + "INSERT INTO unit (unit_name) VALUES ('pinch');\n";
+
+    /* One collapsed INSERT per table. */
+    assertEquals(3, loader.load(new StringReader(script)));
+
+    assertEquals(List.of("1 Bread", "2 Pilaf"),
+        rows("SELECT recipe_id, recipe_name FROM recipe ORDER BY recipe_id"));
+    assertEquals(List.of("1 cup", "2 pinch"),
+        rows("SELECT unit_id, unit_name FROM unit ORDER BY unit_id"));
+    assertEquals(List.of("1 flour", "1 salt", "2 rice"),
+        rows("SELECT recipe_id, ingredient_name FROM ingredient ORDER BY ingredient_id"));
+  }
+
+  @Test
+  void scriptWithOtherStatementsRunsInOrder() throws SQLException {
+    /*
+     * Grouped by table, the parent DELETE would run before the child INSERT and DELETE, and
+     * the ingredient for recipe 1 would then fail its foreign key.
+     */
+    String script = ""
+        + "INSERT INTO recipe (recipe_name) VALUES ('Bread');\n"
+        + "INSERT INTO ingredient (recipe_id, ingredient_name) VALUES (1, 'flour');\n"
+        + "DELETE FROM ingredient;\n"
+        + "DELETE FROM recipe;\n"
+        + "INSERT INTO recipe (recipe_name) VALUES ('Pilaf');\n"
+        + "INSERT INTO recipe (recipe_name) VALUES ('Soup');\n";
+
+    /* The two recipes at the end are collapsed. */
+    assertEquals(5, loader.load(new StringReader(script)));
+
+    assertEquals(List.of("2 Pilaf", "3 Soup"),
+        rows("SELECT recipe_id, recipe_name FROM recipe ORDER BY recipe_id"));
+    assertEquals(0, count("ingredient"));
+  }
+
+  @Test
+  void inOrderLoadCollapsesAndBatches() throws SQLException {
+    StringBuilder script = new StringBuilder();
+
+    for(int row = 1; row <= 1200; row++) {
+      script.append("INSERT INTO unit (unit_name) VALUES ('unit ").append(row).append("');\n");
+    }
+
+    loader.setMaxRowsPerInsert(500);
+
+    assertEquals(3, loader.loadInOrder(new StringReader(script.toString())));
+    assertEquals(1200, count("unit"));
+  }
+
+  @Test
+  void failedInOrderLoadIsRolledBack() throws SQLException {
+    String script = ""
+        + "INSERT INTO recipe (recipe_name) VALUES ('Bread');\n"
+        + "UPDATE recipe SET recipe_name = 'Loaf';\n"
+        + "INSERT INTO ingredient (recipe_id, ingredient_name) VALUES (7, 'flour');\n";
+
+    assertThrows(DaoException.class, () -> loader.load(new StringReader(script)));
+    assertEquals(0, count("recipe"));
+  }
+
+  private static List<String> collapse(int maxRows, String... statements) {
+    List<String> out = new ArrayList<>();
+    InsertCollapser collapser = new InsertCollapser(maxRows, out::add);
+
+    for(String sql : statements) {
+      collapser.add(sql);
+    }
+
+    collapser.flush();
+    return out;
+  }
+
+  private void execute(String sql) throws SQLException {
+    try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+      stmt.execute(sql);
+    }
+  }
+
+  private int count(String table) throws SQLException {
+    List<String> rows = rows("SELECT COUNT(*) FROM " + table);
+    return Integer.parseInt(rows.get(0));
+  }
+
+  /**
+   * @return Each row's columns, separated by spaces.
+   */
+  private List<String> rows(String sql) throws SQLException {
+    List<String> rows = new ArrayList<>();
+
+    try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(sql)) {
+      int columns = rs.getMetaData().getColumnCount();
+
+      while(rs.next()) {
+        StringBuilder row = new StringBuilder(rs.getString(1));
+
+        for(int column = 2; column <= columns; column++) {
+          row.append(' ').append(rs.getString(column));
+        }
+
+        rows.add(row.toString());
+      }
+    }
+
+    return rows;
+  }
+}
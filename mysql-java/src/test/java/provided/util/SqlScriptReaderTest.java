@@ -0,0 +1,164 @@
+/**
+ * 
+ */
+package provided.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of how {@link SqlScriptReader} splits a script into statements.
+ *
+ * @author Promineo
+ *
+ */
+class SqlScriptReaderTest {
+
+  @Test
+  void semicolonsSeparateStatements() throws IOException {
+    assertEquals(List.of("SELECT 1", "SELECT 2", "SELECT 3"),
+        statements("SELECT 1;SELECT 2;\nSELECT 3"));
+  }
+
+  @Test
+  void emptyStatementsAreSkipped() throws IOException {
+    assertEquals(List.of("SELECT 1"), statements(" ;; \n SELECT 1 ;\n ; "));
+    assertEquals(List.of(), statements(""));
+  }
+
+  @Test
+  void whitespaceIsCollapsed() throws IOException {
+    assertEquals(List.of("CREATE TABLE t ( id INT )"),
+        statements("\n\tCREATE   TABLE t\r\n(\n  id INT\n)\n;\n"));
+  }
+
+  @Test
+  void quotedTextIsCopiedUnchanged() throws IOException {
+    assertEquals(List.of("INSERT INTO `my  table` VALUES ('a;  b', \"c -- d\", 'e # f')"),
+        statements("INSERT INTO `my  table` VALUES ('a;  b', \"c -- d\", 'e # f');"));
+  }
+
+  @Test
+  void doubledQuotesAreEscapes() throws IOException {
+    assertEquals(List.of("SELECT 'it''s;'", "SELECT \"say \"\"hi\"\";\"", "SELECT `a``;b`"),
+        statements("SELECT 'it''s;'; SELECT \"say \"\"hi\"\";\"; SELECT `a``;b`;"));
+  }
+
+  @Test
+  void backslashEscapesTheNextCharacter() throws IOException {
+    assertEquals(List.of("SELECT 'it\\'s;'", "SELECT 'C:\\\\'", "SELECT \"\\\";\""),
+        statements("SELECT 'it\\'s;'; SELECT 'C:\\\\'; SELECT \"\\\";\";"));
+  }
+
+  @Test
+  void backslashIsNotAnEscapeInBackTicks() throws IOException {
+    assertEquals(List.of("SELECT `a\\`", "SELECT 2"), statements("SELECT `a\\`; SELECT 2"));
+  }
+
+  @Test
+  void lineCommentsAreRemoved() throws IOException {
+    assertEquals(List.of("SELECT 1", "SELECT 2"),
+        statements("-- header; not a statement\nSELECT 1; # trailing; comment\n"
+            + "SELECT --\t tab comment;\n2;\n--"));
+  }
+
+  @Test
+  void dashesWithoutWhitespaceAreNotAComment() throws IOException {
+    assertEquals(List.of("SELECT 1--2", "SELECT 3 - 1"),
+        statements("SELECT 1--2; SELECT 3 - 1;"));
+  }
+
+  @Test
+  void blockCommentsAreRemoved() throws IOException {
+    assertEquals(List.of("SELECT 1", "SELECT 2 / 1"),
+        statements("/* a;\n multi-line; comment */SELECT/**/1; SELECT /* ; */ 2 / 1;"));
+  }
+
+  @Test
+  void executableCommentsAndHintsAreKept() throws IOException {
+    assertEquals(
+        List.of("/*!40101 SET NAMES utf8 */", "SELECT /*+ MAX_EXECUTION_TIME(1000) */ 1"),
+        statements("/*!40101 SET NAMES utf8 */;\nSELECT /*+ MAX_EXECUTION_TIME(1000) */ 1;"));
+  }
+
+  @Test
+  void lastStatementNeedsNoSemicolon() throws IOException {
+    assertEquals(List.of("SELECT 1", "SELECT 2"), statements("SELECT 1; SELECT 2 -- end"));
+  }
+
+  @Test
+  void statementsSpanningBufferRefillsAreIntact() throws IOException {
+    String value = "x".repeat(20_000);
+    String script = "INSERT INTO t VALUES ('" + value + "');\n-- done\nSELECT 'a;b';";
+
+    List<String> expected = List.of("INSERT INTO t VALUES ('" + value + "')", "SELECT 'a;b'");
+
+    assertEquals(expected, statements(new StringReader(script)));
+    assertEquals(expected, statements(new OneCharReader(new StringReader(script))));
+  }
+
+  @Test
+  void lineNumberFollowsTheScript() throws IOException {
+    try(SqlScriptReader script = new SqlScriptReader(new StringReader("SELECT 1;\n\nSELECT\n2;"))) {
+      script.nextStatement();
+      assertEquals(1, script.getLineNumber());
+      script.nextStatement();
+      assertEquals(4, script.getLineNumber());
+    }
+  }
+
+  @Test
+  void unterminatedQuoteIsAnError() {
+    IOException e = assertThrows(IOException.class, () -> statements("SELECT 1;\nSELECT 'abc;"));
+    assertTrue(e.getMessage().contains("line 2"), e.getMessage());
+
+    assertThrows(IOException.class, () -> statements("SELECT 'abc\\"));
+    assertThrows(IOException.class, () -> statements("SELECT `abc"));
+  }
+
+  @Test
+  void unterminatedCommentIsAnError() {
+    assertThrows(IOException.class, () -> statements("SELECT 1 /* comment;"));
+    assertThrows(IOException.class, () -> statements("/*!40101 SET NAMES utf8;"));
+  }
+
+  private static List<String> statements(String script) throws IOException {
+    return statements(new StringReader(script));
+  }
+
+  private static List<String> statements(Reader reader) throws IOException {
+    List<String> statements = new ArrayList<>();
+
+    try(SqlScriptReader script = new SqlScriptReader(reader)) {
+      String sql;
+
+      while((sql = script.nextStatement()) != null) {
+        statements.add(sql);
+      }
+    }
+
+    return statements;
+  }
+
+  /**
+   * This hands out one character per read, so every character is at a buffer boundary.
+   */
+  private static class OneCharReader extends FilterReader {
+    OneCharReader(Reader in) {
+      super(in);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      return super.read(cbuf, off, Math.min(len, 1));
+    }
+  }
+}
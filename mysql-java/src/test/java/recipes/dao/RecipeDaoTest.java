@@ -0,0 +1,112 @@
+package recipes.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import provided.util.QueryCounter;
+import recipes.entity.Ingredient;
+import recipes.entity.Recipe;
+import recipes.entity.Step;
+import recipes.service.RecipeService;
+
+/**
+ * Tests of {@link RecipeDao} against an in-memory H2 database in MySQL mode.
+ * The DAO is pointed at H2 with the recipes.db.url system property before it
+ * is loaded.
+ * 
+ * @author Promineo
+ *
+ */
+class RecipeDaoTest {
+  private static final int ADDED_RECIPES = 600;
+  private static final int CHUNK_SIZE = 512;
+
+  private static RecipeDao recipeDao;
+  private static List<Integer> recipeIds;
+
+  @BeforeAll
+  static void createAndPopulateTables() {
+    System.setProperty("recipes.db.url", "jdbc:h2:mem:recipes;MODE=MySQL;"
+        + "DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+
+    RecipeService recipeService = new RecipeService();
+    recipeService.createAndPopulateTables();
+
+    /* The batch insert writes only the recipe rows. */
+    List<Recipe> recipes = new ArrayList<>(ADDED_RECIPES);
+
+    for (int count = 1; count < ADDED_RECIPES; count++) {
+      Recipe recipe = new Recipe();
+      recipe.setRecipeName("Recipe " + count);
+      recipes.add(recipe);
+    }
+
+    recipeService.addRecipes(recipes);
+    Recipe last =
+        recipeService.saveRecipeGraph(recipe("Recipe " + ADDED_RECIPES));
+
+    recipeDao = new RecipeDao();
+    recipeIds = new ArrayList<>();
+
+    /* The seed data recipes come first. */
+    for (int id = 1; id <= last.getRecipeId(); id++) {
+      recipeIds.add(id);
+    }
+  }
+
+  @Test
+  void fetchRecipesRunsFourQueriesPerChunk() {
+    int chunks = (recipeIds.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    List<Recipe> recipes;
+
+    assertEquals(2, chunks);
+
+    try (QueryCounter counter = QueryCounter.open("fetchRecipes")) {
+      counter.setFailOnClose(true);
+      counter.setMaxRoundTrips(4 * chunks);
+      counter.setMaxRepeats(chunks);
+
+      recipes = recipeDao.fetchRecipes(recipeIds);
+
+      assertEquals(4 * chunks, counter.getRoundTrips(), counter.toString());
+    }
+
+    assertEquals(recipeIds.size(), recipes.size());
+
+    Recipe last = recipes.get(recipes.size() - 1);
+    assertEquals("Recipe " + ADDED_RECIPES, last.getRecipeName());
+    assertEquals(1, last.getIngredients().size());
+    assertEquals(1, last.getSteps().size());
+  }
+
+  @Test
+  void fetchRecipesOfOneChunkRunsFourQueries() {
+    try (QueryCounter counter = QueryCounter.open("fetchRecipes")) {
+      counter.setFailOnClose(true);
+      counter.setMaxRoundTrips(4);
+      counter.setMaxRepeats(1);
+
+      assertEquals(3, recipeDao.fetchRecipes(List.of(1, 2, 3)).size());
+    }
+  }
+
+  private static Recipe recipe(String name) {
+    Recipe recipe = new Recipe();
+    recipe.setRecipeName(name);
+    recipe.setNumServings(4);
+
+    Ingredient ingredient = new Ingredient();
+    ingredient.setIngredientName("flour");
+    ingredient.setAmount(new BigDecimal("1.50"));
+    recipe.getIngredients().add(ingredient);
+
+    Step step = new Step();
+    step.setStepText("Mix everything.");
+    recipe.getSteps().add(step);
+
+    return recipe;
+  }
+}